@@ -0,0 +1,14 @@
+#version 460 core
+
+out vec4 frag_color;
+
+in vec3 color;
+in vec3 normal;
+
+const vec3 SUN_DIRECTION = normalize(vec3(0.4, 1.0, 0.3));
+
+void main() {
+    float diffuse = max(dot(normal, SUN_DIRECTION), 0.0);
+
+    frag_color = vec4(color * (0.25 + 0.75 * diffuse), 1.0);
+}
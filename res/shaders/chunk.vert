@@ -0,0 +1,43 @@
+#version 460 core
+
+// Packed by Chunk_Mesher, see Chunk_Mesh_Data
+layout(location = 0) in ivec2 in_vertex;
+
+layout(std140, binding = 0) uniform Frame {
+    mat4 view;
+    mat4 projection;
+    mat4 view_projection;
+    vec3 camera_position;
+    float time;
+    float delta_time;
+};
+
+// World position of the chunk's block (0, 0, 0)
+uniform vec3 chunk_origin;
+
+out vec3 color;
+out vec3 normal;
+
+const vec3 FACE_NORMALS[6] = vec3[](
+    vec3(1.0, 0.0, 0.0), vec3(-1.0, 0.0, 0.0),
+    vec3(0.0, 1.0, 0.0), vec3(0.0, -1.0, 0.0),
+    vec3(0.0, 0.0, 1.0), vec3(0.0, 0.0, -1.0)
+);
+
+// By block id, see Blocks
+const vec3 BLOCK_COLORS[4] = vec3[](
+    vec3(1.0, 0.0, 1.0),
+    vec3(0.5, 0.5, 0.52),
+    vec3(0.45, 0.3, 0.18),
+    vec3(0.3, 0.6, 0.2)
+);
+
+void main() {
+    int packed = in_vertex.x;
+    vec3 local = vec3(packed & 0x7F, (packed >> 7) & 0x7F, (packed >> 14) & 0x7F);
+
+    color = BLOCK_COLORS[clamp(in_vertex.y, 0, 3)];
+    normal = FACE_NORMALS[(packed >> 21) & 0x7];
+
+    gl_Position = view_projection * vec4(chunk_origin + local, 1.0);
+}
@@ -0,0 +1,44 @@
+#version 460 core
+
+layout(location = 0) in vec3 in_position;
+layout(location = 1) in vec2 in_uv;
+layout(location = 2) in vec3 in_normal;
+
+layout(std140, binding = 0) uniform Frame {
+    mat4 view;
+    mat4 projection;
+    mat4 view_projection;
+    vec3 camera_position;
+    float time;
+    float delta_time;
+};
+
+// Top 3 rows of every model matrix, see Object_Transforms
+layout(std430, binding = 1) readonly buffer Objects {
+    mat3x4 models[];
+};
+
+out vec2 uv;
+out vec3 color;
+out vec3 normal;
+out vec3 frag_pos;
+out vec3 light_pos;
+
+const vec3 LIGHT_POSITION = vec3(2.0, 4.0, 3.0);
+
+void main() {
+    // The missing row is filled from the identity
+    mat4 model = mat4(transpose(models[gl_BaseInstance + gl_InstanceID]));
+    mat4 model_view = view * model;
+
+    vec4 view_pos = model_view * vec4(in_position, 1.0);
+
+    uv = in_uv;
+    color = vec3(1.0);
+    // Models are only scaled uniformly, the fragment shader normalizes
+    normal = mat3(model_view) * in_normal;
+    frag_pos = view_pos.xyz;
+    light_pos = (view * vec4(LIGHT_POSITION, 1.0)).xyz;
+
+    gl_Position = projection * view_pos;
+}
@@ -1,10 +1,23 @@
+import engine.GL_Render_Backend;
+import engine.Renderer;
+import engine.scene.Entity;
+import engine.scene.Frustum;
 import engine.scene.Model;
+import engine.scene.Scene;
+import engine.scene.SceneBuilder;
 import engine.misc.Cursor;
 import engine.misc.Direction_Mask;
 import engine.scene.Flying_Camera;
 import engine.gfx.*;
 
+import engine.mesh.Lod_Builder;
+import engine.mesh.Mesh_Optimizer;
+import engine.mesh.Vertex_Quantizer;
 import engine.scene.Obj_Model_Loader;
+import engine.world.Chunk;
+import engine.world.Chunk_Meshes;
+import engine.world.Chunk_Pipeline;
+import engine.world.Terrain_Generator;
 import imgui.ImGui;
 import imgui.ImGuiIO;
 import imgui.ImGuiStyle;
@@ -22,7 +35,7 @@ import org.lwjgl.system.MemoryStack;
 import java.io.IOException;
 import java.nio.DoubleBuffer;
 import java.nio.file.Path;
-import java.util.List;
+import java.util.ArrayList;
 
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
@@ -41,7 +54,12 @@ public class Main {
     private static final float[] bgColor = new float[]{0.05f, 0.1f, 0.15f};
 
     private static Model model;
+    private static final Renderer renderer = new Renderer();
+    private static GL_Render_Backend renderBackend;
+    private static Frame_Uniforms frameUniforms;
     private static Triangle_Mesh mesh;
+    // Geometry of the instanced benchmark, drawn with one multi draw per frame
+    private static Geometry_Arena geometry;
     private static Shader_Program program;
 
     private static Flying_Camera camera;
@@ -55,6 +73,35 @@ public class Main {
     // DEBUG DEBUG DEBUG
     private static int polygonMode = GL_FILL;
 
+    private enum Benchmark {
+        Off,
+        Instanced,
+        Per_Entity
+    }
+
+    private static final int BENCHMARK_ENTITIES = 100_000;
+    // Entities that get a new transform every frame
+    private static final int BENCHMARK_MOVING = 1_000;
+    private static final float BENCHMARK_SPACING = 2.5f;
+
+    private static Benchmark benchmark = Benchmark.Off;
+    private static Scene benchmarkScene;
+    private static int benchmarkCursor;
+    private static float frameCpuMillis;
+
+    // Chunks loaded around the camera, horizontally and in chunk y
+    private static final int TERRAIN_RADIUS = 4;
+    private static final int TERRAIN_MIN_Y = -2;
+    private static final int TERRAIN_MAX_Y = 0;
+
+    private static boolean terrainEnabled = true;
+    private static Chunk_Pipeline terrain;
+    private static Chunk_Meshes terrainMeshes;
+    private static Shader_Program terrainProgram;
+    private static Uniform chunkOrigin;
+    // Chunk the loaded window is centered on
+    private static int terrainX, terrainZ;
+
     private static float[] cameraSpeed;
     private static float[] cameraSensitivity;
 
@@ -126,27 +173,58 @@ public class Main {
                 20, 22, 21, 21, 22, 23,
         };
 
-        try {
-            mesh = Obj_Model_Loader.loadFrom(Path.of("res/models/homer.obj"));
-        } catch (IOException e) {
-            System.err.println(e);
-        }
         Texture2D texture = new Texture2D_Builder()
                 .setPath("res/models/boxy/zzz_0.png")
                 .createTexture2D();
 
-        model = new Model(mesh, texture);
+        try {
+            Obj_Model_Loader.Stats loadStats = new Obj_Model_Loader.Stats();
+
+            // The renderer draws the Triangle_Mesh, scenes the copy in the arena
+            model = Obj_Model_Loader.loadCached(
+                    Path.of("res/models/homer.obj"),
+                    Mesh_Optimizer.Options.ALL,
+                    Lod_Builder.DEFAULT_RATIOS,
+                    Vertex_Quantizer.Options.DEFAULT,
+                    loadStats,
+                    entry -> {
+                        int vertexCount = entry.vertexStreams()[0].remaining() / entry.layout().buffers[0].stride();
+                        geometry = new Geometry_Arena(entry.layout(), entry.indexType(), vertexCount, entry.indicesCount());
+
+                        return new Model(entry.upload(), entry.uploadTo(geometry), texture);
+                    });
+
+            mesh = model.getMesh();
+
+            System.out.println("homer.obj: " + loadStats);
+        } catch (IOException e) {
+            System.err.println(e);
+        }
 
         try {
             program = new Shader_Program(
                     Path.of("res/shaders/default.vert"),
-                    Path.of("res/shaders/default.frag"),
-                    List.of("mvp", "mv", "v", "tex"));
+                    Path.of("res/shaders/default.frag"));
         } catch (IOException e) {
             System.err.println("Failed to create shader program. Too bad");
         }
 
-        program.setUniform("tex", 0);
+        program.set(program.uniform("tex"), 0);
+
+        try {
+            terrainProgram = new Shader_Program(
+                    Path.of("res/shaders/chunk.vert"),
+                    Path.of("res/shaders/chunk.frag"));
+            chunkOrigin = terrainProgram.uniform("chunk_origin");
+        } catch (IOException e) {
+            System.err.println("Failed to create the terrain shader program");
+        }
+
+        // Room for the per-entity benchmark
+        renderBackend = new GL_Render_Backend(BENCHMARK_ENTITIES + 1);
+        renderBackend.initState();
+
+        frameUniforms = new Frame_Uniforms();
     }
 
     private static void initGlfw() {
@@ -180,7 +258,7 @@ public class Main {
         glfwSetFramebufferSizeCallback(windowHandle, (win , w, h) -> {
             width = w;
             height = h;
-            glViewport(0, 0, w, h);
+            GL_State.viewport(0, 0, w, h);
         });
         glfwSetKeyCallback(windowHandle, (w, key, scancode, action, mods) -> {
             if (action == GLFW_PRESS)
@@ -238,7 +316,7 @@ public class Main {
 
         if (keys[GLFW_KEY_R]) {
             try {
-                program.reloadIfChanged(List.of("mvp", "mv", "v", "tex"));
+                program.reloadIfChanged();
             } catch (IOException e) {
                 System.err.println("failed to update Shader Program");
             }
@@ -265,31 +343,169 @@ public class Main {
             directionMask.up();
     }
 
-    private static final Matrix4f mvp = new Matrix4f();
-    private static final Matrix4f mv = new Matrix4f();
+    private static final Matrix4f projection = new Matrix4f();
+    private static final Matrix4f transform = new Matrix4f();
+    private static final Matrix4f viewProjection = new Matrix4f();
+    private static final Frustum frustum = new Frustum();
+    private static boolean frustumCulling = true;
 
     private static void frame() {
         glClearColor(bgColor[0], bgColor[1], bgColor[2], 1.0f);
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
-        glEnable(GL_DEPTH_TEST);
-        glFrontFace(GL_CCW);
-        glEnable(GL_CULL_FACE);
+        projection.setPerspective((float) Math.toRadians(70.0f), (float) width / (float) height, 0.01f, 100.f);
+        frameUniforms.beginFrame(camera.viewMatrix(), projection, camera.position, (float) glfwGetTime(), deltaTime);
+
+        transform.rotation((float) glfwGetTime(), 0.0f, 1.0f, 0.0f);
+        mesh.getPositionDecode().apply(transform);
+
+        // The model sits at the origin
+        float projectionScale = height / (2.0f * (float) Math.tan(Math.toRadians(70.0f) * 0.5));
+
+        if (terrainEnabled)
+            renderTerrain();
+
+        renderer.beginFrame();
+        model.submit(renderer, program.getId(), transform, camera.position.length(), projectionScale);
 
-        program.use();
+        if (benchmark == Benchmark.Per_Entity)
+            submitBenchmark();
 
-        mv.identity().mul(camera.viewMatrix())
-                .rotate((float) glfwGetTime(), 0.0f, 1.0f, 0.0f);
+        renderBackend.beginFrame();
+        renderer.flush(renderBackend);
+        renderBackend.endFrame();
 
-        mvp.identity()
-                .perspective((float) Math.toRadians(70.0f), (float) width / (float) height, 0.01f, 100.f)
-                .mul(mv);
+        if (benchmark == Benchmark.Instanced) {
+            moveBenchmarkEntities();
+            benchmarkScene.updateState(deltaTime);
 
-        program.setUniform("mvp", mvp);
-        program.setUniform("mv", mv);
-        program.setUniform("v", camera.viewMatrix());
+            program.use();
 
-        model.render();
+            if (frustumCulling) {
+                frustum.set(projection.mul(camera.viewMatrix(), viewProjection));
+                benchmarkScene.render(mesh.getLods().levels() - 1, frustum);
+            } else {
+                benchmarkScene.render(mesh.getLods().levels() - 1);
+            }
+        }
+
+        frameUniforms.endFrame();
+    }
+
+    private static void renderTerrain() {
+        if (terrain == null) {
+            terrainMeshes = new Chunk_Meshes();
+            terrain = new Chunk_Pipeline(new Terrain_Generator(1337, -40.0f, 24.0f), terrainMeshes);
+
+            terrainX = Math.floorDiv((int) Math.floor(camera.position.x), Chunk.WORLD_SIDE_SIZE);
+            terrainZ = Math.floorDiv((int) Math.floor(camera.position.z), Chunk.WORLD_SIDE_SIZE);
+            loadTerrainWindow(terrainX, terrainZ, true);
+        }
+
+        int x = Math.floorDiv((int) Math.floor(camera.position.x), Chunk.WORLD_SIDE_SIZE);
+        int z = Math.floorDiv((int) Math.floor(camera.position.z), Chunk.WORLD_SIDE_SIZE);
+
+        if (x != terrainX || z != terrainZ) {
+            int oldX = terrainX, oldZ = terrainZ;
+
+            terrainX = x;
+            terrainZ = z;
+
+            loadTerrainWindow(oldX, oldZ, false);
+            loadTerrainWindow(x, z, true);
+        }
+
+        terrain.update(camera.position);
+
+        terrainProgram.use();
+
+        for (Chunk_Meshes.Entry entry : terrainMeshes.entries()) {
+            // chunk_origin is a vec3, the int overload would be glProgramUniform3i
+            terrainProgram.set(chunkOrigin,
+                    (float) (entry.x() * Chunk.WORLD_SIDE_SIZE),
+                    (float) (entry.y() * Chunk.WORLD_SIDE_SIZE),
+                    (float) (entry.z() * Chunk.WORLD_SIDE_SIZE));
+            entry.mesh().render();
+        }
+    }
+
+    /**
+     * Loads the chunks around ({@code centerX}, {@code centerZ}), or unloads the ones of that window that are
+     * outside the current one
+     */
+    private static void loadTerrainWindow(int centerX, int centerZ, boolean load) {
+        for (int x = centerX - TERRAIN_RADIUS; x <= centerX + TERRAIN_RADIUS; x++) {
+            for (int z = centerZ - TERRAIN_RADIUS; z <= centerZ + TERRAIN_RADIUS; z++) {
+                for (int y = TERRAIN_MIN_Y; y <= TERRAIN_MAX_Y; y++) {
+                    if (load)
+                        terrain.load(x, y, z);
+                    else if (Math.abs(x - terrainX) > TERRAIN_RADIUS || Math.abs(z - terrainZ) > TERRAIN_RADIUS)
+                        terrain.unload(x, y, z);
+                }
+            }
+        }
+    }
+
+    private static final Matrix4f benchmarkTransform = new Matrix4f();
+
+    private static Scene benchmarkScene() {
+        if (benchmarkScene != null)
+            return benchmarkScene;
+
+        ArrayList<Entity> entities = new ArrayList<>(BENCHMARK_ENTITIES);
+        for (int i = 0; i < BENCHMARK_ENTITIES; i++)
+            entities.add(new Entity(model, benchmarkTransform(i, 0.0f)));
+
+        benchmarkScene = new SceneBuilder()
+                .setLabel("benchmark")
+                .setEntities(entities)
+                .createScene();
+
+        return benchmarkScene;
+    }
+
+    // Cube of entities in front of the camera
+    private static Matrix4f benchmarkTransform(int i, float angle) {
+        int side = (int) Math.ceil(Math.cbrt(BENCHMARK_ENTITIES));
+
+        return benchmarkTransform
+                .translation(
+                        (i % side - side * 0.5f) * BENCHMARK_SPACING,
+                        (i / side % side - side * 0.5f) * BENCHMARK_SPACING,
+                        -(i / (side * side)) * BENCHMARK_SPACING - 5.0f)
+                .rotateY(angle);
+    }
+
+    private static void moveBenchmarkEntities() {
+        ArrayList<Entity> entities = benchmarkScene.entities;
+        float angle = (float) glfwGetTime();
+
+        for (int k = 0; k < BENCHMARK_MOVING; k++) {
+            int i = benchmarkCursor++ % entities.size();
+            entities.get(i).setTransformation(benchmarkTransform(i, angle));
+        }
+    }
+
+    // The naive path: one submission, transform write and draw per entity
+    private static void submitBenchmark() {
+        moveBenchmarkEntities();
+
+        int lod = mesh.getLods().levels() - 1;
+
+        for (Entity entity : benchmarkScene.entities) {
+            benchmarkTransform.set(entity.getTransformation());
+            mesh.getPositionDecode().apply(benchmarkTransform);
+
+            renderer.submit(
+                    Renderer.Pass.Opaque,
+                    program.getId(),
+                    model.getTexture().getId(),
+                    mesh,
+                    lod,
+                    benchmarkTransform,
+                    -benchmarkTransform.m32()
+            );
+        }
     }
 
     private static void run() {
@@ -298,9 +514,14 @@ public class Main {
             deltaTime = (float) (glfwGetTime() - start);
             start = glfwGetTime();
 
-            glPolygonMode(GL_FRONT_AND_BACK, polygonMode);
+            Shader_Program.resetCounters();
+            GL_State.resetCounters();
+
+            GL_State.polygonMode(polygonMode);
+            long frameStart = System.nanoTime();
             frame();
-            glPolygonMode(GL_FRONT_AND_BACK, GL_FILL);
+            frameCpuMillis = (System.nanoTime() - frameStart) / 1e6f;
+            GL_State.polygonMode(GL_FILL);
 
             imGuiGlfw.newFrame();
             ImGui.newFrame();
@@ -309,6 +530,9 @@ public class Main {
 
             ImGui.render();
             imGuiGl3.renderDrawData(ImGui.getDrawData());
+
+            // The ImGui backend binds and enables with plain GL calls
+            GL_State.invalidate();
         }
     }
 
@@ -318,6 +542,10 @@ public class Main {
         if (ImGui.begin("LeftMenuBar", ImGuiWindowFlags.NoTitleBar)) {
             ImGui.text(String.format("FPS = %.2f", (1.0f / deltaTime)));
             ImGui.text(String.format("Delta time = %.4f", deltaTime));
+            ImGui.textWrapped(renderer.stats().toString());
+            ImGui.text(String.format("Uniform uploads = %d (%d B), skipped = %d",
+                    Shader_Program.uploads(), Shader_Program.uploadedBytes(), Shader_Program.skippedUploads()));
+            ImGui.text(String.format("GL state calls = %d, skipped = %d", GL_State.issued(), GL_State.skipped()));
 
             if (ImGui.button("Wireframe"))
                 polygonMode = GL_LINE;
@@ -325,6 +553,42 @@ public class Main {
             if (ImGui.button("Fill"))
                 polygonMode = GL_FILL;
 
+            if (ImGui.collapsingHeader("Benchmark")) {
+                for (Benchmark mode : Benchmark.values()) {
+                    if (ImGui.radioButton(mode.name(), benchmark == mode)) {
+                        benchmark = mode;
+
+                        if (mode != Benchmark.Off)
+                            benchmarkScene();
+                    }
+                }
+
+                if (ImGui.checkbox("Frustum culling", frustumCulling))
+                    frustumCulling = !frustumCulling;
+
+                ImGui.text(String.format("Frame CPU = %.3f ms", frameCpuMillis));
+                if (benchmarkScene != null) {
+                    ImGui.text(String.format("Instanced: %d draws, %d uploads (%d B)",
+                            benchmarkScene.draws(), benchmarkScene.uploads(), benchmarkScene.uploadedBytes()));
+                    ImGui.text(String.format("Visible: %d / %d tested (%s)",
+                            benchmarkScene.visible(), benchmarkScene.tested(), Frustum.isVectorized() ? "vectorized" : "scalar"));
+                }
+            }
+
+            if (ImGui.collapsingHeader("Terrain")) {
+                if (ImGui.checkbox("Enabled", terrainEnabled))
+                    terrainEnabled = !terrainEnabled;
+
+                if (terrain != null) {
+                    ImGui.text(String.format("Chunks = %d, waiting = %d, in flight = %d",
+                            terrain.loadedChunks(), terrain.waitingJobs(), terrain.jobsInFlight()));
+                    ImGui.text(String.format("Uploads = %d (%d B, %.2f ms), over budget = %d",
+                            terrain.uploads(), terrain.uploadedBytes(), terrain.uploadMillis(), terrain.readyUploads()));
+                    ImGui.text(String.format("Latency avg = %.1f ms, max = %.1f ms",
+                            terrain.averageLatencyMillis(), terrain.maxLatencyMillis()));
+                }
+            }
+
             if (ImGui.collapsingHeader("Camera")) {
                 ImGui.text(String.format(
                         "Position = (%.2f, %.2f, %.2f)", camera.position.x, camera.position.y, camera.position.z));
@@ -354,8 +618,20 @@ public class Main {
     }
 
     private static void cleanup() {
+        if (benchmarkScene != null)
+            benchmarkScene.delete();
+
+        if (terrain != null) {
+            terrain.delete();
+            terrainMeshes.delete();
+        }
+
         program.delete();
+        terrainProgram.delete();
+        frameUniforms.delete();
+        renderBackend.delete();
         model.delete();
+        geometry.delete();
 
         Callbacks.glfwFreeCallbacks(windowHandle);
 
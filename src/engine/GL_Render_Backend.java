@@ -0,0 +1,99 @@
+package engine;
+
+import engine.gfx.GL_State;
+import engine.gfx.GPU_Buffer_Type;
+import engine.gfx.Object_Transforms;
+import engine.gfx.Stream_Buffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL42.glDrawElementsInstancedBaseInstance;
+import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BUFFER;
+import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BUFFER_OFFSET_ALIGNMENT;
+
+/**
+ * <p>
+ *     Camera and other globals come from {@link engine.gfx.Frame_Uniforms}. Model matrices of all draws in a frame
+ *     are appended to a streamed storage buffer bound once at {@link Object_Transforms#BINDING}, and each draw
+ *     passes its index as the base instance, so there's no per-draw uniform upload or buffer bind.
+ * </p>
+ */
+public class GL_Render_Backend implements Render_Backend {
+    public static final int DEFAULT_MAX_OBJECTS = 1 << 16;
+
+    private final Stream_Buffer objects;
+    private final int maxObjects;
+
+    private long regionStart;
+    private int objectCount;
+
+    public GL_Render_Backend() {
+        this(DEFAULT_MAX_OBJECTS);
+    }
+
+    public GL_Render_Backend(int maxObjects) {
+        this.maxObjects = maxObjects;
+
+        // Rounded so that every region starts at a multiple of 256, the biggest offset alignment drivers ask for
+        long regionSize = ((long) maxObjects * Object_Transforms.SIZE + 255) & -256L;
+        objects = new Stream_Buffer(GPU_Buffer_Type.Storage_Buffer, regionSize);
+    }
+
+    /**
+     * State that used to be set again every frame, it never changes
+     */
+    public void initState() {
+        GL_State.enable(GL_DEPTH_TEST);
+        GL_State.frontFace(GL_CCW);
+        GL_State.enable(GL_CULL_FACE);
+    }
+
+    public void beginFrame() {
+        objects.beginFrame();
+
+        regionStart = objects.allocator().regionStart();
+        objectCount = 0;
+
+        assert regionStart % glGetInteger(GL_SHADER_STORAGE_BUFFER_OFFSET_ALIGNMENT) == 0;
+
+        GL_State.bindBufferRange(GL_SHADER_STORAGE_BUFFER, Object_Transforms.BINDING, objects.buffer(), regionStart, objects.allocator().regionSize());
+    }
+
+    public void endFrame() {
+        objects.endFrame();
+    }
+
+    public void delete() {
+        objects.delete();
+    }
+
+    @Override
+    public void useProgram(int program) {
+        GL_State.useProgram(program);
+    }
+
+    @Override
+    public void bindTexture(int unit, int texture) {
+        GL_State.bindTexture(unit, texture);
+    }
+
+    @Override
+    public void bindVertexArray(int vertexArray) {
+        GL_State.bindVertexArray(vertexArray);
+    }
+
+    @Override
+    public void setTransform(float[] transforms, int offset) {
+        if (objectCount == maxObjects)
+            throw new IllegalStateException("more than " + maxObjects + " objects in a frame");
+
+        long at = objects.allocate(Object_Transforms.SIZE, 16);
+        objectCount = (int) ((at - regionStart) / Object_Transforms.SIZE) + 1;
+
+        Object_Transforms.put(transforms, offset, objects.address() + at);
+    }
+
+    @Override
+    public void drawElements(int count, int indexType, long indexOffset) {
+        glDrawElementsInstancedBaseInstance(GL_TRIANGLES, count, indexType, indexOffset, 1, objectCount - 1);
+    }
+}
@@ -0,0 +1,18 @@
+package engine;
+
+/**
+ * Everything {@link Renderer} does to the GPU. {@link GL_Render_Backend} is the real one, anything else
+ * (e.g. a backend that just records the calls) can be plugged in to run the renderer without a GL context.
+ */
+public interface Render_Backend {
+    void useProgram(int program);
+
+    void bindTexture(int unit, int texture);
+
+    void bindVertexArray(int vertexArray);
+
+    // Model matrix of the next draw, 16 floats column major starting at offset
+    void setTransform(float[] transforms, int offset);
+
+    void drawElements(int count, int indexType, long indexOffset);
+}
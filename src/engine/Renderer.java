@@ -1,5 +1,281 @@
 package engine;
 
+import engine.gfx.Lod_Chain;
+import engine.gfx.Triangle_Mesh;
+import engine.misc.Long_Int_Map;
+import org.joml.Matrix4f;
+
+import java.util.Arrays;
+
+/**
+ * <h1>
+ *     Renderer
+ * </h1>
+ * <h3>
+ *     Draw submissions are collected during the frame, sorted by a 64 bit key and issued in one go
+ * </h3>
+ * <p>
+ *     The key orders draws by pass, then program, texture, vertex array and finally depth (front to back for
+ *     opaque, back to front for transparent), so consecutive draws share as much state as possible and binds
+ *     that wouldn't change anything are skipped. Keys are LSD radix sorted together with the submission index.
+ *     All per-submission data lives in parallel arrays that only grow, so a frame allocates nothing once they
+ *     are big enough.
+ * </p>
+ * <pre>
+ * | pass 4 | program 10 | texture 14 | vertex array 14 | depth 22 |
+ * </pre>
+ * <p>
+ *     Programs, textures and vertex arrays go into the key as small ids, assigned the first time a GL name is seen.
+ * </p>
+ */
 public class Renderer {
+    // Declaration order is drawing order
+    public enum Pass {
+        Opaque,
+        Transparent
+    }
+
+    private static final int DEPTH_BITS = 22;
+    private static final int VERTEX_ARRAY_BITS = 14;
+    private static final int TEXTURE_BITS = 14;
+    private static final int PROGRAM_BITS = 10;
+
+    private static final int VERTEX_ARRAY_SHIFT = DEPTH_BITS;
+    private static final int TEXTURE_SHIFT = VERTEX_ARRAY_SHIFT + VERTEX_ARRAY_BITS;
+    private static final int PROGRAM_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+    private static final int PASS_SHIFT = PROGRAM_SHIFT + PROGRAM_BITS;
+
+    private static final int DEPTH_MASK = (1 << DEPTH_BITS) - 1;
+
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    public static class Stats {
+        public int submissions;
+        public int programBinds;
+        public int textureBinds;
+        public int vertexArrayBinds;
+        public int draws;
+
+        public long sortNanos;
+        public long submitNanos;
+
+        void reset() {
+            submissions = programBinds = textureBinds = vertexArrayBinds = draws = 0;
+            sortNanos = submitNanos = 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d draws, binds: %d programs, %d textures, %d vertex arrays, sort %.3f ms, submit %.3f ms",
+                    draws, programBinds, textureBinds, vertexArrayBinds, sortNanos / 1e6, submitNanos / 1e6);
+        }
+    }
+
+    private final Stats stats = new Stats();
+
+    private final Long_Int_Map programIds = new Long_Int_Map(1 << PROGRAM_BITS);
+    private final Long_Int_Map textureIds = new Long_Int_Map(256);
+    private final Long_Int_Map vertexArrayIds = new Long_Int_Map(256);
+
+    private int count;
+
+    private long[] keys;
+    private long[] sortedKeys;
+    private int[] order;
+    private int[] sortedOrder;
+    private final int[] histogram = new int[RADIX];
+
+    private int[] programs;
+    private int[] textures;
+    private int[] vertexArrays;
+    private int[] indexCounts;
+    private int[] indexTypes;
+    private long[] indexOffsets;
+    private float[] transforms;
+
+    public Renderer() {
+        this(1024);
+    }
+
+    public Renderer(int initialCapacity) {
+        allocate(Math.max(16, initialCapacity));
+    }
+
+    public void beginFrame() {
+        count = 0;
+        stats.reset();
+    }
+
+    /**
+     * @param texture GL name, 0 for none
+     * @param transform model matrix, copied
+     * @param viewDepth distance along the view direction, only its order matters
+     */
+    public void submit(
+            Pass pass,
+            int program,
+            int texture,
+            int vertexArray,
+            int indexCount,
+            int indexType,
+            long indexOffset,
+            Matrix4f transform,
+            float viewDepth) {
+        if (count == keys.length)
+            allocate(keys.length * 2);
+
+        int i = count++;
+
+        programs[i] = program;
+        textures[i] = texture;
+        vertexArrays[i] = vertexArray;
+        indexCounts[i] = indexCount;
+        indexTypes[i] = indexType;
+        indexOffsets[i] = indexOffset;
+        transform.get(transforms, i * 16);
+
+        // Positive floats order like their bits, bits 30..9 keep the exponent and the top of the mantissa
+        int depth = Float.floatToIntBits(Math.max(viewDepth, 0.0f)) >>> (31 - DEPTH_BITS) & DEPTH_MASK;
+        if (pass == Pass.Transparent)
+            depth = DEPTH_MASK - depth;
+
+        keys[i] = (long) pass.ordinal() << PASS_SHIFT |
+                  (long) id(programIds, program, PROGRAM_BITS) << PROGRAM_SHIFT |
+                  (long) id(textureIds, texture, TEXTURE_BITS) << TEXTURE_SHIFT |
+                  (long) id(vertexArrayIds, vertexArray, VERTEX_ARRAY_BITS) << VERTEX_ARRAY_SHIFT |
+                  depth;
+        order[i] = i;
+
+        stats.submissions++;
+    }
+
+    public void submit(Pass pass, int program, int texture, Triangle_Mesh mesh, int lod, Matrix4f transform, float viewDepth) {
+        Lod_Chain lods = mesh.getLods();
+
+        submit(
+                pass,
+                program,
+                texture,
+                mesh.getVertexArray(),
+                lods.counts()[lod],
+                mesh.getIndexType().glValue,
+                (long) lods.firstIndices()[lod] * mesh.getIndexType().size,
+                transform,
+                viewDepth
+        );
+    }
+
+    /**
+     * Sorts everything submitted since {@link #beginFrame()} and draws it
+     */
+    public void flush(Render_Backend backend) {
+        long start = System.nanoTime();
+        sort();
+        long sorted = System.nanoTime();
+
+        int currentProgram = -1;
+        int currentTexture = -1;
+        int currentVertexArray = -1;
+
+        for (int k = 0; k < count; k++) {
+            int i = order[k];
+
+            if (programs[i] != currentProgram) {
+                currentProgram = programs[i];
+                backend.useProgram(currentProgram);
+                stats.programBinds++;
+            }
+
+            if (textures[i] != currentTexture) {
+                currentTexture = textures[i];
+                backend.bindTexture(0, currentTexture);
+                stats.textureBinds++;
+            }
+
+            if (vertexArrays[i] != currentVertexArray) {
+                currentVertexArray = vertexArrays[i];
+                backend.bindVertexArray(currentVertexArray);
+                stats.vertexArrayBinds++;
+            }
+
+            backend.setTransform(transforms, i * 16);
+            backend.drawElements(indexCounts[i], indexTypes[i], indexOffsets[i]);
+            stats.draws++;
+        }
+
+        stats.sortNanos = sorted - start;
+        stats.submitNanos = System.nanoTime() - sorted;
+    }
+
+    public Stats stats() {
+        return stats;
+    }
+
+    // Ids are never recycled, the key fields are wide enough for what a scene uses
+    private static int id(Long_Int_Map ids, int name, int bits) {
+        int id = ids.getOrPut(name, ids.size());
+
+        if (id >= 1 << bits)
+            throw new IllegalStateException("more than " + (1 << bits) + " distinct objects in a sort key field");
+
+        return id;
+    }
+
+    // LSD radix sort of (key, order) pairs, byte positions where every key agrees are skipped
+    private void sort() {
+        long same = -1L;
+        long first = count > 0 ? keys[0] : 0;
+
+        for (int i = 1; i < count; i++)
+            same &= ~(keys[i] ^ first);
+
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            if ((same >>> shift & (RADIX - 1)) == RADIX - 1)
+                continue;
+
+            Arrays.fill(histogram, 0);
+
+            for (int i = 0; i < count; i++)
+                histogram[(int) (keys[i] >>> shift) & (RADIX - 1)]++;
+
+            int sum = 0;
+            for (int d = 0; d < RADIX; d++) {
+                int c = histogram[d];
+                histogram[d] = sum;
+                sum += c;
+            }
+
+            for (int i = 0; i < count; i++) {
+                int to = histogram[(int) (keys[i] >>> shift) & (RADIX - 1)]++;
+
+                sortedKeys[to] = keys[i];
+                sortedOrder[to] = order[i];
+            }
+
+            long[] swapKeys = keys;
+            keys = sortedKeys;
+            sortedKeys = swapKeys;
+
+            int[] swapOrder = order;
+            order = sortedOrder;
+            sortedOrder = swapOrder;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = keys == null ? new long[capacity] : Arrays.copyOf(keys, capacity);
+        order = order == null ? new int[capacity] : Arrays.copyOf(order, capacity);
+        sortedKeys = new long[capacity];
+        sortedOrder = new int[capacity];
 
+        programs = programs == null ? new int[capacity] : Arrays.copyOf(programs, capacity);
+        textures = textures == null ? new int[capacity] : Arrays.copyOf(textures, capacity);
+        vertexArrays = vertexArrays == null ? new int[capacity] : Arrays.copyOf(vertexArrays, capacity);
+        indexCounts = indexCounts == null ? new int[capacity] : Arrays.copyOf(indexCounts, capacity);
+        indexTypes = indexTypes == null ? new int[capacity] : Arrays.copyOf(indexTypes, capacity);
+        indexOffsets = indexOffsets == null ? new long[capacity] : Arrays.copyOf(indexOffsets, capacity);
+        transforms = transforms == null ? new float[capacity * 16] : Arrays.copyOf(transforms, capacity * 16);
+    }
 }
@@ -0,0 +1,244 @@
+package engine.ecs;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * <h1>
+ *     Archetype
+ * </h1>
+ * <h3>
+ *     Table of every entity with exactly one set of components, one primitive array column per component
+ * </h3>
+ * <p>
+ *     Row i of a column starts at {@code i * component.width()}. Rows stay dense, removing one moves the last row
+ *     into its place. Columns are replaced when the table grows, so fetch them again after creating entities.
+ * </p>
+ * <p>
+ *     Rows are grouped in chunks of {@link #CHUNK_ROWS}, the unit of parallel updates and of change tracking:
+ *     every column keeps, per chunk, the world version it was last written at.
+ * </p>
+ * <p>
+ *     Finer than that, one bit per row says the row changed since {@link #clearChangedRows()}. Writers that know
+ *     exactly which rows they changed set it, like {@link Transform_System} for world matrices that really moved,
+ *     so a consumer such as the scene's instance sync visits those rows instead of whole chunks. New and moved rows
+ *     start changed.
+ * </p>
+ */
+public class Archetype {
+    public static final int CHUNK_ROWS = 1024;
+
+    private static final VarHandle CHANGED_WORD = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long mask;
+    final Component[] components;
+
+    // By component id, null for components not in the archetype
+    private final float[][] floats = new float[Component.MAX_COMPONENTS][];
+    private final int[][] ints = new int[Component.MAX_COMPONENTS][];
+    private final long[][] versions = new long[Component.MAX_COMPONENTS][];
+
+    // Bit per row, a chunk is whole words so systems on different chunks never share one, systems of one stage
+    // can still run on the same chunk
+    private long[] changedRows;
+
+    private long[] handles;
+    private int size;
+    private int capacity;
+
+    Archetype(long mask) {
+        this.mask = mask;
+
+        components = new Component[Long.bitCount(mask)];
+        for (int i = 0, id = 0; id < Component.MAX_COMPONENTS; id++) {
+            if ((mask & 1L << id) != 0)
+                components[i++] = Component.byId(id);
+        }
+
+        grow(CHUNK_ROWS);
+    }
+
+    public long mask() {
+        return mask;
+    }
+
+    public Component[] components() {
+        return components.clone();
+    }
+
+    public boolean has(Component component) {
+        return (mask & component.bit()) != 0;
+    }
+
+    public boolean hasAll(long components) {
+        return (mask & components) == components;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long handle(int row) {
+        return handles[row];
+    }
+
+    public float[] floats(Component component) {
+        assert component.kind() == Component.Kind.Float && has(component) : component + " is not a float column here";
+        return floats[component.id()];
+    }
+
+    public int[] ints(Component component) {
+        assert component.kind() == Component.Kind.Int && has(component) : component + " is not an int column here";
+        return ints[component.id()];
+    }
+
+    public int chunkCount() {
+        return (size + CHUNK_ROWS - 1) / CHUNK_ROWS;
+    }
+
+    // World version the component was last written at in this chunk
+    public long version(Component component, int chunk) {
+        return versions[component.id()][chunk];
+    }
+
+    /**
+     * True if any component of {@code components} in this archetype was written in {@code chunk} after {@code version}
+     */
+    public boolean changedSince(long components, int chunk, long version) {
+        for (long bits = components & mask; bits != 0; bits &= bits - 1) {
+            if (versions[Long.numberOfTrailingZeros(bits)][chunk] > version)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Safe from any system of a stage, parallel systems on the same chunk can both mark rows: the bit is set
+     * with an atomic or, so neither loses the other's
+     */
+    public void markRowChanged(int row) {
+        long bit = 1L << row;
+
+        // Rows already marked are common, only take the atomic when the bit isn't set yet
+        if (((long) CHANGED_WORD.getOpaque(changedRows, row >>> 6) & bit) == 0)
+            CHANGED_WORD.getAndBitwiseOr(changedRows, row >>> 6, bit);
+    }
+
+    /**
+     * @return first changed row at or after {@code from}, -1 if there's none
+     */
+    public int nextChangedRow(int from) {
+        int words = (size + 63) >>> 6;
+        int word = from >>> 6;
+        if (word >= words)
+            return -1;
+
+        long bits = changedRows[word] & -1L << from;
+
+        while (bits == 0) {
+            if (++word >= words)
+                return -1;
+
+            bits = changedRows[word];
+        }
+
+        int row = word * 64 + Long.numberOfTrailingZeros(bits);
+        return row < size ? row : -1;
+    }
+
+    public void clearChangedRows() {
+        Arrays.fill(changedRows, 0, (size + 63) >>> 6, 0L);
+    }
+
+    /**
+     * Rows [from, to) of {@code component} were written at {@code version}
+     */
+    public void markChanged(Component component, int from, int to, long version) {
+        markChanged(component.bit(), from, to, version);
+    }
+
+    // Every component of the mask that's in this archetype
+    void markChanged(long components, int from, int to, long version) {
+        for (long bits = components & mask; bits != 0; bits &= bits - 1) {
+            long[] chunks = versions[Long.numberOfTrailingZeros(bits)];
+
+            for (int chunk = from / CHUNK_ROWS, last = (to - 1) / CHUNK_ROWS; chunk <= last; chunk++)
+                chunks[chunk] = Math.max(chunks[chunk], version);
+        }
+    }
+
+    void markAllChanged(int row, long version) {
+        markChanged(mask, row, row + 1, version);
+    }
+
+    int add(long handle) {
+        if (size == capacity)
+            grow(capacity * 2);
+
+        handles[size] = handle;
+        markRowChanged(size);
+        return size++;
+    }
+
+    /**
+     * @return handle of the row moved into {@code row}, or {@link Entity_World#NONE} if it was the last one
+     */
+    long remove(int row) {
+        int last = --size;
+
+        if (row == last)
+            return Entity_World.NONE;
+
+        for (Component component : components)
+            copyRow(component, this, last, row);
+
+        handles[row] = handles[last];
+        markRowChanged(row);
+        return handles[row];
+    }
+
+    // Copies the components both archetypes have from their row in source to row here
+    void copyShared(Archetype source, int sourceRow, int row) {
+        for (Component component : components) {
+            if (source.has(component))
+                copyRow(component, source, sourceRow, row);
+        }
+    }
+
+    private void copyRow(Component component, Archetype source, int sourceRow, int row) {
+        int width = component.width();
+
+        if (component.kind() == Component.Kind.Float)
+            System.arraycopy(source.floats[component.id()], sourceRow * width, floats[component.id()], row * width, width);
+        else
+            System.arraycopy(source.ints[component.id()], sourceRow * width, ints[component.id()], row * width, width);
+    }
+
+    private void grow(int newCapacity) {
+        handles = handles == null ? new long[newCapacity] : Arrays.copyOf(handles, newCapacity);
+        changedRows = changedRows == null ? new long[newCapacity >>> 6] : Arrays.copyOf(changedRows, newCapacity >>> 6);
+
+        int chunks = (newCapacity + CHUNK_ROWS - 1) / CHUNK_ROWS;
+
+        for (Component component : components) {
+            int id = component.id();
+            int length = newCapacity * component.width();
+
+            if (component.kind() == Component.Kind.Float)
+                floats[id] = floats[id] == null ? new float[length] : Arrays.copyOf(floats[id], length);
+            else
+                ints[id] = ints[id] == null ? new int[length] : Arrays.copyOf(ints[id], length);
+
+            versions[id] = versions[id] == null ? new long[chunks] : Arrays.copyOf(versions[id], chunks);
+        }
+
+        capacity = newCapacity;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(components) + " x " + size;
+    }
+}
@@ -0,0 +1,94 @@
+package engine.ecs;
+
+import java.util.ArrayList;
+
+/**
+ * <h3>
+ *     A column type of {@link Archetype} tables, {@code width} floats or ints per entity
+ * </h3>
+ * <p>
+ *     Components are identified by a small id, so a set of them is a {@code long} mask. The built in ones are the
+ *     transform parts, the world matrix they make and the model to draw; anything else is {@link #define}d once,
+ *     usually as a static final next to the system that uses it.
+ * </p>
+ */
+public final class Component {
+    public static final int MAX_COMPONENTS = Long.SIZE;
+
+    public enum Kind {
+        Float,
+        Int
+    }
+
+    private static final ArrayList<Component> DEFINED = new ArrayList<>();
+
+    public static final Component POSITION = define("position", Kind.Float, 3);
+    // Unit quaternion, x y z w
+    public static final Component ROTATION = define("rotation", Kind.Float, 4);
+    public static final Component SCALE = define("scale", Kind.Float, 3);
+    // Object_Transforms layout, the 3 top rows of the affine matrix
+    public static final Component WORLD_MATRIX = define("world matrix", Kind.Float, 12);
+    public static final Component MODEL_ID = define("model id", Kind.Int, 1);
+
+    private final String name;
+    private final Kind kind;
+    private final int width;
+    private final int id;
+
+    private Component(String name, Kind kind, int width, int id) {
+        this.name = name;
+        this.kind = kind;
+        this.width = width;
+        this.id = id;
+    }
+
+    public static synchronized Component define(String name, Kind kind, int width) {
+        if (DEFINED.size() == MAX_COMPONENTS)
+            throw new IllegalStateException("more than " + MAX_COMPONENTS + " components");
+
+        if (width <= 0)
+            throw new IllegalArgumentException("component width must be positive, got " + width);
+
+        Component component = new Component(name, kind, width, DEFINED.size());
+        DEFINED.add(component);
+
+        return component;
+    }
+
+    public static long mask(Component... components) {
+        long mask = 0;
+        for (Component component : components)
+            mask |= component.bit();
+
+        return mask;
+    }
+
+    static synchronized Component byId(int id) {
+        return DEFINED.get(id);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public long bit() {
+        return 1L << id;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,34 @@
+package engine.ecs;
+
+/**
+ * <h3>
+ *     Per frame logic over every archetype that has the components it reads and writes
+ * </h3>
+ * <p>
+ *     {@link #update} gets row ranges of one archetype, possibly on several threads at once, so it may only touch
+ *     those rows of the columns in {@link #reads()} and {@link #writes()}. The masks are what the
+ *     {@link System_Scheduler} uses to decide which systems can run together.
+ * </p>
+ */
+public interface Entity_System {
+    // Component masks, see Component.mask()
+    long reads();
+
+    long writes();
+
+    /**
+     * Chunks where none of these changed since the system's last run are skipped, 0 to update every chunk
+     */
+    default long changeFilter() {
+        return 0;
+    }
+
+    /**
+     * Archetypes with any of these components are left out, even if they have everything the system uses
+     */
+    default long excludes() {
+        return 0;
+    }
+
+    void update(Archetype archetype, int from, int to, float deltaTime);
+}
@@ -0,0 +1,213 @@
+package engine.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * <h1>
+ *     Entity_World
+ * </h1>
+ * <h3>
+ *     Entities as handles into {@link Archetype} tables
+ * </h3>
+ * <p>
+ *     A handle is a 32 bit index and the generation of that index, so handles of destroyed entities never alias
+ *     new ones: {@link #isAlive} is false for them and lookups fail. Indices are reused, generations go up.
+ * </p>
+ * <p>
+ *     The version counts {@link System_Scheduler} stages. Everything written from outside a stage, like
+ *     created rows, is marked with {@code version() + 1}, so it shows as changed to every system on the next run.
+ *     Entities can only be created, destroyed or moved between archetypes while no systems are running.
+ * </p>
+ */
+public class Entity_World {
+    // Generations start at 1, so no handle is 0
+    public static final long NONE = 0;
+
+    private final ArrayList<Archetype> archetypes = new ArrayList<>();
+    private final HashMap<Long, Archetype> byMask = new HashMap<>();
+
+    // By index
+    private int[] generations = new int[1024];
+    private Archetype[] archetypeOf = new Archetype[1024];
+    private int[] rows = new int[1024];
+
+    private int[] freeIndices = new int[64];
+    private int freeCount;
+    private int indexCount;
+    private int alive;
+
+    private long version;
+
+    public Archetype archetype(Component... components) {
+        return archetype(Component.mask(components));
+    }
+
+    public Archetype archetype(long mask) {
+        Archetype archetype = byMask.get(mask);
+
+        if (archetype == null) {
+            archetype = new Archetype(mask);
+            byMask.put(mask, archetype);
+            archetypes.add(archetype);
+        }
+
+        return archetype;
+    }
+
+    // Zeroed components, except for a unit ROTATION and SCALE
+    public long create(Archetype archetype) {
+        int index;
+
+        if (freeCount > 0) {
+            index = freeIndices[--freeCount];
+        } else {
+            if (indexCount == generations.length)
+                growIndices(indexCount * 2);
+
+            index = indexCount++;
+            generations[index] = 1;
+        }
+
+        long handle = (long) generations[index] << 32 | index;
+        int row = archetype.add(handle);
+
+        archetypeOf[index] = archetype;
+        rows[index] = row;
+        alive++;
+
+        clearRow(archetype, row);
+        archetype.markAllChanged(row, version + 1);
+
+        return handle;
+    }
+
+    public void destroy(long handle) {
+        checkAlive(handle);
+
+        int index = index(handle);
+        removeRow(archetypeOf[index], rows[index]);
+
+        archetypeOf[index] = null;
+
+        // Generation 0 is skipped, so handles never become NONE
+        generations[index] = generations[index] == Integer.MAX_VALUE ? 1 : generations[index] + 1;
+
+        if (freeCount == freeIndices.length)
+            freeIndices = Arrays.copyOf(freeIndices, freeCount * 2);
+
+        freeIndices[freeCount++] = index;
+        alive--;
+    }
+
+    /**
+     * Moves the entity to {@code archetype}, keeping the components both have, the new ones start like in {@link #create}
+     */
+    public void setArchetype(long handle, Archetype archetype) {
+        checkAlive(handle);
+
+        int index = index(handle);
+        Archetype from = archetypeOf[index];
+        if (from == archetype)
+            return;
+
+        int fromRow = rows[index];
+        int row = archetype.add(handle);
+
+        clearRow(archetype, row);
+        archetype.copyShared(from, fromRow, row);
+        archetype.markAllChanged(row, version + 1);
+
+        removeRow(from, fromRow);
+
+        archetypeOf[index] = archetype;
+        rows[index] = row;
+    }
+
+    public boolean isAlive(long handle) {
+        int index = index(handle);
+        return index < indexCount && generations[index] == generation(handle) && archetypeOf[index] != null;
+    }
+
+    public Archetype archetypeOf(long handle) {
+        checkAlive(handle);
+        return archetypeOf[index(handle)];
+    }
+
+    public int rowOf(long handle) {
+        checkAlive(handle);
+        return rows[index(handle)];
+    }
+
+    /**
+     * For writes to an entity's component from outside a system
+     */
+    public void markChanged(long handle, Component component) {
+        int row = rowOf(handle);
+        archetypeOf[index(handle)].markChanged(component, row, row + 1, version + 1);
+    }
+
+    public List<Archetype> archetypes() {
+        return Collections.unmodifiableList(archetypes);
+    }
+
+    public int size() {
+        return alive;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    long advanceVersion() {
+        return ++version;
+    }
+
+    private void removeRow(Archetype archetype, int row) {
+        long moved = archetype.remove(row);
+
+        if (moved != NONE) {
+            rows[index(moved)] = row;
+            archetype.markAllChanged(row, version + 1);
+        }
+    }
+
+    private void clearRow(Archetype archetype, int row) {
+        for (Component component : archetype.components) {
+            int width = component.width();
+
+            if (component.kind() == Component.Kind.Float)
+                Arrays.fill(archetype.floats(component), row * width, (row + 1) * width, 0.0f);
+            else
+                Arrays.fill(archetype.ints(component), row * width, (row + 1) * width, 0);
+        }
+
+        if (archetype.has(Component.ROTATION))
+            archetype.floats(Component.ROTATION)[row * 4 + 3] = 1.0f;
+
+        if (archetype.has(Component.SCALE))
+            Arrays.fill(archetype.floats(Component.SCALE), row * 3, row * 3 + 3, 1.0f);
+    }
+
+    private void checkAlive(long handle) {
+        if (!isAlive(handle))
+            throw new IllegalArgumentException("entity " + Long.toHexString(handle) + " was destroyed");
+    }
+
+    private void growIndices(int newLength) {
+        generations = Arrays.copyOf(generations, newLength);
+        archetypeOf = Arrays.copyOf(archetypeOf, newLength);
+        rows = Arrays.copyOf(rows, newLength);
+    }
+
+    private static int index(long handle) {
+        return (int) handle;
+    }
+
+    private static int generation(long handle) {
+        return (int) (handle >>> 32);
+    }
+}
@@ -0,0 +1,198 @@
+package engine.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <h1>
+ *     System_Scheduler
+ * </h1>
+ * <h3>
+ *     Runs {@link Entity_System}s in stages on a fork join pool
+ * </h3>
+ * <p>
+ *     Systems are placed in the earliest stage after every earlier added system they conflict with, one writing
+ *     what the other reads or writes. Systems of a stage are independent, so all their chunks, over every
+ *     matching archetype, are split among the pool's threads together. Stages run one after another.
+ * </p>
+ * <p>
+ *     Every stage advances the world's version and the columns a system writes are marked changed at it, per
+ *     chunk it updated. That's what {@link Entity_System#changeFilter()} compares to.
+ * </p>
+ */
+public class System_Scheduler {
+    private final ForkJoinPool pool;
+
+    private final ArrayList<Entity_System> systems = new ArrayList<>();
+    private int[] stageOf = new int[0];
+    private long[] lastRun = new long[0];
+    private int stageCount;
+
+    // Work of the running stage, one chunk of one system over one archetype each
+    private int[] workSystems = new int[256];
+    private Archetype[] workArchetypes = new Archetype[256];
+    private int[] workChunks = new int[256];
+    private int workCount;
+
+    private int chunksUpdated;
+    private int chunksSkipped;
+
+    public System_Scheduler() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public System_Scheduler(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void add(Entity_System system) {
+        int stage = 0;
+
+        for (int i = 0; i < systems.size(); i++) {
+            if (conflict(systems.get(i), system))
+                stage = Math.max(stage, stageOf[i] + 1);
+        }
+
+        systems.add(system);
+
+        stageOf = Arrays.copyOf(stageOf, systems.size());
+        lastRun = Arrays.copyOf(lastRun, systems.size());
+        stageOf[systems.size() - 1] = stage;
+
+        stageCount = Math.max(stageCount, stage + 1);
+    }
+
+    public void run(Entity_World world, float deltaTime) {
+        chunksUpdated = 0;
+        chunksSkipped = 0;
+
+        for (int stage = 0; stage < stageCount; stage++) {
+            long version = world.advanceVersion();
+
+            collectWork(world, stage);
+
+            if (workCount == 1 || pool.getParallelism() == 1) {
+                for (int work = 0; work < workCount; work++)
+                    runWork(work, version, deltaTime);
+            } else if (workCount > 1) {
+                pool.invoke(new Work_Range(0, workCount, version, deltaTime));
+            }
+
+            chunksUpdated += workCount;
+
+            for (int s = 0; s < systems.size(); s++) {
+                if (stageOf[s] == stage)
+                    lastRun[s] = version;
+            }
+        }
+
+        // Don't keep archetypes alive through the work list
+        Arrays.fill(workArchetypes, null);
+        workCount = 0;
+    }
+
+    public int stageCount() {
+        return stageCount;
+    }
+
+    public int stageOf(Entity_System system) {
+        return stageOf[systems.indexOf(system)];
+    }
+
+    // Of the last run()
+    public int chunksUpdated() {
+        return chunksUpdated;
+    }
+
+    public int chunksSkipped() {
+        return chunksSkipped;
+    }
+
+    private void collectWork(Entity_World world, int stage) {
+        workCount = 0;
+
+        for (int s = 0; s < systems.size(); s++) {
+            if (stageOf[s] != stage)
+                continue;
+
+            Entity_System system = systems.get(s);
+            long required = system.reads() | system.writes();
+            long filter = system.changeFilter();
+
+            for (Archetype archetype : world.archetypes()) {
+                if (!archetype.hasAll(required) || (archetype.mask() & system.excludes()) != 0 || archetype.size() == 0)
+                    continue;
+
+                for (int chunk = 0, chunks = archetype.chunkCount(); chunk < chunks; chunk++) {
+                    if (filter != 0 && !archetype.changedSince(filter, chunk, lastRun[s])) {
+                        chunksSkipped++;
+                        continue;
+                    }
+
+                    addWork(s, archetype, chunk);
+                }
+            }
+        }
+    }
+
+    private void addWork(int system, Archetype archetype, int chunk) {
+        if (workCount == workSystems.length) {
+            int length = workCount * 2;
+
+            workSystems = Arrays.copyOf(workSystems, length);
+            workArchetypes = Arrays.copyOf(workArchetypes, length);
+            workChunks = Arrays.copyOf(workChunks, length);
+        }
+
+        workSystems[workCount] = system;
+        workArchetypes[workCount] = archetype;
+        workChunks[workCount] = chunk;
+        workCount++;
+    }
+
+    private void runWork(int work, long version, float deltaTime) {
+        Entity_System system = systems.get(workSystems[work]);
+        Archetype archetype = workArchetypes[work];
+
+        int from = workChunks[work] * Archetype.CHUNK_ROWS;
+        int to = Math.min(from + Archetype.CHUNK_ROWS, archetype.size());
+
+        system.update(archetype, from, to, deltaTime);
+
+        // Systems of one stage never write the same component, so this doesn't race
+        archetype.markChanged(system.writes(), from, to, version);
+    }
+
+    private static boolean conflict(Entity_System a, Entity_System b) {
+        return (a.writes() & (b.reads() | b.writes())) != 0 || (b.writes() & a.reads()) != 0;
+    }
+
+    // Halves the range until single chunks, each half runs wherever the pool puts it
+    @SuppressWarnings("serial")
+    private final class Work_Range extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final long version;
+        private final float deltaTime;
+
+        Work_Range(int from, int to, long version, float deltaTime) {
+            this.from = from;
+            this.to = to;
+            this.version = version;
+            this.deltaTime = deltaTime;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                runWork(from, version, deltaTime);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new Work_Range(from, middle, version, deltaTime), new Work_Range(middle, to, version, deltaTime));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package engine.ecs;
+
+/**
+ * Builds {@link Component#WORLD_MATRIX} from position, rotation and scale, translation * rotation * scale like
+ * {@code Matrix4f.translationRotateScale}. Only chunks where one of the three changed are rebuilt, and only rows
+ * whose matrix came out different are marked with {@link Archetype#markRowChanged}.
+ */
+public class Transform_System implements Entity_System {
+    private static final long PARTS = Component.mask(Component.POSITION, Component.ROTATION, Component.SCALE);
+
+    private final long excludes;
+
+    public Transform_System() {
+        this(0);
+    }
+
+    /**
+     * @param excludes archetypes with any of these are left alone, their world matrix comes from elsewhere
+     */
+    public Transform_System(long excludes) {
+        this.excludes = excludes;
+    }
+
+    @Override
+    public long reads() {
+        return PARTS;
+    }
+
+    @Override
+    public long writes() {
+        return Component.WORLD_MATRIX.bit();
+    }
+
+    @Override
+    public long changeFilter() {
+        return PARTS;
+    }
+
+    @Override
+    public long excludes() {
+        return excludes;
+    }
+
+    @Override
+    public void update(Archetype archetype, int from, int to, float deltaTime) {
+        float[] positions = archetype.floats(Component.POSITION);
+        float[] rotations = archetype.floats(Component.ROTATION);
+        float[] scales = archetype.floats(Component.SCALE);
+        float[] matrices = archetype.floats(Component.WORLD_MATRIX);
+
+        for (int row = from; row < to; row++) {
+            if (compose(positions, rotations, scales, row, matrices, row * 12))
+                archetype.markRowChanged(row);
+        }
+    }
+
+    public static void compose(float[] positions, float[] rotations, float[] scales, float[] matrices, int from, int to) {
+        for (int row = from; row < to; row++)
+            compose(positions, rotations, scales, row, matrices, row * 12);
+    }
+
+    /**
+     * Matrix of {@code row} into {@code matrices} at {@code m}
+     *
+     * @return false if that's the matrix already there
+     */
+    public static boolean compose(float[] positions, float[] rotations, float[] scales, int row, float[] matrices, int m) {
+        int p = row * 3, r = row * 4;
+
+        float x = rotations[r], y = rotations[r + 1], z = rotations[r + 2], w = rotations[r + 3];
+        float sx = scales[p], sy = scales[p + 1], sz = scales[p + 2];
+
+        float xx = x * x, yy = y * y, zz = z * z;
+        float xy = x * y, xz = x * z, yz = y * z;
+        float wx = w * x, wy = w * y, wz = w * z;
+
+        boolean changed = false;
+
+        changed |= put(matrices, m, (1.0f - 2.0f * (yy + zz)) * sx);
+        changed |= put(matrices, m + 1, 2.0f * (xy - wz) * sy);
+        changed |= put(matrices, m + 2, 2.0f * (xz + wy) * sz);
+        changed |= put(matrices, m + 3, positions[p]);
+
+        changed |= put(matrices, m + 4, 2.0f * (xy + wz) * sx);
+        changed |= put(matrices, m + 5, (1.0f - 2.0f * (xx + zz)) * sy);
+        changed |= put(matrices, m + 6, 2.0f * (yz - wx) * sz);
+        changed |= put(matrices, m + 7, positions[p + 1]);
+
+        changed |= put(matrices, m + 8, 2.0f * (xz - wy) * sx);
+        changed |= put(matrices, m + 9, 2.0f * (yz + wx) * sy);
+        changed |= put(matrices, m + 10, (1.0f - 2.0f * (xx + yy)) * sz);
+        changed |= put(matrices, m + 11, positions[p + 2]);
+
+        return changed;
+    }
+
+    private static boolean put(float[] matrices, int index, float value) {
+        boolean changed = matrices[index] != value;
+        matrices[index] = value;
+        return changed;
+    }
+}
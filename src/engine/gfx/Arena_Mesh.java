@@ -0,0 +1,50 @@
+package engine.gfx;
+
+/**
+ * A mesh living in a {@link Geometry_Arena}. The vertex and index ranges can move when the arena is
+ * defragmented, always ask for them instead of keeping them around.
+ */
+public class Arena_Mesh {
+    final Geometry_Arena arena;
+    final int vertexHandle;
+    final int indexHandle;
+
+    private final int vertexCount;
+    private final Lod_Chain lods;
+    private final Position_Decode positionDecode;
+
+    Arena_Mesh(Geometry_Arena arena, int vertexHandle, int indexHandle, int vertexCount, Lod_Chain lods, Position_Decode positionDecode) {
+        this.arena = arena;
+        this.vertexHandle = vertexHandle;
+        this.indexHandle = indexHandle;
+        this.vertexCount = vertexCount;
+        this.lods = lods;
+        this.positionDecode = positionDecode;
+    }
+
+    // Added to every index, the mesh's indices start at 0
+    public int getBaseVertex() {
+        return (int) arena.vertices.offset(vertexHandle);
+    }
+
+    public int getFirstIndex() {
+        return (int) arena.indices.offset(indexHandle);
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    // Relative to getFirstIndex()
+    public Lod_Chain getLods() {
+        return lods;
+    }
+
+    public Position_Decode getPositionDecode() {
+        return positionDecode;
+    }
+
+    public Geometry_Arena getArena() {
+        return arena;
+    }
+}
@@ -0,0 +1,53 @@
+package engine.gfx;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Object space bounding box and sphere of a mesh, computed once when it's loaded. The sphere is centered on the
+ * box, its radius is the distance to the farthest vertex, which is tighter than half the box diagonal.
+ */
+public record Bounds(
+        float minX, float minY, float minZ,
+        float maxX, float maxY, float maxZ,
+        float centerX, float centerY, float centerZ,
+        float radius) {
+    public static final Bounds EMPTY = new Bounds(0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+    // xyz triples
+    public static Bounds of(float[] positions) {
+        return of(FloatBuffer.wrap(positions));
+    }
+
+    // xyz triples from index 0 to the limit, e.g. a view of an off-heap stream
+    public static Bounds of(FloatBuffer positions) {
+        if (positions.limit() == 0)
+            return EMPTY;
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+
+        for (int i = 0; i < positions.limit(); i += 3) {
+            minX = Math.min(minX, positions.get(i));
+            minY = Math.min(minY, positions.get(i + 1));
+            minZ = Math.min(minZ, positions.get(i + 2));
+            maxX = Math.max(maxX, positions.get(i));
+            maxY = Math.max(maxY, positions.get(i + 1));
+            maxZ = Math.max(maxZ, positions.get(i + 2));
+        }
+
+        float centerX = (minX + maxX) * 0.5f;
+        float centerY = (minY + maxY) * 0.5f;
+        float centerZ = (minZ + maxZ) * 0.5f;
+
+        float radiusSquared = 0.0f;
+        for (int i = 0; i < positions.limit(); i += 3) {
+            float dx = positions.get(i) - centerX;
+            float dy = positions.get(i + 1) - centerY;
+            float dz = positions.get(i + 2) - centerZ;
+
+            radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+        }
+
+        return new Bounds(minX, minY, minZ, maxX, maxY, maxZ, centerX, centerY, centerZ, (float) Math.sqrt(radiusSquared));
+    }
+}
@@ -0,0 +1,87 @@
+package engine.gfx;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * <h3>
+ *     CPU side list of indexed indirect draw commands, in the layout glMultiDrawElementsIndirect reads
+ * </h3>
+ * <pre>
+ * struct { uint count; uint instanceCount; uint firstIndex; int baseVertex; uint baseInstance; }
+ * </pre>
+ * <p>
+ *     No GL in here, {@link Geometry_Arena#draw} uploads and submits it.
+ * </p>
+ */
+public class Draw_Command_Buffer {
+    public static final int COMMAND_INTS = 5;
+    public static final int COMMAND_SIZE = COMMAND_INTS * Integer.BYTES;
+
+    private int[] data;
+    private int count;
+
+    public Draw_Command_Buffer() {
+        this(64);
+    }
+
+    public Draw_Command_Buffer(int initialCapacity) {
+        data = new int[Math.max(initialCapacity, 1) * COMMAND_INTS];
+    }
+
+    public void add(int indexCount, int instanceCount, int firstIndex, int baseVertex, int baseInstance) {
+        if ((count + 1) * COMMAND_INTS > data.length)
+            data = Arrays.copyOf(data, data.length * 2);
+
+        int at = count++ * COMMAND_INTS;
+
+        data[at] = indexCount;
+        data[at + 1] = instanceCount;
+        data[at + 2] = firstIndex;
+        data[at + 3] = baseVertex;
+        data[at + 4] = baseInstance;
+    }
+
+    /**
+     * @param baseInstance index of the first instance's {@link Object_Transforms}
+     */
+    public void add(Arena_Mesh mesh, int lod, int instanceCount, int baseInstance) {
+        Lod_Chain lods = mesh.getLods();
+
+        add(
+                lods.counts()[lod],
+                instanceCount,
+                mesh.getFirstIndex() + lods.firstIndices()[lod],
+                mesh.getBaseVertex(),
+                baseInstance
+        );
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int byteSize() {
+        return count * COMMAND_SIZE;
+    }
+
+    // COMMAND_INTS ints per command, only the first count() commands are meaningful
+    public int[] array() {
+        return data;
+    }
+
+    /**
+     * Absolute puts starting at {@code offset}, native byte order whatever the buffer's order is
+     */
+    public void writeTo(ByteBuffer target, int offset) {
+        ByteBuffer ordered = target.duplicate().order(ByteOrder.nativeOrder());
+
+        for (int i = 0; i < count * COMMAND_INTS; i++)
+            ordered.putInt(offset + i * Integer.BYTES, data[i]);
+    }
+}
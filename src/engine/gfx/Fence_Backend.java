@@ -0,0 +1,17 @@
+package engine.gfx;
+
+/**
+ * What {@link Frame_Ring_Allocator} needs from the GPU: fences put into the command stream.
+ * Fences are opaque non zero handles, {@link GL_Fence_Backend} is the real one.
+ */
+public interface Fence_Backend {
+    // Signaled once the GPU has finished every command issued before it
+    long insert();
+
+    boolean isSignaled(long fence);
+
+    // Blocks until the fence is signaled
+    void waitFor(long fence);
+
+    void delete(long fence);
+}
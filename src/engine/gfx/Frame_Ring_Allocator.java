@@ -0,0 +1,140 @@
+package engine.gfx;
+
+/**
+ * <h3>
+ *     Bookkeeping of a buffer split into N per-frame regions, used in turn
+ * </h3>
+ * <p>
+ *     Every frame bump allocates from its own region. At the end of a frame the region gets a fence, and
+ *     before a region is reused N frames later that fence is checked, if the GPU is still reading the region
+ *     the CPU waits for it (a stall). Nothing here touches GL, the fences come from a {@link Fence_Backend},
+ *     and allocations are plain offsets, so there's no garbage per allocation.
+ * </p>
+ */
+public class Frame_Ring_Allocator {
+    private final Fence_Backend fences;
+    private final long regionSize;
+    private final long[] regionFences;
+
+    private int frame = -1;
+    private int region;
+    private long regionOffset;
+    private boolean inFrame;
+
+    private long stalls;
+    private long failedAllocations;
+    private long bytesLastFrame;
+    private long peakFrameBytes;
+
+    public Frame_Ring_Allocator(Fence_Backend fences, int regions, long regionSize) {
+        assert regions > 0 && regionSize > 0;
+
+        this.fences = fences;
+        this.regionSize = regionSize;
+        this.regionFences = new long[regions];
+    }
+
+    public void beginFrame() {
+        assert !inFrame;
+
+        frame++;
+        region = frame % regionFences.length;
+        regionOffset = 0;
+        inFrame = true;
+
+        long fence = regionFences[region];
+        if (fence == 0)
+            return;
+
+        if (!fences.isSignaled(fence)) {
+            stalls++;
+            fences.waitFor(fence);
+        }
+
+        fences.delete(fence);
+        regionFences[region] = 0;
+    }
+
+    /**
+     * @param alignment power of two
+     * @return offset from the start of the whole buffer, or -1 if this frame's region is full
+     */
+    public long allocate(long size, int alignment) {
+        assert inFrame;
+        assert Integer.bitCount(alignment) == 1;
+
+        long offset = (regionOffset + alignment - 1) & -(long) alignment;
+
+        if (offset + size > regionSize) {
+            failedAllocations++;
+            return -1;
+        }
+
+        regionOffset = offset + size;
+
+        return region * regionSize + offset;
+    }
+
+    public void endFrame() {
+        assert inFrame;
+
+        regionFences[region] = fences.insert();
+        inFrame = false;
+
+        bytesLastFrame = regionOffset;
+        peakFrameBytes = Math.max(peakFrameBytes, regionOffset);
+    }
+
+    /**
+     * Waits for every region and deletes the fences
+     */
+    public void drain() {
+        for (int i = 0; i < regionFences.length; i++) {
+            if (regionFences[i] == 0)
+                continue;
+
+            fences.waitFor(regionFences[i]);
+            fences.delete(regionFences[i]);
+            regionFences[i] = 0;
+        }
+    }
+
+    // Offset of the current frame's region in the whole buffer
+    public long regionStart() {
+        return region * regionSize;
+    }
+
+    public int regions() {
+        return regionFences.length;
+    }
+
+    public long regionSize() {
+        return regionSize;
+    }
+
+    // Bytes allocated so far in the current frame
+    public long bytesThisFrame() {
+        return regionOffset;
+    }
+
+    public long bytesLastFrame() {
+        return bytesLastFrame;
+    }
+
+    public long peakFrameBytes() {
+        return peakFrameBytes;
+    }
+
+    // Frames that had to wait for the GPU before reusing their region
+    public long stalls() {
+        return stalls;
+    }
+
+    public long failedAllocations() {
+        return failedAllocations;
+    }
+
+    public int frame() {
+        return frame;
+    }
+}
@@ -0,0 +1,81 @@
+package engine.gfx;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import static org.lwjgl.opengl.GL11.glGetInteger;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT;
+
+/**
+ * <h3>
+ *     Per-frame globals in one std140 uniform block, shared by every program
+ * </h3>
+ * <p>
+ *     Written once per frame into a {@link Stream_Buffer} and bound at {@link #BINDING}, so the cost doesn't grow
+ *     with the number of programs or passes. Shaders declare it as:
+ * </p>
+ * <pre>
+ * layout(std140, binding = 0) uniform Frame {
+ *     mat4 view;
+ *     mat4 projection;
+ *     mat4 view_projection;
+ *     vec3 camera_position;
+ *     float time;
+ *     float delta_time;
+ * };
+ * </pre>
+ */
+public class Frame_Uniforms {
+    public static final int BINDING = 0;
+    public static final String BLOCK_NAME = "Frame";
+
+    private final Std140_Writer writer = new Std140_Writer();
+    private final Matrix4f viewProjection = new Matrix4f();
+
+    private final Stream_Buffer stream;
+    private final int alignment;
+    private final int size;
+
+    public Frame_Uniforms() {
+        size = write(writer.reset(null, 0), new Matrix4f(), new Matrix4f(), new Vector3f(), 0.0f, 0.0f);
+        alignment = glGetInteger(GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT);
+
+        // Regions are back to back, a multiple of the alignment keeps every region start aligned
+        stream = new Stream_Buffer(GPU_Buffer_Type.Uniform_Buffer, (size + alignment - 1) & -alignment);
+    }
+
+    public void beginFrame(Matrix4f view, Matrix4f projection, Vector3f cameraPosition, float time, float deltaTime) {
+        stream.beginFrame();
+
+        long offset = stream.allocate(size, alignment);
+        write(writer.reset(stream.mapped(), (int) offset), view, projection, cameraPosition, time, deltaTime);
+
+        GL_State.bindBufferRange(GL_UNIFORM_BUFFER, BINDING, stream.buffer(), offset, size);
+    }
+
+    // After the frame's draws, the region is fenced so it isn't overwritten while they still read it
+    public void endFrame() {
+        stream.endFrame();
+    }
+
+    // Block size in bytes
+    public int size() {
+        return size;
+    }
+
+    public void delete() {
+        stream.delete();
+    }
+
+    private int write(Std140_Writer writer, Matrix4f view, Matrix4f projection, Vector3f cameraPosition, float time, float deltaTime) {
+        writer.putMat4(view);
+        writer.putMat4(projection);
+        writer.putMat4(projection.mul(view, viewProjection));
+        writer.putVec3(cameraPosition);
+        writer.putFloat(time);
+        writer.putFloat(deltaTime);
+
+        return writer.size();
+    }
+}
@@ -0,0 +1,40 @@
+package engine.gfx;
+
+import static org.lwjgl.opengl.GL32.*;
+
+public class GL_Fence_Backend implements Fence_Backend {
+    private static final long WAIT_STEP_NANOS = 1_000_000;
+
+    @Override
+    public long insert() {
+        return glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    }
+
+    @Override
+    public boolean isSignaled(long fence) {
+        int result = glClientWaitSync(fence, 0, 0);
+        return result == GL_ALREADY_SIGNALED || result == GL_CONDITION_SATISFIED;
+    }
+
+    @Override
+    public void waitFor(long fence) {
+        // Flush once so the fence is guaranteed to reach the GPU, otherwise this could wait forever
+        int flags = GL_SYNC_FLUSH_COMMANDS_BIT;
+
+        while (true) {
+            int result = glClientWaitSync(fence, flags, WAIT_STEP_NANOS);
+
+            if (result == GL_ALREADY_SIGNALED || result == GL_CONDITION_SATISFIED)
+                return;
+            if (result == GL_WAIT_FAILED)
+                throw new IllegalStateException("glClientWaitSync failed");
+
+            flags = 0;
+        }
+    }
+
+    @Override
+    public void delete(long fence) {
+        glDeleteSync(fence);
+    }
+}
@@ -0,0 +1,532 @@
+package engine.gfx;
+
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL14.glBlendFuncSeparate;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL21.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+import static org.lwjgl.opengl.GL32.GL_TEXTURE_CUBE_MAP_SEAMLESS;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER_BINDING;
+import static org.lwjgl.opengl.GL43.*;
+
+/**
+ * <h1>
+ *     GL_State
+ * </h1>
+ * <h3>
+ *     Shadow copy of the GL context state, calls that wouldn't change anything are dropped
+ * </h3>
+ * <p>
+ *     Covers program, vertex array, 2D textures per unit, buffer bindings (generic and indexed uniform / storage),
+ *     enable caps, blend function, depth function and mask, face culling, polygon mode and viewport. Every gfx class
+ *     binds through here, so raw binds elsewhere make the shadow wrong. Code that changes state behind its back
+ *     (ImGui, ...) must call {@link #invalidate()} afterwards. Deleting objects goes through here too, GL unbinds
+ *     deleted objects and their names get reused.
+ * </p>
+ * <p>
+ *     The element array binding is part of the vertex array, so it becomes unknown whenever the vertex array changes.
+ *     Unknown entries are -1 and always issue the call.
+ * </p>
+ * <p>
+ *     With validation on (by default when assertions are enabled) every shadow entry is compared to glGet* before
+ *     it's used, a mismatch throws {@link IllegalStateException}. That's a pipeline stall per call, debug only.
+ * </p>
+ */
+public final class GL_State {
+    public static final int MAX_TEXTURE_UNITS = 32;
+    public static final int MAX_INDEXED_BINDINGS = 16;
+
+    private static final int UNKNOWN = -1;
+
+    private static final int[] BUFFER_TARGETS = {
+            GL_ARRAY_BUFFER,
+            GL_ELEMENT_ARRAY_BUFFER,
+            GL_UNIFORM_BUFFER,
+            GL_SHADER_STORAGE_BUFFER,
+            GL_DRAW_INDIRECT_BUFFER,
+            GL_COPY_READ_BUFFER,
+            GL_COPY_WRITE_BUFFER,
+            GL_PIXEL_UNPACK_BUFFER,
+    };
+
+    private static final int[] BUFFER_BINDING_QUERIES = {
+            GL_ARRAY_BUFFER_BINDING,
+            GL_ELEMENT_ARRAY_BUFFER_BINDING,
+            GL_UNIFORM_BUFFER_BINDING,
+            GL_SHADER_STORAGE_BUFFER_BINDING,
+            GL_DRAW_INDIRECT_BUFFER_BINDING,
+            GL_COPY_READ_BUFFER_BINDING,
+            GL_COPY_WRITE_BUFFER_BINDING,
+            GL_PIXEL_UNPACK_BUFFER_BINDING,
+    };
+
+    private static final int ELEMENT_ARRAY_SLOT = 1;
+
+    private static final int[] CAPS = {
+            GL_DEPTH_TEST,
+            GL_CULL_FACE,
+            GL_BLEND,
+            GL_SCISSOR_TEST,
+            GL_STENCIL_TEST,
+            GL_POLYGON_OFFSET_FILL,
+            GL_MULTISAMPLE,
+            GL_FRAMEBUFFER_SRGB,
+            GL_PRIMITIVE_RESTART,
+            GL_TEXTURE_CUBE_MAP_SEAMLESS,
+    };
+
+    private static int program;
+    private static int vertexArray;
+    private static int activeUnit;
+    private static final int[] textures = new int[MAX_TEXTURE_UNITS];
+    private static final int[] buffers = new int[BUFFER_TARGETS.length];
+
+    // [0] uniform buffers, [1] shader storage buffers
+    private static final int[][] rangeBuffers = new int[2][MAX_INDEXED_BINDINGS];
+    private static final long[][] rangeOffsets = new long[2][MAX_INDEXED_BINDINGS];
+    private static final long[][] rangeSizes = new long[2][MAX_INDEXED_BINDINGS];
+
+    // UNKNOWN, 0 or 1
+    private static final int[] caps = new int[CAPS.length];
+
+    private static int blendSource;
+    private static int blendDestination;
+    private static int depthFunction;
+    private static int depthMask;
+    private static int cullFace;
+    private static int frontFace;
+    private static int polygonMode;
+    private static final int[] viewport = new int[4];
+
+    private static int issued;
+    private static int skipped;
+
+    private static boolean validation = GL_State.class.desiredAssertionStatus();
+
+    static {
+        invalidate();
+    }
+
+    private GL_State() {}
+
+    /**
+     * Forgets everything, the next call of every kind is issued. For after code that uses GL directly
+     */
+    public static void invalidate() {
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        activeUnit = UNKNOWN;
+        Arrays.fill(textures, UNKNOWN);
+        Arrays.fill(buffers, UNKNOWN);
+
+        for (int i = 0; i < 2; i++) {
+            Arrays.fill(rangeBuffers[i], UNKNOWN);
+            Arrays.fill(rangeOffsets[i], UNKNOWN);
+            Arrays.fill(rangeSizes[i], UNKNOWN);
+        }
+
+        Arrays.fill(caps, UNKNOWN);
+
+        blendSource = blendDestination = UNKNOWN;
+        depthFunction = depthMask = UNKNOWN;
+        cullFace = frontFace = polygonMode = UNKNOWN;
+        Arrays.fill(viewport, UNKNOWN);
+    }
+
+    public static void useProgram(int program) {
+        if (validation)
+            check("program", GL_State.program, glGetInteger(GL_CURRENT_PROGRAM));
+
+        if (program == GL_State.program) {
+            skipped++;
+            return;
+        }
+
+        glUseProgram(program);
+        GL_State.program = program;
+        issued++;
+    }
+
+    public static void bindVertexArray(int vertexArray) {
+        if (validation)
+            check("vertex array", GL_State.vertexArray, glGetInteger(GL_VERTEX_ARRAY_BINDING));
+
+        if (vertexArray == GL_State.vertexArray) {
+            skipped++;
+            return;
+        }
+
+        glBindVertexArray(vertexArray);
+        GL_State.vertexArray = vertexArray;
+        buffers[ELEMENT_ARRAY_SLOT] = UNKNOWN;
+        issued++;
+    }
+
+    /**
+     * Binds a GL_TEXTURE_2D to {@code unit}, the active unit only changes when the binding does
+     */
+    public static void bindTexture(int unit, int texture) {
+        if (unit >= MAX_TEXTURE_UNITS) {
+            activeTexture(unit);
+            glBindTexture(GL_TEXTURE_2D, texture);
+            issued++;
+            return;
+        }
+
+        if (validation)
+            check("texture unit " + unit, textures[unit], textureBinding(unit));
+
+        if (texture == textures[unit]) {
+            skipped++;
+            return;
+        }
+
+        activeTexture(unit);
+        glBindTexture(GL_TEXTURE_2D, texture);
+        textures[unit] = texture;
+        issued++;
+    }
+
+    /**
+     * Binds to whatever unit is active, for editing a texture rather than sampling from it
+     */
+    public static void bindTexture(int texture) {
+        if (activeUnit == UNKNOWN)
+            activeTexture(0);
+
+        bindTexture(activeUnit, texture);
+    }
+
+    public static void bindBuffer(int target, int buffer) {
+        int slot = bufferSlot(target);
+
+        if (slot < 0) {
+            glBindBuffer(target, buffer);
+            issued++;
+            return;
+        }
+
+        if (validation)
+            check("buffer binding " + target, buffers[slot], glGetInteger(BUFFER_BINDING_QUERIES[slot]));
+
+        if (buffer == buffers[slot]) {
+            skipped++;
+            return;
+        }
+
+        glBindBuffer(target, buffer);
+        buffers[slot] = buffer;
+        issued++;
+    }
+
+    /**
+     * Indexed binding for uniform and shader storage buffers, other targets aren't shadowed.
+     * Like in GL, the generic binding of {@code target} becomes {@code buffer} as well
+     */
+    public static void bindBufferRange(int target, int index, int buffer, long offset, long size) {
+        int kind = target == GL_UNIFORM_BUFFER ? 0 : target == GL_SHADER_STORAGE_BUFFER ? 1 : -1;
+
+        if (kind < 0 || index >= MAX_INDEXED_BINDINGS) {
+            glBindBufferRange(target, index, buffer, offset, size);
+            invalidateBuffer(target);
+            issued++;
+            return;
+        }
+
+        if (validation)
+            check("indexed binding " + target + "[" + index + "]", rangeBuffers[kind][index], glGetIntegeri(target == GL_UNIFORM_BUFFER ? GL_UNIFORM_BUFFER_BINDING : GL_SHADER_STORAGE_BUFFER_BINDING, index));
+
+        if (buffer == rangeBuffers[kind][index] && offset == rangeOffsets[kind][index] && size == rangeSizes[kind][index]) {
+            skipped++;
+            return;
+        }
+
+        glBindBufferRange(target, index, buffer, offset, size);
+        rangeBuffers[kind][index] = buffer;
+        rangeOffsets[kind][index] = offset;
+        rangeSizes[kind][index] = size;
+        buffers[bufferSlot(target)] = buffer;
+        issued++;
+    }
+
+    public static void enable(int cap) {
+        setEnabled(cap, true);
+    }
+
+    public static void disable(int cap) {
+        setEnabled(cap, false);
+    }
+
+    public static void setEnabled(int cap, boolean enabled) {
+        int slot = indexOf(CAPS, cap);
+        int value = enabled ? 1 : 0;
+
+        if (slot >= 0) {
+            if (validation)
+                check("cap " + cap, caps[slot], glIsEnabled(cap) ? 1 : 0);
+
+            if (caps[slot] == value) {
+                skipped++;
+                return;
+            }
+
+            caps[slot] = value;
+        }
+
+        if (enabled)
+            glEnable(cap);
+        else
+            glDisable(cap);
+
+        issued++;
+    }
+
+    // Same factors for color and alpha
+    public static void blendFunc(int source, int destination) {
+        if (validation) {
+            check("blend source", blendSource, glGetInteger(GL_BLEND_SRC_RGB));
+            check("blend destination", blendDestination, glGetInteger(GL_BLEND_DST_RGB));
+        }
+
+        if (source == blendSource && destination == blendDestination) {
+            skipped++;
+            return;
+        }
+
+        glBlendFuncSeparate(source, destination, source, destination);
+        blendSource = source;
+        blendDestination = destination;
+        issued++;
+    }
+
+    public static void depthFunc(int function) {
+        if (validation)
+            check("depth function", depthFunction, glGetInteger(GL_DEPTH_FUNC));
+
+        if (function == depthFunction) {
+            skipped++;
+            return;
+        }
+
+        glDepthFunc(function);
+        depthFunction = function;
+        issued++;
+    }
+
+    public static void depthMask(boolean write) {
+        int value = write ? 1 : 0;
+
+        if (validation)
+            check("depth mask", depthMask, glGetBoolean(GL_DEPTH_WRITEMASK) ? 1 : 0);
+
+        if (value == depthMask) {
+            skipped++;
+            return;
+        }
+
+        glDepthMask(write);
+        depthMask = value;
+        issued++;
+    }
+
+    public static void cullFace(int face) {
+        if (validation)
+            check("cull face", cullFace, glGetInteger(GL_CULL_FACE_MODE));
+
+        if (face == cullFace) {
+            skipped++;
+            return;
+        }
+
+        glCullFace(face);
+        cullFace = face;
+        issued++;
+    }
+
+    public static void frontFace(int winding) {
+        if (validation)
+            check("front face", frontFace, glGetInteger(GL_FRONT_FACE));
+
+        if (winding == frontFace) {
+            skipped++;
+            return;
+        }
+
+        glFrontFace(winding);
+        frontFace = winding;
+        issued++;
+    }
+
+    // Core profile only has GL_FRONT_AND_BACK
+    public static void polygonMode(int mode) {
+        if (validation) {
+            // Front and back, some drivers write both
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                IntBuffer actual = stack.mallocInt(2);
+                glGetIntegerv(GL_POLYGON_MODE, actual);
+
+                check("polygon mode", polygonMode, actual.get(0));
+            }
+        }
+
+        if (mode == polygonMode) {
+            skipped++;
+            return;
+        }
+
+        glPolygonMode(GL_FRONT_AND_BACK, mode);
+        polygonMode = mode;
+        issued++;
+    }
+
+    public static void viewport(int x, int y, int width, int height) {
+        if (validation) {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                IntBuffer actual = stack.mallocInt(4);
+                glGetIntegerv(GL_VIEWPORT, actual);
+
+                for (int i = 0; i < 4; i++)
+                    check("viewport", viewport[i], actual.get(i));
+            }
+        }
+
+        if (x == viewport[0] && y == viewport[1] && width == viewport[2] && height == viewport[3]) {
+            skipped++;
+            return;
+        }
+
+        glViewport(x, y, width, height);
+        viewport[0] = x;
+        viewport[1] = y;
+        viewport[2] = width;
+        viewport[3] = height;
+        issued++;
+    }
+
+    public static void deleteProgram(int program) {
+        glDeleteProgram(program);
+
+        if (program == GL_State.program)
+            GL_State.program = UNKNOWN;
+    }
+
+    public static void deleteVertexArray(int vertexArray) {
+        glDeleteVertexArrays(vertexArray);
+
+        if (vertexArray == GL_State.vertexArray) {
+            GL_State.vertexArray = UNKNOWN;
+            buffers[ELEMENT_ARRAY_SLOT] = UNKNOWN;
+        }
+    }
+
+    public static void deleteTexture(int texture) {
+        glDeleteTextures(texture);
+
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            if (textures[i] == texture)
+                textures[i] = UNKNOWN;
+        }
+    }
+
+    public static void deleteBuffer(int buffer) {
+        glDeleteBuffers(buffer);
+        forgetBuffer(buffer);
+    }
+
+    public static void deleteBuffers(int[] buffers) {
+        glDeleteBuffers(buffers);
+
+        for (int buffer : buffers)
+            forgetBuffer(buffer);
+    }
+
+    public static int issued() {
+        return issued;
+    }
+
+    // Calls dropped because they wouldn't have changed anything
+    public static int skipped() {
+        return skipped;
+    }
+
+    // Call once per frame to get per-frame numbers
+    public static void resetCounters() {
+        issued = 0;
+        skipped = 0;
+    }
+
+    public static boolean isValidating() {
+        return validation;
+    }
+
+    public static void setValidation(boolean validation) {
+        GL_State.validation = validation;
+    }
+
+    private static void activeTexture(int unit) {
+        if (unit == activeUnit)
+            return;
+
+        glActiveTexture(GL_TEXTURE0 + unit);
+        activeUnit = unit;
+        issued++;
+    }
+
+    private static int textureBinding(int unit) {
+        int previous = glGetInteger(GL_ACTIVE_TEXTURE);
+
+        glActiveTexture(GL_TEXTURE0 + unit);
+        int binding = glGetInteger(GL_TEXTURE_BINDING_2D);
+        glActiveTexture(previous);
+
+        return binding;
+    }
+
+    private static void forgetBuffer(int buffer) {
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i] == buffer)
+                buffers[i] = UNKNOWN;
+        }
+
+        for (int kind = 0; kind < 2; kind++) {
+            for (int i = 0; i < MAX_INDEXED_BINDINGS; i++) {
+                if (rangeBuffers[kind][i] == buffer)
+                    rangeBuffers[kind][i] = UNKNOWN;
+            }
+        }
+    }
+
+    private static void invalidateBuffer(int target) {
+        int slot = bufferSlot(target);
+        if (slot >= 0)
+            buffers[slot] = UNKNOWN;
+    }
+
+    private static int bufferSlot(int target) {
+        return indexOf(BUFFER_TARGETS, target);
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value)
+                return i;
+        }
+
+        return -1;
+    }
+
+    private static void check(String what, int shadow, int actual) {
+        if (shadow != UNKNOWN && shadow != actual)
+            throw new IllegalStateException(
+                    "GL state shadow out of sync: " + what + " is " + actual + ", shadow says " + shadow);
+    }
+}
@@ -1,33 +1,113 @@
 package engine.gfx;
 
+import engine.memory.Native_Memory;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 
-import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL45.*;
 
 /**
  * <h1>
  *     GPU_Buffer
  * </h1>
  * <h3>
- *     A simple shortcut class, must be used only on rare occasions and never inside loops
+ *     Buffer creation and updates
  * </h3>
  * <p>
- *     What these functions do is copy data from java heap for LWJGL compatible stack/heap, meaning it does double copy
- *     for every single byte. It's obviously very slow
+ *     {@code alloc} / {@code update} take memory owned by the caller (direct or mapped buffers, {@link Native_Memory})
+ *     and hand its address straight to the driver, there's no copy on our side. {@link GPU_Buffer_Usage#Immutable}
+ *     buffers get immutable storage ({@code glBufferStorage}), so they can't be updated afterwards.
+ * </p>
+ * <p>
+ *     Everything goes through direct state access, nothing is bound. Binding {@code GL_ELEMENT_ARRAY_BUFFER} would
+ *     replace the index buffer of whatever VAO is current, so {@code type} only tells what the buffer is for.
+ * </p>
+ * <p>
+ *     {@code allocHeap} / {@code allocStack} are a simple shortcut, must be used only on rare occasions and never
+ *     inside loops. What these functions do is copy data from java heap for LWJGL compatible stack/heap, meaning
+ *     it does double copy for every single byte. It's obviously very slow
  * </p>
  */
 public class GPU_Buffer {
+    /**
+     * The driver reads straight from {@code data}, so it must be a direct (off-heap or memory mapped) buffer.
+     * Everything between position and limit is uploaded
+     */
+    public static int alloc(ByteBuffer data, GPU_Buffer_Type type, GPU_Buffer_Usage usage) {
+        checkDirect(data);
+        return alloc(MemoryUtil.memAddress(data), data.remaining(), type, usage);
+    }
+
+    public static int alloc(FloatBuffer data, GPU_Buffer_Type type, GPU_Buffer_Usage usage) {
+        checkDirect(data);
+        return alloc(MemoryUtil.memAddress(data), (long) data.remaining() * Float.BYTES, type, usage);
+    }
+
+    public static int alloc(Native_Memory data, GPU_Buffer_Type type, GPU_Buffer_Usage usage) {
+        return alloc(data.address(), data.byteSize(), type, usage);
+    }
+
+    /**
+     * Storage of {@code size} bytes with undefined contents, to be filled with {@link #update}.
+     * Immutable buffers can't be updated, use {@link #alloc(ByteBuffer, GPU_Buffer_Type, GPU_Buffer_Usage)} for those
+     */
+    public static int allocEmpty(long size, GPU_Buffer_Type type, GPU_Buffer_Usage usage) {
+        assert usage != GPU_Buffer_Usage.Immutable;
+        return alloc(MemoryUtil.NULL, size, type, usage);
+    }
+
+    /**
+     * @param address of {@code size} readable bytes, or NULL for uninitialized storage
+     */
+    public static int alloc(long address, long size, GPU_Buffer_Type type, GPU_Buffer_Usage usage) {
+        int buffer = glCreateBuffers();
+
+        if (usage.immutableStorage)
+            nglNamedBufferStorage(buffer, size, address, usage.storageFlags);
+        else
+            nglNamedBufferData(buffer, size, address, usage.rawGlValue);
+
+        return buffer;
+    }
+
+    /**
+     * Overwrites {@code data.remaining()} bytes starting at {@code offset}, the buffer must not be Immutable
+     */
+    public static void update(int buffer, GPU_Buffer_Type type, long offset, ByteBuffer data) {
+        checkDirect(data);
+        update(buffer, type, offset, MemoryUtil.memAddress(data), data.remaining());
+    }
+
+    public static void update(int buffer, GPU_Buffer_Type type, long offset, FloatBuffer data) {
+        checkDirect(data);
+        update(buffer, type, offset, MemoryUtil.memAddress(data), (long) data.remaining() * Float.BYTES);
+    }
+
+    public static void update(int buffer, GPU_Buffer_Type type, long offset, Native_Memory data) {
+        update(buffer, type, offset, data.address(), data.byteSize());
+    }
+
+    public static void update(int buffer, GPU_Buffer_Type type, long offset, long address, long size) {
+        nglNamedBufferSubData(buffer, offset, size, address);
+    }
+
+    // LWJGL would read a heap buffer's address as garbage
+    private static void checkDirect(Buffer data) {
+        if (!data.isDirect())
+            throw new IllegalArgumentException("GPU_Buffer needs a direct buffer, got a heap one");
+    }
+
     public static int allocHeap(float[] data, GPU_Buffer_Type type, GPU_Buffer_Usage usage) {
-        int buffer = glGenBuffers();
-        glBindBuffer(type.rawBufferType, buffer);
+        int buffer = glCreateBuffers();
 
         FloatBuffer memory = MemoryUtil.memAllocFloat(data.length);
 
-        glBufferData(
-                type.rawBufferType,
+        glNamedBufferData(
+                buffer,
                 memory.put(data).flip(),
                 usage.rawGlValue
         );
@@ -38,12 +118,11 @@ public class GPU_Buffer {
     }
 
     public static int allocStack(float[] data, GPU_Buffer_Type type, GPU_Buffer_Usage usage) {
-        int buffer = glGenBuffers();
-        glBindBuffer(type.rawBufferType, buffer);
+        int buffer = glCreateBuffers();
 
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            glBufferData(
-                    type.rawBufferType,
+            glNamedBufferData(
+                    buffer,
                     stack.mallocFloat(data.length).put(data).flip(),
                     usage.rawGlValue
             );
@@ -53,13 +132,12 @@ public class GPU_Buffer {
     }
 
     public static int allocHeap(int[] data, GPU_Buffer_Type type, GPU_Buffer_Usage usage) {
-        int buffer = glGenBuffers();
-        glBindBuffer(type.rawBufferType, buffer);
+        int buffer = glCreateBuffers();
 
         var memory = MemoryUtil.memAllocInt(data.length);
 
-        glBufferData(
-                type.rawBufferType,
+        glNamedBufferData(
+                buffer,
                 memory.put(data).flip(),
                 usage.rawGlValue
         );
@@ -70,12 +148,11 @@ public class GPU_Buffer {
     }
 
     public static int allocStack(int[] data, GPU_Buffer_Type type, GPU_Buffer_Usage usage) {
-        int buffer = glGenBuffers();
-        glBindBuffer(type.rawBufferType, buffer);
+        int buffer = glCreateBuffers();
 
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            glBufferData(
-                    type.rawBufferType,
+            glNamedBufferData(
+                    buffer,
                     stack.mallocInt(data.length).put(data).flip(),
                     usage.rawGlValue
             );
@@ -85,13 +162,12 @@ public class GPU_Buffer {
     }
 
     public static int allocHeap(short[] data, GPU_Buffer_Type type, GPU_Buffer_Usage usage) {
-        int buffer = glGenBuffers();
-        glBindBuffer(type.rawBufferType, buffer);
+        int buffer = glCreateBuffers();
 
         var memory = MemoryUtil.memAllocShort(data.length);
 
-        glBufferData(
-                type.rawBufferType,
+        glNamedBufferData(
+                buffer,
                 memory.put(data).flip(),
                 usage.rawGlValue
         );
@@ -102,12 +178,11 @@ public class GPU_Buffer {
     }
 
     public static int allocStack(short[] data, GPU_Buffer_Type type, GPU_Buffer_Usage usage) {
-        int buffer = glGenBuffers();
-        glBindBuffer(type.rawBufferType, buffer);
+        int buffer = glCreateBuffers();
 
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            glBufferData(
-                    type.rawBufferType,
+            glNamedBufferData(
+                    buffer,
                     stack.mallocShort(data.length).put(data).flip(),
                     usage.rawGlValue
             );
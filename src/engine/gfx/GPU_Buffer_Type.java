@@ -2,10 +2,16 @@ package engine.gfx;
 
 import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BUFFER;
 
 public enum GPU_Buffer_Type {
     Vertex_Buffer(GL_ARRAY_BUFFER),
-    Index_Buffer(GL_ELEMENT_ARRAY_BUFFER);
+    Index_Buffer(GL_ELEMENT_ARRAY_BUFFER),
+    Uniform_Buffer(GL_UNIFORM_BUFFER),
+    Storage_Buffer(GL_SHADER_STORAGE_BUFFER),
+    Draw_Indirect_Buffer(GL_DRAW_INDIRECT_BUFFER);
 
     public final int rawBufferType;
 
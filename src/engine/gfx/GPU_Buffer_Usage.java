@@ -1,14 +1,27 @@
 package engine.gfx;
 
 import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL44.GL_DYNAMIC_STORAGE_BIT;
 
+/**
+ * Immutable buffers get immutable storage (glBufferStorage) and are never written again, the others
+ * keep glBufferData so they can be updated and reallocated
+ */
 public enum GPU_Buffer_Usage {
-    Immutable(GL_STATIC_DRAW),
-    Dynamic(GL_DYNAMIC_DRAW),
-    Stream(GL_STATIC_DRAW);
+    Immutable(GL_STATIC_DRAW, true, 0),
+    Dynamic(GL_DYNAMIC_DRAW, false, GL_DYNAMIC_STORAGE_BIT),
+    Stream(GL_STREAM_DRAW, false, GL_DYNAMIC_STORAGE_BIT);
 
+    // Usage hint for glBufferData
     public final int rawGlValue;
-    GPU_Buffer_Usage(int raw_value) {
+
+    public final boolean immutableStorage;
+    // Flags for glBufferStorage
+    public final int storageFlags;
+
+    GPU_Buffer_Usage(int raw_value, boolean immutableStorage, int storageFlags) {
         rawGlValue = raw_value;
+        this.immutableStorage = immutableStorage;
+        this.storageFlags = storageFlags;
     }
 }
@@ -0,0 +1,308 @@
+package engine.gfx;
+
+import engine.memory.Tlsf_Allocator;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL43.glMultiDrawElementsIndirect;
+import static org.lwjgl.opengl.GL44.GL_DYNAMIC_STORAGE_BIT;
+import static org.lwjgl.opengl.GL45.*;
+
+/**
+ * <h1>
+ *     Geometry_Arena
+ * </h1>
+ * <h3>
+ *     Many meshes of one vertex format in a few big buffers, drawn with glMultiDrawElementsIndirect
+ * </h3>
+ * <p>
+ *     One buffer per layout buffer plus one index buffer, all behind a single vertex array. Vertex and index
+ *     ranges are suballocated with a {@link Tlsf_Allocator} each, counted in vertices and indices, so a mesh's
+ *     ranges are directly its baseVertex and firstIndex. Buffers double when full (the contents are copied on the
+ *     GPU), and {@link #defragment()} packs the live ranges after meshes were removed.
+ * </p>
+ * <pre>
+ * arena.beginFrame();
+ * commands.clear();
+ * commands.add(mesh, lod, instances, baseInstance);
+ * arena.draw(commands);
+ * arena.endFrame();
+ * </pre>
+ * <p>
+ *     Everything goes through DSA calls, so uploads never touch the bound vertex array or buffers.
+ * </p>
+ */
+public class Geometry_Arena {
+    public static final int DEFAULT_MAX_COMMANDS = 4096;
+
+    private final Triangle_Mesh_Layout layout;
+    private final Index_Type indexType;
+
+    final Tlsf_Allocator vertices;
+    final Tlsf_Allocator indices;
+
+    private final int vertexArray;
+    private final int[] vertexBuffers;
+    private int indexBuffer;
+
+    private final Stream_Buffer commands;
+
+    private int draws;
+    private int commandsDrawn;
+
+    public Geometry_Arena(Triangle_Mesh_Layout layout, Index_Type indexType, int vertexCapacity, int indexCapacity) {
+        this(layout, indexType, vertexCapacity, indexCapacity, DEFAULT_MAX_COMMANDS);
+    }
+
+    /**
+     * @param maxCommands per frame, over all {@link #draw} calls
+     */
+    public Geometry_Arena(Triangle_Mesh_Layout layout, Index_Type indexType, int vertexCapacity, int indexCapacity, int maxCommands) {
+        this.layout = layout;
+        this.indexType = indexType;
+
+        vertices = new Tlsf_Allocator(vertexCapacity);
+        indices = new Tlsf_Allocator(indexCapacity);
+
+        vertexBuffers = new int[layout.buffers.length];
+        for (int b = 0; b < vertexBuffers.length; b++)
+            vertexBuffers[b] = createStorage((long) vertexCapacity * layout.buffers[b].stride());
+
+        indexBuffer = createStorage((long) indexCapacity * indexType.size);
+
+        vertexArray = glCreateVertexArrays();
+
+        for (int i = 0; i < layout.attrs.length; i++) {
+            Attribute_Layout attr = layout.attrs[i];
+
+            glEnableVertexArrayAttrib(vertexArray, i);
+            if (attr.type().isInteger())
+                glVertexArrayAttribIFormat(vertexArray, i, attr.type().count, attr.type().glType, layout.offsets[i]);
+            else
+                glVertexArrayAttribFormat(vertexArray, i, attr.type().count, attr.type().glType, attr.type().normalized, layout.offsets[i]);
+            glVertexArrayAttribBinding(vertexArray, i, attr.bufferIndex());
+        }
+
+        for (int b = 0; b < vertexBuffers.length; b++)
+            glVertexArrayVertexBuffer(vertexArray, b, vertexBuffers[b], 0, layout.buffers[b].stride());
+
+        glVertexArrayElementBuffer(vertexArray, indexBuffer);
+
+        commands = new Stream_Buffer(GPU_Buffer_Type.Draw_Indirect_Buffer, (long) maxCommands * Draw_Command_Buffer.COMMAND_SIZE);
+    }
+
+    /**
+     * @param vertexStreams one per layout buffer, in the arena's layout
+     * @param indices {@code indicesCount} indices of {@code indicesType}, UInt16 ones are widened for a UInt32 arena
+     */
+    public Arena_Mesh add(
+            ByteBuffer[] vertexStreams,
+            Triangle_Mesh_Layout streamsLayout,
+            ByteBuffer indices,
+            Index_Type indicesType,
+            int indicesCount,
+            Lod_Chain lods,
+            Position_Decode positionDecode) {
+        if (!Arrays.equals(streamsLayout.buffers, layout.buffers) || !Arrays.equals(streamsLayout.attrs, layout.attrs))
+            throw new IllegalArgumentException("mesh layout doesn't match the arena's");
+
+        if (indicesType.size > indexType.size)
+            throw new IllegalArgumentException(indicesType + " indices don't fit a " + indexType + " arena");
+
+        int vertexCount = vertexStreams[0].remaining() / layout.buffers[0].stride();
+
+        int vertexHandle = vertices.allocate(vertexCount);
+        if (vertexHandle < 0) {
+            growVertices(vertexCount);
+            vertexHandle = vertices.allocate(vertexCount);
+        }
+
+        int indexHandle = this.indices.allocate(indicesCount);
+        if (indexHandle < 0) {
+            growIndices(indicesCount);
+            indexHandle = this.indices.allocate(indicesCount);
+        }
+
+        long baseVertex = vertices.offset(vertexHandle);
+        for (int b = 0; b < vertexBuffers.length; b++) {
+            ByteBuffer stream = vertexStreams[b];
+            nglNamedBufferSubData(
+                    vertexBuffers[b],
+                    baseVertex * layout.buffers[b].stride(),
+                    stream.remaining(),
+                    MemoryUtil.memAddress(stream));
+        }
+
+        long firstIndex = this.indices.offset(indexHandle);
+
+        if (indicesType == indexType) {
+            nglNamedBufferSubData(indexBuffer, firstIndex * indexType.size, (long) indicesCount * indexType.size, MemoryUtil.memAddress(indices));
+        } else {
+            ByteBuffer widened = MemoryUtil.memAlloc(indicesCount * Integer.BYTES);
+
+            for (int i = 0; i < indicesCount; i++)
+                widened.putInt(i * Integer.BYTES, indices.getShort(indices.position() + i * Short.BYTES) & 0xFFFF);
+
+            nglNamedBufferSubData(indexBuffer, firstIndex * indexType.size, widened.capacity(), MemoryUtil.memAddress(widened));
+            MemoryUtil.memFree(widened);
+        }
+
+        return new Arena_Mesh(this, vertexHandle, indexHandle, vertexCount, lods, positionDecode);
+    }
+
+    /**
+     * The ranges become free, {@code mesh} must not be drawn anymore
+     */
+    public void remove(Arena_Mesh mesh) {
+        assert mesh.arena == this;
+
+        vertices.free(mesh.vertexHandle);
+        indices.free(mesh.indexHandle);
+    }
+
+    /**
+     * Copies every live range to the front of fresh buffers (copies inside one buffer can't overlap),
+     * meshes keep working but get new offsets
+     */
+    public void defragment() {
+        int[] packed = new int[vertexBuffers.length];
+        for (int b = 0; b < vertexBuffers.length; b++)
+            packed[b] = createStorage(vertices.capacity() * layout.buffers[b].stride());
+
+        vertices.defragment((handle, from, to, size) -> {
+            for (int b = 0; b < vertexBuffers.length; b++) {
+                long stride = layout.buffers[b].stride();
+                glCopyNamedBufferSubData(vertexBuffers[b], packed[b], from * stride, to * stride, size * stride);
+            }
+        });
+
+        for (int b = 0; b < vertexBuffers.length; b++)
+            replaceVertexBuffer(b, packed[b]);
+
+        int packedIndices = createStorage(indices.capacity() * indexType.size);
+
+        indices.defragment((handle, from, to, size) ->
+                glCopyNamedBufferSubData(indexBuffer, packedIndices, from * indexType.size, to * indexType.size, size * indexType.size));
+
+        replaceIndexBuffer(packedIndices);
+    }
+
+    public void beginFrame() {
+        commands.beginFrame();
+
+        draws = 0;
+        commandsDrawn = 0;
+    }
+
+    public void draw(Draw_Command_Buffer commandBuffer) {
+        if (commandBuffer.count() == 0)
+            return;
+
+        long offset = commands.allocate(commandBuffer.byteSize(), Integer.BYTES);
+        if (offset < 0)
+            throw new IllegalStateException("out of indirect command space for this frame");
+
+        commandBuffer.writeTo(commands.mapped(), (int) offset);
+
+        GL_State.bindVertexArray(vertexArray);
+        GL_State.bindBuffer(GL_DRAW_INDIRECT_BUFFER, commands.buffer());
+
+        glMultiDrawElementsIndirect(GL_TRIANGLES, indexType.glValue, offset, commandBuffer.count(), 0);
+
+        draws++;
+        commandsDrawn += commandBuffer.count();
+    }
+
+    public void endFrame() {
+        commands.endFrame();
+    }
+
+    public Triangle_Mesh_Layout getLayout() {
+        return layout;
+    }
+
+    public Index_Type getIndexType() {
+        return indexType;
+    }
+
+    public int getVertexArray() {
+        return vertexArray;
+    }
+
+    public Tlsf_Allocator vertexRanges() {
+        return vertices;
+    }
+
+    public Tlsf_Allocator indexRanges() {
+        return indices;
+    }
+
+    // Since beginFrame()
+    public int draws() {
+        return draws;
+    }
+
+    public int commandsDrawn() {
+        return commandsDrawn;
+    }
+
+    public void delete() {
+        commands.delete();
+
+        GL_State.deleteVertexArray(vertexArray);
+        GL_State.deleteBuffers(vertexBuffers);
+        GL_State.deleteBuffer(indexBuffer);
+    }
+
+    private void growVertices(int needed) {
+        long capacity = vertices.capacity();
+        long newCapacity = Math.max(capacity * 2, capacity + needed);
+
+        for (int b = 0; b < vertexBuffers.length; b++) {
+            long stride = layout.buffers[b].stride();
+            int grown = createStorage(newCapacity * stride);
+
+            glCopyNamedBufferSubData(vertexBuffers[b], grown, 0, 0, capacity * stride);
+            replaceVertexBuffer(b, grown);
+        }
+
+        vertices.grow(newCapacity);
+    }
+
+    private void growIndices(int needed) {
+        long capacity = indices.capacity();
+        long newCapacity = Math.max(capacity * 2, capacity + needed);
+
+        int grown = createStorage(newCapacity * indexType.size);
+
+        glCopyNamedBufferSubData(indexBuffer, grown, 0, 0, capacity * indexType.size);
+        replaceIndexBuffer(grown);
+
+        indices.grow(newCapacity);
+    }
+
+    private void replaceVertexBuffer(int b, int buffer) {
+        GL_State.deleteBuffer(vertexBuffers[b]);
+
+        vertexBuffers[b] = buffer;
+        glVertexArrayVertexBuffer(vertexArray, b, buffer, 0, layout.buffers[b].stride());
+    }
+
+    private void replaceIndexBuffer(int buffer) {
+        GL_State.deleteBuffer(indexBuffer);
+
+        indexBuffer = buffer;
+        glVertexArrayElementBuffer(vertexArray, buffer);
+    }
+
+    private static int createStorage(long size) {
+        int buffer = glCreateBuffers();
+        glNamedBufferStorage(buffer, size, GL_DYNAMIC_STORAGE_BIT);
+
+        return buffer;
+    }
+}
@@ -4,12 +4,19 @@ import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
 import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
 
 public enum Index_Type {
-    UInt16(GL_UNSIGNED_SHORT),
-    UInt32(GL_UNSIGNED_INT);
+    UInt16(GL_UNSIGNED_SHORT, 2),
+    UInt32(GL_UNSIGNED_INT, 4);
 
     public final int glValue;
+    public final int size;
 
-    Index_Type(int glValue) {
+    Index_Type(int glValue, int size) {
         this.glValue = glValue;
+        this.size = size;
+    }
+
+    // The smallest type able to index every vertex
+    public static Index_Type forVertexCount(int vertexCount) {
+        return vertexCount <= 1 << 16 ? UInt16 : UInt32;
     }
 }
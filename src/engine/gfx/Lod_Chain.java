@@ -0,0 +1,33 @@
+package engine.gfx;
+
+/**
+ * Levels of detail of one mesh as ranges of its index buffer, level 0 is the full resolution one.
+ * {@code errors} are object space distances, the biggest deviation of a level from the original surface.
+ */
+public record Lod_Chain(int[] firstIndices, int[] counts, float[] errors) {
+    public Lod_Chain {
+        assert firstIndices.length == counts.length && counts.length == errors.length && counts.length > 0;
+    }
+
+    public static Lod_Chain single(int indicesCount) {
+        return new Lod_Chain(new int[] { 0 }, new int[] { indicesCount }, new float[] { 0.0f });
+    }
+
+    public int levels() {
+        return counts.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        for (int l = 0; l < levels(); l++) {
+            if (l > 0)
+                builder.append(", ");
+
+            builder.append(String.format("lod %d: %d triangles (error %.4g)", l, counts[l] / 3, errors[l]));
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,45 @@
+package engine.gfx;
+
+import org.joml.Matrix4fc;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * <h3>
+ *     Model matrices as the shaders read them, the 3 top rows of the affine matrix, 48 bytes per object
+ * </h3>
+ * <p>
+ *     Every storage buffer bound at {@link #BINDING} holds an array of these, whether it's streamed per frame
+ *     or kept per instance group. The bottom row is always (0, 0, 0, 1) and isn't stored.
+ * </p>
+ * <pre>
+ * layout(std430, binding = 1) readonly buffer Objects {
+ *     mat3x4 models[];
+ * };
+ * mat4 model = mat4(transpose(models[gl_BaseInstance + gl_InstanceID]));
+ * </pre>
+ */
+public final class Object_Transforms {
+    public static final int BINDING = 1;
+    public static final int SIZE = 12 * Float.BYTES;
+
+    private Object_Transforms() {}
+
+    public static void put(Matrix4fc m, long address) {
+        put(address, m.m00(), m.m10(), m.m20(), m.m30(), 0);
+        put(address, m.m01(), m.m11(), m.m21(), m.m31(), 16);
+        put(address, m.m02(), m.m12(), m.m22(), m.m32(), 32);
+    }
+
+    // Column major, like Matrix4f.get(float[], int)
+    public static void put(float[] m, int offset, long address) {
+        for (int row = 0; row < 3; row++)
+            put(address, m[offset + row], m[offset + 4 + row], m[offset + 8 + row], m[offset + 12 + row], row * 16);
+    }
+
+    private static void put(long address, float x, float y, float z, float w, int at) {
+        MemoryUtil.memPutFloat(address + at, x);
+        MemoryUtil.memPutFloat(address + at + 4, y);
+        MemoryUtil.memPutFloat(address + at + 8, z);
+        MemoryUtil.memPutFloat(address + at + 12, w);
+    }
+}
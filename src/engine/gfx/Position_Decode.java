@@ -0,0 +1,22 @@
+package engine.gfx;
+
+import org.joml.Matrix4f;
+
+/**
+ * Quantized positions are stored relative to the mesh bounds, the real position is
+ * {@code offset + scale * stored}. The scale is uniform, so normals don't need another transform.
+ */
+public record Position_Decode(float offsetX, float offsetY, float offsetZ, float scale) {
+    public static final Position_Decode IDENTITY = new Position_Decode(0.0f, 0.0f, 0.0f, 1.0f);
+
+    public boolean isIdentity() {
+        return equals(IDENTITY);
+    }
+
+    /**
+     * Post multiplies {@code model} with the decode transform, so it can be used as the model matrix directly
+     */
+    public Matrix4f apply(Matrix4f model) {
+        return model.translate(offsetX, offsetY, offsetZ).scale(scale);
+    }
+}
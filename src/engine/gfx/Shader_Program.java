@@ -3,21 +3,43 @@ package engine.gfx;
 import org.joml.*;
 import org.lwjgl.system.MemoryStack;
 
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.IntBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
 import static org.lwjgl.opengl.GL20.*;
-
+import static org.lwjgl.opengl.GL41.*;
+
+/**
+ * <h1>
+ *     Shader_Program
+ * </h1>
+ * <p>
+ *     Active uniforms are discovered with glGetActiveUniform after every link, and handed out as {@link Uniform}
+ *     handles that survive hot reloads. Values are uploaded with glProgramUniform*, so the program doesn't have to
+ *     be bound, and only when they differ from the last upload. Upload counters are kept for all programs together,
+ *     see {@link #resetCounters()}.
+ * </p>
+ */
 public class Shader_Program {
     private int program;
 
-    private final HashMap<String, Integer> uniforms = new HashMap<>();
+    private final HashMap<String, Uniform> uniforms = new HashMap<>();
+
+    private final int[] bits = new int[Uniform.MAX_COMPONENTS];
+    private final float[] matrix4 = new float[16];
+    private final float[] matrix3 = new float[9];
+    private final float[] matrix2 = new float[4];
+
+    private static int uploads;
+    private static int skippedUploads;
+    private static long uploadedBytes;
 
     private long vertexModificationTime;
     private long fragmentModificationTime;
@@ -33,6 +55,7 @@ public class Shader_Program {
         int fragment = createShader(Files.readString(fragmentFilePath), GL_FRAGMENT_SHADER);
 
         program = initProgram(vertex, fragment);
+        discoverUniforms();
 
         updateFileChangedTime();
     }
@@ -77,124 +100,322 @@ public class Shader_Program {
         fragmentModificationTime = Files.getLastModifiedTime(fragmentFilePath).toMillis();
     }
 
+    /**
+     * The names are only checked, every active uniform is discovered anyway
+     */
     public Shader_Program(Path vertexPath, Path fragmentPath, List<String> uniformsNames) throws IOException {
         this(vertexPath, fragmentPath);
 
-        updateUniformLocations(uniformsNames);
+        for (String name : uniformsNames) {
+            if (!uniform(name).isActive())
+                System.err.printf("uniform \"%s\" is not active in %s\n", name, vertexFilePath);
+        }
     }
 
-    private void updateUniformLocations(List<String> uniformNames) {
-        uniformNames.forEach((uniform) -> {
-            int location = glGetUniformLocation(program, uniform);
-            uniforms.put(uniform, location);
-        });
+    /**
+     * Refreshes every existing handle: new location and type, and an empty shadow since a new program
+     * starts with default values. Handles of uniforms that went away become inactive
+     */
+    private void discoverUniforms() {
+        for (Uniform uniform : uniforms.values()) {
+            uniform.location = -1;
+            uniform.glType = 0;
+            uniform.arraySize = 0;
+            uniform.shadowValid = false;
+        }
+
+        int count = glGetProgrami(program, GL_ACTIVE_UNIFORMS);
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer size = stack.mallocInt(1);
+            IntBuffer type = stack.mallocInt(1);
+
+            for (int i = 0; i < count; i++) {
+                String name = glGetActiveUniform(program, i, size, type);
+
+                // Arrays are reported as "name[0]"
+                if (name.endsWith("[0]"))
+                    name = name.substring(0, name.length() - 3);
+
+                Uniform uniform = uniforms.computeIfAbsent(name, Uniform::new);
+                uniform.location = glGetUniformLocation(program, name);
+                uniform.glType = type.get(0);
+                uniform.arraySize = size.get(0);
+            }
+        }
     }
 
     public void reloadIfChanged() throws IOException {
         long vertexTime = Files.getLastModifiedTime(vertexFilePath).toMillis();
         long fragmentTime = Files.getLastModifiedTime(fragmentFilePath).toMillis();
 
-        boolean isChanged = vertexTime > vertexModificationTime && fragmentTime > fragmentModificationTime;
-
-        updateFileChangedTime();
+        boolean isChanged = vertexTime > vertexModificationTime || fragmentTime > fragmentModificationTime;
 
-        if (isChanged)
+        if (!isChanged)
                 return;
 
+        updateFileChangedTime();
+
         int vertex = createShader(Files.readString(vertexFilePath), GL_VERTEX_SHADER);
         int fragment = createShader(Files.readString(fragmentFilePath), GL_FRAGMENT_SHADER);
 
+        GL_State.deleteProgram(program);
         program = initProgram(vertex, fragment);
+
+        discoverUniforms();
     }
 
+    /**
+     * Uniforms are rediscovered on every reload, the names aren't needed anymore
+     */
     public void reloadIfChanged(List<String> uniformNames) throws IOException {
         reloadIfChanged();
-
-        uniforms.clear();
-        updateUniformLocations(uniformNames);
     }
 
     public void use() {
-        glUseProgram(program);
+        GL_State.useProgram(program);
+    }
+
+    public int getId() {
+        return program;
     }
 
     public void delete() {
-        glDeleteProgram(program);
+        GL_State.deleteProgram(program);
         program = -1;
     }
 
-    public void setUniform(String name, Matrix4f matrix) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            glUniformMatrix4fv(uniforms.get(name), false, matrix.get(stack.mallocFloat(16)));
+    /**
+     * Handle for {@code name}, resolve once and keep it. Unknown names give an inactive handle, which becomes
+     * active if a reloaded program starts using that uniform
+     */
+    public Uniform uniform(String name) {
+        return uniforms.computeIfAbsent(name, Uniform::new);
+    }
+
+    public Collection<Uniform> uniforms() {
+        return Collections.unmodifiableCollection(uniforms.values());
+    }
+
+    public static int uploads() {
+        return uploads;
+    }
+
+    // Sets that were dropped because the value didn't change
+    public static int skippedUploads() {
+        return skippedUploads;
+    }
+
+    public static long uploadedBytes() {
+        return uploadedBytes;
+    }
+
+    // Call once per frame to get per-frame numbers
+    public static void resetCounters() {
+        uploads = 0;
+        skippedUploads = 0;
+        uploadedBytes = 0;
+    }
+
+    public void set(Uniform uniform, Matrix4f matrix) {
+        if (changed(uniform, matrix.get(matrix4), GL_FLOAT_MAT4))
+            glProgramUniformMatrix4fv(program, uniform.location, false, matrix4);
+    }
+
+    public void set(Uniform uniform, Matrix3f matrix) {
+        if (changed(uniform, matrix.get(matrix3), GL_FLOAT_MAT3))
+            glProgramUniformMatrix3fv(program, uniform.location, false, matrix3);
+    }
+
+    public void set(Uniform uniform, Matrix2f matrix) {
+        if (changed(uniform, matrix.get(matrix2), GL_FLOAT_MAT2))
+            glProgramUniformMatrix2fv(program, uniform.location, false, matrix2);
+    }
+
+    public void set(Uniform uniform, float v0) {
+        bits[0] = Float.floatToRawIntBits(v0);
+        if (changed(uniform, 1, GL_FLOAT))
+            glProgramUniform1f(program, uniform.location, v0);
+    }
+
+    public void set(Uniform uniform, float v0, float v1) {
+        bits[0] = Float.floatToRawIntBits(v0);
+        bits[1] = Float.floatToRawIntBits(v1);
+        if (changed(uniform, 2, GL_FLOAT_VEC2))
+            glProgramUniform2f(program, uniform.location, v0, v1);
+    }
+
+    public void set(Uniform uniform, float v0, float v1, float v2) {
+        bits[0] = Float.floatToRawIntBits(v0);
+        bits[1] = Float.floatToRawIntBits(v1);
+        bits[2] = Float.floatToRawIntBits(v2);
+        if (changed(uniform, 3, GL_FLOAT_VEC3))
+            glProgramUniform3f(program, uniform.location, v0, v1, v2);
+    }
+
+    public void set(Uniform uniform, float v0, float v1, float v2, float v3) {
+        bits[0] = Float.floatToRawIntBits(v0);
+        bits[1] = Float.floatToRawIntBits(v1);
+        bits[2] = Float.floatToRawIntBits(v2);
+        bits[3] = Float.floatToRawIntBits(v3);
+        if (changed(uniform, 4, GL_FLOAT_VEC4))
+            glProgramUniform4f(program, uniform.location, v0, v1, v2, v3);
+    }
+
+    public void set(Uniform uniform, int v0) {
+        bits[0] = v0;
+        if (changed(uniform, 1, GL_INT))
+            glProgramUniform1i(program, uniform.location, v0);
+    }
+
+    public void set(Uniform uniform, int v0, int v1) {
+        bits[0] = v0;
+        bits[1] = v1;
+        if (changed(uniform, 2, GL_INT_VEC2))
+            glProgramUniform2i(program, uniform.location, v0, v1);
+    }
+
+    public void set(Uniform uniform, int v0, int v1, int v2) {
+        bits[0] = v0;
+        bits[1] = v1;
+        bits[2] = v2;
+        if (changed(uniform, 3, GL_INT_VEC3))
+            glProgramUniform3i(program, uniform.location, v0, v1, v2);
+    }
+
+    public void set(Uniform uniform, int v0, int v1, int v2, int v3) {
+        bits[0] = v0;
+        bits[1] = v1;
+        bits[2] = v2;
+        bits[3] = v3;
+        if (changed(uniform, 4, GL_INT_VEC4))
+            glProgramUniform4i(program, uniform.location, v0, v1, v2, v3);
+    }
+
+    public void set(Uniform uniform, Vector2f v) {
+        set(uniform, v.x, v.y);
+    }
+
+    public void set(Uniform uniform, Vector3f v) {
+        set(uniform, v.x, v.y, v.z);
+    }
+
+    public void set(Uniform uniform, Vector4f v) {
+        set(uniform, v.x, v.y, v.z, v.w);
+    }
+
+    public void set(Uniform uniform, Vector2i v) {
+        set(uniform, v.x, v.y);
+    }
+
+    public void set(Uniform uniform, Vector3i v) {
+        set(uniform, v.x, v.y, v.z);
+    }
+
+    public void set(Uniform uniform, Vector4i v) {
+        set(uniform, v.x, v.y, v.z, v.w);
+    }
+
+    private boolean changed(Uniform uniform, float[] values, int type) {
+        for (int i = 0; i < values.length; i++)
+            bits[i] = Float.floatToRawIntBits(values[i]);
+
+        return changed(uniform, values.length, type);
+    }
+
+    /**
+     * Compares the first count entries of bits with the shadow, and takes them as the new shadow if they differ.
+     * {@code type} is what the setter uploads, a mismatch with the declaration would only be a GL error
+     */
+    private boolean changed(Uniform uniform, int count, int type) {
+        if (uniform.location < 0)
+            return false;
+
+        assert uniform.settableAs(type) : uniform + " is declared as GL type 0x" + Integer.toHexString(uniform.glType) +
+                                          ", can't be set as 0x" + Integer.toHexString(type);
+
+        if (uniform.shadowValid && Arrays.equals(uniform.shadow, 0, count, bits, 0, count)) {
+            skippedUploads++;
+            return false;
         }
+
+        System.arraycopy(bits, 0, uniform.shadow, 0, count);
+        uniform.shadowValid = true;
+
+        uploads++;
+        uploadedBytes += count * 4L;
+
+        return true;
+    }
+
+    // Name based setters, one hash lookup on top of the handle ones
+
+    public void setUniform(String name, Matrix4f matrix) {
+        set(uniform(name), matrix);
     }
 
     public void setUniform(String name, Matrix3f matrix) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            glUniformMatrix3fv(uniforms.get(name), false, matrix.get(stack.mallocFloat(9)));
-        }
+        set(uniform(name), matrix);
     }
 
     public void setUniform(String name, Matrix2f matrix) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            glUniformMatrix2fv(uniforms.get(name), false, matrix.get(stack.mallocFloat(4)));
-        }
+        set(uniform(name), matrix);
     }
 
     public void setUniform(String name, float v0) {
-        glUniform1f(uniforms.get(name), v0);
+        set(uniform(name), v0);
     }
 
     public void setUniform(String name, float v0, float v1) {
-        glUniform2f(uniforms.get(name), v0, v1);
+        set(uniform(name), v0, v1);
     }
 
     public void setUniform(String name, float v0, float v1, float v2) {
-        glUniform3f(uniforms.get(name), v0, v1, v2);
+        set(uniform(name), v0, v1, v2);
     }
 
     public void setUniform(String name, float v0, float v1, float v2, float v3) {
-        glUniform4f(uniforms.get(name), v0, v1, v2, v3);
+        set(uniform(name), v0, v1, v2, v3);
     }
 
     public void setUniform(String name, Vector2f v) {
-        glUniform2f(uniforms.get(name), v.x, v.y);
+        set(uniform(name), v);
     }
 
     public void setUniform(String name, Vector3f v) {
-        glUniform3f(uniforms.get(name), v.x, v.y, v.z);
+        set(uniform(name), v);
     }
 
     public void setUniform(String name, Vector4f v) {
-        glUniform4f(uniforms.get(name), v.x, v.y, v.z, v.w);
+        set(uniform(name), v);
     }
 
     public void setUniform(String name, int v0) {
-        glUniform1i(uniforms.get(name), v0);
+        set(uniform(name), v0);
     }
 
     public void setUniform(String name, int v0, int v1) {
-        glUniform2i(uniforms.get(name), v0, v1);
+        set(uniform(name), v0, v1);
     }
 
     public void setUniform(String name, int v0, int v1, int v2) {
-        glUniform3i(uniforms.get(name), v0, v1, v2);
+        set(uniform(name), v0, v1, v2);
     }
 
     public void setUniform(String name, int v0, int v1, int v2, int v3) {
-        glUniform4i(uniforms.get(name), v0, v1, v2, v3);
+        set(uniform(name), v0, v1, v2, v3);
     }
 
     public void setUniform(String name, Vector2i v) {
-        glUniform2i(uniforms.get(name), v.x, v.y);
+        set(uniform(name), v);
     }
 
     public void setUniform(String name, Vector3i v) {
-        glUniform3i(uniforms.get(name), v.x, v.y, v.z);
+        set(uniform(name), v);
     }
 
     public void setUniform(String name, Vector4i v) {
-        glUniform4i(uniforms.get(name), v.x, v.y, v.z, v.w);
+        set(uniform(name), v);
     }
 
 }
@@ -0,0 +1,131 @@
+package engine.gfx;
+
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <h3>
+ *     Packs values in std140 layout, the way GLSL sees a uniform block
+ * </h3>
+ * <p>
+ *     Scalars align to 4 bytes, vec2 to 8, vec3 / vec4 / matrix columns to 16, and the block size is rounded
+ *     up to 16. Without a target buffer nothing is written, which gives the offsets and size of a block
+ *     without any GL context. Every put returns the offset it wrote at.
+ * </p>
+ */
+public final class Std140_Writer {
+    private ByteBuffer target;
+    private int base;
+    private int offset;
+
+    /**
+     * @param target written at absolute positions from {@code base}, null only measures
+     */
+    public Std140_Writer reset(ByteBuffer target, int base) {
+        this.target = target;
+        this.base = base;
+        this.offset = 0;
+
+        return this;
+    }
+
+    public int putFloat(float v) {
+        int at = align(4);
+        if (target != null)
+            target.putFloat(base + at, v);
+
+        offset = at + 4;
+        return at;
+    }
+
+    public int putInt(int v) {
+        int at = align(4);
+        if (target != null)
+            target.putInt(base + at, v);
+
+        offset = at + 4;
+        return at;
+    }
+
+    public int putVec2(float x, float y) {
+        int at = align(8);
+        if (target != null) {
+            target.putFloat(base + at, x);
+            target.putFloat(base + at + 4, y);
+        }
+
+        offset = at + 8;
+        return at;
+    }
+
+    // A vec3 takes 12 bytes, a following scalar fits into its last 4
+    public int putVec3(float x, float y, float z) {
+        int at = align(16);
+        if (target != null) {
+            target.putFloat(base + at, x);
+            target.putFloat(base + at + 4, y);
+            target.putFloat(base + at + 8, z);
+        }
+
+        offset = at + 12;
+        return at;
+    }
+
+    public int putVec3(Vector3f v) {
+        return putVec3(v.x, v.y, v.z);
+    }
+
+    public int putVec4(float x, float y, float z, float w) {
+        int at = align(16);
+        if (target != null) {
+            target.putFloat(base + at, x);
+            target.putFloat(base + at + 4, y);
+            target.putFloat(base + at + 8, z);
+            target.putFloat(base + at + 12, w);
+        }
+
+        offset = at + 16;
+        return at;
+    }
+
+    public int putMat4(Matrix4f m) {
+        int at = align(16);
+        if (target != null)
+            m.get(base + at, target);
+
+        offset = at + 64;
+        return at;
+    }
+
+    // Three columns, each padded to a vec4
+    public int putMat3(Matrix3f m) {
+        int at = align(16);
+        if (target != null) {
+            putColumn(at, m.m00, m.m01, m.m02);
+            putColumn(at + 16, m.m10, m.m11, m.m12);
+            putColumn(at + 32, m.m20, m.m21, m.m22);
+        }
+
+        offset = at + 48;
+        return at;
+    }
+
+    // Size of the block so far, what glBindBufferRange needs
+    public int size() {
+        return (offset + 15) & -16;
+    }
+
+    private void putColumn(int at, float x, float y, float z) {
+        target.putFloat(base + at, x);
+        target.putFloat(base + at + 4, y);
+        target.putFloat(base + at + 8, z);
+        target.putFloat(base + at + 12, 0.0f);
+    }
+
+    private int align(int alignment) {
+        return (offset + alignment - 1) & -alignment;
+    }
+}
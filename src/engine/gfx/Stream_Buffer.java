@@ -0,0 +1,111 @@
+package engine.gfx;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL44.*;
+
+/**
+ * <h1>
+ *     Stream_Buffer
+ * </h1>
+ * <h3>
+ *     Persistently mapped buffer for data rewritten every frame
+ * </h3>
+ * <p>
+ *     One coherent mapping for the whole lifetime of the buffer, split into {@code regions} frames by a
+ *     {@link Frame_Ring_Allocator}. Write with {@link MemoryUtil} through {@code address() + offset}, or into
+ *     {@link #mapped()} at {@code offset}, then bind / draw using the same offset. Three regions let the CPU
+ *     write one frame while the GPU still reads the two before it.
+ * </p>
+ * <pre>
+ * stream.beginFrame();
+ * long offset = stream.allocate(bytes, 16);
+ * MemoryUtil.memCopy(source, stream.address() + offset, bytes);
+ * ... draw with offset ...
+ * stream.endFrame();
+ * </pre>
+ */
+public class Stream_Buffer {
+    public static final int DEFAULT_REGIONS = 3;
+
+    private final int buffer;
+    private final GPU_Buffer_Type type;
+    private final ByteBuffer mapped;
+    private final long address;
+
+    private final Frame_Ring_Allocator allocator;
+
+    public Stream_Buffer(GPU_Buffer_Type type, long bytesPerFrame) {
+        this(type, DEFAULT_REGIONS, bytesPerFrame, new GL_Fence_Backend());
+    }
+
+    public Stream_Buffer(GPU_Buffer_Type type, int regions, long bytesPerFrame, Fence_Backend fences) {
+        this.type = type;
+
+        long size = regions * bytesPerFrame;
+        int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+
+        buffer = glGenBuffers();
+        GL_State.bindBuffer(type.rawBufferType, buffer);
+        glBufferStorage(type.rawBufferType, size, flags);
+
+        mapped = glMapBufferRange(type.rawBufferType, 0, size, flags);
+        if (mapped == null)
+            throw new IllegalStateException("failed to map stream buffer of " + size + " bytes");
+
+        address = MemoryUtil.memAddress(mapped);
+        allocator = new Frame_Ring_Allocator(fences, regions, bytesPerFrame);
+    }
+
+    public void beginFrame() {
+        allocator.beginFrame();
+    }
+
+    /**
+     * @return offset into the buffer (and into {@link #mapped()}), or -1 if this frame is out of space
+     */
+    public long allocate(long size, int alignment) {
+        return allocator.allocate(size, alignment);
+    }
+
+    // Allocates a ByteBuffer view, prefer allocate() + address() in hot loops
+    public ByteBuffer slice(long offset, int size) {
+        return MemoryUtil.memByteBuffer(address + offset, size);
+    }
+
+    public void endFrame() {
+        allocator.endFrame();
+    }
+
+    public int buffer() {
+        return buffer;
+    }
+
+    public GPU_Buffer_Type type() {
+        return type;
+    }
+
+    public ByteBuffer mapped() {
+        return mapped;
+    }
+
+    public long address() {
+        return address;
+    }
+
+    public Frame_Ring_Allocator allocator() {
+        return allocator;
+    }
+
+    public void delete() {
+        allocator.drain();
+
+        GL_State.bindBuffer(type.rawBufferType, buffer);
+        glUnmapBuffer(type.rawBufferType);
+        GL_State.deleteBuffer(buffer);
+    }
+}
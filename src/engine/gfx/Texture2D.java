@@ -7,8 +7,6 @@ import java.nio.IntBuffer;
 import java.util.MissingResourceException;
 
 import static org.lwjgl.opengl.GL11.*;
-import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
-import static org.lwjgl.opengl.GL13.glActiveTexture;
 import static org.lwjgl.opengl.GL30.glGenerateMipmap;
 import static org.lwjgl.stb.STBImage.*;
 
@@ -73,7 +71,7 @@ public class Texture2D {
     }
 
     public void setParameters(int filterMag, int filterMin, int wrapS, int wrapT) {
-        glBindTexture(GL_TEXTURE_2D, id);
+        GL_State.bindTexture(id);
 
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, filterMag);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, filterMin);
@@ -86,12 +84,15 @@ public class Texture2D {
      * @param slot must be an integer between 0 and 8
      */
     public void bind(int slot) {
-        glActiveTexture(GL_TEXTURE0 + slot);
-        glBindTexture(GL_TEXTURE_2D, id);
+        GL_State.bindTexture(slot, id);
+    }
+
+    public int getId() {
+        return id;
     }
 
     public void delete() {
-        glDeleteTextures(id);
+        GL_State.deleteTexture(id);
         id = -1;
     }
 }
\ No newline at end of file
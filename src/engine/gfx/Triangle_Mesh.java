@@ -1,11 +1,10 @@
 package engine.gfx;
 
-import java.util.Arrays;
-
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
 import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
 
 public class Triangle_Mesh {
     public static final int VERTEX_BUFFERS_COUNT = 8;
@@ -18,6 +17,12 @@ public class Triangle_Mesh {
 
     private int indicesCount;
 
+    private Lod_Chain lods;
+
+    private Position_Decode positionDecode = Position_Decode.IDENTITY;
+
+    private Bounds bounds = Bounds.EMPTY;
+
     public Triangle_Mesh(
             int[] vertexBuffers,
             int indexBuffer,
@@ -27,17 +32,17 @@ public class Triangle_Mesh {
         assert vertexBuffers.length <= VERTEX_BUFFERS_COUNT;
 
         vertexArray = glGenVertexArrays();
-        glBindVertexArray(vertexArray);
+        GL_State.bindVertexArray(vertexArray);
 
         this.vertexBuffers = vertexBuffers;
         this.indexBuffer = indexBuffer;
         this.indicesCount = indicesCount;
         this.indexType = indexType;
+        this.lods = Lod_Chain.single(indicesCount);
 
-        int currentBufferIndex = vertexBuffers.length + 1;
-        int[] offsets = new int[vertexBuffers.length];
+        assert layout.buffers.length == vertexBuffers.length;
 
-        Arrays.fill(offsets, 0);
+        int currentBufferIndex = -1;
 
         for (int i = 0; i < layout.attrs.length; ++i) {
             Attribute_Layout attr = layout.attrs[i];
@@ -45,48 +50,113 @@ public class Triangle_Mesh {
             if (attr.bufferIndex() != currentBufferIndex) {
                 currentBufferIndex = attr.bufferIndex();
 
-                glBindBuffer(GL_ARRAY_BUFFER, vertexBuffers[currentBufferIndex]);
+                GL_State.bindBuffer(GL_ARRAY_BUFFER, vertexBuffers[currentBufferIndex]);
             }
 
-            glVertexAttribPointer(
-                    i,
-                    attr.type().count,
-                    attr.type().glType,
-                    false,
-                    layout.buffers[currentBufferIndex].stride(),
-                    offsets[currentBufferIndex]
-            );
+            if (attr.type().isInteger()) {
+                glVertexAttribIPointer(
+                        i,
+                        attr.type().count,
+                        attr.type().glType,
+                        layout.buffers[currentBufferIndex].stride(),
+                        layout.offsets[i]
+                );
+            } else {
+                glVertexAttribPointer(
+                        i,
+                        attr.type().count,
+                        attr.type().glType,
+                        attr.type().normalized,
+                        layout.buffers[currentBufferIndex].stride(),
+                        layout.offsets[i]
+                );
+            }
             glEnableVertexAttribArray(i);
-
-            offsets[currentBufferIndex] += attr.type().size;
         }
 
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
-        glBindVertexArray(0);
+        GL_State.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+        GL_State.bindVertexArray(0);
     }
 
     public void render() {
-        glBindVertexArray(vertexArray);
+        GL_State.bindVertexArray(vertexArray);
         glDrawElements(GL_TRIANGLES, indicesCount, indexType.glValue, 0);
     }
 
+    public void render(int lod) {
+        GL_State.bindVertexArray(vertexArray);
+        glDrawElements(
+                GL_TRIANGLES,
+                lods.counts()[lod],
+                indexType.glValue,
+                (long) lods.firstIndices()[lod] * indexType.size
+        );
+    }
+
+    // Instances read their transforms through gl_InstanceID, see Object_Transforms
+    public void renderInstanced(int lod, int instances) {
+        GL_State.bindVertexArray(vertexArray);
+        glDrawElementsInstanced(
+                GL_TRIANGLES,
+                lods.counts()[lod],
+                indexType.glValue,
+                (long) lods.firstIndices()[lod] * indexType.size,
+                instances
+        );
+    }
+
     public void delete() {
-        glDeleteVertexArrays(vertexArray);
+        GL_State.deleteVertexArray(vertexArray);
 
         vertexArray = -1;
     }
 
     public void deleteWithBuffers() {
-        glDeleteBuffers(vertexBuffers);
-        glDeleteBuffers(indexBuffer);
+        GL_State.deleteBuffers(vertexBuffers);
+        GL_State.deleteBuffer(indexBuffer);
 
         delete();
     }
 
+    public int getVertexArray() {
+        return vertexArray;
+    }
+
+    public Index_Type getIndexType() {
+        return indexType;
+    }
+
     public int getIndicesCount() {
         return indicesCount;
     }
 
+    public Lod_Chain getLods() {
+        return lods;
+    }
+
+    // render() keeps drawing the full resolution level only
+    public void setLods(Lod_Chain lods) {
+        this.lods = lods;
+        this.indicesCount = lods.counts()[0];
+    }
+
+    public Position_Decode getPositionDecode() {
+        return positionDecode;
+    }
+
+    public void setPositionDecode(Position_Decode positionDecode) {
+        this.positionDecode = positionDecode;
+    }
+
+    // Object space, of the decoded positions
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    public void setBounds(Bounds bounds) {
+        this.bounds = bounds;
+    }
+
     public void setIndicesCount(int indicesCount) {
         assert indicesCount >= 0;
         this.indicesCount = indicesCount;
@@ -1,14 +1,34 @@
 package engine.gfx;
 
+/**
+ * <h3>
+ *     Which vertex buffer every attribute lives in, and where
+ * </h3>
+ * <p>
+ *     Attributes sharing a buffer are interleaved in declaration order, each one starting at a 4 byte boundary
+ *     ({@link #ATTRIBUTE_ALIGNMENT}). Offsets are computed here, so the layout math doesn't need a GL context.
+ * </p>
+ * <ul>
+ *     <li>{@link #separate}: one tightly packed buffer per attribute</li>
+ *     <li>{@link #interleaved}: all attributes in one buffer, one bind for the whole vertex</li>
+ *     <li>{@link #positionSplit}: positions alone (depth / shadow passes only touch those), the rest interleaved</li>
+ * </ul>
+ */
 public class Triangle_Mesh_Layout {
     public static final int VERTEX_BUFFERS_COUNT = Triangle_Mesh.VERTEX_BUFFERS_COUNT;
-    
+
+    public static final int ATTRIBUTE_ALIGNMENT = 4;
+
     public final Buffer_Layout[] buffers;
     public final Attribute_Layout[] attrs;
 
+    // Byte offset of every attribute inside a vertex of its buffer
+    public final int[] offsets;
+
     public Triangle_Mesh_Layout() {
         buffers = new Buffer_Layout[VERTEX_BUFFERS_COUNT];
         attrs = new Attribute_Layout[VERTEX_BUFFERS_COUNT];
+        offsets = new int[VERTEX_BUFFERS_COUNT];
     }
 
     public Triangle_Mesh_Layout(Buffer_Layout[] buffers, Attribute_Layout[] attrs) {
@@ -17,5 +37,90 @@ public class Triangle_Mesh_Layout {
 
         this.buffers = buffers;
         this.attrs = attrs;
+        this.offsets = new int[attrs.length];
+
+        int[] ends = new int[buffers.length];
+
+        for (int i = 0; i < attrs.length; i++) {
+            Attribute_Layout attr = attrs[i];
+
+            // A tightly packed buffer with a single small attribute (e.g. stride 2) doesn't need the padding
+            int offset = ends[attr.bufferIndex()] == 0 ? 0 : align(ends[attr.bufferIndex()]);
+
+            offsets[i] = offset;
+            ends[attr.bufferIndex()] = offset + attr.type().size;
+        }
+
+        for (int b = 0; b < buffers.length; b++) {
+            if (ends[b] > buffers[b].stride())
+                throw new IllegalArgumentException(
+                        "buffer " + b + " has stride " + buffers[b].stride() + " but its attributes need " + ends[b]);
+        }
+    }
+
+    /**
+     * Strides are computed from the attributes, buffer count is the highest buffer index + 1
+     */
+    public static Triangle_Mesh_Layout of(Attribute_Layout... attrs) {
+        int buffersCount = 0;
+        for (Attribute_Layout attr : attrs)
+            buffersCount = Math.max(buffersCount, attr.bufferIndex() + 1);
+
+        int[] ends = new int[buffersCount];
+        int[] attributesInBuffer = new int[buffersCount];
+
+        for (Attribute_Layout attr : attrs) {
+            int end = ends[attr.bufferIndex()];
+
+            ends[attr.bufferIndex()] = (end == 0 ? 0 : align(end)) + attr.type().size;
+            attributesInBuffer[attr.bufferIndex()]++;
+        }
+
+        Buffer_Layout[] buffers = new Buffer_Layout[buffersCount];
+
+        for (int b = 0; b < buffersCount; b++) {
+            // Interleaved vertices stay aligned, a lone attribute stays tightly packed
+            int stride = attributesInBuffer[b] > 1 ? align(ends[b]) : ends[b];
+            buffers[b] = new Buffer_Layout(stride);
+        }
+
+        return new Triangle_Mesh_Layout(buffers, attrs);
+    }
+
+    public static Triangle_Mesh_Layout separate(Vertex_Type... types) {
+        Attribute_Layout[] attrs = new Attribute_Layout[types.length];
+        for (int i = 0; i < types.length; i++)
+            attrs[i] = new Attribute_Layout(i, types[i]);
+
+        return of(attrs);
+    }
+
+    public static Triangle_Mesh_Layout interleaved(Vertex_Type... types) {
+        Attribute_Layout[] attrs = new Attribute_Layout[types.length];
+        for (int i = 0; i < types.length; i++)
+            attrs[i] = new Attribute_Layout(0, types[i]);
+
+        return of(attrs);
+    }
+
+    // types[0] is the position
+    public static Triangle_Mesh_Layout positionSplit(Vertex_Type... types) {
+        Attribute_Layout[] attrs = new Attribute_Layout[types.length];
+        for (int i = 0; i < types.length; i++)
+            attrs[i] = new Attribute_Layout(i == 0 ? 0 : 1, types[i]);
+
+        return of(attrs);
+    }
+
+    public int vertexSize() {
+        int size = 0;
+        for (Buffer_Layout buffer : buffers)
+            size += buffer.stride();
+
+        return size;
+    }
+
+    private static int align(int offset) {
+        return (offset + ATTRIBUTE_ALIGNMENT - 1) & -ATTRIBUTE_ALIGNMENT;
     }
 }
@@ -0,0 +1,97 @@
+package engine.gfx;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL21.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL40.*;
+
+/**
+ * <h3>
+ *     Handle to a uniform of one {@link Shader_Program}
+ * </h3>
+ * <p>
+ *     Resolved once with {@link Shader_Program#uniform(String)} and kept, hot reloads update it in place.
+ *     It also keeps the last value uploaded (as raw bits), so setting the same value again is free.
+ *     Uniforms the program doesn't use (optimized out or misspelled) have location -1 and ignore every set.
+ * </p>
+ */
+public final class Uniform {
+    // mat4 is the biggest type we upload
+    static final int MAX_COMPONENTS = 16;
+
+    public final String name;
+
+    int location = -1;
+    int glType;
+    int arraySize;
+
+    final int[] shadow = new int[MAX_COMPONENTS];
+    boolean shadowValid;
+
+    Uniform(String name) {
+        this.name = name;
+    }
+
+    public int location() {
+        return location;
+    }
+
+    public boolean isActive() {
+        return location >= 0;
+    }
+
+    // GL_FLOAT_MAT4, GL_SAMPLER_2D, ... as reported by glGetActiveUniform, 0 if inactive
+    public int glType() {
+        return glType;
+    }
+
+    /**
+     * Whether a glProgramUniform* call for {@code type} (GL_FLOAT_VEC3 for the 3f one, ...) is valid for this
+     * uniform: the same type, a bool of as many components, or a sampler or image set with an int
+     */
+    boolean settableAs(int type) {
+        if (glType == type)
+            return true;
+
+        int bools = boolComponents(glType);
+        if (bools != 0)
+            return bools == components(type, GL_FLOAT, GL_FLOAT_VEC2, GL_FLOAT_VEC3, GL_FLOAT_VEC4) ||
+                   bools == components(type, GL_INT, GL_INT_VEC2, GL_INT_VEC3, GL_INT_VEC4);
+
+        return type == GL_INT && isOpaque(glType);
+    }
+
+    private static int boolComponents(int type) {
+        return components(type, GL_BOOL, GL_BOOL_VEC2, GL_BOOL_VEC3, GL_BOOL_VEC4);
+    }
+
+    private static int components(int type, int scalar, int vec2, int vec3, int vec4) {
+        if (type == scalar) return 1;
+        if (type == vec2) return 2;
+        if (type == vec3) return 3;
+        if (type == vec4) return 4;
+
+        return 0;
+    }
+
+    // Samplers, images and atomic counters: everything that isn't a plain value
+    private static boolean isOpaque(int type) {
+        return switch (type) {
+            case GL_FLOAT, GL_FLOAT_VEC2, GL_FLOAT_VEC3, GL_FLOAT_VEC4,
+                 GL_INT, GL_INT_VEC2, GL_INT_VEC3, GL_INT_VEC4,
+                 GL_UNSIGNED_INT, GL_UNSIGNED_INT_VEC2, GL_UNSIGNED_INT_VEC3, GL_UNSIGNED_INT_VEC4,
+                 GL_BOOL, GL_BOOL_VEC2, GL_BOOL_VEC3, GL_BOOL_VEC4,
+                 GL_FLOAT_MAT2, GL_FLOAT_MAT3, GL_FLOAT_MAT4,
+                 GL_FLOAT_MAT2x3, GL_FLOAT_MAT2x4, GL_FLOAT_MAT3x2, GL_FLOAT_MAT3x4, GL_FLOAT_MAT4x2, GL_FLOAT_MAT4x3,
+                 GL_DOUBLE, GL_DOUBLE_VEC2, GL_DOUBLE_VEC3, GL_DOUBLE_VEC4,
+                 GL_DOUBLE_MAT2, GL_DOUBLE_MAT3, GL_DOUBLE_MAT4 -> false;
+            default -> true;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return name + " (location " + location + ")";
+    }
+}
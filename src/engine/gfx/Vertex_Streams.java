@@ -0,0 +1,19 @@
+package engine.gfx;
+
+/**
+ * How a mesh's attributes are split into vertex buffers, see {@link Triangle_Mesh_Layout}
+ */
+public enum Vertex_Streams {
+    Separate,
+    Interleaved,
+    Position_Split;
+
+    // types[0] is the position
+    public Triangle_Mesh_Layout layout(Vertex_Type... types) {
+        return switch (this) {
+            case Separate -> Triangle_Mesh_Layout.separate(types);
+            case Interleaved -> Triangle_Mesh_Layout.interleaved(types);
+            case Position_Split -> Triangle_Mesh_Layout.positionSplit(types);
+        };
+    }
+}
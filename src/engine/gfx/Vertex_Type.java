@@ -1,7 +1,8 @@
 package engine.gfx;
 
-import static org.lwjgl.opengl.GL11.GL_FLOAT;
-import static org.lwjgl.opengl.GL11.GL_INT;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL30.GL_HALF_FLOAT;
+import static org.lwjgl.opengl.GL33.GL_INT_2_10_10_10_REV;
 
 public enum Vertex_Type {
     None(0, 0, 0),
@@ -14,15 +15,41 @@ public enum Vertex_Type {
     Int(1, 4, GL_INT),
     Int2(2, 8, GL_INT),
     Int3(3, 12, GL_INT),
-    Int4(4, 16, GL_INT);
+    Int4(4, 16, GL_INT),
+
+    // Packed types, the normalized ones reach the shader as floats in [-1, 1]
+    // New entries go at the end, ordinals are stored in .vmesh files
+
+    Half2(2, 4, GL_HALF_FLOAT),
+    Half4(4, 8, GL_HALF_FLOAT),
+
+    Short2_Norm(2, 4, GL_SHORT, true),
+    Short4_Norm(4, 8, GL_SHORT, true),
+
+    // xyz in 10 bits each + 2 bits of w, in one int
+    Int_2_10_10_10_Rev(4, 4, GL_INT_2_10_10_10_REV, true),
+
+    // Octahedral encoded unit vectors, see Vertex_Quantizer
+    Byte2_Norm(2, 2, GL_BYTE, true);
 
     public final int count;
     public final int size;
     public final int glType;
+    public final boolean normalized;
 
     Vertex_Type(int count, int size, int glType) {
+        this(count, size, glType, false);
+    }
+
+    Vertex_Type(int count, int size, int glType, boolean normalized) {
         this.count = count;
         this.size = size;
         this.glType = glType;
+        this.normalized = normalized;
+    }
+
+    // Read as ivec in the shader, set up with the glVertexAttribI* calls instead of converted to floats
+    public boolean isInteger() {
+        return glType == GL_INT && !normalized;
     }
 }
@@ -0,0 +1,101 @@
+package engine.memory;
+
+import java.util.Arrays;
+
+/**
+ * Growable float[] without boxing. {@link #array()} exposes the backing storage, only the first
+ * {@link #size()} elements of it are meaningful.
+ */
+public class Float_Array_List {
+    private float[] data;
+    private int size;
+
+    public Float_Array_List() {
+        this(16);
+    }
+
+    public Float_Array_List(int capacity) {
+        data = new float[Math.max(capacity, 1)];
+    }
+
+    public void add(float v0) {
+        if (size == data.length)
+            grow(size + 1);
+
+        data[size++] = v0;
+    }
+
+    public void add(float v0, float v1) {
+        if (size + 2 > data.length)
+            grow(size + 2);
+
+        data[size++] = v0;
+        data[size++] = v1;
+    }
+
+    public void add(float v0, float v1, float v2) {
+        if (size + 3 > data.length)
+            grow(size + 3);
+
+        data[size++] = v0;
+        data[size++] = v1;
+        data[size++] = v2;
+    }
+
+    public void addAll(float[] values, int offset, int length) {
+        if (size + length > data.length)
+            grow(size + length);
+
+        System.arraycopy(values, offset, data, size, length);
+        size += length;
+    }
+
+    public float get(int i) {
+        assert i < size;
+        return data[i];
+    }
+
+    public void set(int i, float v) {
+        assert i < size;
+        data[i] = v;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * New elements are zero, unless they were written before a {@link #clear()}
+     */
+    public void resize(int newSize) {
+        if (newSize > data.length)
+            grow(newSize);
+
+        size = newSize;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length)
+            grow(capacity);
+    }
+
+    public float[] array() {
+        return data;
+    }
+
+    public float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private void grow(int capacity) {
+        data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+    }
+}
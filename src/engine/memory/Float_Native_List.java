@@ -0,0 +1,123 @@
+package engine.memory;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Growable off-heap float array. Must be freed, either directly or by the {@link Native_Arena} it was created in.
+ * The address changes when the list grows, so views returned by {@link #buffer()} only live until the next add.
+ */
+public class Float_Native_List implements Native_Memory, AutoCloseable {
+    private long address;
+    private int capacity;
+    private int size;
+
+    public Float_Native_List(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+        this.address = MemoryUtil.nmemAllocChecked((long) this.capacity * Float.BYTES);
+    }
+
+    public Float_Native_List(Native_Arena arena, int capacity) {
+        this(capacity);
+        arena.register(this);
+    }
+
+    public void add(float v0) {
+        if (size == capacity)
+            grow(size + 1);
+
+        MemoryUtil.memPutFloat(address + (long) size++ * Float.BYTES, v0);
+    }
+
+    public void add(float v0, float v1) {
+        if (size + 2 > capacity)
+            grow(size + 2);
+
+        long at = address + (long) size * Float.BYTES;
+        MemoryUtil.memPutFloat(at, v0);
+        MemoryUtil.memPutFloat(at + 4, v1);
+        size += 2;
+    }
+
+    public void add(float v0, float v1, float v2) {
+        if (size + 3 > capacity)
+            grow(size + 3);
+
+        long at = address + (long) size * Float.BYTES;
+        MemoryUtil.memPutFloat(at, v0);
+        MemoryUtil.memPutFloat(at + 4, v1);
+        MemoryUtil.memPutFloat(at + 8, v2);
+        size += 3;
+    }
+
+    public float get(int i) {
+        assert i < size;
+        return MemoryUtil.memGetFloat(address + (long) i * Float.BYTES);
+    }
+
+    public void set(int i, float v) {
+        assert i < size;
+        MemoryUtil.memPutFloat(address + (long) i * Float.BYTES, v);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // New elements are left uninitialized
+    public void resize(int newSize) {
+        if (newSize > capacity)
+            grow(newSize);
+
+        size = newSize;
+    }
+
+    public FloatBuffer buffer() {
+        return MemoryUtil.memFloatBuffer(address, size);
+    }
+
+    public ByteBuffer bytes() {
+        return MemoryUtil.memByteBuffer(address, size * Float.BYTES);
+    }
+
+    @Override
+    public long address() {
+        return address;
+    }
+
+    @Override
+    public long byteSize() {
+        return (long) size * Float.BYTES;
+    }
+
+    @Override
+    public void free() {
+        if (address == NULL)
+            return;
+
+        MemoryUtil.nmemFree(address);
+        address = NULL;
+        capacity = 0;
+        size = 0;
+    }
+
+    @Override
+    public void close() {
+        free();
+    }
+
+    private void grow(int minCapacity) {
+        assert address != NULL : "use after free";
+
+        capacity = Math.max(minCapacity, capacity * 2);
+        address = MemoryUtil.nmemReallocChecked(address, (long) capacity * Float.BYTES);
+    }
+}
@@ -0,0 +1,139 @@
+package engine.memory;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Growable off-heap int array. Must be freed, either directly or by the {@link Native_Arena} it was created in.
+ * The address changes when the list grows, so views returned by {@link #buffer()} only live until the next add.
+ */
+public class Int_Native_List implements Native_Memory, AutoCloseable {
+    private long address;
+    private int capacity;
+    private int size;
+
+    public Int_Native_List(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+        this.address = MemoryUtil.nmemAllocChecked((long) this.capacity * Integer.BYTES);
+    }
+
+    public Int_Native_List(Native_Arena arena, int capacity) {
+        this(capacity);
+        arena.register(this);
+    }
+
+    public void add(int v0) {
+        if (size == capacity)
+            grow(size + 1);
+
+        MemoryUtil.memPutInt(address + (long) size++ * Integer.BYTES, v0);
+    }
+
+    public void add(int v0, int v1) {
+        if (size + 2 > capacity)
+            grow(size + 2);
+
+        long at = address + (long) size * Integer.BYTES;
+        MemoryUtil.memPutInt(at, v0);
+        MemoryUtil.memPutInt(at + 4, v1);
+        size += 2;
+    }
+
+    public void add(int v0, int v1, int v2) {
+        if (size + 3 > capacity)
+            grow(size + 3);
+
+        long at = address + (long) size * Integer.BYTES;
+        MemoryUtil.memPutInt(at, v0);
+        MemoryUtil.memPutInt(at + 4, v1);
+        MemoryUtil.memPutInt(at + 8, v2);
+        size += 3;
+    }
+
+    public int get(int i) {
+        assert i < size;
+        return MemoryUtil.memGetInt(address + (long) i * Integer.BYTES);
+    }
+
+    public void set(int i, int v) {
+        assert i < size;
+        MemoryUtil.memPutInt(address + (long) i * Integer.BYTES, v);
+    }
+
+    // Copies [from, to) out, for algorithms that work on heap arrays
+    public int[] toArray(int from, int to) {
+        assert from <= to && to <= size;
+
+        int[] values = new int[to - from];
+        MemoryUtil.memIntBuffer(address + (long) from * Integer.BYTES, values.length).get(values);
+
+        return values;
+    }
+
+    // Overwrites values.length elements starting at index
+    public void set(int index, int[] values) {
+        assert index + values.length <= size;
+        MemoryUtil.memIntBuffer(address + (long) index * Integer.BYTES, values.length).put(values);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // New elements are left uninitialized
+    public void resize(int newSize) {
+        if (newSize > capacity)
+            grow(newSize);
+
+        size = newSize;
+    }
+
+    public IntBuffer buffer() {
+        return MemoryUtil.memIntBuffer(address, size);
+    }
+
+    public ByteBuffer bytes() {
+        return MemoryUtil.memByteBuffer(address, size * Integer.BYTES);
+    }
+
+    @Override
+    public long address() {
+        return address;
+    }
+
+    @Override
+    public long byteSize() {
+        return (long) size * Integer.BYTES;
+    }
+
+    @Override
+    public void free() {
+        if (address == NULL)
+            return;
+
+        MemoryUtil.nmemFree(address);
+        address = NULL;
+        capacity = 0;
+        size = 0;
+    }
+
+    @Override
+    public void close() {
+        free();
+    }
+
+    private void grow(int minCapacity) {
+        assert address != NULL : "use after free";
+
+        capacity = Math.max(minCapacity, capacity * 2);
+        address = MemoryUtil.nmemReallocChecked(address, (long) capacity * Integer.BYTES);
+    }
+}
@@ -0,0 +1,24 @@
+package engine.memory;
+
+import java.util.ArrayList;
+
+/**
+ * Groups off-heap allocations that die together (e.g. everything a loader builds before the upload),
+ * closing the arena frees all of them
+ */
+public class Native_Arena implements AutoCloseable {
+    private final ArrayList<Native_Memory> allocations = new ArrayList<>();
+
+    public <T extends Native_Memory> T register(T memory) {
+        allocations.add(memory);
+        return memory;
+    }
+
+    @Override
+    public void close() {
+        for (int i = allocations.size() - 1; i >= 0; i--)
+            allocations.get(i).free();
+
+        allocations.clear();
+    }
+}
@@ -0,0 +1,13 @@
+package engine.memory;
+
+/**
+ * Off-heap storage that can be handed to GL as is, see {@link engine.gfx.GPU_Buffer#alloc(Native_Memory, engine.gfx.GPU_Buffer_Type, engine.gfx.GPU_Buffer_Usage)}
+ */
+public interface Native_Memory {
+    long address();
+
+    // Bytes in use, not the capacity
+    long byteSize();
+
+    void free();
+}
@@ -0,0 +1,123 @@
+package engine.memory;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Growable off-heap short array. Must be freed, either directly or by the {@link Native_Arena} it was created in.
+ * The address changes when the list grows, so views returned by {@link #buffer()} only live until the next add.
+ */
+public class Short_Native_List implements Native_Memory, AutoCloseable {
+    private long address;
+    private int capacity;
+    private int size;
+
+    public Short_Native_List(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+        this.address = MemoryUtil.nmemAllocChecked((long) this.capacity * Short.BYTES);
+    }
+
+    public Short_Native_List(Native_Arena arena, int capacity) {
+        this(capacity);
+        arena.register(this);
+    }
+
+    public void add(short v0) {
+        if (size == capacity)
+            grow(size + 1);
+
+        MemoryUtil.memPutShort(address + (long) size++ * Short.BYTES, v0);
+    }
+
+    public void add(short v0, short v1) {
+        if (size + 2 > capacity)
+            grow(size + 2);
+
+        long at = address + (long) size * Short.BYTES;
+        MemoryUtil.memPutShort(at, v0);
+        MemoryUtil.memPutShort(at + 2, v1);
+        size += 2;
+    }
+
+    public void add(short v0, short v1, short v2) {
+        if (size + 3 > capacity)
+            grow(size + 3);
+
+        long at = address + (long) size * Short.BYTES;
+        MemoryUtil.memPutShort(at, v0);
+        MemoryUtil.memPutShort(at + 2, v1);
+        MemoryUtil.memPutShort(at + 4, v2);
+        size += 3;
+    }
+
+    public short get(int i) {
+        assert i < size;
+        return MemoryUtil.memGetShort(address + (long) i * Short.BYTES);
+    }
+
+    public void set(int i, short v) {
+        assert i < size;
+        MemoryUtil.memPutShort(address + (long) i * Short.BYTES, v);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // New elements are left uninitialized
+    public void resize(int newSize) {
+        if (newSize > capacity)
+            grow(newSize);
+
+        size = newSize;
+    }
+
+    public ShortBuffer buffer() {
+        return MemoryUtil.memShortBuffer(address, size);
+    }
+
+    public ByteBuffer bytes() {
+        return MemoryUtil.memByteBuffer(address, size * Short.BYTES);
+    }
+
+    @Override
+    public long address() {
+        return address;
+    }
+
+    @Override
+    public long byteSize() {
+        return (long) size * Short.BYTES;
+    }
+
+    @Override
+    public void free() {
+        if (address == NULL)
+            return;
+
+        MemoryUtil.nmemFree(address);
+        address = NULL;
+        capacity = 0;
+        size = 0;
+    }
+
+    @Override
+    public void close() {
+        free();
+    }
+
+    private void grow(int minCapacity) {
+        assert address != NULL : "use after free";
+
+        capacity = Math.max(minCapacity, capacity * 2);
+        address = MemoryUtil.nmemReallocChecked(address, (long) capacity * Short.BYTES);
+    }
+}
@@ -0,0 +1,394 @@
+package engine.memory;
+
+import java.util.Arrays;
+
+/**
+ * <h1>
+ *     Tlsf_Allocator
+ * </h1>
+ * <h3>
+ *     Two level segregated fit suballocator of a range of units, pure bookkeeping, owns no memory
+ * </h3>
+ * <p>
+ *     Units are whatever the caller counts in (vertices, indices, bytes). Free blocks are kept in lists by size
+ *     class, a power of two split into {@link #SECOND_LEVEL_COUNT} linear steps, with a bitmap per level, so
+ *     allocation and freeing take constant time. Freed blocks merge with free neighbours right away.
+ * </p>
+ * <p>
+ *     Allocations are identified by handles that stay valid until freed, the offset behind a handle only changes
+ *     in {@link #defragment}, which packs everything to the front and reports where each allocation went.
+ * </p>
+ */
+public class Tlsf_Allocator {
+    public static final int SECOND_LEVEL_BITS = 4;
+    public static final int SECOND_LEVEL_COUNT = 1 << SECOND_LEVEL_BITS;
+
+    private static final int FIRST_LEVEL_COUNT = Long.SIZE - SECOND_LEVEL_BITS;
+    private static final int NONE = -1;
+
+    /**
+     * Called by {@link #defragment} for every allocation in increasing offset order, {@code from == to} for the ones
+     * that stay. Moves only go down, but a range can overlap its old place, copies inside one buffer must allow that
+     */
+    public interface Relocation {
+        void move(int handle, long from, long to, long size);
+    }
+
+    private long capacity;
+    private long used;
+    private int allocations;
+
+    // Blocks, live or free, tile the whole range, linked in address order
+    private long[] offsets;
+    private long[] sizes;
+    private boolean[] free;
+    private int[] previous;
+    private int[] next;
+    private int[] previousFree;
+    private int[] nextFree;
+
+    private int firstBlock;
+    private int lastBlock;
+
+    // Recycled block ids, chained through next
+    private int unusedBlocks = NONE;
+    private int blockCount;
+
+    private long firstLevelMap;
+    private final int[] secondLevelMaps = new int[FIRST_LEVEL_COUNT];
+    private final int[] heads = new int[FIRST_LEVEL_COUNT * SECOND_LEVEL_COUNT];
+
+    public Tlsf_Allocator(long capacity) {
+        assert capacity > 0;
+
+        int initialBlocks = 64;
+        offsets = new long[initialBlocks];
+        sizes = new long[initialBlocks];
+        free = new boolean[initialBlocks];
+        previous = new int[initialBlocks];
+        next = new int[initialBlocks];
+        previousFree = new int[initialBlocks];
+        nextFree = new int[initialBlocks];
+
+        Arrays.fill(heads, NONE);
+
+        this.capacity = capacity;
+
+        int block = newBlock(0, capacity);
+        previous[block] = NONE;
+        next[block] = NONE;
+        firstBlock = lastBlock = block;
+
+        insertFree(block);
+    }
+
+    /**
+     * @return handle of the allocation, or -1 if there's no free block big enough
+     */
+    public int allocate(long size) {
+        assert size > 0;
+
+        int block = findFree(size);
+        if (block == NONE)
+            return NONE;
+
+        removeFree(block);
+
+        long remainder = sizes[block] - size;
+        if (remainder > 0) {
+            int rest = newBlock(offsets[block] + size, remainder);
+
+            linkAfter(block, rest);
+            sizes[block] = size;
+            insertFree(rest);
+        }
+
+        free[block] = false;
+        used += size;
+        allocations++;
+
+        return block;
+    }
+
+    public void free(int handle) {
+        assert !free[handle] : "double free";
+
+        used -= sizes[handle];
+        allocations--;
+
+        int block = handle;
+
+        int before = previous[block];
+        if (before != NONE && free[before]) {
+            removeFree(before);
+            sizes[before] += sizes[block];
+            unlink(block);
+            block = before;
+        }
+
+        int after = next[block];
+        if (after != NONE && free[after]) {
+            removeFree(after);
+            sizes[block] += sizes[after];
+            unlink(after);
+        }
+
+        insertFree(block);
+    }
+
+    public long offset(int handle) {
+        return offsets[handle];
+    }
+
+    public long size(int handle) {
+        return sizes[handle];
+    }
+
+    /**
+     * Extends the range at its end, existing allocations stay where they are
+     */
+    public void grow(long newCapacity) {
+        assert newCapacity >= capacity;
+
+        long extra = newCapacity - capacity;
+        if (extra == 0)
+            return;
+
+        capacity = newCapacity;
+
+        if (free[lastBlock]) {
+            removeFree(lastBlock);
+            sizes[lastBlock] += extra;
+            insertFree(lastBlock);
+            return;
+        }
+
+        int block = newBlock(capacity - extra, extra);
+        linkAfter(lastBlock, block);
+        insertFree(block);
+    }
+
+    /**
+     * Moves every allocation down to the lowest free offset, leaving one free block at the end.
+     * Handles stay valid
+     */
+    public void defragment(Relocation relocation) {
+        long offset = 0;
+
+        for (int block = firstBlock; block != NONE; ) {
+            int following = next[block];
+
+            if (free[block]) {
+                removeFree(block);
+                unlink(block);
+            } else {
+                relocation.move(block, offsets[block], offset, sizes[block]);
+                offsets[block] = offset;
+
+                offset += sizes[block];
+            }
+
+            block = following;
+        }
+
+        if (offset == capacity)
+            return;
+
+        int rest = newBlock(offset, capacity - offset);
+
+        if (lastBlock == NONE) {
+            previous[rest] = NONE;
+            next[rest] = NONE;
+            firstBlock = lastBlock = rest;
+        } else {
+            linkAfter(lastBlock, rest);
+        }
+
+        insertFree(rest);
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public long used() {
+        return used;
+    }
+
+    public long available() {
+        return capacity - used;
+    }
+
+    public int allocations() {
+        return allocations;
+    }
+
+    public long largestFreeBlock() {
+        if (firstLevelMap == 0)
+            return 0;
+
+        int firstLevel = 63 - Long.numberOfLeadingZeros(firstLevelMap);
+        int secondLevel = 31 - Integer.numberOfLeadingZeros(secondLevelMaps[firstLevel]);
+
+        long largest = 0;
+        for (int block = heads[firstLevel * SECOND_LEVEL_COUNT + secondLevel]; block != NONE; block = nextFree[block])
+            largest = Math.max(largest, sizes[block]);
+
+        return largest;
+    }
+
+    /**
+     * 1 - largest free block / free units, 0 when all the free space is in one piece
+     */
+    public float fragmentation() {
+        long available = available();
+        return available == 0 ? 0.0f : 1.0f - (float) largestFreeBlock() / available;
+    }
+
+    private int findFree(long size) {
+        // Rounded up to the next size class, so any block of the class found is big enough
+        long rounded = size;
+        int bits = 63 - Long.numberOfLeadingZeros(size);
+        if (bits >= SECOND_LEVEL_BITS)
+            rounded += (1L << (bits - SECOND_LEVEL_BITS)) - 1;
+
+        int found = NONE;
+
+        int list = listOf(rounded);
+        int firstLevel = list / SECOND_LEVEL_COUNT;
+        int secondLevel = list % SECOND_LEVEL_COUNT;
+
+        int secondMap = secondLevelMaps[firstLevel] & -1 << secondLevel;
+        if (secondMap == 0) {
+            long firstMap = firstLevel + 1 < FIRST_LEVEL_COUNT ? firstLevelMap & -1L << (firstLevel + 1) : 0;
+
+            if (firstMap != 0) {
+                firstLevel = Long.numberOfTrailingZeros(firstMap);
+                secondMap = secondLevelMaps[firstLevel];
+            }
+        }
+
+        if (secondMap != 0)
+            found = heads[firstLevel * SECOND_LEVEL_COUNT + Integer.numberOfTrailingZeros(secondMap)];
+
+        if (found != NONE)
+            return found;
+
+        // Blocks in the exact class of size can still fit, they're only skipped by the rounding
+        for (int block = heads[listOf(size)]; block != NONE; block = nextFree[block]) {
+            if (sizes[block] >= size)
+                return block;
+        }
+
+        return NONE;
+    }
+
+    private static int listOf(long size) {
+        int bits = 63 - Long.numberOfLeadingZeros(size);
+
+        if (bits < SECOND_LEVEL_BITS)
+            return (int) size;
+
+        int firstLevel = bits - SECOND_LEVEL_BITS + 1;
+        int secondLevel = (int) (size >>> (bits - SECOND_LEVEL_BITS)) - SECOND_LEVEL_COUNT;
+
+        return firstLevel * SECOND_LEVEL_COUNT + secondLevel;
+    }
+
+    private void insertFree(int block) {
+        int list = listOf(sizes[block]);
+
+        free[block] = true;
+        previousFree[block] = NONE;
+        nextFree[block] = heads[list];
+
+        if (heads[list] != NONE)
+            previousFree[heads[list]] = block;
+
+        heads[list] = block;
+
+        firstLevelMap |= 1L << (list / SECOND_LEVEL_COUNT);
+        secondLevelMaps[list / SECOND_LEVEL_COUNT] |= 1 << (list % SECOND_LEVEL_COUNT);
+    }
+
+    private void removeFree(int block) {
+        int list = listOf(sizes[block]);
+
+        if (previousFree[block] != NONE)
+            nextFree[previousFree[block]] = nextFree[block];
+        else
+            heads[list] = nextFree[block];
+
+        if (nextFree[block] != NONE)
+            previousFree[nextFree[block]] = previousFree[block];
+
+        if (heads[list] == NONE) {
+            int firstLevel = list / SECOND_LEVEL_COUNT;
+
+            secondLevelMaps[firstLevel] &= ~(1 << (list % SECOND_LEVEL_COUNT));
+            if (secondLevelMaps[firstLevel] == 0)
+                firstLevelMap &= ~(1L << firstLevel);
+        }
+
+        free[block] = false;
+    }
+
+    private void linkAfter(int block, int added) {
+        previous[added] = block;
+        next[added] = next[block];
+
+        if (next[block] != NONE)
+            previous[next[block]] = added;
+        else
+            lastBlock = added;
+
+        next[block] = added;
+    }
+
+    // Takes the block out of the address order and recycles its id
+    private void unlink(int block) {
+        if (previous[block] != NONE)
+            next[previous[block]] = next[block];
+        else
+            firstBlock = next[block];
+
+        if (next[block] != NONE)
+            previous[next[block]] = previous[block];
+        else
+            lastBlock = previous[block];
+
+        free[block] = false;
+        next[block] = unusedBlocks;
+        unusedBlocks = block;
+    }
+
+    private int newBlock(long offset, long size) {
+        int block;
+
+        if (unusedBlocks != NONE) {
+            block = unusedBlocks;
+            unusedBlocks = next[block];
+        } else {
+            if (blockCount == offsets.length)
+                growBlocks(blockCount * 2);
+
+            block = blockCount++;
+        }
+
+        offsets[block] = offset;
+        sizes[block] = size;
+        free[block] = false;
+
+        return block;
+    }
+
+    private void growBlocks(int newLength) {
+        offsets = Arrays.copyOf(offsets, newLength);
+        sizes = Arrays.copyOf(sizes, newLength);
+        free = Arrays.copyOf(free, newLength);
+        previous = Arrays.copyOf(previous, newLength);
+        next = Arrays.copyOf(next, newLength);
+        previousFree = Arrays.copyOf(previousFree, newLength);
+        nextFree = Arrays.copyOf(nextFree, newLength);
+    }
+}
@@ -0,0 +1,94 @@
+package engine.mesh;
+
+import engine.gfx.Lod_Chain;
+import engine.memory.Int_Native_List;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <h3>
+ *     Builds discrete LOD chains with {@link Mesh_Simplifier}
+ * </h3>
+ * <p>
+ *     Every level is simplified from the full resolution mesh, not from the previous level, so levels don't
+ *     depend on each other and all of them (of all meshes) run in parallel. The levels share one vertex buffer,
+ *     their index ranges are appended after the original ones.
+ * </p>
+ */
+public final class Lod_Builder {
+    // Fraction of the original triangles kept by each level
+    public static final float[] DEFAULT_RATIOS = { 0.5f, 0.25f, 0.12f, 0.06f };
+
+    // Object space, no level may move the surface further than this
+    public static final float DEFAULT_MAX_ERROR = Float.MAX_VALUE;
+
+    private Lod_Builder() {}
+
+    public static Mesh_Data build(Mesh_Data mesh, float[] ratios) {
+        return buildAll(List.of(mesh), ratios, DEFAULT_MAX_ERROR, ForkJoinPool.commonPool()).get(0);
+    }
+
+    public static List<Mesh_Data> buildAll(List<Mesh_Data> meshes, float[] ratios, float maxError, ForkJoinPool pool) {
+        Mesh_Simplifier.Result[][] levels = new Mesh_Simplifier.Result[meshes.size()][ratios.length];
+        List<RecursiveAction> tasks = new ArrayList<>(meshes.size() * ratios.length);
+
+        for (int m = 0; m < meshes.size(); m++) {
+            for (int l = 0; l < ratios.length; l++) {
+                Mesh_Data mesh = meshes.get(m);
+                int target = Math.round(mesh.triangleCount() * ratios[l]) * 3;
+                int meshIndex = m, level = l;
+
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        levels[meshIndex][level] = Mesh_Simplifier.simplify(mesh, target, maxError);
+                    }
+                });
+            }
+        }
+
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        List<Mesh_Data> result = new ArrayList<>(meshes.size());
+        for (int m = 0; m < meshes.size(); m++)
+            result.add(withLevels(meshes.get(m), levels[m]));
+
+        return result;
+    }
+
+    private static Mesh_Data withLevels(Mesh_Data mesh, Mesh_Simplifier.Result[] levels) {
+        int baseFirst = mesh.lods.firstIndices()[0];
+        int baseCount = mesh.lods.counts()[0];
+
+        int[] firstIndices = new int[levels.length + 1];
+        int[] counts = new int[levels.length + 1];
+        float[] errors = new float[levels.length + 1];
+
+        counts[0] = baseCount;
+        int total = baseCount;
+
+        for (int l = 0; l < levels.length; l++) {
+            firstIndices[l + 1] = total;
+            counts[l + 1] = levels[l].indices().length;
+            errors[l + 1] = levels[l].error();
+            total += counts[l + 1];
+        }
+
+        Int_Native_List indices = new Int_Native_List(mesh.arena, total);
+        indices.resize(total);
+
+        indices.set(0, mesh.indices.toArray(baseFirst, baseFirst + baseCount));
+        for (int l = 0; l < levels.length; l++)
+            indices.set(firstIndices[l + 1], levels[l].indices());
+
+        return new Mesh_Data(mesh.arena, mesh.positions, mesh.uvs, mesh.normals, indices, new Lod_Chain(firstIndices, counts, errors));
+    }
+}
@@ -0,0 +1,363 @@
+package engine.mesh;
+
+import engine.gfx.*;
+import engine.memory.Int_Native_List;
+import engine.memory.Native_Arena;
+import engine.memory.Short_Native_List;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * <h1>
+ *     Mesh_Cache
+ * </h1>
+ * <h3>
+ *     Binary .vmesh container holding the final vertex streams and index buffer of a mesh
+ * </h3>
+ * <p>
+ *     Everything is stored in native byte order and 16 byte aligned, so a cached mesh is loaded by mapping
+ *     the file and handing slices of it straight to {@link GPU_Buffer#alloc(ByteBuffer, GPU_Buffer_Type, GPU_Buffer_Usage)}.
+ *     The source file's size and CRC32C are kept in the header together with a caller defined variant (e.g. which
+ *     {@link Mesh_Optimizer} passes ran), any mismatch means the cache is stale.
+ * </p>
+ * <pre>
+ * int  magic, version, byteOrder, indexType, indicesCount, buffersCount, attrsCount, variant
+ * long sourceSize, sourceHash
+ * buffersCount x { int stride, int reserved, long offset, long length }
+ * attrsCount   x { int bufferIndex, int vertexType }
+ * int  lodsCount, reserved
+ * lodsCount    x { int firstIndex, int count, float error, int reserved }
+ * float positionOffsetX, positionOffsetY, positionOffsetZ, positionScale
+ * float minX, minY, minZ, maxX, maxY, maxZ, centerX, centerY, centerZ, radius, int reserved[2]
+ * long indicesOffset, indicesLength
+ * ...  sections, each 16 byte aligned
+ * </pre>
+ */
+public final class Mesh_Cache {
+    public static final String EXTENSION = ".vmesh";
+
+    public static final int MAGIC = 'V' | 'M' << 8 | 'S' << 16 | 'H' << 24;
+    // Bump whenever the header changes or Vertex_Type / Index_Type get reordered, ordinals are stored
+    public static final int VERSION = 5;
+
+    private static final int LITTLE_ENDIAN = 1;
+    private static final int BIG_ENDIAN = 2;
+
+    private static final int ALIGNMENT = 16;
+
+    private Mesh_Cache() {}
+
+    /**
+     * Everything needed to create a Triangle_Mesh, the buffers are slices of the mapped cache file or views of the
+     * native streams of a {@link Mesh_Data}
+     */
+    public record Entry(
+            Triangle_Mesh_Layout layout,
+            ByteBuffer[] vertexStreams,
+            ByteBuffer indices,
+            Index_Type indexType,
+            int indicesCount,
+            Lod_Chain lods,
+            Position_Decode positionDecode,
+            Bounds bounds) {
+
+        public Triangle_Mesh upload() {
+            int[] vertexBuffers = new int[vertexStreams.length];
+            for (int i = 0; i < vertexBuffers.length; i++)
+                vertexBuffers[i] = GPU_Buffer.alloc(vertexStreams[i], GPU_Buffer_Type.Vertex_Buffer, GPU_Buffer_Usage.Immutable);
+
+            Triangle_Mesh mesh = new Triangle_Mesh(
+                    vertexBuffers,
+                    GPU_Buffer.alloc(indices, GPU_Buffer_Type.Index_Buffer, GPU_Buffer_Usage.Immutable),
+                    indicesCount,
+                    indexType,
+                    layout
+            );
+            mesh.setLods(lods);
+            mesh.setPositionDecode(positionDecode);
+            mesh.setBounds(bounds);
+
+            return mesh;
+        }
+
+        public Arena_Mesh uploadTo(Geometry_Arena arena) {
+            return arena.add(vertexStreams, layout, indices, indexType, indicesCount, lods, positionDecode);
+        }
+    }
+
+    // "res/models/homer.obj" -> "res/models/homer.obj.vmesh"
+    public static Path pathFor(Path source) {
+        return source.resolveSibling(source.getFileName() + EXTENSION);
+    }
+
+    public static long hash(ByteBuffer source) {
+        CRC32C crc = new CRC32C();
+        crc.update(source.duplicate());
+
+        return crc.getValue();
+    }
+
+    /**
+     * @return null if there's no cache yet, or it's stale, or was written by another version / byte order, or any
+     *         count, type or section in it doesn't fit the file, so a truncated or corrupted cache is just rebuilt
+     */
+    public static Entry read(Path path, long sourceSize, long sourceHash, int variant) throws IOException {
+        if (!Files.isRegularFile(path))
+            return null;
+
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        data.order(ByteOrder.nativeOrder());
+
+        if (data.limit() < 48 ||
+            data.getInt(0) != MAGIC ||
+            data.getInt(4) != VERSION ||
+            data.getInt(8) != nativeOrderTag() ||
+            data.getInt(28) != variant ||
+            data.getLong(32) != sourceSize ||
+            data.getLong(40) != sourceHash)
+                return null;
+
+        int indexTypeOrdinal = data.getInt(12);
+        int indicesCount = data.getInt(16);
+        int buffersCount = data.getInt(20);
+        int attrsCount = data.getInt(24);
+
+        if (indexTypeOrdinal < 0 || indexTypeOrdinal >= Index_Type.values().length ||
+            indicesCount < 0 || buffersCount < 0 || attrsCount < 0 ||
+            48 + buffersCount * 24L + attrsCount * 8L + 8 > data.limit())
+                return null;
+
+        Index_Type indexType = Index_Type.values()[indexTypeOrdinal];
+
+        int pos = 48;
+
+        Buffer_Layout[] buffers = new Buffer_Layout[buffersCount];
+        ByteBuffer[] vertexStreams = new ByteBuffer[buffersCount];
+
+        for (int i = 0; i < buffersCount; i++, pos += 24) {
+            int stride = data.getInt(pos);
+            vertexStreams[i] = slice(data, data.getLong(pos + 8), data.getLong(pos + 16));
+
+            if (stride <= 0 || vertexStreams[i] == null || vertexStreams[i].remaining() % stride != 0)
+                return null;
+
+            buffers[i] = new Buffer_Layout(stride);
+        }
+
+        Attribute_Layout[] attrs = new Attribute_Layout[attrsCount];
+        Vertex_Type[] types = Vertex_Type.values();
+
+        for (int i = 0; i < attrsCount; i++, pos += 8) {
+            int bufferIndex = data.getInt(pos);
+            int type = data.getInt(pos + 4);
+
+            if (bufferIndex < 0 || bufferIndex >= buffersCount || type < 0 || type >= types.length)
+                return null;
+
+            attrs[i] = new Attribute_Layout(bufferIndex, types[type]);
+        }
+
+        int lodsCount = data.getInt(pos);
+        pos += 8;
+
+        if (lodsCount < 1 || pos + lodsCount * 16L + 16 + 48 + 16 > data.limit())
+            return null;
+
+        int[] firstIndices = new int[lodsCount];
+        int[] counts = new int[lodsCount];
+        float[] errors = new float[lodsCount];
+
+        for (int i = 0; i < lodsCount; i++, pos += 16) {
+            firstIndices[i] = data.getInt(pos);
+            counts[i] = data.getInt(pos + 4);
+            errors[i] = data.getFloat(pos + 8);
+
+            if (firstIndices[i] < 0 || counts[i] < 0 || (long) firstIndices[i] + counts[i] > indicesCount)
+                return null;
+        }
+
+        Position_Decode positionDecode = new Position_Decode(
+                data.getFloat(pos), data.getFloat(pos + 4), data.getFloat(pos + 8), data.getFloat(pos + 12));
+        pos += 16;
+
+        Bounds bounds = new Bounds(
+                data.getFloat(pos), data.getFloat(pos + 4), data.getFloat(pos + 8),
+                data.getFloat(pos + 12), data.getFloat(pos + 16), data.getFloat(pos + 20),
+                data.getFloat(pos + 24), data.getFloat(pos + 28), data.getFloat(pos + 32),
+                data.getFloat(pos + 36));
+        pos += 48;
+
+        ByteBuffer indices = slice(data, data.getLong(pos), data.getLong(pos + 8));
+        if (indices == null || indices.remaining() != (long) indicesCount * indexType.size)
+            return null;
+
+        Triangle_Mesh_Layout layout;
+        try {
+            layout = new Triangle_Mesh_Layout(buffers, attrs);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        return new Entry(
+                layout,
+                vertexStreams,
+                indices,
+                indexType,
+                indicesCount,
+                new Lod_Chain(firstIndices, counts, errors),
+                positionDecode,
+                bounds
+        );
+    }
+
+    /**
+     * Written to a temporary file first and then moved over, a crash never leaves half a cache behind
+     */
+    public static void write(Path path, long sourceSize, long sourceHash, int variant, Entry entry) throws IOException {
+        Triangle_Mesh_Layout layout = entry.layout();
+        int buffersCount = entry.vertexStreams().length;
+        int attrsCount = layout.attrs.length;
+        Lod_Chain lods = entry.lods();
+
+        assert layout.buffers.length == buffersCount;
+
+        long headerSize = align(48 + buffersCount * 24L + attrsCount * 8L + 8 + lods.levels() * 16L + 16 + 48 + 16);
+
+        long[] offsets = new long[buffersCount + 1];
+        long end = headerSize;
+
+        for (int i = 0; i < buffersCount; i++) {
+            offsets[i] = end;
+            end = align(end + entry.vertexStreams()[i].remaining());
+        }
+        offsets[buffersCount] = end;
+        end += entry.indices().remaining();
+
+        ByteBuffer header = ByteBuffer.allocate((int) headerSize).order(ByteOrder.nativeOrder());
+        header
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(nativeOrderTag())
+                .putInt(entry.indexType().ordinal())
+                .putInt(entry.indicesCount())
+                .putInt(buffersCount)
+                .putInt(attrsCount)
+                .putInt(variant)
+                .putLong(sourceSize)
+                .putLong(sourceHash);
+
+        for (int i = 0; i < buffersCount; i++) {
+            header
+                    .putInt(layout.buffers[i].stride())
+                    .putInt(0)
+                    .putLong(offsets[i])
+                    .putLong(entry.vertexStreams()[i].remaining());
+        }
+
+        for (Attribute_Layout attr : layout.attrs)
+            header.putInt(attr.bufferIndex()).putInt(attr.type().ordinal());
+
+        header.putInt(lods.levels()).putInt(0);
+        for (int i = 0; i < lods.levels(); i++)
+            header.putInt(lods.firstIndices()[i]).putInt(lods.counts()[i]).putFloat(lods.errors()[i]).putInt(0);
+
+        Position_Decode decode = entry.positionDecode();
+        header.putFloat(decode.offsetX()).putFloat(decode.offsetY()).putFloat(decode.offsetZ()).putFloat(decode.scale());
+
+        Bounds bounds = entry.bounds();
+        header
+                .putFloat(bounds.minX()).putFloat(bounds.minY()).putFloat(bounds.minZ())
+                .putFloat(bounds.maxX()).putFloat(bounds.maxY()).putFloat(bounds.maxZ())
+                .putFloat(bounds.centerX()).putFloat(bounds.centerY()).putFloat(bounds.centerZ())
+                .putFloat(bounds.radius())
+                .putInt(0).putInt(0);
+
+        header.putLong(offsets[buffersCount]).putLong(entry.indices().remaining());
+        header.clear();
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header, 0);
+
+            for (int i = 0; i < buffersCount; i++)
+                writeFully(channel, entry.vertexStreams()[i].duplicate(), offsets[i]);
+
+            writeFully(channel, entry.indices().duplicate(), offsets[buffersCount]);
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Uncompressed float streams, ready for {@link Entry#upload()}. The buffers are views of the mesh's native
+     * lists, nothing is copied, so the entry is only valid until the mesh is closed. See {@link Vertex_Quantizer}
+     * for the packed ones
+     */
+    public static Entry entryOf(Mesh_Data mesh) {
+        Index_Type indexType = Index_Type.forVertexCount(mesh.vertexCount());
+
+        return new Entry(
+                Mesh_Data.layout(),
+                new ByteBuffer[] {
+                        mesh.positions.bytes(),
+                        mesh.uvs.bytes(),
+                        mesh.normals.bytes()
+                },
+                toIndexBytes(mesh.indices, indexType, mesh.arena),
+                indexType,
+                mesh.indices.size(),
+                mesh.lods,
+                Position_Decode.IDENTITY,
+                Bounds.of(mesh.positions.buffer())
+        );
+    }
+
+    // 32 bit indices are used in place, 16 bit ones are narrowed into a list in the arena
+    static ByteBuffer toIndexBytes(Int_Native_List indices, Index_Type type, Native_Arena arena) {
+        if (type == Index_Type.UInt32)
+            return indices.bytes();
+
+        Short_Native_List narrowed = new Short_Native_List(arena, indices.size());
+        narrowed.resize(indices.size());
+
+        for (int i = 0; i < indices.size(); i++)
+            narrowed.set(i, (short) indices.get(i));
+
+        return narrowed.bytes();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining())
+            position += channel.write(data, position);
+    }
+
+    // Null if the section isn't inside the file
+    private static ByteBuffer slice(ByteBuffer data, long offset, long length) {
+        if (offset < 0 || length < 0 || length > data.limit() - offset)
+            return null;
+
+        return data.slice((int) offset, (int) length).order(ByteOrder.nativeOrder());
+    }
+
+    private static long align(long value) {
+        return (value + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private static int nativeOrderTag() {
+        return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? LITTLE_ENDIAN : BIG_ENDIAN;
+    }
+}
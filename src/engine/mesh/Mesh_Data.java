@@ -0,0 +1,67 @@
+package engine.mesh;
+
+import engine.gfx.*;
+import engine.memory.Float_Native_List;
+import engine.memory.Int_Native_List;
+import engine.memory.Native_Arena;
+
+/**
+ * CPU side result of a model loader: three separate vertex streams (positions, uvs, normals) and
+ * a triangle list indexing them. Levels of detail, if any, are consecutive ranges of {@code indices}.
+ * Nothing here touches GL until {@link #upload()} is called.
+ * <p>
+ * The streams are off-heap and live in {@link #arena}. Meshes derived from this one (LODs, optimized orders)
+ * allocate into the same arena and may share streams with it, so closing any of them frees all of them.
+ * </p>
+ */
+public class Mesh_Data implements AutoCloseable {
+    public final Native_Arena arena;
+    public final Float_Native_List positions;
+    public final Float_Native_List uvs;
+    public final Float_Native_List normals;
+    public final Int_Native_List indices;
+    public final Lod_Chain lods;
+
+    public Mesh_Data(Native_Arena arena, Float_Native_List positions, Float_Native_List uvs, Float_Native_List normals, Int_Native_List indices) {
+        this(arena, positions, uvs, normals, indices, Lod_Chain.single(indices.size()));
+    }
+
+    public Mesh_Data(Native_Arena arena, Float_Native_List positions, Float_Native_List uvs, Float_Native_List normals, Int_Native_List indices, Lod_Chain lods) {
+        assert positions.size() % 3 == 0;
+        assert uvs.size() / 2 == positions.size() / 3;
+        assert normals.size() == positions.size();
+
+        this.arena = arena;
+        this.positions = positions;
+        this.uvs = uvs;
+        this.normals = normals;
+        this.indices = indices;
+        this.lods = lods;
+    }
+
+    public int vertexCount() {
+        return positions.size() / 3;
+    }
+
+    // Of the full resolution level
+    public int triangleCount() {
+        return lods.counts()[0] / 3;
+    }
+
+    public static Triangle_Mesh_Layout layout() {
+        return Triangle_Mesh_Layout.separate(Vertex_Type.Float3, Vertex_Type.Float2, Vertex_Type.Float3);
+    }
+
+    /**
+     * The streams go to the driver straight from their native addresses, see {@link Mesh_Cache#entryOf}.
+     * The mesh stays open, the caller still closes it
+     */
+    public Triangle_Mesh upload() {
+        return Mesh_Cache.entryOf(this).upload();
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+}
@@ -0,0 +1,70 @@
+package engine.mesh;
+
+import engine.memory.Int_Native_List;
+
+/**
+ * <h3>
+ *     Post load optimization pipeline: vertex cache order -> (optional) overdraw cluster sort -> vertex fetch order
+ * </h3>
+ * <p>
+ *     Only the order of triangles and vertices changes, the rendered result is the same. Each LOD level is
+ *     reordered on its own, so the ranges of the {@link engine.gfx.Lod_Chain} stay valid. Stats are for the
+ *     full resolution level.
+ * </p>
+ */
+public final class Mesh_Optimizer {
+    public record Options(boolean vertexCache, boolean overdraw, boolean vertexFetch) {
+        public static final Options NONE = new Options(false, false, false);
+        public static final Options ALL = new Options(true, true, true);
+
+        public boolean any() {
+            return vertexCache || overdraw || vertexFetch;
+        }
+
+        // Stored in the mesh cache, a cache built with other options is treated as stale
+        public int cacheKey() {
+            return (vertexCache ? 1 : 0) | (overdraw ? 2 : 0) | (vertexFetch ? 4 : 0);
+        }
+    }
+
+    public record Result(Mesh_Data mesh, Vertex_Cache_Simulator.Stats before, Vertex_Cache_Simulator.Stats after) {
+        @Override
+        public String toString() {
+            return "before: " + before + ", after: " + after;
+        }
+    }
+
+    private Mesh_Optimizer() {}
+
+    public static Result optimize(Mesh_Data mesh, Options options) {
+        Vertex_Cache_Simulator.Stats before = Vertex_Cache_Simulator.simulate(baseLevel(mesh), mesh.vertexCount());
+
+        Int_Native_List indices = new Int_Native_List(mesh.arena, mesh.indices.size());
+        indices.resize(mesh.indices.size());
+
+        for (int l = 0; l < mesh.lods.levels(); l++) {
+            int first = mesh.lods.firstIndices()[l];
+            int[] level = mesh.indices.toArray(first, first + mesh.lods.counts()[l]);
+
+            if (options.vertexCache())
+                level = Vertex_Cache_Optimizer.optimize(level, mesh.vertexCount());
+
+            if (options.overdraw())
+                level = Overdraw_Optimizer.optimize(level, mesh.positions, Vertex_Cache_Simulator.DEFAULT_CACHE_SIZE);
+
+            indices.set(first, level);
+        }
+
+        Mesh_Data result = new Mesh_Data(mesh.arena, mesh.positions, mesh.uvs, mesh.normals, indices, mesh.lods);
+
+        if (options.vertexFetch())
+            result = Vertex_Fetch_Optimizer.optimize(result);
+
+        return new Result(result, before, Vertex_Cache_Simulator.simulate(baseLevel(result), result.vertexCount()));
+    }
+
+    private static int[] baseLevel(Mesh_Data mesh) {
+        int first = mesh.lods.firstIndices()[0];
+        return mesh.indices.toArray(first, first + mesh.lods.counts()[0]);
+    }
+}
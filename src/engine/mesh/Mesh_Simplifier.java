@@ -0,0 +1,493 @@
+package engine.mesh;
+
+import engine.memory.Float_Native_List;
+import engine.misc.Long_Int_Map;
+
+import java.util.Arrays;
+
+/**
+ * <h3>
+ *     Quadric error metric edge collapse (Garland-Heckbert), done in passes of independent collapses
+ * </h3>
+ * <p>
+ *     Topology is taken from positions only, so seams (same position, different uv / normal) don't stop the
+ *     simplification, and collapses happen onto existing positions, so no new vertices are ever created.
+ *     Each corner moving with a collapse is retargeted to the vertex at the destination with the closest
+ *     attributes, that distance is also part of the collapse cost. Open borders get extra constraint planes
+ *     and may only slide along themselves.
+ * </p>
+ * <p>
+ *     The input mesh is never modified, so any number of levels can be simplified from it at the same time.
+ * </p>
+ */
+public final class Mesh_Simplifier {
+    public record Result(int[] indices, float error) {}
+
+    private static final double BORDER_WEIGHT = 10.0;
+    private static final double ATTRIBUTE_WEIGHT = 1.0;
+
+    // Collapses that turn a triangle more than ~78 degrees are rejected
+    private static final double MIN_NORMAL_COSINE = 0.2;
+
+    // Symmetric 4x4 matrix (10 values) + the sum of plane weights
+    private static final int QUADRIC_SIZE = 11;
+
+    private final Mesh_Data mesh;
+    private final Float_Native_List positions;
+    private final int vertexCount;
+
+    // vertex -> first vertex with the same position, that one stands for the position everywhere
+    private final int[] positionOf;
+
+    // position -> every vertex sharing it, CSR
+    private final int[] positionVerticesOffsets;
+    private final int[] positionVertices;
+
+    private final double[] quadrics;
+
+    private int[] triangles;
+    private boolean[] dead;
+    private int liveTriangles;
+
+    private int[] adjacencyOffsets;
+    private int[] adjacency;
+    private Long_Int_Map edges;
+    private boolean[] border;
+
+    private Mesh_Simplifier(Mesh_Data mesh) {
+        this.mesh = mesh;
+        this.positions = mesh.positions;
+        this.vertexCount = mesh.vertexCount();
+
+        positionOf = weldPositions();
+
+        positionVerticesOffsets = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++)
+            positionVerticesOffsets[positionOf[v] + 1]++;
+        for (int p = 0; p < vertexCount; p++)
+            positionVerticesOffsets[p + 1] += positionVerticesOffsets[p];
+
+        positionVertices = new int[vertexCount];
+        int[] fill = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            int p = positionOf[v];
+            positionVertices[positionVerticesOffsets[p] + fill[p]++] = v;
+        }
+
+        quadrics = new double[vertexCount * QUADRIC_SIZE];
+    }
+
+    /**
+     * Simplifies the full resolution level of {@code mesh}
+     *
+     * @param targetIndexCount stops once there are at most this many indices left
+     * @param maxError collapses with a bigger object space error are never done
+     */
+    public static Result simplify(Mesh_Data mesh, int targetIndexCount, float maxError) {
+        return new Mesh_Simplifier(mesh).run(targetIndexCount, maxError);
+    }
+
+    private Result run(int targetIndexCount, float maxError) {
+        int first = mesh.lods.firstIndices()[0];
+        triangles = mesh.indices.toArray(first, first + mesh.lods.counts()[0]);
+        liveTriangles = triangles.length / 3;
+        dead = new boolean[liveTriangles];
+
+        rebuildTopology();
+        initQuadrics();
+
+        double maxErrorSquared = (double) maxError * maxError;
+        double resultError = 0.0;
+
+        int[] candidatesFrom = new int[vertexCount];
+        int[] candidatesTo = new int[vertexCount];
+        double[] candidatesError = new double[vertexCount];
+        long[] order = new long[vertexCount];
+        boolean[] touched = new boolean[vertexCount];
+
+        while (liveTriangles * 3 > targetIndexCount) {
+            int candidates = 0;
+
+            for (int p = 0; p < vertexCount; p++) {
+                if (positionOf[p] != p || adjacencyOffsets[p] == adjacencyOffsets[p + 1])
+                    continue;
+
+                int bestTo = -1;
+                double bestCost = Double.MAX_VALUE;
+                double bestError = 0.0;
+
+                for (int a = adjacencyOffsets[p]; a < adjacencyOffsets[p + 1]; a++) {
+                    int t = adjacency[a];
+
+                    for (int k = 0; k < 3; k++) {
+                        int q = positionOf[triangles[t * 3 + k]];
+                        if (q == p || (border[p] && !isBorderEdge(p, q)))
+                            continue;
+
+                        double error = collapseError(p, q);
+                        double cost = error + ATTRIBUTE_WEIGHT * attributeDistance(p, q) * distanceSquared(p, q);
+
+                        if (cost < bestCost) {
+                            bestCost = cost;
+                            bestError = error;
+                            bestTo = q;
+                        }
+                    }
+                }
+
+                if (bestTo < 0 || bestError > maxErrorSquared)
+                    continue;
+
+                candidatesFrom[candidates] = p;
+                candidatesTo[candidates] = bestTo;
+                candidatesError[candidates] = bestError;
+
+                // Costs are never negative, so their float bits sort like the values
+                float sortCost = (float) Math.min(bestCost, Float.MAX_VALUE);
+                order[candidates] = (long) Float.floatToIntBits(sortCost) << 32 | candidates;
+                candidates++;
+            }
+
+            Arrays.sort(order, 0, candidates);
+            Arrays.fill(touched, false);
+
+            int collapses = 0;
+
+            for (int i = 0; i < candidates && liveTriangles * 3 > targetIndexCount; i++) {
+                int candidate = (int) order[i];
+                int p = candidatesFrom[candidate];
+                int q = candidatesTo[candidate];
+
+                if (touched[p] || touched[q] || flips(p, q))
+                    continue;
+
+                collapse(p, q, touched);
+
+                resultError = Math.max(resultError, candidatesError[candidate]);
+                collapses++;
+            }
+
+            if (collapses == 0)
+                break;
+
+            rebuildTopology();
+        }
+
+        int[] result = new int[liveTriangles * 3];
+        int written = 0;
+
+        for (int t = 0; t < dead.length; t++) {
+            if (dead[t])
+                continue;
+
+            result[written++] = triangles[t * 3];
+            result[written++] = triangles[t * 3 + 1];
+            result[written++] = triangles[t * 3 + 2];
+        }
+
+        return new Result(result, (float) Math.sqrt(resultError));
+    }
+
+    private void collapse(int p, int q, boolean[] touched) {
+        for (int a = adjacencyOffsets[p]; a < adjacencyOffsets[p + 1]; a++) {
+            int t = adjacency[a];
+            if (dead[t])
+                continue;
+
+            boolean hasQ = false;
+            for (int k = 0; k < 3; k++) {
+                int position = positionOf[triangles[t * 3 + k]];
+
+                hasQ |= position == q;
+                touched[position] = true;
+            }
+
+            if (hasQ) {
+                dead[t] = true;
+                liveTriangles--;
+                continue;
+            }
+
+            for (int k = 0; k < 3; k++) {
+                int v = triangles[t * 3 + k];
+
+                if (positionOf[v] == p)
+                    triangles[t * 3 + k] = closestVertex(v, q);
+            }
+        }
+
+        for (int i = 0; i < QUADRIC_SIZE; i++)
+            quadrics[q * QUADRIC_SIZE + i] += quadrics[p * QUADRIC_SIZE + i];
+    }
+
+    private boolean flips(int p, int q) {
+        float qx = positions.get(q * 3), qy = positions.get(q * 3 + 1), qz = positions.get(q * 3 + 2);
+
+        for (int a = adjacencyOffsets[p]; a < adjacencyOffsets[p + 1]; a++) {
+            int t = adjacency[a];
+            if (dead[t])
+                continue;
+
+            int p0 = positionOf[triangles[t * 3]];
+            int p1 = positionOf[triangles[t * 3 + 1]];
+            int p2 = positionOf[triangles[t * 3 + 2]];
+
+            if (p0 == q || p1 == q || p2 == q)
+                continue;
+
+            double[] before = normal(p0, p1, p2, -1, 0, 0, 0);
+            double[] after = normal(p0, p1, p2, p, qx, qy, qz);
+
+            double dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+            double lengths = Math.sqrt(
+                    (before[0] * before[0] + before[1] * before[1] + before[2] * before[2]) *
+                    (after[0] * after[0] + after[1] * after[1] + after[2] * after[2]));
+
+            if (dot <= MIN_NORMAL_COSINE * lengths)
+                return true;
+        }
+
+        return false;
+    }
+
+    // Unnormalized triangle normal, with position "replaced" moved to (x, y, z)
+    private double[] normal(int p0, int p1, int p2, int replaced, float x, float y, float z) {
+        double ax = p0 == replaced ? x : positions.get(p0 * 3), ay = p0 == replaced ? y : positions.get(p0 * 3 + 1), az = p0 == replaced ? z : positions.get(p0 * 3 + 2);
+        double bx = p1 == replaced ? x : positions.get(p1 * 3), by = p1 == replaced ? y : positions.get(p1 * 3 + 1), bz = p1 == replaced ? z : positions.get(p1 * 3 + 2);
+        double cx = p2 == replaced ? x : positions.get(p2 * 3), cy = p2 == replaced ? y : positions.get(p2 * 3 + 1), cz = p2 == replaced ? z : positions.get(p2 * 3 + 2);
+
+        double e1x = bx - ax, e1y = by - ay, e1z = bz - az;
+        double e2x = cx - ax, e2y = cy - ay, e2z = cz - az;
+
+        return new double[] {
+                e1y * e2z - e1z * e2y,
+                e1z * e2x - e1x * e2z,
+                e1x * e2y - e1y * e2x
+        };
+    }
+
+    private void rebuildTopology() {
+        adjacencyOffsets = new int[vertexCount + 1];
+
+        for (int t = 0; t < dead.length; t++) {
+            if (dead[t])
+                continue;
+
+            for (int k = 0; k < 3; k++)
+                adjacencyOffsets[positionOf[triangles[t * 3 + k]] + 1]++;
+        }
+
+        for (int p = 0; p < vertexCount; p++)
+            adjacencyOffsets[p + 1] += adjacencyOffsets[p];
+
+        adjacency = new int[adjacencyOffsets[vertexCount]];
+        int[] fill = new int[vertexCount];
+
+        edges = new Long_Int_Map(liveTriangles * 3);
+
+        for (int t = 0; t < dead.length; t++) {
+            if (dead[t])
+                continue;
+
+            for (int k = 0; k < 3; k++) {
+                int p = positionOf[triangles[t * 3 + k]];
+                int q = positionOf[triangles[t * 3 + (k + 1) % 3]];
+
+                adjacency[adjacencyOffsets[p] + fill[p]++] = t;
+                edges.getOrPut(edgeKey(p, q), 1);
+            }
+        }
+
+        border = new boolean[vertexCount];
+
+        for (int t = 0; t < dead.length; t++) {
+            if (dead[t])
+                continue;
+
+            for (int k = 0; k < 3; k++) {
+                int p = positionOf[triangles[t * 3 + k]];
+                int q = positionOf[triangles[t * 3 + (k + 1) % 3]];
+
+                if (edges.get(edgeKey(q, p), 0) == 0) {
+                    border[p] = true;
+                    border[q] = true;
+                }
+            }
+        }
+    }
+
+    private void initQuadrics() {
+        for (int t = 0; t < dead.length; t++) {
+            int p0 = positionOf[triangles[t * 3]];
+            int p1 = positionOf[triangles[t * 3 + 1]];
+            int p2 = positionOf[triangles[t * 3 + 2]];
+
+            double[] n = normal(p0, p1, p2, -1, 0, 0, 0);
+            double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+            if (length == 0.0)
+                continue;
+
+            double nx = n[0] / length, ny = n[1] / length, nz = n[2] / length;
+            double d = -(nx * positions.get(p0 * 3) + ny * positions.get(p0 * 3 + 1) + nz * positions.get(p0 * 3 + 2));
+            double area = length * 0.5;
+
+            addPlane(p0, nx, ny, nz, d, area);
+            addPlane(p1, nx, ny, nz, d, area);
+            addPlane(p2, nx, ny, nz, d, area);
+
+            // Border edges get a plane perpendicular to the face, so moving away from the border costs a lot
+            int[] corners = { p0, p1, p2 };
+
+            for (int k = 0; k < 3; k++) {
+                int p = corners[k];
+                int q = corners[(k + 1) % 3];
+
+                if (edges.get(edgeKey(q, p), 0) != 0)
+                    continue;
+
+                double ex = positions.get(q * 3) - positions.get(p * 3);
+                double ey = positions.get(q * 3 + 1) - positions.get(p * 3 + 1);
+                double ez = positions.get(q * 3 + 2) - positions.get(p * 3 + 2);
+
+                double sx = ey * nz - ez * ny;
+                double sy = ez * nx - ex * nz;
+                double sz = ex * ny - ey * nx;
+                double sideLength = Math.sqrt(sx * sx + sy * sy + sz * sz);
+                if (sideLength == 0.0)
+                    continue;
+
+                sx /= sideLength;
+                sy /= sideLength;
+                sz /= sideLength;
+
+                double sd = -(sx * positions.get(p * 3) + sy * positions.get(p * 3 + 1) + sz * positions.get(p * 3 + 2));
+                double weight = BORDER_WEIGHT * (ex * ex + ey * ey + ez * ez);
+
+                addPlane(p, sx, sy, sz, sd, weight);
+                addPlane(q, sx, sy, sz, sd, weight);
+            }
+        }
+    }
+
+    private void addPlane(int p, double a, double b, double c, double d, double weight) {
+        int i = p * QUADRIC_SIZE;
+
+        quadrics[i] += weight * a * a;
+        quadrics[i + 1] += weight * a * b;
+        quadrics[i + 2] += weight * a * c;
+        quadrics[i + 3] += weight * a * d;
+        quadrics[i + 4] += weight * b * b;
+        quadrics[i + 5] += weight * b * c;
+        quadrics[i + 6] += weight * b * d;
+        quadrics[i + 7] += weight * c * c;
+        quadrics[i + 8] += weight * c * d;
+        quadrics[i + 9] += weight * d * d;
+        quadrics[i + 10] += weight;
+    }
+
+    // Mean squared distance of q from the planes accumulated by p and q
+    private double collapseError(int p, int q) {
+        double x = positions.get(q * 3), y = positions.get(q * 3 + 1), z = positions.get(q * 3 + 2);
+        double weight = quadrics[p * QUADRIC_SIZE + 10] + quadrics[q * QUADRIC_SIZE + 10];
+
+        if (weight == 0.0)
+            return 0.0;
+
+        return Math.max(0.0, (evaluate(p, x, y, z) + evaluate(q, x, y, z)) / weight);
+    }
+
+    private double evaluate(int p, double x, double y, double z) {
+        int i = p * QUADRIC_SIZE;
+
+        return quadrics[i] * x * x + 2.0 * quadrics[i + 1] * x * y + 2.0 * quadrics[i + 2] * x * z + 2.0 * quadrics[i + 3] * x +
+               quadrics[i + 4] * y * y + 2.0 * quadrics[i + 5] * y * z + 2.0 * quadrics[i + 6] * y +
+               quadrics[i + 7] * z * z + 2.0 * quadrics[i + 8] * z +
+               quadrics[i + 9];
+    }
+
+    // Worst case over p's vertices of the attribute distance to their best match at q
+    private double attributeDistance(int p, int q) {
+        double worst = 0.0;
+
+        for (int i = positionVerticesOffsets[p]; i < positionVerticesOffsets[p + 1]; i++) {
+            int v = positionVertices[i];
+            worst = Math.max(worst, vertexDistance(v, closestVertex(v, q)));
+        }
+
+        return worst;
+    }
+
+    private int closestVertex(int v, int q) {
+        int best = q;
+        double bestDistance = Double.MAX_VALUE;
+
+        for (int i = positionVerticesOffsets[q]; i < positionVerticesOffsets[q + 1]; i++) {
+            int candidate = positionVertices[i];
+            double distance = vertexDistance(v, candidate);
+
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = candidate;
+            }
+        }
+
+        return best;
+    }
+
+    private double vertexDistance(int a, int b) {
+        Float_Native_List normals = mesh.normals;
+        Float_Native_List uvs = mesh.uvs;
+
+        double nx = normals.get(a * 3) - normals.get(b * 3);
+        double ny = normals.get(a * 3 + 1) - normals.get(b * 3 + 1);
+        double nz = normals.get(a * 3 + 2) - normals.get(b * 3 + 2);
+        double u = uvs.get(a * 2) - uvs.get(b * 2);
+        double v = uvs.get(a * 2 + 1) - uvs.get(b * 2 + 1);
+
+        return nx * nx + ny * ny + nz * nz + u * u + v * v;
+    }
+
+    private double distanceSquared(int p, int q) {
+        double x = positions.get(q * 3) - positions.get(p * 3);
+        double y = positions.get(q * 3 + 1) - positions.get(p * 3 + 1);
+        double z = positions.get(q * 3 + 2) - positions.get(p * 3 + 2);
+
+        return x * x + y * y + z * z;
+    }
+
+    private boolean isBorderEdge(int p, int q) {
+        boolean forward = edges.get(edgeKey(p, q), 0) != 0;
+        boolean backward = edges.get(edgeKey(q, p), 0) != 0;
+
+        return forward != backward;
+    }
+
+    private static long edgeKey(int p, int q) {
+        return (long) p << 32 | q;
+    }
+
+    private int[] weldPositions() {
+        int[] result = new int[vertexCount];
+        Long_Int_Map firstWithPosition = new Long_Int_Map(vertexCount);
+
+        for (int v = 0; v < vertexCount; v++) {
+            // + 0.0f turns -0.0 into 0.0
+            long x = Float.floatToIntBits(positions.get(v * 3) + 0.0f);
+            long y = Float.floatToIntBits(positions.get(v * 3 + 1) + 0.0f);
+            long z = Float.floatToIntBits(positions.get(v * 3 + 2) + 0.0f);
+
+            long key = x * 0x9E3779B97F4A7C15L ^ y * 0xC2B2AE3D27D4EB4FL ^ z * 0x165667B19E3779F9L;
+
+            int first = firstWithPosition.getOrPut(key, v);
+
+            // A hash collision between different positions just leaves the vertex on its own
+            boolean same = positions.get(first * 3) == positions.get(v * 3) &&
+                           positions.get(first * 3 + 1) == positions.get(v * 3 + 1) &&
+                           positions.get(first * 3 + 2) == positions.get(v * 3 + 2);
+
+            result[v] = same ? first : v;
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,128 @@
+package engine.mesh;
+
+import engine.memory.Float_Native_List;
+
+import java.util.Arrays;
+
+/**
+ * <h3>
+ *     Reorders clusters of an already cache optimized index buffer so that likely occluders are drawn first
+ * </h3>
+ * <p>
+ *     Tipsify style: the buffer is cut into clusters wherever the cache simulation restarts (a triangle misses
+ *     on all 3 vertices), so moving whole clusters around costs almost nothing in cache efficiency. Clusters
+ *     facing away from the mesh center are more likely to cover the rest, they go first.
+ * </p>
+ */
+public final class Overdraw_Optimizer {
+    private Overdraw_Optimizer() {}
+
+    public static int[] optimize(int[] indices, Float_Native_List positions, int cacheSize) {
+        int triangleCount = indices.length / 3;
+        int vertexCount = positions.size() / 3;
+
+        if (triangleCount == 0)
+            return indices.clone();
+
+        // Cluster starts, same FIFO model as Vertex_Cache_Simulator
+        int[] clusterStarts = new int[triangleCount + 1];
+        int clusterCount = 0;
+
+        int[] insertedAt = new int[vertexCount];
+        int misses = 0;
+
+        for (int t = 0; t < triangleCount; t++) {
+            int triangleMisses = 0;
+
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+
+                if (insertedAt[v] == 0 || misses - insertedAt[v] >= cacheSize) {
+                    misses++;
+                    insertedAt[v] = misses;
+                    triangleMisses++;
+                }
+            }
+
+            if (t == 0 || triangleMisses == 3)
+                clusterStarts[clusterCount++] = t;
+        }
+        clusterStarts[clusterCount] = triangleCount;
+
+        float centerX = 0.0f, centerY = 0.0f, centerZ = 0.0f;
+        for (int v = 0; v < vertexCount; v++) {
+            centerX += positions.get(v * 3);
+            centerY += positions.get(v * 3 + 1);
+            centerZ += positions.get(v * 3 + 2);
+        }
+        centerX /= Math.max(vertexCount, 1);
+        centerY /= Math.max(vertexCount, 1);
+        centerZ /= Math.max(vertexCount, 1);
+
+        // Sort keys: descending "how much the cluster faces outwards", the cluster index keeps it stable
+        long[] keys = new long[clusterCount];
+
+        for (int c = 0; c < clusterCount; c++) {
+            float areaSum = 0.0f;
+            float cx = 0.0f, cy = 0.0f, cz = 0.0f;
+            float nx = 0.0f, ny = 0.0f, nz = 0.0f;
+
+            for (int t = clusterStarts[c]; t < clusterStarts[c + 1]; t++) {
+                int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, d = indices[t * 3 + 2] * 3;
+
+                float e1x = positions.get(b) - positions.get(a), e1y = positions.get(b + 1) - positions.get(a + 1), e1z = positions.get(b + 2) - positions.get(a + 2);
+                float e2x = positions.get(d) - positions.get(a), e2y = positions.get(d + 1) - positions.get(a + 1), e2z = positions.get(d + 2) - positions.get(a + 2);
+
+                // Cross product length is twice the area, so the sum is already area weighted
+                float fx = e1y * e2z - e1z * e2y;
+                float fy = e1z * e2x - e1x * e2z;
+                float fz = e1x * e2y - e1y * e2x;
+                float area = (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+
+                nx += fx;
+                ny += fy;
+                nz += fz;
+
+                cx += (positions.get(a) + positions.get(b) + positions.get(d)) * area;
+                cy += (positions.get(a + 1) + positions.get(b + 1) + positions.get(d + 1)) * area;
+                cz += (positions.get(a + 2) + positions.get(b + 2) + positions.get(d + 2)) * area;
+                areaSum += area * 3.0f;
+            }
+
+            float normalLength = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            float score = 0.0f;
+
+            if (areaSum > 0.0f && normalLength > 0.0f) {
+                score = ((cx / areaSum - centerX) * nx +
+                         (cy / areaSum - centerY) * ny +
+                         (cz / areaSum - centerZ) * nz) / normalLength;
+            }
+
+            keys[c] = (long) descendingKey(score) << 32 | c;
+        }
+
+        Arrays.sort(keys);
+
+        int[] result = new int[indices.length];
+        int written = 0;
+
+        for (long key : keys) {
+            int c = (int) key;
+            int from = clusterStarts[c] * 3;
+            int length = (clusterStarts[c + 1] - clusterStarts[c]) * 3;
+
+            System.arraycopy(indices, from, result, written, length);
+            written += length;
+        }
+
+        return result;
+    }
+
+    // Maps floats to ints so that a signed ascending sort of the ints gives the floats in descending order
+    private static int descendingKey(float value) {
+        int bits = Float.floatToIntBits(value);
+        int ascending = bits < 0 ? bits ^ 0x7FFFFFFF : bits;
+
+        return ~ascending;
+    }
+}
@@ -0,0 +1,174 @@
+package engine.mesh;
+
+/**
+ * <h3>
+ *     Triangle reordering for post-transform vertex cache reuse
+ * </h3>
+ * <p>
+ *     Tom Forsyth's "Linear-Speed Vertex Cache Optimisation": every vertex gets a score from its position in
+ *     a simulated LRU cache and from how many triangles still use it, and the triangle with the highest summed
+ *     score among the ones touching the cache is emitted next.
+ * </p>
+ */
+public final class Vertex_Cache_Optimizer {
+    public static final int CACHE_SIZE = 32;
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    // Scores only depend on small integers, so they are tabulated once
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[64];
+
+    static {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (i < 3) {
+                CACHE_SCORES[i] = LAST_TRIANGLE_SCORE;
+            } else {
+                float scaler = 1.0f / (CACHE_SIZE - 3);
+                CACHE_SCORES[i] = (float) Math.pow(1.0f - (i - 3) * scaler, CACHE_DECAY_POWER);
+            }
+        }
+
+        for (int i = 1; i < VALENCE_SCORES.length; i++)
+            VALENCE_SCORES[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+    }
+
+    private Vertex_Cache_Optimizer() {}
+
+    /**
+     * @return a new index buffer with the same triangles in cache friendly order
+     */
+    public static int[] optimize(int[] indices, int vertexCount) {
+        int triangleCount = indices.length / 3;
+
+        // Vertex -> triangles adjacency in CSR form, the first liveTriangles[v] entries are the unemitted ones
+        int[] adjacencyOffsets = new int[vertexCount + 1];
+        for (int index : indices)
+            adjacencyOffsets[index + 1]++;
+        for (int v = 0; v < vertexCount; v++)
+            adjacencyOffsets[v + 1] += adjacencyOffsets[v];
+
+        int[] liveTriangles = new int[vertexCount];
+        int[] adjacency = new int[indices.length];
+
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            adjacency[adjacencyOffsets[v] + liveTriangles[v]++] = i / 3;
+        }
+
+        int[] cachePositions = new int[vertexCount];
+        float[] vertexScores = new float[vertexCount];
+
+        for (int v = 0; v < vertexCount; v++) {
+            cachePositions[v] = -1;
+            vertexScores[v] = vertexScore(-1, liveTriangles[v]);
+        }
+
+        boolean[] emitted = new boolean[triangleCount];
+
+        int best = -1;
+        float bestScore = -1.0f;
+
+        for (int t = 0; t < triangleCount; t++) {
+            float score =
+                    vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]] + vertexScores[indices[t * 3 + 2]];
+
+            if (score > bestScore) {
+                bestScore = score;
+                best = t;
+            }
+        }
+
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] nextCache = new int[CACHE_SIZE + 3];
+        int cacheSize = 0;
+
+        int[] result = new int[triangleCount * 3];
+        int nextUnemitted = 0;
+
+        for (int emittedCount = 0; emittedCount < triangleCount; emittedCount++) {
+            // Nothing in the cache touches a live triangle, restart from the first unemitted one
+            if (best < 0) {
+                while (emitted[nextUnemitted])
+                    nextUnemitted++;
+
+                best = nextUnemitted;
+            }
+
+            emitted[best] = true;
+
+            int nextCacheSize = 0;
+
+            for (int k = 0; k < 3; k++) {
+                int v = indices[best * 3 + k];
+                result[emittedCount * 3 + k] = v;
+                nextCache[nextCacheSize++] = v;
+
+                // Swap the triangle out of the live part of the adjacency list
+                int start = adjacencyOffsets[v];
+                int last = start + --liveTriangles[v];
+
+                for (int a = start; a <= last; a++) {
+                    if (adjacency[a] == best) {
+                        adjacency[a] = adjacency[last];
+                        adjacency[last] = best;
+                        break;
+                    }
+                }
+            }
+
+            for (int i = 0; i < cacheSize; i++) {
+                int v = cache[i];
+
+                if (v != nextCache[0] && v != nextCache[1] && v != nextCache[2])
+                    nextCache[nextCacheSize++] = v;
+            }
+
+            // Vertices pushed out of the cache still need their score lowered
+            for (int i = 0; i < nextCacheSize; i++) {
+                int v = nextCache[i];
+
+                cachePositions[v] = i < CACHE_SIZE ? i : -1;
+                vertexScores[v] = vertexScore(cachePositions[v], liveTriangles[v]);
+            }
+
+            best = -1;
+            bestScore = -1.0f;
+
+            for (int i = 0; i < nextCacheSize; i++) {
+                int v = nextCache[i];
+
+                for (int a = adjacencyOffsets[v], end = a + liveTriangles[v]; a < end; a++) {
+                    int t = adjacency[a];
+                    float score = vertexScores[indices[t * 3]] +
+                                  vertexScores[indices[t * 3 + 1]] +
+                                  vertexScores[indices[t * 3 + 2]];
+
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best = t;
+                    }
+                }
+            }
+
+            int[] swap = cache;
+            cache = nextCache;
+            nextCache = swap;
+            cacheSize = Math.min(nextCacheSize, CACHE_SIZE);
+        }
+
+        return result;
+    }
+
+    private static float vertexScore(int cachePosition, int liveTriangles) {
+        if (liveTriangles == 0)
+            return -1.0f;
+
+        float score = cachePosition < 0 ? 0.0f : CACHE_SCORES[cachePosition];
+
+        return score + VALENCE_SCORES[Math.min(liveTriangles, VALENCE_SCORES.length - 1)];
+    }
+}
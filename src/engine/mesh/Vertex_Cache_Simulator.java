@@ -0,0 +1,45 @@
+package engine.mesh;
+
+/**
+ * FIFO post-transform cache model, lets us measure index orders without a GPU.
+ * ACMR = transformed vertices per triangle (0.5 is the ideal for big regular meshes, 3 the worst),
+ * ATVR = transformed vertices per unique vertex (1 is the ideal).
+ */
+public final class Vertex_Cache_Simulator {
+    // Roughly what desktop GPUs have in practice
+    public static final int DEFAULT_CACHE_SIZE = 16;
+
+    public record Stats(int misses, float acmr, float atvr) {
+        @Override
+        public String toString() {
+            return String.format("ACMR %.3f, ATVR %.3f", acmr, atvr);
+        }
+    }
+
+    private Vertex_Cache_Simulator() {}
+
+    public static Stats simulate(int[] indices, int vertexCount) {
+        return simulate(indices, vertexCount, DEFAULT_CACHE_SIZE);
+    }
+
+    public static Stats simulate(int[] indices, int vertexCount, int cacheSize) {
+        // A vertex is cached while fewer than cacheSize misses happened since it was (re)inserted
+        int[] insertedAt = new int[vertexCount];
+        int misses = 0;
+
+        for (int index : indices) {
+            if (misses - insertedAt[index] >= cacheSize || insertedAt[index] == 0) {
+                misses++;
+                insertedAt[index] = misses;
+            }
+        }
+
+        int triangles = indices.length / 3;
+
+        return new Stats(
+                misses,
+                triangles == 0 ? 0.0f : (float) misses / triangles,
+                vertexCount == 0 ? 0.0f : (float) misses / vertexCount
+        );
+    }
+}
@@ -0,0 +1,54 @@
+package engine.mesh;
+
+import engine.memory.Float_Native_List;
+import engine.memory.Int_Native_List;
+
+import java.util.Arrays;
+
+/**
+ * Renumbers vertices in the order the index buffer first uses them, so vertex fetches walk the streams
+ * mostly linearly. Vertices no triangle uses are dropped, LOD ranges stay where they are.
+ */
+public final class Vertex_Fetch_Optimizer {
+    private Vertex_Fetch_Optimizer() {}
+
+    public static Mesh_Data optimize(Mesh_Data mesh) {
+        int[] remap = new int[mesh.vertexCount()];
+        Arrays.fill(remap, -1);
+
+        Int_Native_List indices = new Int_Native_List(mesh.arena, mesh.indices.size());
+        int used = 0;
+
+        for (int i = 0; i < mesh.indices.size(); i++) {
+            int v = mesh.indices.get(i);
+
+            if (remap[v] < 0)
+                remap[v] = used++;
+
+            indices.add(remap[v]);
+        }
+
+        Float_Native_List positions = new Float_Native_List(mesh.arena, used * 3);
+        Float_Native_List uvs = new Float_Native_List(mesh.arena, used * 2);
+        Float_Native_List normals = new Float_Native_List(mesh.arena, used * 3);
+        positions.resize(used * 3);
+        uvs.resize(used * 2);
+        normals.resize(used * 3);
+
+        for (int v = 0; v < remap.length; v++) {
+            int to = remap[v];
+            if (to < 0)
+                continue;
+
+            for (int k = 0; k < 3; k++) {
+                positions.set(to * 3 + k, mesh.positions.get(v * 3 + k));
+                normals.set(to * 3 + k, mesh.normals.get(v * 3 + k));
+            }
+
+            uvs.set(to * 2, mesh.uvs.get(v * 2));
+            uvs.set(to * 2 + 1, mesh.uvs.get(v * 2 + 1));
+        }
+
+        return new Mesh_Data(mesh.arena, positions, uvs, normals, indices, mesh.lods);
+    }
+}
@@ -0,0 +1,101 @@
+package engine.mesh;
+
+import engine.gfx.Attribute_Layout;
+import engine.gfx.Triangle_Mesh_Layout;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <h3>
+ *     Moves vertex data from one {@link Triangle_Mesh_Layout} to another with the same attributes
+ * </h3>
+ * <p>
+ *     All target buffers are slices of a single direct (off-heap) allocation and are written in place,
+ *     attribute by attribute, with no intermediate copies. Padding bytes are zero.
+ * </p>
+ */
+public final class Vertex_Interleaver {
+    private static final int BUFFER_ALIGNMENT = 16;
+
+    private Vertex_Interleaver() {}
+
+    public static ByteBuffer[] relayout(
+            ByteBuffer[] sourceStreams,
+            Triangle_Mesh_Layout source,
+            Triangle_Mesh_Layout target,
+            int vertexCount) {
+        if (source.attrs.length != target.attrs.length)
+            throw new IllegalArgumentException("layouts have different attributes");
+
+        for (int i = 0; i < source.attrs.length; i++) {
+            if (source.attrs[i].type() != target.attrs[i].type())
+                throw new IllegalArgumentException(
+                        "attribute " + i + " is " + source.attrs[i].type() + " but " + target.attrs[i].type());
+        }
+
+        int[] starts = new int[target.buffers.length];
+        int total = 0;
+
+        for (int b = 0; b < target.buffers.length; b++) {
+            starts[b] = total;
+            total += (target.buffers[b].stride() * vertexCount + BUFFER_ALIGNMENT - 1) & -BUFFER_ALIGNMENT;
+        }
+
+        ByteBuffer block = ByteBuffer.allocateDirect(total).order(ByteOrder.nativeOrder());
+
+        ByteBuffer[] result = new ByteBuffer[target.buffers.length];
+        for (int b = 0; b < result.length; b++)
+            result[b] = block.slice(starts[b], target.buffers[b].stride() * vertexCount).order(ByteOrder.nativeOrder());
+
+        for (int i = 0; i < target.attrs.length; i++) {
+            Attribute_Layout from = source.attrs[i];
+            Attribute_Layout to = target.attrs[i];
+
+            copyAttribute(
+                    sourceStreams[from.bufferIndex()], sourceStreams[from.bufferIndex()].position(),
+                    source.buffers[from.bufferIndex()].stride(), source.offsets[i],
+                    result[to.bufferIndex()],
+                    target.buffers[to.bufferIndex()].stride(), target.offsets[i],
+                    from.type().size, vertexCount
+            );
+        }
+
+        return result;
+    }
+
+    public static Mesh_Cache.Entry relayout(Mesh_Cache.Entry entry, Triangle_Mesh_Layout target) {
+        Triangle_Mesh_Layout source = entry.layout();
+        int vertexCount = entry.vertexStreams()[0].remaining() / source.buffers[0].stride();
+
+        return new Mesh_Cache.Entry(
+                target,
+                relayout(entry.vertexStreams(), source, target, vertexCount),
+                entry.indices(),
+                entry.indexType(),
+                entry.indicesCount(),
+                entry.lods(),
+                entry.positionDecode(),
+                entry.bounds()
+        );
+    }
+
+    // Attribute sizes are always a multiple of 2 bytes, so whole ints / shorts are moved
+    private static void copyAttribute(
+            ByteBuffer from, int fromBase, int fromStride, int fromOffset,
+            ByteBuffer to, int toStride, int toOffset,
+            int size, int vertexCount) {
+        int fromPosition = fromBase + fromOffset;
+        int toPosition = toOffset;
+
+        for (int v = 0; v < vertexCount; v++, fromPosition += fromStride, toPosition += toStride) {
+            int k = 0;
+
+            for (; k + 4 <= size; k += 4)
+                to.putInt(toPosition + k, from.getInt(fromPosition + k));
+
+            for (; k < size; k += 2)
+                to.putShort(toPosition + k, from.getShort(fromPosition + k));
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package engine.mesh;
+
+import engine.gfx.*;
+import engine.memory.Float_Native_List;
+import engine.misc.Half_Float;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <h3>
+ *     Packs loader output (3 float streams, 32 bytes per vertex) into compressed vertex formats
+ * </h3>
+ * <p>
+ *     Positions become normalized shorts relative to the mesh bounds ({@link Position_Decode} turns them back),
+ *     uvs become half floats and normals are either packed 10:10:10:2 or octahedral encoded in two bytes.
+ *     Indices use {@link Index_Type#UInt16} whenever the vertex count allows. The worst error of every stream
+ *     is measured against the source data and reported with the result.
+ * </p>
+ * <p>
+ *     Octahedral normals have to be decoded by the vertex shader:
+ * </p>
+ * <pre>
+ * vec3 octahedral_decode(vec2 e) {
+ *     vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+ *     float t = max(-n.z, 0.0);
+ *     n.xy += mix(vec2(t), vec2(-t), greaterThanEqual(n.xy, vec2(0.0)));
+ *     return normalize(n);
+ * }
+ * </pre>
+ */
+public final class Vertex_Quantizer {
+    public enum Normal_Encoding {
+        // 4 bytes, decoded by the vertex fetch itself
+        Packed_10_10_10(Vertex_Type.Int_2_10_10_10_Rev),
+        // 2 bytes, needs octahedral_decode in the shader
+        Octahedral(Vertex_Type.Byte2_Norm);
+
+        public final Vertex_Type type;
+
+        Normal_Encoding(Vertex_Type type) {
+            this.type = type;
+        }
+    }
+
+    public record Options(Normal_Encoding normals, Vertex_Streams streams) {
+        public static final Options DEFAULT = new Options(Normal_Encoding.Packed_10_10_10, Vertex_Streams.Position_Split);
+
+        // Stored in the mesh cache next to the optimizer options
+        public int cacheKey() {
+            return 1 + normals.ordinal() | streams.ordinal() << 4;
+        }
+    }
+
+    /**
+     * @param position biggest object space distance between a source and a decoded position
+     * @param uv biggest difference of a uv component
+     * @param normalDegrees biggest angle between a source and a decoded normal
+     */
+    public record Error(float position, float uv, float normalDegrees) {
+        @Override
+        public String toString() {
+            return String.format("max error: position %.3g, uv %.3g, normal %.3g degrees", position, uv, normalDegrees);
+        }
+    }
+
+    public record Result(Mesh_Cache.Entry entry, Error error) {
+        @Override
+        public String toString() {
+            return entry.layout().vertexSize() + " bytes per vertex, " + entry.indexType() + " indices, " + error;
+        }
+    }
+
+    private static final int SHORT_MAX = Short.MAX_VALUE;
+    private static final int BYTE_MAX = Byte.MAX_VALUE;
+    private static final int TEN_BITS_MAX = 511;
+
+    private Vertex_Quantizer() {}
+
+    public static Triangle_Mesh_Layout layout(Options options) {
+        return options.streams().layout(Vertex_Type.Short4_Norm, Vertex_Type.Half2, options.normals().type);
+    }
+
+    public static Result quantize(Mesh_Data mesh, Options options) {
+        int vertexCount = mesh.vertexCount();
+
+        Position_Decode decode = boundsOf(mesh.positions);
+
+        ByteBuffer positions = allocate(vertexCount * Vertex_Type.Short4_Norm.size);
+        ByteBuffer uvs = allocate(vertexCount * Vertex_Type.Half2.size);
+        ByteBuffer normals = allocate(vertexCount * options.normals().type.size);
+
+        float positionError = 0.0f;
+        float uvError = 0.0f;
+        double normalCosine = 1.0;
+
+        float inverseScale = 1.0f / decode.scale();
+
+        for (int v = 0; v < vertexCount; v++) {
+            float x = mesh.positions.get(v * 3);
+            float y = mesh.positions.get(v * 3 + 1);
+            float z = mesh.positions.get(v * 3 + 2);
+
+            short qx = toSnorm16((x - decode.offsetX()) * inverseScale);
+            short qy = toSnorm16((y - decode.offsetY()) * inverseScale);
+            short qz = toSnorm16((z - decode.offsetZ()) * inverseScale);
+
+            // w = 1, in case the shader reads a vec4
+            positions.putShort(qx).putShort(qy).putShort(qz).putShort((short) SHORT_MAX);
+
+            float dx = decode.offsetX() + decode.scale() * ((float) qx / SHORT_MAX) - x;
+            float dy = decode.offsetY() + decode.scale() * ((float) qy / SHORT_MAX) - y;
+            float dz = decode.offsetZ() + decode.scale() * ((float) qz / SHORT_MAX) - z;
+            positionError = Math.max(positionError, (float) Math.sqrt(dx * dx + dy * dy + dz * dz));
+
+            for (int k = 0; k < 2; k++) {
+                float uv = mesh.uvs.get(v * 2 + k);
+                short half = Half_Float.fromFloat(uv);
+
+                uvs.putShort(half);
+                uvError = Math.max(uvError, Math.abs(Half_Float.toFloat(half) - uv));
+            }
+
+            float nx = mesh.normals.get(v * 3);
+            float ny = mesh.normals.get(v * 3 + 1);
+            float nz = mesh.normals.get(v * 3 + 2);
+
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            float[] decoded;
+
+            // Missing normals are (0, 0, 0), nothing to normalize there
+            if (length == 0.0) {
+                if (options.normals() == Normal_Encoding.Packed_10_10_10)
+                    normals.putInt(0);
+                else
+                    normals.put((byte) 0).put((byte) 0);
+
+                continue;
+            }
+
+            nx /= length;
+            ny /= length;
+            nz /= length;
+
+            if (options.normals() == Normal_Encoding.Packed_10_10_10) {
+                int px = toSnorm10(nx), py = toSnorm10(ny), pz = toSnorm10(nz);
+                normals.putInt((px & 0x3FF) | (py & 0x3FF) << 10 | (pz & 0x3FF) << 20);
+
+                decoded = new float[] { (float) px / TEN_BITS_MAX, (float) py / TEN_BITS_MAX, (float) pz / TEN_BITS_MAX };
+            } else {
+                byte[] encoded = octahedralEncode(nx, ny, nz);
+                normals.put(encoded[0]).put(encoded[1]);
+
+                decoded = octahedralDecode(encoded[0], encoded[1]);
+            }
+
+            normalCosine = Math.min(normalCosine, cosine(nx, ny, nz, decoded));
+        }
+
+        Index_Type indexType = Index_Type.forVertexCount(vertexCount);
+
+        // Every attribute is packed into its own stream first, then moved to the requested layout
+        Mesh_Cache.Entry entry = new Mesh_Cache.Entry(
+                Vertex_Streams.Separate.layout(Vertex_Type.Short4_Norm, Vertex_Type.Half2, options.normals().type),
+                new ByteBuffer[] { positions.flip(), uvs.flip(), normals.flip() },
+                Mesh_Cache.toIndexBytes(mesh.indices, indexType, mesh.arena),
+                indexType,
+                mesh.indices.size(),
+                mesh.lods,
+                decode,
+                Bounds.of(mesh.positions.buffer())
+        );
+
+        if (options.streams() != Vertex_Streams.Separate)
+            entry = Vertex_Interleaver.relayout(entry, layout(options));
+
+        float normalDegrees = (float) Math.toDegrees(Math.acos(Math.min(1.0, normalCosine)));
+
+        return new Result(entry, new Error(positionError, uvError, normalDegrees));
+    }
+
+    // Centered on the bounding box, uniform scale so that the longest axis spans [-1, 1]
+    private static Position_Decode boundsOf(Float_Native_List positions) {
+        if (positions.size() == 0)
+            return Position_Decode.IDENTITY;
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+
+        for (int i = 0; i < positions.size(); i += 3) {
+            minX = Math.min(minX, positions.get(i));
+            minY = Math.min(minY, positions.get(i + 1));
+            minZ = Math.min(minZ, positions.get(i + 2));
+            maxX = Math.max(maxX, positions.get(i));
+            maxY = Math.max(maxY, positions.get(i + 1));
+            maxZ = Math.max(maxZ, positions.get(i + 2));
+        }
+
+        float scale = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) * 0.5f;
+
+        return new Position_Decode(
+                (minX + maxX) * 0.5f,
+                (minY + maxY) * 0.5f,
+                (minZ + maxZ) * 0.5f,
+                scale > 0.0f ? scale : 1.0f
+        );
+    }
+
+    private static short toSnorm16(float value) {
+        return (short) Math.round(Math.max(-1.0f, Math.min(1.0f, value)) * SHORT_MAX);
+    }
+
+    private static int toSnorm10(float value) {
+        return Math.round(Math.max(-1.0f, Math.min(1.0f, value)) * TEN_BITS_MAX);
+    }
+
+    /**
+     * Projects onto the octahedron |x| + |y| + |z| = 1 and unfolds the lower half over the corners.
+     * Plain rounding isn't always the closest code, so the 4 codes around the exact value are compared.
+     */
+    static byte[] octahedralEncode(float x, float y, float z) {
+        float sum = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        float u = x / sum;
+        float v = y / sum;
+
+        if (z < 0.0f) {
+            float folded = (1.0f - Math.abs(v)) * signNotZero(u);
+            v = (1.0f - Math.abs(u)) * signNotZero(v);
+            u = folded;
+        }
+
+        int baseU = (int) Math.floor(u * BYTE_MAX);
+        int baseV = (int) Math.floor(v * BYTE_MAX);
+
+        byte[] best = new byte[2];
+        double bestCosine = -2.0;
+
+        for (int i = 0; i < 4; i++) {
+            int eu = Math.max(-BYTE_MAX, Math.min(BYTE_MAX, baseU + (i & 1)));
+            int ev = Math.max(-BYTE_MAX, Math.min(BYTE_MAX, baseV + (i >> 1)));
+
+            double cosine = cosine(x, y, z, octahedralDecode((byte) eu, (byte) ev));
+
+            if (cosine > bestCosine) {
+                bestCosine = cosine;
+                best[0] = (byte) eu;
+                best[1] = (byte) ev;
+            }
+        }
+
+        return best;
+    }
+
+    static float[] octahedralDecode(byte eu, byte ev) {
+        float x = Math.max(-1.0f, (float) eu / BYTE_MAX);
+        float y = Math.max(-1.0f, (float) ev / BYTE_MAX);
+        float z = 1.0f - Math.abs(x) - Math.abs(y);
+
+        if (z < 0.0f) {
+            float folded = (1.0f - Math.abs(y)) * signNotZero(x);
+            y = (1.0f - Math.abs(x)) * signNotZero(y);
+            x = folded;
+        }
+
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+
+        return new float[] { x / length, y / length, z / length };
+    }
+
+    private static float signNotZero(float value) {
+        return value >= 0.0f ? 1.0f : -1.0f;
+    }
+
+    private static double cosine(float x, float y, float z, float[] decoded) {
+        double length = Math.sqrt(decoded[0] * decoded[0] + decoded[1] * decoded[1] + decoded[2] * decoded[2]);
+
+        return (x * decoded[0] + y * decoded[1] + z * decoded[2]) / length;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+}
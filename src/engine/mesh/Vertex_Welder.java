@@ -0,0 +1,123 @@
+package engine.mesh;
+
+import engine.memory.Float_Native_List;
+import engine.memory.Int_Native_List;
+import engine.memory.Native_Arena;
+import engine.misc.Long_Int_Map;
+
+/**
+ * <h3>
+ *     Builds the minimal set of unique (position, uv, normal) vertices out of OBJ style corners
+ * </h3>
+ * <p>
+ *     Every distinct index triple becomes one output vertex, in order of first use. So a position shared by
+ *     faces with different normals (flat shading) is split, while smooth meshes stay fully shared.
+ * </p>
+ * <p>
+ *     The output streams are allocated in the arena given to the constructor, the caller closes it if
+ *     welding fails.
+ * </p>
+ */
+public final class Vertex_Welder {
+    // Three indices packed into one long key, +1 so that "missing" (-1) fits too
+    private static final int INDEX_BITS = 21;
+    private static final int MAX_INDEX = (1 << INDEX_BITS) - 2;
+
+    public record Stats(int corners, int uniqueVertices) {
+        @Override
+        public String toString() {
+            return String.format("%d corners -> %d unique vertices (%.2f corners per vertex)",
+                    corners, uniqueVertices, uniqueVertices == 0 ? 0.0f : (float) corners / uniqueVertices);
+        }
+    }
+
+    private final float[] positions;
+    private final int positionsCount;
+    private final float[] uvs;
+    private final int uvsCount;
+    private final float[] normals;
+    private final int normalsCount;
+
+    private final Long_Int_Map vertices;
+
+    private final Native_Arena arena;
+    private final Float_Native_List outPositions;
+    private final Float_Native_List outUvs;
+    private final Float_Native_List outNormals;
+    private int verticesCount;
+    private int cornersCount;
+
+    /**
+     * Sources may be larger than their content, only the first {@code *Size} floats are used
+     */
+    public Vertex_Welder(Native_Arena arena,
+                         float[] positions, int positionsSize,
+                         float[] uvs, int uvsSize,
+                         float[] normals, int normalsSize,
+                         int expectedCorners) {
+        this.arena = arena;
+        this.positions = positions;
+        this.positionsCount = positionsSize / 3;
+        this.uvs = uvs;
+        this.uvsCount = uvsSize / 2;
+        this.normals = normals;
+        this.normalsCount = normalsSize / 3;
+
+        if (positionsCount > MAX_INDEX || uvsCount > MAX_INDEX || normalsCount > MAX_INDEX)
+            throw new IllegalStateException("too many source vertices to weld: " + positionsCount);
+
+        // Typical closed meshes have ~6 corners per vertex, flat shaded ones much less
+        int expectedVertices = Math.max(16, Math.min(expectedCorners, positionsCount * 2));
+
+        vertices = new Long_Int_Map(expectedVertices);
+        outPositions = new Float_Native_List(arena, expectedVertices * 3);
+        outUvs = new Float_Native_List(arena, expectedVertices * 2);
+        outNormals = new Float_Native_List(arena, expectedVertices * 3);
+    }
+
+    /**
+     * @param uv -1 if the corner has no uv, same for normal
+     * @return index of the output vertex
+     */
+    public int weld(int position, int uv, int normal) {
+        if (position < 0 || position >= positionsCount)
+            throw new IllegalStateException("position index out of range: " + position);
+        if (uv < -1 || uv >= uvsCount)
+            throw new IllegalStateException("uv index out of range: " + uv);
+        if (normal < -1 || normal >= normalsCount)
+            throw new IllegalStateException("normal index out of range: " + normal);
+
+        cornersCount++;
+
+        long key = (position + 1L) | (uv + 1L) << INDEX_BITS | (normal + 1L) << (INDEX_BITS * 2);
+
+        int index = vertices.getOrPut(key, verticesCount);
+        if (index != verticesCount)
+            return index;
+
+        outPositions.add(positions[position * 3], positions[position * 3 + 1], positions[position * 3 + 2]);
+
+        // Missing attributes are zero
+        if (uv >= 0)
+            outUvs.add(uvs[uv * 2], uvs[uv * 2 + 1]);
+        else
+            outUvs.add(0.0f, 0.0f);
+
+        if (normal >= 0)
+            outNormals.add(normals[normal * 3], normals[normal * 3 + 1], normals[normal * 3 + 2]);
+        else
+            outNormals.add(0.0f, 0.0f, 0.0f);
+
+        verticesCount++;
+
+        return index;
+    }
+
+    public Stats stats() {
+        return new Stats(cornersCount, verticesCount);
+    }
+
+    public Mesh_Data finish(Int_Native_List indices) {
+        return new Mesh_Data(arena, outPositions, outUvs, outNormals, indices);
+    }
+}
@@ -1,11 +1,11 @@
 package engine.misc;
 
-import java.util.ArrayList;
+import engine.memory.Int_Array_List;
 
 public class Faces {
-    public ArrayList<Integer> positionIds = new ArrayList<>();
-    public ArrayList<Integer> uvIds = new ArrayList<>();
-    public ArrayList<Integer> normalIds = new ArrayList<>();
+    public Int_Array_List positionIds = new Int_Array_List();
+    public Int_Array_List uvIds = new Int_Array_List();
+    public Int_Array_List normalIds = new Int_Array_List();
 
     public void add(int position, int uv, int normal) {
         positionIds.add(position);
@@ -0,0 +1,66 @@
+package engine.misc;
+
+/**
+ * IEEE 754 binary16 conversions (Float.floatToFloat16 only exists since Java 20).
+ * Rounds to nearest even, overflows to infinity, keeps subnormals.
+ */
+public final class Half_Float {
+    private Half_Float() {}
+
+    public static short fromFloat(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = bits >>> 16 & 0x8000;
+        int exponent = (bits >>> 23 & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+
+        // Infinity and NaN, NaN stays quiet
+        if ((bits & 0x7FFFFFFF) >= 0x7F800000)
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+
+        if (exponent >= 31)
+            return (short) (sign | 0x7C00);
+
+        if (exponent <= 0) {
+            if (exponent < -10)
+                return (short) sign;
+
+            mantissa |= 0x800000;
+
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            int rest = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+
+            if (rest > halfway || (rest == halfway && (half & 1) != 0))
+                half++;
+
+            return (short) (sign | half);
+        }
+
+        int half = exponent << 10 | mantissa >> 13;
+        int rest = mantissa & 0x1FFF;
+
+        // A carry out of the mantissa correctly bumps the exponent, up to infinity
+        if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0))
+            half++;
+
+        return (short) (sign | half);
+    }
+
+    public static float toFloat(short half) {
+        int bits = half & 0xFFFF;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = bits >>> 10 & 0x1F;
+        int mantissa = bits & 0x3FF;
+
+        if (exponent == 0) {
+            float subnormal = mantissa * 0x1p-24f;
+            return sign != 0 ? -subnormal : subnormal;
+        }
+
+        if (exponent == 31)
+            return Float.intBitsToFloat(sign | 0x7F800000 | mantissa << 13);
+
+        return Float.intBitsToFloat(sign | (exponent - 15 + 127) << 23 | mantissa << 13);
+    }
+}
@@ -0,0 +1,115 @@
+package engine.misc;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing (linear probing) long -> int hash map, no boxing anywhere.
+ * Key 0 marks a free slot, so it's stored on the side.
+ */
+public class Long_Int_Map {
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    private boolean hasZeroKey;
+    private int zeroKeyValue;
+
+    public Long_Int_Map(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return the value already stored for {@code key}, or {@code value} if the key was just inserted
+     */
+    public int getOrPut(long key, int value) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                zeroKeyValue = value;
+                size++;
+            }
+
+            return zeroKeyValue;
+        }
+
+        int slot = slot(key, mask);
+
+        while (keys[slot] != 0) {
+            if (keys[slot] == key)
+                return values[slot];
+
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+
+        if (++size * 2 > keys.length)
+            grow();
+
+        return value;
+    }
+
+    public int get(long key, int missingValue) {
+        if (key == 0)
+            return hasZeroKey ? zeroKeyValue : missingValue;
+
+        int slot = slot(key, mask);
+
+        while (keys[slot] != 0) {
+            if (keys[slot] == key)
+                return values[slot];
+
+            slot = (slot + 1) & mask;
+        }
+
+        return missingValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Slots, for memory accounting
+    public int capacity() {
+        return keys.length;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = keys.length - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key == 0)
+                continue;
+
+            int slot = slot(key, mask);
+            while (keys[slot] != 0)
+                slot = (slot + 1) & mask;
+
+            keys[slot] = key;
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,547 @@
+package engine.scene;
+
+import java.util.Arrays;
+
+/**
+ * <h1>
+ *     Aabb_Tree
+ * </h1>
+ * <h3>
+ *     Dynamic bounding volume hierarchy of axis aligned boxes, for culling, picking and proximity queries
+ * </h3>
+ * <p>
+ *     Leaves hold fattened boxes ({@code margin} on every side), so small moves only compare against the fat box
+ *     and touch nothing. A leaf that leaves its fat box is removed and inserted again, going down the cheapest
+ *     branch by surface area, and every node on the way back up is refitted and rotated to keep the heights of
+ *     siblings within one, so updates are O(log n).
+ * </p>
+ * <p>
+ *     Nodes live in flat arrays and queries walk an internal stack, nothing is allocated once the arrays have grown.
+ *     Items are plain longs, such as entity handles, so neither inserting nor visiting boxes them.
+ *     Queries are not reentrant: a visitor must not query or modify the same tree.
+ * </p>
+ */
+public class Aabb_Tree {
+    public static final int NONE = -1;
+
+    private static final int BOX = 6;
+
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * @return false to stop the query
+         */
+        boolean visit(long item);
+    }
+
+    @FunctionalInterface
+    public interface Ray_Visitor {
+        /**
+         * Called for items whose fat box the ray hits within {@code maxDistance} (in units of the direction's length)
+         *
+         * @return the new max distance, {@code maxDistance} to go on unchanged, 0 to stop
+         */
+        float hit(long item, float maxDistance);
+    }
+
+    private final float margin;
+
+    // minX, minY, minZ, maxX, maxY, maxZ per node
+    private float[] boxes;
+    private int[] parent;
+    private int[] left;
+    private int[] right;
+    private int[] height;
+    private long[] items;
+
+    private int root = NONE;
+    private int freeNodes = NONE;
+    private int nodeCount;
+    private int leafCount;
+
+    private int[] stack = new int[64];
+    private int reinserts;
+
+    public Aabb_Tree(float margin) {
+        this.margin = margin;
+
+        int initialNodes = 64;
+        boxes = new float[initialNodes * BOX];
+        parent = new int[initialNodes];
+        left = new int[initialNodes];
+        right = new int[initialNodes];
+        height = new int[initialNodes];
+        items = new long[initialNodes];
+    }
+
+    /**
+     * @return proxy of the item, valid until it's removed
+     */
+    public int insert(long item, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int leaf = newNode();
+
+        setFatBox(leaf, minX, minY, minZ, maxX, maxY, maxZ);
+        items[leaf] = item;
+        height[leaf] = 0;
+
+        insertLeaf(leaf);
+        leafCount++;
+
+        return leaf;
+    }
+
+    public void remove(int proxy) {
+        assert isLeaf(proxy);
+
+        removeLeaf(proxy);
+        freeNode(proxy);
+        leafCount--;
+    }
+
+    /**
+     * Nothing changes while the box stays inside the proxy's fat box
+     *
+     * @return whether the proxy had to be reinserted
+     */
+    public boolean move(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        assert isLeaf(proxy);
+
+        int at = proxy * BOX;
+        if (boxes[at] <= minX && boxes[at + 1] <= minY && boxes[at + 2] <= minZ
+                && boxes[at + 3] >= maxX && boxes[at + 4] >= maxY && boxes[at + 5] >= maxZ)
+            return false;
+
+        removeLeaf(proxy);
+        setFatBox(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+        insertLeaf(proxy);
+
+        reinserts++;
+        return true;
+    }
+
+    public long item(int proxy) {
+        return items[proxy];
+    }
+
+    public void queryAabb(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, Visitor visitor) {
+        int top = push(0, root);
+
+        while (top > 0) {
+            int node = stack[--top];
+            int at = node * BOX;
+
+            if (boxes[at] > maxX || boxes[at + 1] > maxY || boxes[at + 2] > maxZ
+                    || boxes[at + 3] < minX || boxes[at + 4] < minY || boxes[at + 5] < minZ)
+                continue;
+
+            if (isLeaf(node)) {
+                if (!visitor.visit(item(node)))
+                    return;
+            } else {
+                top = push(push(top, left[node]), right[node]);
+            }
+        }
+    }
+
+    public void querySphere(float x, float y, float z, float radius, Visitor visitor) {
+        float radiusSquared = radius * radius;
+        int top = push(0, root);
+
+        while (top > 0) {
+            int node = stack[--top];
+            int at = node * BOX;
+
+            float dx = Math.max(Math.max(boxes[at] - x, x - boxes[at + 3]), 0.0f);
+            float dy = Math.max(Math.max(boxes[at + 1] - y, y - boxes[at + 4]), 0.0f);
+            float dz = Math.max(Math.max(boxes[at + 2] - z, z - boxes[at + 5]), 0.0f);
+
+            if (dx * dx + dy * dy + dz * dz > radiusSquared)
+                continue;
+
+            if (isLeaf(node)) {
+                if (!visitor.visit(item(node)))
+                    return;
+            } else {
+                top = push(push(top, left[node]), right[node]);
+            }
+        }
+    }
+
+    /**
+     * Subtrees entirely inside the frustum are visited without testing any more planes
+     */
+    public void queryFrustum(Frustum frustum, Visitor visitor) {
+        float[] a = frustum.a, b = frustum.b, c = frustum.c, d = frustum.d;
+        int top = push(0, root);
+
+        outer:
+        while (top > 0) {
+            int node = stack[--top];
+            int at = node * BOX;
+
+            boolean inside = true;
+
+            for (int p = 0; p < Frustum.PLANES; p++) {
+                // Corners farthest along and against the plane's normal
+                float farX = a[p] >= 0.0f ? boxes[at + 3] : boxes[at];
+                float farY = b[p] >= 0.0f ? boxes[at + 4] : boxes[at + 1];
+                float farZ = c[p] >= 0.0f ? boxes[at + 5] : boxes[at + 2];
+
+                if (a[p] * farX + b[p] * farY + c[p] * farZ + d[p] < 0.0f)
+                    continue outer;
+
+                float nearX = a[p] >= 0.0f ? boxes[at] : boxes[at + 3];
+                float nearY = b[p] >= 0.0f ? boxes[at + 1] : boxes[at + 4];
+                float nearZ = c[p] >= 0.0f ? boxes[at + 2] : boxes[at + 5];
+
+                if (a[p] * nearX + b[p] * nearY + c[p] * nearZ + d[p] < 0.0f)
+                    inside = false;
+            }
+
+            if (isLeaf(node)) {
+                if (!visitor.visit(item(node)))
+                    return;
+            } else if (inside) {
+                if (!visitSubtree(node, top, visitor))
+                    return;
+            } else {
+                top = push(push(top, left[node]), right[node]);
+            }
+        }
+    }
+
+    /**
+     * Items are visited in tree order, not by distance, clip the ray in the visitor to find the closest hit
+     */
+    public void raycast(
+            float originX, float originY, float originZ,
+            float directionX, float directionY, float directionZ,
+            float maxDistance,
+            Ray_Visitor visitor) {
+        float inverseX = 1.0f / directionX;
+        float inverseY = 1.0f / directionY;
+        float inverseZ = 1.0f / directionZ;
+
+        int top = push(0, root);
+
+        while (top > 0) {
+            int node = stack[--top];
+            int at = node * BOX;
+
+            // Slabs, infinite inverses make the axis parallel to the ray never limit the range
+            float t0 = (boxes[at] - originX) * inverseX, t1 = (boxes[at + 3] - originX) * inverseX;
+            float near = Math.min(t0, t1), far = Math.max(t0, t1);
+
+            t0 = (boxes[at + 1] - originY) * inverseY;
+            t1 = (boxes[at + 4] - originY) * inverseY;
+            near = Math.max(near, Math.min(t0, t1));
+            far = Math.min(far, Math.max(t0, t1));
+
+            t0 = (boxes[at + 2] - originZ) * inverseZ;
+            t1 = (boxes[at + 5] - originZ) * inverseZ;
+            near = Math.max(near, Math.min(t0, t1));
+            far = Math.min(far, Math.max(t0, t1));
+
+            if (near > far || far < 0.0f || near > maxDistance)
+                continue;
+
+            if (isLeaf(node)) {
+                maxDistance = visitor.hit(item(node), maxDistance);
+                if (maxDistance <= 0.0f)
+                    return;
+            } else {
+                top = push(push(top, left[node]), right[node]);
+            }
+        }
+    }
+
+    public void clear() {
+        root = NONE;
+        freeNodes = NONE;
+        nodeCount = 0;
+        leafCount = 0;
+    }
+
+    public int size() {
+        return leafCount;
+    }
+
+    public int height() {
+        return root == NONE ? 0 : height[root];
+    }
+
+    public float margin() {
+        return margin;
+    }
+
+    // Since the tree was created
+    public int reinserts() {
+        return reinserts;
+    }
+
+    // Uses the stack above base, where the caller's pending nodes end
+    private boolean visitSubtree(int subtree, int base, Visitor visitor) {
+        int top = push(base, subtree);
+
+        while (top > base) {
+            int node = stack[--top];
+
+            if (isLeaf(node)) {
+                if (!visitor.visit(item(node)))
+                    return false;
+            } else {
+                top = push(push(top, left[node]), right[node]);
+            }
+        }
+
+        return true;
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NONE) {
+            root = leaf;
+            parent[leaf] = NONE;
+            return;
+        }
+
+        // Go down wherever the leaf enlarges the tree's surface area the least
+        int index = root;
+        int leafAt = leaf * BOX;
+
+        while (!isLeaf(index)) {
+            float area = area(index);
+            float combinedArea = unionArea(index, leafAt);
+
+            float cost = 2.0f * combinedArea;
+            float inheritedCost = 2.0f * (combinedArea - area);
+
+            float leftCost = childCost(left[index], leafAt) + inheritedCost;
+            float rightCost = childCost(right[index], leafAt) + inheritedCost;
+
+            if (cost < leftCost && cost < rightCost)
+                break;
+
+            index = leftCost < rightCost ? left[index] : right[index];
+        }
+
+        int sibling = index;
+        int oldParent = parent[sibling];
+        int newParent = newNode();
+
+        parent[newParent] = oldParent;
+        items[newParent] = 0;
+        height[newParent] = height[sibling] + 1;
+
+        if (oldParent == NONE)
+            root = newParent;
+        else if (left[oldParent] == sibling)
+            left[oldParent] = newParent;
+        else
+            right[oldParent] = newParent;
+
+        left[newParent] = sibling;
+        right[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refitUpwards(newParent);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NONE;
+            return;
+        }
+
+        int oldParent = parent[leaf];
+        int grandParent = parent[oldParent];
+        int sibling = left[oldParent] == leaf ? right[oldParent] : left[oldParent];
+
+        freeNode(oldParent);
+
+        if (grandParent == NONE) {
+            root = sibling;
+            parent[sibling] = NONE;
+            return;
+        }
+
+        if (left[grandParent] == oldParent)
+            left[grandParent] = sibling;
+        else
+            right[grandParent] = sibling;
+
+        parent[sibling] = grandParent;
+
+        refitUpwards(grandParent);
+    }
+
+    private void refitUpwards(int index) {
+        while (index != NONE) {
+            index = balance(index);
+
+            int l = left[index];
+            int r = right[index];
+
+            height[index] = 1 + Math.max(height[l], height[r]);
+            union(index, l, r);
+
+            index = parent[index];
+        }
+    }
+
+    // Rotates the taller child up when the children's heights differ by more than one, returns the subtree's root
+    private int balance(int a) {
+        if (isLeaf(a) || height[a] < 2)
+            return a;
+
+        int b = left[a];
+        int c = right[a];
+        int difference = height[c] - height[b];
+
+        if (difference > 1) {
+            rotateUp(a, c, b, true);
+            return c;
+        }
+
+        if (difference < -1) {
+            rotateUp(a, b, c, false);
+            return b;
+        }
+
+        return a;
+    }
+
+    /**
+     * {@code up} (a child of {@code a}) takes {@code a}'s place and gets {@code a} as its child, {@code a} keeps
+     * {@code other} and adopts the shorter of {@code up}'s children
+     */
+    private void rotateUp(int a, int up, int other, boolean upIsRight) {
+        int f = left[up];
+        int g = right[up];
+
+        left[up] = a;
+        parent[up] = parent[a];
+        parent[a] = up;
+
+        if (parent[up] == NONE)
+            root = up;
+        else if (left[parent[up]] == a)
+            left[parent[up]] = up;
+        else
+            right[parent[up]] = up;
+
+        int taller = height[f] > height[g] ? f : g;
+        int shorter = taller == f ? g : f;
+
+        right[up] = taller;
+
+        if (upIsRight)
+            right[a] = shorter;
+        else
+            left[a] = shorter;
+
+        parent[shorter] = a;
+
+        union(a, other, shorter);
+        union(up, a, taller);
+
+        height[a] = 1 + Math.max(height[other], height[shorter]);
+        height[up] = 1 + Math.max(height[a], height[taller]);
+    }
+
+    private float childCost(int child, int leafAt) {
+        return isLeaf(child) ? unionArea(child, leafAt) : unionArea(child, leafAt) - area(child);
+    }
+
+    private void union(int node, int first, int second) {
+        int at = node * BOX, f = first * BOX, s = second * BOX;
+
+        boxes[at] = Math.min(boxes[f], boxes[s]);
+        boxes[at + 1] = Math.min(boxes[f + 1], boxes[s + 1]);
+        boxes[at + 2] = Math.min(boxes[f + 2], boxes[s + 2]);
+        boxes[at + 3] = Math.max(boxes[f + 3], boxes[s + 3]);
+        boxes[at + 4] = Math.max(boxes[f + 4], boxes[s + 4]);
+        boxes[at + 5] = Math.max(boxes[f + 5], boxes[s + 5]);
+    }
+
+    // Half the surface area, only compared
+    private float area(int node) {
+        int at = node * BOX;
+        float x = boxes[at + 3] - boxes[at], y = boxes[at + 4] - boxes[at + 1], z = boxes[at + 5] - boxes[at + 2];
+
+        return x * y + y * z + z * x;
+    }
+
+    private float unionArea(int node, int otherAt) {
+        int at = node * BOX;
+
+        float x = Math.max(boxes[at + 3], boxes[otherAt + 3]) - Math.min(boxes[at], boxes[otherAt]);
+        float y = Math.max(boxes[at + 4], boxes[otherAt + 4]) - Math.min(boxes[at + 1], boxes[otherAt + 1]);
+        float z = Math.max(boxes[at + 5], boxes[otherAt + 5]) - Math.min(boxes[at + 2], boxes[otherAt + 2]);
+
+        return x * y + y * z + z * x;
+    }
+
+    private void setFatBox(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int at = node * BOX;
+
+        boxes[at] = minX - margin;
+        boxes[at + 1] = minY - margin;
+        boxes[at + 2] = minZ - margin;
+        boxes[at + 3] = maxX + margin;
+        boxes[at + 4] = maxY + margin;
+        boxes[at + 5] = maxZ + margin;
+    }
+
+    private boolean isLeaf(int node) {
+        return left[node] == NONE;
+    }
+
+    private int push(int top, int node) {
+        if (node == NONE)
+            return top;
+
+        if (top == stack.length)
+            stack = Arrays.copyOf(stack, stack.length * 2);
+
+        stack[top] = node;
+        return top + 1;
+    }
+
+    private int newNode() {
+        int node;
+
+        if (freeNodes != NONE) {
+            node = freeNodes;
+            freeNodes = parent[node];
+        } else {
+            if (nodeCount == parent.length)
+                growNodes(nodeCount * 2);
+
+            node = nodeCount++;
+        }
+
+        parent[node] = NONE;
+        left[node] = NONE;
+        right[node] = NONE;
+
+        return node;
+    }
+
+    // Recycled nodes are chained through parent
+    private void freeNode(int node) {
+        items[node] = 0;
+        height[node] = -1;
+        parent[node] = freeNodes;
+        freeNodes = node;
+    }
+
+    private void growNodes(int newLength) {
+        boxes = Arrays.copyOf(boxes, newLength * BOX);
+        parent = Arrays.copyOf(parent, newLength);
+        left = Arrays.copyOf(left, newLength);
+        right = Arrays.copyOf(right, newLength);
+        height = Arrays.copyOf(height, newLength);
+        items = Arrays.copyOf(items, newLength);
+    }
+}
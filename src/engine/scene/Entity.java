@@ -1,8 +1,52 @@
 package engine.scene;
 
+import engine.ecs.Entity_World;
 import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
 
+/**
+ * Object view of one entity, for code that works with objects. Inside a {@link Scene} the data lives in the
+ * scene's {@link Entity_World} rows and this only keeps the handle, outside it keeps the model and transformation
+ * until the entity is added.
+ */
 public class Entity {
-    private Model model;
-    private Matrix4f transformation;
+    private final Model model;
+
+    // Outside a scene the transformation itself, inside a copy refreshed by getTransformation()
+    private final Matrix4f transformation = new Matrix4f();
+
+    // Set while the entity is in a scene
+    Scene scene;
+    long handle = Entity_World.NONE;
+
+    public Entity(Model model, Matrix4fc transformation) {
+        this.model = model;
+        this.transformation.set(transformation);
+    }
+
+    public Model getModel() {
+        return model;
+    }
+
+    public Matrix4fc getTransformation() {
+        if (scene != null)
+            scene.getTransformation(handle, transformation);
+
+        return transformation;
+    }
+
+    /**
+     * Only this entity's instance data is rewritten, and uploaded with the next {@link Scene#render()}
+     */
+    public void setTransformation(Matrix4fc transformation) {
+        this.transformation.set(transformation);
+
+        if (scene != null)
+            scene.setTransformation(handle, transformation);
+    }
+
+    // Entity_World.NONE outside a scene
+    public long getHandle() {
+        return handle;
+    }
 }
@@ -0,0 +1,105 @@
+package engine.scene;
+
+import org.joml.Matrix4fc;
+
+/**
+ * <h1>
+ *     Frustum
+ * </h1>
+ * <h3>
+ *     The 6 planes of a view frustum, for culling bounding spheres and boxes
+ * </h3>
+ * <p>
+ *     Planes are taken from the rows of the projection * view matrix (Gribb / Hartmann) and normalized, so plane
+ *     distances are world units and a sphere is outside once it's farther than its radius behind any plane.
+ *     Spheres are culled in bulk from SoA arrays, with {@code jdk.incubator.vector} when the module is present
+ *     ({@code --add-modules jdk.incubator.vector}), otherwise with a scalar loop.
+ * </p>
+ */
+public class Frustum {
+    public static final int PLANES = 6;
+
+    private static final Sphere_Culler CULLER = pickCuller();
+
+    // Plane p: a[p] * x + b[p] * y + c[p] * z + d[p] >= 0 on the inside
+    final float[] a = new float[PLANES];
+    final float[] b = new float[PLANES];
+    final float[] c = new float[PLANES];
+    final float[] d = new float[PLANES];
+
+    /**
+     * @param viewProjection projection * view, GL clip space (z in [-w, w])
+     */
+    public Frustum set(Matrix4fc viewProjection) {
+        Matrix4fc m = viewProjection;
+
+        // left, right, bottom, top, near, far: row 3 +- row 0, 1, 2
+        setPlane(0, m.m03() + m.m00(), m.m13() + m.m10(), m.m23() + m.m20(), m.m33() + m.m30());
+        setPlane(1, m.m03() - m.m00(), m.m13() - m.m10(), m.m23() - m.m20(), m.m33() - m.m30());
+        setPlane(2, m.m03() + m.m01(), m.m13() + m.m11(), m.m23() + m.m21(), m.m33() + m.m31());
+        setPlane(3, m.m03() - m.m01(), m.m13() - m.m11(), m.m23() - m.m21(), m.m33() - m.m31());
+        setPlane(4, m.m03() + m.m02(), m.m13() + m.m12(), m.m23() + m.m22(), m.m33() + m.m32());
+        setPlane(5, m.m03() - m.m02(), m.m13() - m.m12(), m.m23() - m.m22(), m.m33() - m.m32());
+
+        return this;
+    }
+
+    public boolean testSphere(float x, float y, float z, float radius) {
+        for (int p = 0; p < PLANES; p++) {
+            if (a[p] * x + b[p] * y + c[p] * z + d[p] < -radius)
+                return false;
+        }
+
+        return true;
+    }
+
+    // Only the corner farthest along each plane's normal is tested
+    public boolean testAabb(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        for (int p = 0; p < PLANES; p++) {
+            float x = a[p] >= 0.0f ? maxX : minX;
+            float y = b[p] >= 0.0f ? maxY : minY;
+            float z = c[p] >= 0.0f ? maxZ : minZ;
+
+            if (a[p] * x + b[p] * y + c[p] * z + d[p] < 0.0f)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the indices of the spheres that are at least partially inside to {@code visible}
+     *
+     * @return how many there are
+     */
+    public int cullSpheres(float[] x, float[] y, float[] z, float[] radius, int count, int[] visible) {
+        assert visible.length >= count;
+        return CULLER.cull(this, x, y, z, radius, count, visible);
+    }
+
+    public static boolean isVectorized() {
+        return !(CULLER instanceof Scalar_Sphere_Culler);
+    }
+
+    private void setPlane(int p, float x, float y, float z, float w) {
+        float inverseLength = 1.0f / (float) Math.sqrt(x * x + y * y + z * z);
+
+        a[p] = x * inverseLength;
+        b[p] = y * inverseLength;
+        c[p] = z * inverseLength;
+        d[p] = w * inverseLength;
+    }
+
+    // The vector culler is only loaded by name, so nothing else needs the incubator module
+    private static Sphere_Culler pickCuller() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (Sphere_Culler) Class.forName("engine.scene.Vector_Sphere_Culler").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("vectorized culling unavailable: " + e);
+            }
+        }
+
+        return new Scalar_Sphere_Culler();
+    }
+}
@@ -1,18 +1,15 @@
 package engine.scene;
 
-import java.util.ArrayList;
+import engine.memory.Int_Array_List;
 
 public class IndexGroups {
-    private final ArrayList<Integer> positionIndices = new ArrayList<>();
-    private final ArrayList<Integer> uvIndices = new ArrayList<>();
-    private final ArrayList<Integer> normalIndices = new ArrayList<>();
+    // (position, uv, normal) triples, already 0 based
+    private final Int_Array_List indices = new Int_Array_List(3 * 256);
 
     public IndexGroups() {}
 
     public void add(int positionIndex, int uvIndex, int normalIndex) {
-        positionIndices.add(positionIndex - 1);
-        uvIndices.add(uvIndex - 1);
-        normalIndices.add(normalIndex - 1);
+        indices.add(positionIndex - 1, uvIndex - 1, normalIndex - 1);
     }
 
     public void add(String positionIndex, String uvIndex, String normalIndex) {
@@ -37,18 +34,18 @@ public class IndexGroups {
     }
 
     public int getIndexPos(int i) {
-        return positionIndices.get(i);
+        return indices.get(i * 3);
     }
 
     public int getUvPos(int i) {
-        return uvIndices.get(i);
+        return indices.get(i * 3 + 1);
     }
 
     public int getNormalPos(int i) {
-        return normalIndices.get(i);
+        return indices.get(i * 3 + 2);
     }
 
     public int size() {
-        return positionIndices.size();
+        return indices.size() / 3;
     }
 }
@@ -0,0 +1,384 @@
+package engine.scene;
+
+import engine.ecs.Component;
+import engine.ecs.Entity_World;
+import engine.gfx.Bounds;
+import engine.gfx.GL_State;
+import engine.gfx.GPU_Buffer;
+import engine.gfx.GPU_Buffer_Type;
+import engine.gfx.GPU_Buffer_Usage;
+import engine.gfx.Object_Transforms;
+import engine.gfx.Position_Decode;
+import engine.gfx.Stream_Buffer;
+import org.lwjgl.system.MemoryUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BUFFER;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * <h3>
+ *     Every entity of one {@link Model}, with their transforms packed into one off-heap array
+ * </h3>
+ * <p>
+ *     Slot i holds the {@link Object_Transforms} of entity i (position decode included), the array is mirrored
+ *     into a storage buffer and drawn with one instanced call. Changing an entity only rewrites its own slot and
+ *     marks it dirty; {@link #upload()} sends consecutive dirty slots with one glBufferSubData each, slightly merging
+ *     runs separated by a few clean slots. Removal moves the last entity into the hole, so slots stay dense.
+ * </p>
+ * <p>
+ *     World space bounding spheres are kept next to the transforms in SoA arrays, for {@link Frustum#cullSpheres}.
+ *     The world space boxes go to the scene's {@link Aabb_Tree} as entities are added, moved and removed.
+ * </p>
+ */
+class Instance_Group {
+    // Re-uploading this many clean slots is cheaper than another call
+    private static final int MERGE_GAP = 8;
+
+    private final Model model;
+    private final int modelId;
+    private final Aabb_Tree spatialIndex;
+
+    private long transforms = NULL;
+    private int capacity;
+    private int size;
+
+    // By slot
+    private long[] handles = new long[0];
+    private int[] proxies = new int[0];
+
+    private float[] sphereX = new float[0];
+    private float[] sphereY = new float[0];
+    private float[] sphereZ = new float[0];
+    private float[] sphereRadius = new float[0];
+
+    private long[] dirty = new long[0];
+    private int dirtyMin = Integer.MAX_VALUE;
+    private int dirtyMax = -1;
+
+    private int buffer;
+    private int bufferCapacity;
+
+    private long uploadedBytes;
+    private int uploads;
+
+    Instance_Group(Model model, int modelId, Aabb_Tree spatialIndex) {
+        this.model = model;
+        this.modelId = modelId;
+        this.spatialIndex = spatialIndex;
+    }
+
+    /**
+     * @return slot of the entity, its transform has to be {@link #write}n before the next upload
+     */
+    int add(long handle) {
+        int slot = size;
+
+        if (slot == capacity)
+            grow(Math.max(64, capacity * 2));
+
+        handles[slot] = handle;
+        proxies[slot] = Aabb_Tree.NONE;
+        size++;
+
+        return slot;
+    }
+
+    /**
+     * @return handle of the entity moved into {@code slot}, or {@link Entity_World#NONE} if it was the last one
+     */
+    long remove(int slot) {
+        int last = size - 1;
+
+        spatialIndex.remove(proxies[slot]);
+        size--;
+
+        if (slot == last)
+            return Entity_World.NONE;
+
+        MemoryUtil.memCopy(address(last), address(slot), Object_Transforms.SIZE);
+        handles[slot] = handles[last];
+        proxies[slot] = proxies[last];
+        sphereX[slot] = sphereX[last];
+        sphereY[slot] = sphereY[last];
+        sphereZ[slot] = sphereZ[last];
+        sphereRadius[slot] = sphereRadius[last];
+        markDirty(slot);
+
+        return handles[slot];
+    }
+
+    /**
+     * Does nothing if the matrix is the one the slot already has, so rewriting whole chunks only uploads what moved
+     *
+     * @param world the entity's {@link Component#WORLD_MATRIX} at {@code offset}, 3 rows of 4
+     */
+    void write(int slot, float[] world, int offset) {
+        float m00 = world[offset], m01 = world[offset + 1], m02 = world[offset + 2], m03 = world[offset + 3];
+        float m10 = world[offset + 4], m11 = world[offset + 5], m12 = world[offset + 6], m13 = world[offset + 7];
+        float m20 = world[offset + 8], m21 = world[offset + 9], m22 = world[offset + 10], m23 = world[offset + 11];
+
+        // world * translate(offset) * scale(scale)
+        Position_Decode decode = model.getMesh().getPositionDecode();
+        float s = decode.scale(), ox = decode.offsetX(), oy = decode.offsetY(), oz = decode.offsetZ();
+
+        float t0 = m00 * ox + m01 * oy + m02 * oz + m03;
+        float t1 = m10 * ox + m11 * oy + m12 * oz + m13;
+        float t2 = m20 * ox + m21 * oy + m22 * oz + m23;
+
+        long address = address(slot);
+
+        if (proxies[slot] != Aabb_Tree.NONE
+                && sameRow(address, m00 * s, m01 * s, m02 * s, t0)
+                && sameRow(address + 16, m10 * s, m11 * s, m12 * s, t1)
+                && sameRow(address + 32, m20 * s, m21 * s, m22 * s, t2))
+            return;
+
+        putRow(address, m00 * s, m01 * s, m02 * s, t0);
+        putRow(address + 16, m10 * s, m11 * s, m12 * s, t1);
+        putRow(address + 32, m20 * s, m21 * s, m22 * s, t2);
+
+        markDirty(slot);
+
+        Bounds bounds = model.getBounds();
+
+        // Scaled by the longest axis, so non uniform scales stay conservative
+        float scale = (float) Math.sqrt(Math.max(
+                m00 * m00 + m10 * m10 + m20 * m20, Math.max(
+                m01 * m01 + m11 * m11 + m21 * m21,
+                m02 * m02 + m12 * m12 + m22 * m22)));
+
+        float cx = bounds.centerX(), cy = bounds.centerY(), cz = bounds.centerZ();
+
+        sphereX[slot] = m00 * cx + m01 * cy + m02 * cz + m03;
+        sphereY[slot] = m10 * cx + m11 * cy + m12 * cz + m13;
+        sphereZ[slot] = m20 * cx + m21 * cy + m22 * cz + m23;
+        sphereRadius[slot] = bounds.radius() * scale;
+
+        // World box of the transformed object box, each axis spans the extremes of the rotated extents (Arvo)
+        float minX = m03 + lower(m00, m01, m02, bounds), maxX = m03 + upper(m00, m01, m02, bounds);
+        float minY = m13 + lower(m10, m11, m12, bounds), maxY = m13 + upper(m10, m11, m12, bounds);
+        float minZ = m23 + lower(m20, m21, m22, bounds), maxZ = m23 + upper(m20, m21, m22, bounds);
+
+        if (proxies[slot] == Aabb_Tree.NONE)
+            proxies[slot] = spatialIndex.insert(handles[slot], minX, minY, minZ, maxX, maxY, maxZ);
+        else
+            spatialIndex.move(proxies[slot], minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * Sends the dirty slots to the GPU, everything if the buffer had to grow
+     */
+    void upload() {
+        uploadedBytes = 0;
+        uploads = 0;
+
+        if (size > bufferCapacity) {
+            if (buffer != 0)
+                GL_State.deleteBuffer(buffer);
+
+            bufferCapacity = capacity;
+            buffer = GPU_Buffer.allocEmpty(
+                    (long) bufferCapacity * Object_Transforms.SIZE, GPU_Buffer_Type.Storage_Buffer, GPU_Buffer_Usage.Dynamic);
+
+            clearDirty();
+            uploadRange(0, size);
+            return;
+        }
+
+        if (dirtyMax < 0)
+            return;
+
+        int runStart = -1;
+        int runEnd = -1;
+
+        for (int slot = nextDirty(dirtyMin); slot >= 0 && slot <= dirtyMax; slot = nextDirty(slot + 1)) {
+            if (runStart >= 0 && slot - runEnd <= MERGE_GAP) {
+                runEnd = slot + 1;
+                continue;
+            }
+
+            if (runStart >= 0)
+                uploadRange(runStart, runEnd);
+
+            runStart = slot;
+            runEnd = slot + 1;
+        }
+
+        if (runStart >= 0)
+            uploadRange(runStart, runEnd);
+
+        clearDirty();
+    }
+
+    int cull(Frustum frustum, int[] visible) {
+        return frustum.cullSpheres(sphereX, sphereY, sphereZ, sphereRadius, size, visible);
+    }
+
+    /**
+     * Copies the transforms of the {@code count} slots in {@code visible} to {@code target} and draws just those
+     */
+    void drawVisible(int lod, int[] visible, int count, Stream_Buffer target, long offset) {
+        copyTransforms(visible, count, target.address() + offset);
+
+        GL_State.bindBufferRange(
+                GL_SHADER_STORAGE_BUFFER, Object_Transforms.BINDING, target.buffer(), offset, (long) count * Object_Transforms.SIZE);
+        model.renderInstanced(lod, count);
+    }
+
+    void draw(int lod) {
+        if (size == 0)
+            return;
+
+        bindTransforms();
+        model.renderInstanced(lod, size);
+    }
+
+    /**
+     * Copies the transforms of the {@code count} slots in {@code visible} to {@code to}, null {@code visible} copies
+     * the first {@code count} slots
+     */
+    void copyTransforms(int[] visible, int count, long to) {
+        if (visible == null) {
+            MemoryUtil.memCopy(transforms, to, (long) count * Object_Transforms.SIZE);
+            return;
+        }
+
+        for (int k = 0; k < count; k++)
+            MemoryUtil.memCopy(address(visible[k]), to + (long) k * Object_Transforms.SIZE, Object_Transforms.SIZE);
+    }
+
+    // Every slot, instance i is slot i. Needs upload() first
+    void bindTransforms() {
+        GL_State.bindBufferRange(
+                GL_SHADER_STORAGE_BUFFER, Object_Transforms.BINDING, buffer, 0, (long) size * Object_Transforms.SIZE);
+    }
+
+    Model model() {
+        return model;
+    }
+
+    int modelId() {
+        return modelId;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Of the last upload()
+    long uploadedBytes() {
+        return uploadedBytes;
+    }
+
+    int uploads() {
+        return uploads;
+    }
+
+    void delete() {
+        if (buffer != 0)
+            GL_State.deleteBuffer(buffer);
+
+        if (transforms != NULL)
+            MemoryUtil.nmemFree(transforms);
+
+        size = 0;
+        buffer = 0;
+        bufferCapacity = 0;
+        transforms = NULL;
+        capacity = 0;
+    }
+
+    // Extremes of x * box.x + y * box.y + z * box.z over the box
+    private static float lower(float x, float y, float z, Bounds box) {
+        return Math.min(x * box.minX(), x * box.maxX()) + Math.min(y * box.minY(), y * box.maxY()) + Math.min(z * box.minZ(), z * box.maxZ());
+    }
+
+    private static float upper(float x, float y, float z, Bounds box) {
+        return Math.max(x * box.minX(), x * box.maxX()) + Math.max(y * box.minY(), y * box.maxY()) + Math.max(z * box.minZ(), z * box.maxZ());
+    }
+
+    private void uploadRange(int from, int to) {
+        // Slots freed by removals can be dirty past the end
+        to = Math.min(to, size);
+        if (from >= to)
+            return;
+
+        long offset = (long) from * Object_Transforms.SIZE;
+        long bytes = (long) (to - from) * Object_Transforms.SIZE;
+
+        GPU_Buffer.update(buffer, GPU_Buffer_Type.Storage_Buffer, offset, transforms + offset, bytes);
+
+        uploadedBytes += bytes;
+        uploads++;
+    }
+
+    private static void putRow(long address, float x, float y, float z, float w) {
+        MemoryUtil.memPutFloat(address, x);
+        MemoryUtil.memPutFloat(address + 4, y);
+        MemoryUtil.memPutFloat(address + 8, z);
+        MemoryUtil.memPutFloat(address + 12, w);
+    }
+
+    private static boolean sameRow(long address, float x, float y, float z, float w) {
+        return MemoryUtil.memGetFloat(address) == x
+                && MemoryUtil.memGetFloat(address + 4) == y
+                && MemoryUtil.memGetFloat(address + 8) == z
+                && MemoryUtil.memGetFloat(address + 12) == w;
+    }
+
+    private long address(int slot) {
+        return transforms + (long) slot * Object_Transforms.SIZE;
+    }
+
+    private void markDirty(int slot) {
+        dirty[slot >>> 6] |= 1L << slot;
+        dirtyMin = Math.min(dirtyMin, slot);
+        dirtyMax = Math.max(dirtyMax, slot);
+    }
+
+    private int nextDirty(int from) {
+        int word = from >>> 6;
+        if (word >= dirty.length)
+            return -1;
+
+        long bits = dirty[word] & -1L << from;
+
+        while (bits == 0) {
+            if (++word >= dirty.length)
+                return -1;
+
+            bits = dirty[word];
+        }
+
+        return word * 64 + Long.numberOfTrailingZeros(bits);
+    }
+
+    private void clearDirty() {
+        if (dirtyMax >= 0)
+            Arrays.fill(dirty, dirtyMin >>> 6, (dirtyMax >>> 6) + 1, 0L);
+
+        dirtyMin = Integer.MAX_VALUE;
+        dirtyMax = -1;
+    }
+
+    private void grow(int newCapacity) {
+        transforms = transforms == NULL
+                ? MemoryUtil.nmemAllocChecked((long) newCapacity * Object_Transforms.SIZE)
+                : MemoryUtil.nmemReallocChecked(transforms, (long) newCapacity * Object_Transforms.SIZE);
+
+        capacity = newCapacity;
+
+        handles = Arrays.copyOf(handles, newCapacity);
+        proxies = Arrays.copyOf(proxies, newCapacity);
+
+        sphereX = Arrays.copyOf(sphereX, newCapacity);
+        sphereY = Arrays.copyOf(sphereY, newCapacity);
+        sphereZ = Arrays.copyOf(sphereZ, newCapacity);
+        sphereRadius = Arrays.copyOf(sphereRadius, newCapacity);
+
+        dirty = Arrays.copyOf(dirty, (newCapacity + 63) >>> 6);
+    }
+}
@@ -1,14 +1,32 @@
 package engine.scene;
 
+import engine.Renderer;
+import engine.gfx.Arena_Mesh;
+import engine.gfx.Bounds;
+import engine.gfx.Lod_Chain;
 import engine.gfx.Texture2D;
 import engine.gfx.Triangle_Mesh;
+import org.joml.Matrix4f;
 
 public class Model {
+    public static final float MAX_PIXEL_ERROR = 1.0f;
+
     private final Triangle_Mesh mesh;
+    // The same geometry in a Geometry_Arena, null if it isn't in one
+    private final Arena_Mesh arenaMesh;
     private final Texture2D texture;
 
     public Model(Triangle_Mesh mesh, Texture2D texture) {
+        this(mesh, null, texture);
+    }
+
+    /**
+     * With an {@code arenaMesh}, a {@link Scene} draws the model's entities from the arena, with one multi draw
+     * for all models sharing the arena and texture
+     */
+    public Model(Triangle_Mesh mesh, Arena_Mesh arenaMesh, Texture2D texture) {
         this.mesh = mesh;
+        this.arenaMesh = arenaMesh;
         this.texture = texture;
     }
 
@@ -18,8 +36,74 @@ public class Model {
         mesh.render();
     }
 
+    /**
+     * Draws the level picked by {@link #selectLod}
+     *
+     * @param distance from the camera to the model, in the model's units
+     * @param projectionScale viewport height / (2 * tan(fov / 2)), turns size / distance into pixels
+     */
+    public void render(float distance, float projectionScale) {
+        texture.bind(0);
+        mesh.render(selectLod(distance, projectionScale));
+    }
+
+    /**
+     * Draws {@code instances} copies with a single call, the instance transforms must already be bound
+     */
+    public void renderInstanced(int lod, int instances) {
+        texture.bind(0);
+        mesh.renderInstanced(lod, instances);
+    }
+
+    /**
+     * Queues the model instead of drawing it, {@code transform} is its model matrix (position decode included)
+     */
+    public void submit(Renderer renderer, int program, Matrix4f transform, float distance, float projectionScale) {
+        renderer.submit(
+                Renderer.Pass.Opaque,
+                program,
+                texture.getId(),
+                mesh,
+                selectLod(distance, projectionScale),
+                transform,
+                distance
+        );
+    }
+
+    /**
+     * Coarsest level whose error still projects to at most {@link #MAX_PIXEL_ERROR} pixels
+     */
+    public int selectLod(float distance, float projectionScale) {
+        Lod_Chain lods = mesh.getLods();
+        int lod = 0;
+
+        while (lod + 1 < lods.levels() && lods.errors()[lod + 1] * projectionScale <= MAX_PIXEL_ERROR * distance)
+            lod++;
+
+        return lod;
+    }
+
+    public Triangle_Mesh getMesh() {
+        return mesh;
+    }
+
+    public Arena_Mesh getArenaMesh() {
+        return arenaMesh;
+    }
+
+    public Bounds getBounds() {
+        return mesh.getBounds();
+    }
+
+    public Texture2D getTexture() {
+        return texture;
+    }
+
     public void delete() {
         texture.delete();
         mesh.deleteWithBuffers();
+
+        if (arenaMesh != null)
+            arenaMesh.getArena().remove(arenaMesh);
     }
 }
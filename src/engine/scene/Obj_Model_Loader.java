@@ -1,50 +1,294 @@
 package engine.scene;
 
 import engine.gfx.*;
+import engine.memory.Float_Array_List;
+import engine.memory.Int_Array_List;
+import engine.memory.Int_Native_List;
+import engine.memory.Native_Arena;
+import engine.mesh.Lod_Builder;
+import engine.mesh.Mesh_Cache;
+import engine.mesh.Mesh_Data;
+import engine.mesh.Mesh_Optimizer;
+import engine.mesh.Vertex_Cache_Simulator;
+import engine.mesh.Vertex_Quantizer;
+import engine.mesh.Vertex_Welder;
 
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
 import java.util.Arrays;
 import java.util.List;
-
-// TODO: rewrite this whole mess using MemoryUtils heap allocations
+import java.util.function.Function;
 
 public class Obj_Model_Loader {
+    /**
+     * What a load did, for the caller to report. Steps that didn't run stay null
+     */
+    public static class Stats {
+        // Read from the mesh cache, nothing else is set then
+        public boolean cached;
+
+        public Vertex_Welder.Stats weld;
+        public Lod_Chain lods;
+
+        public Vertex_Cache_Simulator.Stats vertexCacheBefore;
+        public Vertex_Cache_Simulator.Stats vertexCacheAfter;
+
+        public int quantizedVertexSize;
+        public Index_Type quantizedIndexType;
+        public Vertex_Quantizer.Error quantizationError;
+
+        @Override
+        public String toString() {
+            if (cached)
+                return "from the mesh cache";
+
+            StringBuilder builder = new StringBuilder();
+
+            if (weld != null)
+                builder.append(weld);
+            if (lods != null)
+                builder.append("\nlods: ").append(lods);
+            if (vertexCacheAfter != null)
+                builder.append("\nvertex cache before: ").append(vertexCacheBefore).append(", after: ").append(vertexCacheAfter);
+            if (quantizationError != null)
+                builder.append(String.format("\nquantized: %d bytes per vertex, %s indices, %s",
+                        quantizedVertexSize, quantizedIndexType, quantizationError));
+
+            return builder.toString();
+        }
+    }
+
     private Obj_Model_Loader() {}
 
     public static Triangle_Mesh loadFrom(Path objPath) throws IOException {
-        ArrayList<Float> positions = new ArrayList<>();
-        ArrayList<Float> uvs = new ArrayList<>();
-        ArrayList<Float> normals = new ArrayList<>();
+        try (Mesh_Data mesh = parseFrom(objPath)) {
+            return mesh.upload();
+        }
+    }
+
+    /**
+     * Streaming mode: the file is memory mapped and tokenized in place, see {@link Obj_Stream_Parser}.
+     * Gives the same mesh as {@link #loadFrom}, quads and n-gons are fan triangulated by both
+     */
+    public static Triangle_Mesh loadMapped(Path objPath) throws IOException {
+        try (Mesh_Data mesh = parseMapped(objPath)) {
+            return mesh.upload();
+        }
+    }
+
+    /**
+     * The mesh is off-heap, the caller closes it once it's uploaded, same for the other parse methods
+     */
+    public static Mesh_Data parseMapped(Path objPath) throws IOException {
+        return parseMapped(objPath, null);
+    }
+
+    // stats null if they're not wanted
+    public static Mesh_Data parseMapped(Path objPath, Stats stats) throws IOException {
+        try (FileChannel channel = FileChannel.open(objPath, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            Obj_Stream_Parser parser = new Obj_Stream_Parser(data, 0, data.limit());
+            parser.parse();
+
+            return toMeshData(parser, stats);
+        }
+    }
+
+    /**
+     * Same as {@link #loadMapped}, but newline aligned parts of the file are parsed on the common pool.
+     * The mesh is identical to the single threaded one
+     */
+    public static Triangle_Mesh loadMappedParallel(Path objPath) throws IOException {
+        try (Mesh_Data mesh = parseMappedParallel(objPath, ForkJoinPool.commonPool())) {
+            return mesh.upload();
+        }
+    }
+
+    public static Mesh_Data parseMappedParallel(Path objPath, ForkJoinPool pool) throws IOException {
+        return parseMappedParallel(objPath, pool, null);
+    }
+
+    public static Mesh_Data parseMappedParallel(Path objPath, ForkJoinPool pool, Stats stats) throws IOException {
+        try (FileChannel channel = FileChannel.open(objPath, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            return toMeshData(Obj_Parallel_Parser.parse(data, pool), stats);
+        }
+    }
+
+    public static Triangle_Mesh loadCached(Path objPath) throws IOException {
+        return loadCached(objPath, Mesh_Optimizer.Options.NONE);
+    }
+
+    public static Triangle_Mesh loadCached(Path objPath, Mesh_Optimizer.Options options) throws IOException {
+        return loadCached(objPath, options, new float[0]);
+    }
+
+    public static Triangle_Mesh loadCached(Path objPath, Mesh_Optimizer.Options options, float[] lodRatios) throws IOException {
+        return loadCached(objPath, options, lodRatios, null);
+    }
+
+    public static Triangle_Mesh loadCached(
+            Path objPath,
+            Mesh_Optimizer.Options options,
+            float[] lodRatios,
+            Vertex_Quantizer.Options quantization) throws IOException {
+        return loadCached(objPath, options, lodRatios, quantization, null);
+    }
+
+    /**
+     * Loads "model.obj.vmesh" next to the model if it was built from the same file contents, optimizer
+     * options, LOD ratios and vertex format, otherwise parses the OBJ, builds the LODs, optimizes it and
+     * (re)writes the cache, see {@link Mesh_Cache}, {@link Lod_Builder} and {@link Vertex_Quantizer}
+     *
+     * @param quantization null keeps the float vertex streams
+     * @param stats filled with what was done, null if they're not wanted
+     */
+    public static Triangle_Mesh loadCached(
+            Path objPath,
+            Mesh_Optimizer.Options options,
+            float[] lodRatios,
+            Vertex_Quantizer.Options quantization,
+            Stats stats) throws IOException {
+        return loadCached(objPath, options, lodRatios, quantization, stats, Mesh_Cache.Entry::upload);
+    }
+
+    /**
+     * Same as above, but {@code upload} decides what the entry becomes, e.g. a Triangle_Mesh and an
+     * {@link Arena_Mesh} of the same geometry. The entry's buffers are only valid during the call
+     */
+    public static <T> T loadCached(
+            Path objPath,
+            Mesh_Optimizer.Options options,
+            float[] lodRatios,
+            Vertex_Quantizer.Options quantization,
+            Stats stats,
+            Function<Mesh_Cache.Entry, T> upload) throws IOException {
+        Path cachePath = Mesh_Cache.pathFor(objPath);
+
+        try (FileChannel channel = FileChannel.open(objPath, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            long sourceSize = data.limit();
+            long sourceHash = Mesh_Cache.hash(data);
+
+            int variant = (options.cacheKey() * 31 + Arrays.hashCode(lodRatios)) * 31 +
+                          (quantization == null ? 0 : quantization.cacheKey());
+
+            Mesh_Cache.Entry cached = Mesh_Cache.read(cachePath, sourceSize, sourceHash, variant);
+            if (cached != null) {
+                if (stats != null)
+                    stats.cached = true;
+
+                return upload.apply(cached);
+            }
+
+            Mesh_Data mesh = toMeshData(Obj_Parallel_Parser.parse(data, ForkJoinPool.commonPool()), stats);
+
+            // Every intermediate mesh lives in the arena of the parsed one, the entry points into it until the upload
+            Native_Arena arena = mesh.arena;
+
+            try {
+                if (lodRatios.length > 0) {
+                    mesh = Lod_Builder.build(mesh, lodRatios);
+
+                    if (stats != null)
+                        stats.lods = mesh.lods;
+                }
+
+                if (options.any()) {
+                    Mesh_Optimizer.Result optimized = Mesh_Optimizer.optimize(mesh, options);
+                    mesh = optimized.mesh();
+
+                    if (stats != null) {
+                        stats.vertexCacheBefore = optimized.before();
+                        stats.vertexCacheAfter = optimized.after();
+                    }
+                }
+
+                Mesh_Cache.Entry entry;
+
+                if (quantization != null) {
+                    Vertex_Quantizer.Result quantized = Vertex_Quantizer.quantize(mesh, quantization);
+                    entry = quantized.entry();
+
+                    if (stats != null) {
+                        stats.quantizedVertexSize = entry.layout().vertexSize();
+                        stats.quantizedIndexType = entry.indexType();
+                        stats.quantizationError = quantized.error();
+                    }
+                } else {
+                    entry = Mesh_Cache.entryOf(mesh);
+                }
+
+                try {
+                    Mesh_Cache.write(cachePath, sourceSize, sourceHash, variant, entry);
+                } catch (IOException e) {
+                    System.err.println("failed to write mesh cache \"" + cachePath + "\": " + e);
+                }
+
+                return upload.apply(entry);
+            } finally {
+                arena.close();
+            }
+        }
+    }
+
+    private static Mesh_Data toMeshData(Obj_Stream_Parser parser, Stats stats) {
+        Mesh_Data mesh = parser.toMeshData();
+
+        if (stats != null)
+            stats.weld = parser.weldStats;
+
+        return mesh;
+    }
+
+    public static Mesh_Data parseFrom(Path objPath) throws IOException {
+        return parseFrom(objPath, null);
+    }
+
+    public static Mesh_Data parseFrom(Path objPath, Stats stats) throws IOException {
+        Float_Array_List positions = new Float_Array_List();
+        Float_Array_List uvs = new Float_Array_List();
+        Float_Array_List normals = new Float_Array_List();
 
         IndexGroups groups = new IndexGroups();
+        // Line number of every corner, for errors
+        Int_Array_List cornerLines = new Int_Array_List();
 
         List<String> lines = Files.readAllLines(objPath);
 
-        for (String line : lines) {
+        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++) {
+            String line = lines.get(lineNumber - 1);
             String[] tokens = line.split("\\s+");
 
             switch (tokens[0]) {
                 case "v" -> {
-                    positions.add(Float.parseFloat(tokens[1]));
-                    positions.add(Float.parseFloat(tokens[2]));
-                    positions.add(Float.parseFloat(tokens[3]));
+                    positions.add(Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]), Float.parseFloat(tokens[3]));
                 }
                 case "vt" -> {
-                    uvs.add(Float.parseFloat(tokens[1]));
-                    uvs.add(Float.parseFloat(tokens[2]));
+                    uvs.add(Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]));
                 }
                 case "vn" -> {
-                    normals.add(Float.parseFloat(tokens[1]));
-                    normals.add(Float.parseFloat(tokens[2]));
-                    normals.add(Float.parseFloat(tokens[3]));
+                    normals.add(Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]), Float.parseFloat(tokens[3]));
                 }
                 case "f" -> {
-                    groups.add(tokens[1]);
-                    groups.add(tokens[2]);
-                    groups.add(tokens[3]);
+                    if (tokens.length < 4)
+                        throw new IllegalStateException("face with less than 3 corners: " + line);
+
+                    // Fan triangulated in the same order as Obj_Stream_Parser
+                    for (int corner = 3; corner < tokens.length; corner++) {
+                        groups.add(tokens[1]);
+                        groups.add(tokens[corner - 1]);
+                        groups.add(tokens[corner]);
+                        cornerLines.add(lineNumber, lineNumber, lineNumber);
+                    }
                 }
                 case "#" -> {} // comments
                 case "g", "o", "s" -> {} // ignore
@@ -56,58 +300,32 @@ public class Obj_Model_Loader {
             }
         }
 
-        int verticesCount = positions.size() / 3;
-
-        float[] positionsArray = new float[positions.size()];
-        for (int i = 0; i < positionsArray.length; i++) {
-            positionsArray[i] = positions.get(i);
-        }
-
-        float[] uvsArray = new float[verticesCount * 2];
-        float[] normalsArray = new float[positionsArray.length];
-
-        int[] indices = new int[groups.size()];
+        Native_Arena arena = new Native_Arena();
 
-        for (int i = 0; i < groups.size(); i++) {
-            indices[i] = groups.getIndexPos(i);
+        Vertex_Welder welder = new Vertex_Welder(
+                arena,
+                positions.array(), positions.size(),
+                uvs.array(), uvs.size(),
+                normals.array(), normals.size(),
+                groups.size()
+        );
 
-            int uvPos = groups.getUvPos(i);
-            int normPos = groups.getNormalPos(i);
+        Int_Native_List indices = new Int_Native_List(arena, groups.size());
 
-            if (!uvs.isEmpty()) {
-                uvsArray[indices[i] * 2] = uvs.get(uvPos * 2);
-                uvsArray[indices[i] * 2 + 1] = uvs.get(uvPos * 2 + 1);
-            }
+        int i = 0;
 
-            if (!normals.isEmpty()) {
-                normalsArray[indices[i] * 3] = normals.get(normPos * 3);
-                normalsArray[indices[i] * 3 + 1] = normals.get(normPos * 3 + 1);
-                normalsArray[indices[i] * 3 + 2] = normals.get(normPos * 3 + 2);
-            }
+        try {
+            for (; i < groups.size(); i++)
+                indices.add(welder.weld(groups.getIndexPos(i), groups.getUvPos(i), groups.getNormalPos(i)));
+        } catch (IllegalStateException e) {
+            arena.close();
+            throw new IllegalStateException(e.getMessage() + " at line " + cornerLines.get(i), e);
         }
 
-        return new Triangle_Mesh(
-                new int[] {
-                        GPU_Buffer.allocHeap(positionsArray, GPU_Buffer_Type.Vertex_Buffer, GPU_Buffer_Usage.Immutable),
-                        GPU_Buffer.allocHeap(uvsArray, GPU_Buffer_Type.Vertex_Buffer, GPU_Buffer_Usage.Immutable),
-                        GPU_Buffer.allocHeap(normalsArray, GPU_Buffer_Type.Vertex_Buffer, GPU_Buffer_Usage.Immutable)
-                },
-                GPU_Buffer.allocHeap(indices, GPU_Buffer_Type.Index_Buffer, GPU_Buffer_Usage.Immutable),
-                indices.length,
-                Index_Type.UInt32,
-                new Triangle_Mesh_Layout(
-                        new Buffer_Layout[] {
-                                new Buffer_Layout(Vertex_Type.Float3.size),
-                                new Buffer_Layout(Vertex_Type.Float2.size),
-                                new Buffer_Layout(Vertex_Type.Float3.size)
-                        },
-                        new Attribute_Layout[] {
-                                new Attribute_Layout(0, Vertex_Type.Float3),
-                                new Attribute_Layout(1, Vertex_Type.Float2),
-                                new Attribute_Layout(2, Vertex_Type.Float3)
-                        }
-                )
-        );
+        if (stats != null)
+            stats.weld = welder.stats();
+
+        return welder.finish(indices);
     }
 }
 
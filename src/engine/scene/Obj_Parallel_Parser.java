@@ -0,0 +1,134 @@
+package engine.scene;
+
+import engine.memory.Float_Array_List;
+import engine.memory.Int_Array_List;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * <h3>
+ *     Splits an OBJ buffer into newline aligned ranges and runs an {@link Obj_Stream_Parser} on each of them
+ * </h3>
+ * <p>
+ *     Every worker fills its own v/vt/vn/f segments. A prefix sum over the segment sizes then gives each
+ *     chunk its place in the merged arrays and the base counts for its relative indices. Chunks are merged
+ *     in file order, so the result is exactly what a single parser over the whole buffer would produce.
+ * </p>
+ */
+final class Obj_Parallel_Parser {
+    // Smaller chunks aren't worth the task overhead
+    static final int MIN_CHUNK_BYTES = 256 * 1024;
+
+    private Obj_Parallel_Parser() {}
+
+    /**
+     * @return a parser holding the merged segments of all chunks, ready for toMeshData
+     */
+    static Obj_Stream_Parser parse(ByteBuffer data, ForkJoinPool pool) {
+        int chunks = Math.max(1, Math.min(pool.getParallelism() * 4, data.limit() / MIN_CHUNK_BYTES));
+        return parse(data, pool, chunks);
+    }
+
+    static Obj_Stream_Parser parse(ByteBuffer data, ForkJoinPool pool, int chunks) {
+        int[] bounds = splitLines(data, chunks);
+
+        Obj_Stream_Parser[] parts = new Obj_Stream_Parser[bounds.length - 1];
+        for (int i = 0; i < parts.length; i++)
+            parts[i] = new Obj_Stream_Parser(data, bounds[i], bounds[i + 1]);
+
+        if (parts.length == 1) {
+            parts[0].parse();
+            return parts[0];
+        }
+
+        List<ForkJoinTask<?>> parseTasks = new ArrayList<>(parts.length);
+        for (Obj_Stream_Parser part : parts)
+            parseTasks.add(ForkJoinTask.adapt(part::parse));
+
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(parseTasks)));
+
+        // Exclusive prefix sums of every segment size
+        int[] positionsBase = new int[parts.length + 1];
+        int[] uvsBase = new int[parts.length + 1];
+        int[] normalsBase = new int[parts.length + 1];
+        int[] cornersBase = new int[parts.length + 1];
+
+        for (int i = 0; i < parts.length; i++) {
+            positionsBase[i + 1] = positionsBase[i] + parts[i].positions.size();
+            uvsBase[i + 1] = uvsBase[i] + parts[i].uvs.size();
+            normalsBase[i + 1] = normalsBase[i] + parts[i].normals.size();
+            cornersBase[i + 1] = cornersBase[i] + parts[i].corners.size();
+        }
+
+        Obj_Stream_Parser merged = new Obj_Stream_Parser(data, 0, 0);
+        merged.positions = new Float_Array_List(positionsBase[parts.length]);
+        merged.positions.resize(positionsBase[parts.length]);
+        merged.uvs = new Float_Array_List(uvsBase[parts.length]);
+        merged.uvs.resize(uvsBase[parts.length]);
+        merged.normals = new Float_Array_List(normalsBase[parts.length]);
+        merged.normals.resize(normalsBase[parts.length]);
+        merged.corners = new Int_Array_List(cornersBase[parts.length]);
+        merged.corners.resize(cornersBase[parts.length]);
+
+        List<ForkJoinTask<?>> mergeTasks = new ArrayList<>(parts.length);
+        for (int i = 0; i < parts.length; i++) {
+            int chunk = i;
+
+            mergeTasks.add(ForkJoinTask.adapt(() -> {
+                Obj_Stream_Parser part = parts[chunk];
+
+                copy(part.positions, merged.positions, positionsBase[chunk]);
+                copy(part.uvs, merged.uvs, uvsBase[chunk]);
+                copy(part.normals, merged.normals, normalsBase[chunk]);
+                System.arraycopy(part.corners.array(), 0, merged.corners.array(), cornersBase[chunk], part.corners.size());
+
+                // Slot % 3 tells which stream the index points into: position, uv or normal
+                int[] bases = { positionsBase[chunk] / 3, uvsBase[chunk] / 2, normalsBase[chunk] / 3 };
+
+                int[] corners = merged.corners.array();
+
+                for (int j = 0; j < part.relativeSlots.size(); j++) {
+                    int slot = part.relativeSlots.get(j);
+                    corners[cornersBase[chunk] + slot] += bases[slot % 3];
+                }
+            }));
+        }
+
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(mergeTasks)));
+
+        return merged;
+    }
+
+    private static void copy(Float_Array_List from, Float_Array_List to, int offset) {
+        System.arraycopy(from.array(), 0, to.array(), offset, from.size());
+    }
+
+    /**
+     * @return chunks + 1 (or fewer, when lines are long) increasing offsets, every inner one right after a '\n'
+     */
+    static int[] splitLines(ByteBuffer data, int chunks) {
+        int size = data.limit();
+
+        int[] bounds = new int[chunks + 1];
+        int count = 1;
+
+        for (int i = 1; i < chunks; i++) {
+            int bound = Math.max((int) ((long) size * i / chunks), bounds[count - 1] + 1);
+
+            while (bound < size && data.get(bound - 1) != '\n')
+                bound++;
+
+            if (bound > bounds[count - 1] && bound < size)
+                bounds[count++] = bound;
+        }
+
+        bounds[count++] = size;
+
+        return count == bounds.length ? bounds : Arrays.copyOf(bounds, count);
+    }
+}
@@ -0,0 +1,412 @@
+package engine.scene;
+
+import engine.memory.Float_Array_List;
+import engine.memory.Int_Array_List;
+import engine.memory.Int_Native_List;
+import engine.memory.Native_Arena;
+import engine.mesh.Mesh_Data;
+import engine.mesh.Vertex_Welder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <h3>
+ *     Allocation free OBJ tokenizer, works directly on the bytes of a (usually memory mapped) buffer
+ * </h3>
+ * <p>
+ *     Numbers are parsed in place, nothing is turned into a String except for the rare float that can't be
+ *     rounded correctly by the fast path. Faces with more than 3 corners are fan triangulated on the fly.
+ * </p>
+ */
+final class Obj_Stream_Parser {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final ByteBuffer data;
+    private final int end;
+    private int pos;
+
+    Float_Array_List positions = new Float_Array_List(1024);
+    Float_Array_List uvs = new Float_Array_List(1024);
+    Float_Array_List normals = new Float_Array_List(1024);
+
+    // (position, uv, normal) triple for every triangle corner, 0 based, -1 when missing
+    Int_Array_List corners = new Int_Array_List(1024);
+
+    // Slots of corners that were written with a negative (relative) OBJ index. They are resolved against
+    // what this parser has seen so far, so a chunk in the middle of a file has to add the counts of all
+    // the chunks before it, see Obj_Parallel_Parser
+    Int_Array_List relativeSlots = new Int_Array_List(16);
+
+    // Filled by toMeshData
+    Vertex_Welder.Stats weldStats;
+
+    // Set by parseIndex, only valid right after the call
+    private boolean lastIndexRelative;
+
+    Obj_Stream_Parser(ByteBuffer data, int start, int end) {
+        this.data = data;
+        this.pos = start;
+        this.end = end;
+    }
+
+    void parse() {
+        while (pos < end) {
+            parseLine();
+            skipLine();
+        }
+    }
+
+    private void parseLine() {
+        skipBlanks();
+
+        if (pos >= end)
+            return;
+
+        switch (data.get(pos)) {
+            case 'v' -> {
+                if (isBlank(at(pos + 1))) {
+                    pos += 1;
+                    positions.add(parseFloat());
+                    positions.add(parseFloat());
+                    positions.add(parseFloat());
+                } else if (at(pos + 1) == 't' && isBlank(at(pos + 2))) {
+                    pos += 2;
+                    uvs.add(parseFloat());
+                    uvs.add(parseFloat());
+                } else if (at(pos + 1) == 'n' && isBlank(at(pos + 2))) {
+                    pos += 2;
+                    normals.add(parseFloat());
+                    normals.add(parseFloat());
+                    normals.add(parseFloat());
+                } else {
+                    reportUnknownKeyword();
+                }
+            }
+            case 'f' -> {
+                if (isBlank(at(pos + 1))) {
+                    pos += 1;
+                    parseFace();
+                } else {
+                    reportUnknownKeyword();
+                }
+            }
+            case '#', '\n' -> {} // comments and empty lines
+            default -> {
+                if (!isKeyword("g") && !isKeyword("o") && !isKeyword("s") &&
+                    !isKeyword("usemtl") && !isKeyword("mtllib"))
+                        reportUnknownKeyword();
+            }
+        }
+    }
+
+    private void parseFace() {
+        int p0 = 0, t0 = 0, n0 = 0, relative0 = 0;
+        int p1 = 0, t1 = 0, n1 = 0, relative1 = 0;
+
+        int count = 0;
+
+        while (true) {
+            skipBlanks();
+            if (pos >= end || data.get(pos) == '\n')
+                break;
+
+            int p = parseIndex(positions.size() / 3);
+            int relative = lastIndexRelative ? 1 : 0;
+            int t = -1;
+            int n = -1;
+
+            if (at(pos) == '/') {
+                pos++;
+
+                if (at(pos) != '/') {
+                    t = parseIndex(uvs.size() / 2);
+                    relative |= lastIndexRelative ? 2 : 0;
+                }
+
+                if (at(pos) == '/') {
+                    pos++;
+                    n = parseIndex(normals.size() / 3);
+                    relative |= lastIndexRelative ? 4 : 0;
+                }
+            }
+
+            if (count == 0) {
+                p0 = p; t0 = t; n0 = n; relative0 = relative;
+            } else if (count >= 2) {
+                putCorner(p0, t0, n0, relative0);
+                putCorner(p1, t1, n1, relative1);
+                putCorner(p, t, n, relative);
+            }
+
+            p1 = p; t1 = t; n1 = n; relative1 = relative;
+            count++;
+        }
+
+        if (count < 3)
+            throw new IllegalStateException("face with less than 3 corners at byte " + pos);
+    }
+
+    private void putCorner(int position, int uv, int normal, int relativeMask) {
+        for (int i = 0; i < 3; i++) {
+            if ((relativeMask & (1 << i)) != 0)
+                relativeSlots.add(corners.size() + i);
+        }
+
+        corners.add(position, uv, normal);
+    }
+
+    // OBJ indices are 1 based, negative ones are relative to the end of the list read so far
+    private int parseIndex(int currentCount) {
+        int value = parseInt();
+        lastIndexRelative = value < 0;
+
+        return value < 0 ? currentCount + value : value - 1;
+    }
+
+    private int parseInt() {
+        int start = pos;
+        boolean negative = false;
+
+        byte c = at(pos);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            pos++;
+        }
+
+        int value = 0;
+        int digitsStart = pos;
+
+        while (pos < end) {
+            int digit = data.get(pos) - '0';
+            if (digit < 0 || digit > 9)
+                break;
+
+            value = value * 10 + digit;
+            pos++;
+        }
+
+        if (pos == digitsStart)
+            throw new IllegalStateException("expected an integer at byte " + start);
+
+        return negative ? -value : value;
+    }
+
+    private float parseFloat() {
+        skipBlanks();
+
+        int start = pos;
+        boolean negative = false;
+
+        byte c = at(pos);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        int digitsStart = pos;
+
+        while (pos < end) {
+            int digit = data.get(pos) - '0';
+            if (digit < 0 || digit > 9)
+                break;
+
+            mantissa = mantissa * 10 + digit;
+            if (mantissa != 0)
+                significantDigits++;
+            pos++;
+        }
+
+        if (at(pos) == '.') {
+            pos++;
+
+            while (pos < end) {
+                int digit = data.get(pos) - '0';
+                if (digit < 0 || digit > 9)
+                    break;
+
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0)
+                    significantDigits++;
+                exponent--;
+                pos++;
+            }
+        }
+
+        // "nan", "inf", "." and friends
+        if (pos == digitsStart || (pos == digitsStart + 1 && data.get(digitsStart) == '.'))
+            return parseFloatSlow(start);
+
+        c = at(pos);
+        if (c == 'e' || c == 'E') {
+            pos++;
+
+            boolean negativeExponent = false;
+            c = at(pos);
+            if (c == '-' || c == '+') {
+                negativeExponent = c == '-';
+                pos++;
+            }
+
+            int value = 0;
+            while (pos < end) {
+                int digit = data.get(pos) - '0';
+                if (digit < 0 || digit > 9)
+                    break;
+
+                if (value < 10000)
+                    value = value * 10 + digit;
+                pos++;
+            }
+
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (mantissa == 0)
+            return negative ? -0.0f : 0.0f;
+
+        // Clinger's fast path: both operands are exact doubles so the single operation is correctly rounded
+        if (significantDigits <= 15 && exponent >= -22 && exponent <= 22) {
+            double value = exponent < 0
+                    ? mantissa / POWERS_OF_TEN[-exponent]
+                    : mantissa * POWERS_OF_TEN[exponent];
+
+            // Rounding the double to a float again is only wrong when the double landed exactly in the
+            // middle of two floats, those (and subnormals) go through the slow path
+            long bits = Double.doubleToRawLongBits(value);
+            if ((bits & 0x1FFFFFFFL) != 0x10000000L) {
+                float result = (float) value;
+
+                if (result >= Float.MIN_NORMAL && result <= Float.MAX_VALUE)
+                    return negative ? -result : result;
+            }
+        }
+
+        return parseFloatSlow(start);
+    }
+
+    private float parseFloatSlow(int start) {
+        pos = start;
+        while (pos < end && !isBlank(data.get(pos)) && data.get(pos) != '\n')
+            pos++;
+
+        byte[] token = new byte[pos - start];
+        data.get(start, token);
+
+        return Float.parseFloat(new String(token, StandardCharsets.US_ASCII));
+    }
+
+    private boolean isKeyword(String keyword) {
+        int length = keyword.length();
+
+        for (int i = 0; i < length; i++) {
+            if (at(pos + i) != keyword.charAt(i))
+                return false;
+        }
+
+        byte next = at(pos + length);
+        return isBlank(next) || next == '\n' || next == 0;
+    }
+
+    private void reportUnknownKeyword() {
+        int tokenEnd = pos;
+        while (tokenEnd < end && !isBlank(data.get(tokenEnd)) && data.get(tokenEnd) != '\n')
+            tokenEnd++;
+
+        byte[] token = new byte[tokenEnd - pos];
+        data.get(pos, token);
+
+        System.err.println("Unexpected value: " + new String(token, StandardCharsets.US_ASCII));
+    }
+
+    private void skipBlanks() {
+        while (pos < end && isBlank(data.get(pos)))
+            pos++;
+    }
+
+    // Only for error messages, finds the face the corner was triangulated from by counting corners again
+    private int lineOfCorner(int corner) {
+        int line = 1;
+        int emitted = 0;
+
+        for (int at = 0, limit = data.limit(); at < limit; line++) {
+            while (at < limit && isBlank(data.get(at)))
+                at++;
+
+            boolean face = at + 1 < limit && data.get(at) == 'f' && isBlank(data.get(at + 1));
+            int tokens = 0;
+
+            for (boolean inToken = false; at < limit && data.get(at) != '\n'; at++) {
+                boolean blank = isBlank(data.get(at));
+                if (!blank && !inToken)
+                    tokens++;
+
+                inToken = !blank;
+            }
+
+            at++;
+
+            // The keyword is a token too, n corners make n - 2 triangles
+            if (face && tokens > 3) {
+                emitted += 3 * (tokens - 3);
+                if (corner < emitted)
+                    return line;
+            }
+        }
+
+        return -1;
+    }
+
+    private void skipLine() {
+        while (pos < end && data.get(pos) != '\n')
+            pos++;
+
+        pos++;
+    }
+
+    private byte at(int i) {
+        return i < end ? data.get(i) : 0;
+    }
+
+    private static boolean isBlank(byte c) {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    /**
+     * Corners are welded on their full (position, uv, normal) triple, see {@link Vertex_Welder}
+     */
+    Mesh_Data toMeshData() {
+        Native_Arena arena = new Native_Arena();
+
+        Vertex_Welder welder = new Vertex_Welder(
+                arena,
+                positions.array(), positions.size(),
+                uvs.array(), uvs.size(),
+                normals.array(), normals.size(),
+                corners.size() / 3
+        );
+
+        int[] cornersArray = corners.array();
+        int count = corners.size() / 3;
+        Int_Native_List indices = new Int_Native_List(arena, count);
+        int i = 0;
+
+        try {
+            for (; i < count; i++)
+                indices.add(welder.weld(cornersArray[i * 3], cornersArray[i * 3 + 1], cornersArray[i * 3 + 2]));
+        } catch (IllegalStateException e) {
+            arena.close();
+            throw new IllegalStateException(e.getMessage() + " at line " + lineOfCorner(i), e);
+        }
+
+        weldStats = welder.stats();
+
+        return welder.finish(indices);
+    }
+}
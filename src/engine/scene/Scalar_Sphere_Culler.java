@@ -0,0 +1,25 @@
+package engine.scene;
+
+class Scalar_Sphere_Culler implements Sphere_Culler {
+    @Override
+    public int cull(Frustum frustum, float[] x, float[] y, float[] z, float[] radius, int count, int[] visible) {
+        return cull(frustum, x, y, z, radius, 0, count, visible, 0);
+    }
+
+    // Spheres [from, to), appended to visible at visibleCount
+    static int cull(Frustum frustum, float[] x, float[] y, float[] z, float[] radius, int from, int to, int[] visible, int visibleCount) {
+        float[] a = frustum.a, b = frustum.b, c = frustum.c, d = frustum.d;
+
+        outer:
+        for (int i = from; i < to; i++) {
+            for (int p = 0; p < Frustum.PLANES; p++) {
+                if (a[p] * x[i] + b[p] * y[i] + c[p] * z[i] + d[p] < -radius[i])
+                    continue outer;
+            }
+
+            visible[visibleCount++] = i;
+        }
+
+        return visibleCount;
+    }
+}
@@ -1,30 +1,746 @@
 package engine.scene;
 
+import engine.ecs.Archetype;
+import engine.ecs.Component;
+import engine.ecs.Entity_World;
+import engine.ecs.System_Scheduler;
+import engine.ecs.Transform_System;
+import engine.gfx.Arena_Mesh;
+import engine.gfx.Draw_Command_Buffer;
+import engine.gfx.GL_State;
+import engine.gfx.GPU_Buffer_Type;
+import engine.gfx.Geometry_Arena;
+import engine.gfx.Object_Transforms;
+import engine.gfx.Stream_Buffer;
+import engine.gfx.Texture2D;
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Quaternionf;
+import org.lwjgl.system.MemoryUtil;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Objects;
 
+import static org.lwjgl.opengl.GL11.glGetInteger;
+import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BUFFER;
+import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BUFFER_OFFSET_ALIGNMENT;
+
+/**
+ * <p>
+ *     Entities are rows of an {@link Entity_World}: position, rotation and scale, the world matrix the
+ *     {@link Transform_System} builds from them, and which model to draw. {@link #updateState} runs the scene's
+ *     {@link System_Scheduler}, game systems are added to {@link #systems()}. {@link Entity} objects, as the
+ *     {@link SceneBuilder} takes them, are views of rows; entities that don't need one are {@link #spawn}ed directly.
+ * </p>
+ * <p>
+ *     Entities are grouped by {@link Model}, every group is drawn with one instanced call. Transforms live in
+ *     the groups' off-heap arrays and only the ones that changed since the last frame are uploaded. Expects a
+ *     program reading {@link engine.gfx.Object_Transforms} (and the frame uniforms) to be bound.
+ * </p>
+ * <p>
+ *     With a {@link Frustum}, every group's bounding spheres are tested first: fully visible groups draw as usual,
+ *     partly visible ones stream just their visible transforms into a per frame buffer and draw those.
+ * </p>
+ * <p>
+ *     Models with an {@link Arena_Mesh} are drawn from their {@link Geometry_Arena} instead: all groups sharing an
+ *     arena and a texture become one glMultiDrawElementsIndirect, one command per group. Their transforms are
+ *     streamed back to back into the per frame buffer, each command's baseInstance points at its group's run.
+ *     A batch of a single fully drawn group skips the copy and reads the group's own buffer. The scene frames the
+ *     arenas it draws from, {@link Geometry_Arena#beginFrame} and {@link Geometry_Arena#endFrame} are called by
+ *     render.
+ * </p>
+ * <p>
+ *     Every drawn entity's world box is also in {@link #spatialIndex()}, for frustum, ray, sphere and box queries
+ *     that don't go through every entity. It and the instance data are brought up to date at the end of
+ *     {@link #updateState} and by {@link #setTransformation}, so they are current without rendering too. Only the
+ *     rows {@link Archetype#markRowChanged} flags are visited, not every row of a chunk one entity moved in.
+ * </p>
+ * <p>
+ *     Entities given a parent with {@link #setParent} are nodes of the scene's {@link Transform_Hierarchy}. Their
+ *     position, rotation and scale are relative to the parent, and their world matrix comes from the hierarchy:
+ *     the {@link Transform_System} skips them, {@link #updateState} hands the locals that changed to the hierarchy,
+ *     updates it and copies the recomputed world matrices back. Everything else keeps the flat path.
+ * </p>
+ */
 public class Scene {
+    // World units of slack around each entity's box before a move touches the tree
+    public static final float SPATIAL_MARGIN = 0.25f;
+
+    // Slot of the entity in its model's instance group, owned by the scene like MODEL_ID
+    static final Component INSTANCE_SLOT = Component.define("instance slot", Component.Kind.Int, 1);
+
+    // Id in the scene's transform hierarchy, for entities whose world matrix the hierarchy computes
+    static final Component HIERARCHY_NODE = Component.define("hierarchy node", Component.Kind.Int, 1);
+
+    private static final long TRANSFORM_PARTS = Component.mask(Component.POSITION, Component.ROTATION, Component.SCALE);
+
+    private static final long RENDERABLE = Component.mask(
+            Component.POSITION, Component.ROTATION, Component.SCALE,
+            Component.WORLD_MATRIX, Component.MODEL_ID, INSTANCE_SLOT);
+
     public ArrayList<Entity> entities;
     public Flying_Camera camera;
 
     public String label;
 
+    private final Entity_World world = new Entity_World();
+    private final System_Scheduler systems = new System_Scheduler();
+
+    private final Aabb_Tree spatialIndex = new Aabb_Tree(SPATIAL_MARGIN);
+
+    private final Transform_Hierarchy hierarchy = new Transform_Hierarchy();
+    // Entity of each hierarchy node, by node id
+    private long[] nodeHandles = new long[0];
+    // World version the hierarchy has every local transform of
+    private long hierarchyVersion;
+    private final float[] localRows = new float[12];
+
+    // Models don't override equals, so this is by identity
+    private final LinkedHashMap<Model, Instance_Group> groups = new LinkedHashMap<>();
+    private final ArrayList<Instance_Group> groupsById = new ArrayList<>();
+
+    // Groups of models in a Geometry_Arena, by (arena, texture)
+    private final ArrayList<Arena_Batch> batches = new ArrayList<>();
+    private final ArrayList<Geometry_Arena> arenas = new ArrayList<>();
+
+    // Relative to the column lengths, how far from perpendicular the axes may be before it counts as shear
+    private static final float SHEAR_TOLERANCE = 1.0e-3f;
+
+    private final Matrix3f basis = new Matrix3f();
+    private final Quaternionf rotation = new Quaternionf();
+
+    private long uploadedBytes;
+    private int uploads;
+    private int draws;
+    private int tested;
+    private int visible;
+
+    private int[] visibleSlots = new int[0];
+    private Stream_Buffer visibleTransforms;
+    private int storageAlignment;
+
     public Scene(String label, ArrayList<Entity> entities, Flying_Camera flyingCamera) {
         this.label = label;
         this.camera = flyingCamera;
 
         this.entities = Objects.requireNonNullElseGet(entities, ArrayList::new);
+
+        systems.add(new Transform_System(HIERARCHY_NODE.bit()));
+
+        for (Entity entity : this.entities)
+            attach(entity);
     }
 
     public void updateState() {
+        updateState(0.0f);
+    }
 
+    public void updateState(float deltaTime) {
+        systems.run(world, deltaTime);
+        updateHierarchy();
+        syncInstances();
     }
 
     public void render() {
+        render(0);
+    }
+
+    /**
+     * Every group draws the same lod level
+     */
+    public void render(int lod) {
+        beginRender(!batches.isEmpty());
+
+        for (Instance_Group group : groups.values()) {
+            if (group.size() == 0 || group.model().getArenaMesh() != null)
+                continue;
+
+            group.upload();
+            group.draw(Math.min(lod, group.model().getMesh().getLods().levels() - 1));
+
+            uploadedBytes += group.uploadedBytes();
+            uploads += group.uploads();
+            draws++;
+        }
 
+        for (Arena_Batch batch : batches)
+            drawBatch(batch, lod, null);
+
+        endRender(!batches.isEmpty());
+
+        visible = instanceCount();
+    }
+
+    /**
+     * Like {@link #render(int)}, but skips entities whose bounding sphere is outside {@code frustum}
+     */
+    public void render(int lod, Frustum frustum) {
+        beginRender(true);
+
+        for (Instance_Group group : groups.values()) {
+            int size = group.size();
+            if (size == 0 || group.model().getArenaMesh() != null)
+                continue;
+
+            group.upload();
+            uploadedBytes += group.uploadedBytes();
+            uploads += group.uploads();
+
+            int count = group.cull(frustum, visibleSlots);
+            tested += size;
+            visible += count;
+
+            if (count == 0)
+                continue;
+
+            int groupLod = Math.min(lod, group.model().getMesh().getLods().levels() - 1);
+
+            if (count == size) {
+                group.draw(groupLod);
+            } else {
+                long offset = visibleTransforms.allocate((long) count * Object_Transforms.SIZE, storageAlignment);
+                group.drawVisible(groupLod, visibleSlots, count, visibleTransforms, offset);
+            }
+
+            draws++;
+        }
+
+        for (Arena_Batch batch : batches)
+            drawBatch(batch, lod, frustum);
+
+        endRender(true);
     }
 
     public void addEntity(Entity entity) {
         entities.add(entity);
+        attach(entity);
+    }
+
+    // Linear in the entity count because of the entities list
+    public void removeEntity(Entity entity) {
+        if (entity.scene != this || !entities.remove(entity))
+            return;
+
+        // Keeps the last transformation in the object
+        entity.getTransformation();
+
+        destroy(entity.handle);
+        entity.scene = null;
+        entity.handle = Entity_World.NONE;
+    }
+
+    /**
+     * Creates a drawn entity without an {@link Entity} object
+     *
+     * @param components besides the ones every drawn entity has, for game systems
+     * @return handle in {@link #world()}
+     */
+    public long spawn(Model model, Matrix4fc transformation, Component... components) {
+        Archetype archetype = world.archetype(RENDERABLE | Component.mask(components));
+        Instance_Group group = groupOf(model);
+
+        long handle = world.create(archetype);
+        int row = world.rowOf(handle);
+
+        archetype.ints(Component.MODEL_ID)[row] = group.modelId();
+        archetype.ints(INSTANCE_SLOT)[row] = group.add(handle);
+
+        setTransformation(handle, transformation);
+        return handle;
+    }
+
+    /**
+     * Children of a hierarchy node become roots, keeping their local transform as their world one
+     */
+    public void destroy(long handle) {
+        Archetype archetype = world.archetypeOf(handle);
+        int row = world.rowOf(handle);
+
+        if (archetype.has(HIERARCHY_NODE)) {
+            int node = archetype.ints(HIERARCHY_NODE)[row];
+
+            for (int child : hierarchy.children(node))
+                hierarchy.setParent(child, Transform_Hierarchy.NONE);
+
+            hierarchy.remove(node);
+            nodeHandles[node] = Entity_World.NONE;
+        }
+
+        if (archetype.has(INSTANCE_SLOT)) {
+            int slot = archetype.ints(INSTANCE_SLOT)[row];
+            long moved = groupsById.get(archetype.ints(Component.MODEL_ID)[row]).remove(slot);
+
+            if (moved != Entity_World.NONE)
+                world.archetypeOf(moved).ints(INSTANCE_SLOT)[world.rowOf(moved)] = slot;
+        }
+
+        world.destroy(handle);
+    }
+
+    /**
+     * Splits the affine {@code transformation} into the entity's position, rotation and scale. A mirroring matrix
+     * keeps its mirror as a negative x scale. Its world matrix, instance data and spatial index box are updated
+     * right away, without waiting for {@link #updateState}, except for hierarchy nodes: there the transformation is
+     * relative to the parent, and the world matrix follows with the next update, as it depends on the parent's
+     *
+     * @throws IllegalArgumentException if the matrix shears, which position, rotation and scale can't hold
+     */
+    public void setTransformation(long handle, Matrix4fc transformation) {
+        Archetype archetype = world.archetypeOf(handle);
+        int row = world.rowOf(handle);
+
+        float sx = length(transformation.m00(), transformation.m01(), transformation.m02());
+        float sy = length(transformation.m10(), transformation.m11(), transformation.m12());
+        float sz = length(transformation.m20(), transformation.m21(), transformation.m22());
+
+        if (!perpendicular(transformation.m00(), transformation.m01(), transformation.m02(), sx, transformation.m10(), transformation.m11(), transformation.m12(), sy)
+                || !perpendicular(transformation.m00(), transformation.m01(), transformation.m02(), sx, transformation.m20(), transformation.m21(), transformation.m22(), sz)
+                || !perpendicular(transformation.m10(), transformation.m11(), transformation.m12(), sy, transformation.m20(), transformation.m21(), transformation.m22(), sz))
+            throw new IllegalArgumentException("transformation has shear, it can't be split into rotation and scale:\n" + transformation);
+
+        if (transformation.determinant3x3() < 0.0f)
+            sx = -sx;
+
+        // A zero scale leaves nothing to take that axis' rotation from
+        if (sx == 0.0f || sy == 0.0f || sz == 0.0f) {
+            rotation.identity();
+        } else {
+            basis.set(transformation).scale(1.0f / sx, 1.0f / sy, 1.0f / sz).getNormalizedRotation(rotation);
+        }
+
+        float[] positions = archetype.floats(Component.POSITION);
+        float[] rotations = archetype.floats(Component.ROTATION);
+        float[] scales = archetype.floats(Component.SCALE);
+        float[] matrices = archetype.floats(Component.WORLD_MATRIX);
+
+        positions[row * 3] = transformation.m30();
+        positions[row * 3 + 1] = transformation.m31();
+        positions[row * 3 + 2] = transformation.m32();
+
+        rotations[row * 4] = rotation.x;
+        rotations[row * 4 + 1] = rotation.y;
+        rotations[row * 4 + 2] = rotation.z;
+        rotations[row * 4 + 3] = rotation.w;
+
+        scales[row * 3] = sx;
+        scales[row * 3 + 1] = sy;
+        scales[row * 3 + 2] = sz;
+
+        world.markChanged(handle, Component.POSITION);
+        world.markChanged(handle, Component.ROTATION);
+        world.markChanged(handle, Component.SCALE);
+
+        if (archetype.has(HIERARCHY_NODE))
+            return;
+
+        Transform_System.compose(positions, rotations, scales, row, matrices, row * 12);
+        world.markChanged(handle, Component.WORLD_MATRIX);
+
+        if (archetype.has(INSTANCE_SLOT))
+            groupsById.get(archetype.ints(Component.MODEL_ID)[row]).write(archetype.ints(INSTANCE_SLOT)[row], matrices, row * 12);
+    }
+
+    /**
+     * Makes the entity's world matrix {@code parent}'s times its own transformation from the next
+     * {@link #updateState} on. Its position, rotation and scale are kept, and from then on relative to the parent.
+     *
+     * @param parent {@link Entity_World#NONE} to make it a root again, relative to the world
+     * @throws IllegalArgumentException if {@code parent} is the entity or one of its descendants
+     */
+    public void setParent(long handle, long parent) {
+        int node = nodeOf(handle);
+        hierarchy.setParent(node, parent == Entity_World.NONE ? Transform_Hierarchy.NONE : nodeOf(parent));
+    }
+
+    // Entity_World.NONE for roots
+    public long getParent(long handle) {
+        Archetype archetype = world.archetypeOf(handle);
+        if (!archetype.has(HIERARCHY_NODE))
+            return Entity_World.NONE;
+
+        int parent = hierarchy.parent(archetype.ints(HIERARCHY_NODE)[world.rowOf(handle)]);
+        return parent == Transform_Hierarchy.NONE ? Entity_World.NONE : nodeHandles[parent];
+    }
+
+    /**
+     * As of the last {@link #updateState} for hierarchy nodes
+     */
+    public Matrix4f getWorldTransformation(long handle, Matrix4f dest) {
+        Archetype archetype = world.archetypeOf(handle);
+        float[] matrices = archetype.floats(Component.WORLD_MATRIX);
+        int m = world.rowOf(handle) * 12;
+
+        return dest.set(
+                matrices[m], matrices[m + 4], matrices[m + 8], 0.0f,
+                matrices[m + 1], matrices[m + 5], matrices[m + 9], 0.0f,
+                matrices[m + 2], matrices[m + 6], matrices[m + 10], 0.0f,
+                matrices[m + 3], matrices[m + 7], matrices[m + 11], 1.0f);
+    }
+
+    // Relative to the parent for hierarchy nodes
+    public Matrix4f getTransformation(long handle, Matrix4f dest) {
+        Archetype archetype = world.archetypeOf(handle);
+        int row = world.rowOf(handle);
+
+        float[] positions = archetype.floats(Component.POSITION);
+        float[] rotations = archetype.floats(Component.ROTATION);
+        float[] scales = archetype.floats(Component.SCALE);
+
+        return dest.translationRotateScale(
+                positions[row * 3], positions[row * 3 + 1], positions[row * 3 + 2],
+                rotations[row * 4], rotations[row * 4 + 1], rotations[row * 4 + 2], rotations[row * 4 + 3],
+                scales[row * 3], scales[row * 3 + 1], scales[row * 3 + 2]);
+    }
+
+    public Entity_World world() {
+        return world;
+    }
+
+    public System_Scheduler systems() {
+        return systems;
+    }
+
+    public Transform_Hierarchy hierarchy() {
+        return hierarchy;
+    }
+
+    // Items are entity handles
+    public Aabb_Tree spatialIndex() {
+        return spatialIndex;
+    }
+
+    public Collection<Model> models() {
+        return groups.keySet();
+    }
+
+    // Of the last render()
+    public long uploadedBytes() {
+        return uploadedBytes;
+    }
+
+    public int uploads() {
+        return uploads;
+    }
+
+    public int draws() {
+        return draws;
+    }
+
+    // Bounding spheres tested by the last render(), 0 without a frustum
+    public int tested() {
+        return tested;
+    }
+
+    public int visible() {
+        return visible;
+    }
+
+    /**
+     * Frees the instance data, the models are not deleted
+     */
+    public void delete() {
+        for (Instance_Group group : groups.values())
+            group.delete();
+
+        groups.clear();
+        groupsById.clear();
+        batches.clear();
+        arenas.clear();
+        spatialIndex.clear();
+        hierarchy.delete();
+
+        for (Entity entity : entities) {
+            entity.scene = null;
+            entity.handle = Entity_World.NONE;
+        }
+
+        if (visibleTransforms != null)
+            visibleTransforms.delete();
+
+        visibleTransforms = null;
+    }
+
+    // Node of the entity, moving it into a hierarchy archetype first if it isn't one yet
+    private int nodeOf(long handle) {
+        Archetype archetype = world.archetypeOf(handle);
+
+        if (archetype.has(HIERARCHY_NODE))
+            return archetype.ints(HIERARCHY_NODE)[world.rowOf(handle)];
+
+        if (!archetype.hasAll(TRANSFORM_PARTS | Component.WORLD_MATRIX.bit()))
+            throw new IllegalArgumentException("entity " + Long.toHexString(handle) + " has no transform");
+
+        Archetype node = world.archetype(archetype.mask() | HIERARCHY_NODE.bit());
+        world.setArchetype(handle, node);
+
+        int row = world.rowOf(handle);
+        int id = hierarchy.add(Transform_Hierarchy.NONE);
+
+        node.ints(HIERARCHY_NODE)[row] = id;
+
+        if (id >= nodeHandles.length)
+            nodeHandles = Arrays.copyOf(nodeHandles, Math.max(64, nodeHandles.length * 2));
+
+        nodeHandles[id] = handle;
+
+        // Its current transform is the local one, the next update picks it up
+        world.markChanged(handle, Component.POSITION);
+        return id;
+    }
+
+    // Locals written since the last update into the hierarchy, then its new world matrices into the entities
+    private void updateHierarchy() {
+        for (Archetype archetype : world.archetypes()) {
+            if (!archetype.hasAll(TRANSFORM_PARTS | HIERARCHY_NODE.bit()))
+                continue;
+
+            float[] positions = archetype.floats(Component.POSITION);
+            float[] rotations = archetype.floats(Component.ROTATION);
+            float[] scales = archetype.floats(Component.SCALE);
+            int[] nodes = archetype.ints(HIERARCHY_NODE);
+
+            for (int chunk = 0, chunks = archetype.chunkCount(); chunk < chunks; chunk++) {
+                if (!archetype.changedSince(TRANSFORM_PARTS, chunk, hierarchyVersion))
+                    continue;
+
+                int from = chunk * Archetype.CHUNK_ROWS;
+                int to = Math.min(from + Archetype.CHUNK_ROWS, archetype.size());
+
+                for (int row = from; row < to; row++) {
+                    Transform_System.compose(positions, rotations, scales, row, localRows, 0);
+                    hierarchy.setLocal(nodes[row], localRows, 0);
+                }
+            }
+        }
+
+        hierarchyVersion = world.version();
+        hierarchy.update();
+
+        long address = hierarchy.address();
+
+        for (int i = 0, count = hierarchy.updated(); i < count; i++) {
+            int position = hierarchy.updatedPosition(i);
+            long handle = nodeHandles[hierarchy.id(position)];
+
+            Archetype archetype = world.archetypeOf(handle);
+            int row = world.rowOf(handle);
+            float[] matrices = archetype.floats(Component.WORLD_MATRIX);
+
+            long at = address + (long) position * Object_Transforms.SIZE;
+            for (int k = 0; k < 12; k++)
+                matrices[row * 12 + k] = MemoryUtil.memGetFloat(at + k * 4L);
+
+            archetype.markRowChanged(row);
+            world.markChanged(handle, Component.WORLD_MATRIX);
+        }
+    }
+
+    // Copies the world matrices of the changed rows into the instance groups and the spatial index
+    private void syncInstances() {
+        long required = Component.mask(Component.WORLD_MATRIX, Component.MODEL_ID, INSTANCE_SLOT);
+
+        for (Archetype archetype : world.archetypes()) {
+            if (!archetype.hasAll(required))
+                continue;
+
+            float[] matrices = archetype.floats(Component.WORLD_MATRIX);
+            int[] modelIds = archetype.ints(Component.MODEL_ID);
+            int[] slots = archetype.ints(INSTANCE_SLOT);
+
+            for (int row = archetype.nextChangedRow(0); row >= 0; row = archetype.nextChangedRow(row + 1))
+                groupsById.get(modelIds[row]).write(slots[row], matrices, row * 12);
+
+            archetype.clearChangedRows();
+        }
+    }
+
+    private static float length(float x, float y, float z) {
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+
+    private static boolean perpendicular(float ax, float ay, float az, float aLength, float bx, float by, float bz, float bLength) {
+        return Math.abs(ax * bx + ay * by + az * bz) <= SHEAR_TOLERANCE * aLength * bLength;
+    }
+
+    private int instanceCount() {
+        int count = 0;
+        for (Instance_Group group : groupsById)
+            count += group.size();
+
+        return count;
+    }
+
+    private void attach(Entity entity) {
+        assert entity.scene == null : "entity is already in a scene";
+
+        entity.handle = spawn(entity.getModel(), entity.getTransformation());
+        entity.scene = this;
+    }
+
+    // streaming: the per frame transforms buffer is written
+    private void beginRender(boolean streaming) {
+        uploadedBytes = 0;
+        uploads = 0;
+        draws = 0;
+        tested = 0;
+        visible = 0;
+
+        if (streaming) {
+            reserveVisibleTransforms();
+            visibleTransforms.beginFrame();
+        }
+
+        for (Geometry_Arena arena : arenas)
+            arena.beginFrame();
+    }
+
+    private void endRender(boolean streaming) {
+        for (Geometry_Arena arena : arenas)
+            arena.endFrame();
+
+        if (streaming)
+            visibleTransforms.endFrame();
+    }
+
+    /**
+     * One multi draw for every group of the batch, null {@code frustum} draws every entity
+     */
+    private void drawBatch(Arena_Batch batch, int lod, Frustum frustum) {
+        Draw_Command_Buffer commands = batch.commands;
+        commands.clear();
+
+        int instances = 0;
+        for (Instance_Group group : batch.groups)
+            instances += group.size();
+
+        if (instances == 0)
+            return;
+
+        // The only group, fully drawn, keeps its incrementally uploaded buffer
+        if (frustum == null && batch.groups.size() == 1) {
+            Instance_Group group = batch.groups.get(0);
+
+            group.upload();
+            uploadedBytes += group.uploadedBytes();
+            uploads += group.uploads();
+
+            group.bindTransforms();
+            commands.add(group.model().getArenaMesh(), lodOf(group, lod), instances, 0);
+        } else {
+            long offset = visibleTransforms.allocate((long) instances * Object_Transforms.SIZE, storageAlignment);
+            long to = visibleTransforms.address() + offset;
+            int next = 0;
+
+            for (Instance_Group group : batch.groups) {
+                int size = group.size();
+                if (size == 0)
+                    continue;
+
+                int count = size;
+                int[] slots = null;
+
+                if (frustum != null) {
+                    count = group.cull(frustum, visibleSlots);
+                    tested += size;
+
+                    if (count < size)
+                        slots = visibleSlots;
+                }
+
+                visible += count;
+
+                if (count == 0)
+                    continue;
+
+                group.copyTransforms(slots, count, to + (long) next * Object_Transforms.SIZE);
+                commands.add(group.model().getArenaMesh(), lodOf(group, lod), count, next);
+                next += count;
+            }
+
+            if (next == 0)
+                return;
+
+            GL_State.bindBufferRange(
+                    GL_SHADER_STORAGE_BUFFER, Object_Transforms.BINDING, visibleTransforms.buffer(), offset, (long) next * Object_Transforms.SIZE);
+        }
+
+        batch.texture.bind(0);
+        batch.arena.draw(commands);
+        draws++;
+    }
+
+    private static int lodOf(Instance_Group group, int lod) {
+        return Math.min(lod, group.model().getArenaMesh().getLods().levels() - 1);
+    }
+
+    // Sized for every entity being visible, with room for each group's alignment padding
+    private void reserveVisibleTransforms() {
+        int instances = instanceCount();
+
+        if (visibleSlots.length < instances)
+            visibleSlots = new int[Math.max(instances, visibleSlots.length * 2)];
+
+        if (storageAlignment == 0)
+            storageAlignment = glGetInteger(GL_SHADER_STORAGE_BUFFER_OFFSET_ALIGNMENT);
+
+        long needed = (long) visibleSlots.length * Object_Transforms.SIZE + (long) groups.size() * storageAlignment;
+        // Regions are back to back, a multiple of the alignment keeps every region start aligned
+        needed = (needed + storageAlignment - 1) & -(long) storageAlignment;
+        // An empty scene still maps a region, glBufferStorage doesn't take a size of 0
+        needed = Math.max(needed, storageAlignment);
+
+        if (visibleTransforms != null && visibleTransforms.allocator().regionSize() >= needed)
+            return;
+
+        if (visibleTransforms != null)
+            visibleTransforms.delete();
+
+        visibleTransforms = new Stream_Buffer(GPU_Buffer_Type.Storage_Buffer, needed);
+    }
+
+    private Instance_Group groupOf(Model model) {
+        Instance_Group group = groups.get(model);
+
+        if (group == null) {
+            group = new Instance_Group(model, groupsById.size(), spatialIndex);
+            groups.put(model, group);
+            groupsById.add(group);
+
+            if (model.getArenaMesh() != null)
+                batchOf(model.getArenaMesh().getArena(), model.getTexture()).groups.add(group);
+        }
+
+        return group;
+    }
+
+    private Arena_Batch batchOf(Geometry_Arena arena, Texture2D texture) {
+        for (Arena_Batch batch : batches) {
+            if (batch.arena == arena && batch.texture == texture)
+                return batch;
+        }
+
+        Arena_Batch batch = new Arena_Batch(arena, texture);
+        batches.add(batch);
+
+        if (!arenas.contains(arena))
+            arenas.add(arena);
+
+        return batch;
+    }
+
+    private static final class Arena_Batch {
+        final Geometry_Arena arena;
+        final Texture2D texture;
+        final ArrayList<Instance_Group> groups = new ArrayList<>();
+        final Draw_Command_Buffer commands = new Draw_Command_Buffer();
+
+        Arena_Batch(Geometry_Arena arena, Texture2D texture) {
+            this.arena = arena;
+            this.texture = texture;
+        }
     }
 }
@@ -0,0 +1,5 @@
+package engine.scene;
+
+interface Sphere_Culler {
+    int cull(Frustum frustum, float[] x, float[] y, float[] z, float[] radius, int count, int[] visible);
+}
@@ -0,0 +1,590 @@
+package engine.scene;
+
+import engine.gfx.Object_Transforms;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.lwjgl.system.MemoryUtil;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * <h1>
+ *     Transform_Hierarchy
+ * </h1>
+ * <h3>
+ *     Parent / child transforms in flat breadth first arrays, world matrices packed off-heap for instancing
+ * </h3>
+ * <p>
+ *     Nodes are stored by level, and the children of a node are next to each other in the level below, so a
+ *     subtree is a range per level. Changing a local transform only marks the node; {@link #update()} then goes
+ *     down level by level, recomputing the marked nodes and the children of everything recomputed one level up,
+ *     so the work is proportional to the dirty subtrees, not to the hierarchy. Levels with many dirty nodes are
+ *     split in chunks over a fork join pool, a level only starts once its parents are done.
+ * </p>
+ * <p>
+ *     World matrices are {@link Object_Transforms} in breadth first order at {@link #address()}, node n at
+ *     {@link #position(int)}. Positions change when nodes are added, removed or reparented (applied by the next
+ *     update), ids don't. Local matrices are stored the same way, as the 3 top rows.
+ * </p>
+ * <p>
+ *     A {@link Scene} keeps one for the entities given a parent with {@link Scene#setParent}: their position,
+ *     rotation and scale are the node's local transform, and the world matrices an update recomputes are copied
+ *     back into their {@link engine.ecs.Component#WORLD_MATRIX}, which the {@link engine.ecs.Transform_System}
+ *     leaves alone for them. It also works standalone, as a packed transform array of its own.
+ * </p>
+ */
+public class Transform_Hierarchy {
+    public static final int NONE = -1;
+
+    // Dirty nodes per task, fewer than that in a level are done on the calling thread
+    public static final int CHUNK_NODES = 2048;
+
+    private static final int ROW_FLOATS = 12;
+
+    private final ForkJoinPool pool;
+
+    // By id
+    private int[] idPosition = new int[0];
+    private int[] idParent = new int[0];
+    private int[] freeIds = new int[0];
+    private int freeIdCount;
+    private int idCount;
+
+    // By position
+    private int[] positionId = new int[0];
+    private int[] parentPosition = new int[0];
+    private int[] firstChild = new int[0];
+    private int[] childCount = new int[0];
+    private int[] positionLevel = new int[0];
+    private byte[] dirty = new byte[0];
+    private float[] local = new float[0];
+    private long world = NULL;
+    private int capacity;
+    private int positionCount;
+
+    // levelStart[l] .. levelStart[l + 1] are the positions of level l
+    private int[] levelStart = { 0 };
+    private int levels;
+    private boolean structureChanged;
+
+    // Marked since the last update, as ids since positions can still change
+    private int[] marked = new int[0];
+    private int markedCount;
+
+    // Dirty positions of the level being updated, and of the next one
+    private int[] current = new int[0];
+    private int[] next = new int[0];
+
+    private int nodes;
+    private int updated;
+    private int[] updatedPositions = new int[0];
+    private int updatedFrom;
+    private int updatedTo;
+
+    public Transform_Hierarchy() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public Transform_Hierarchy(ForkJoinPool pool) {
+        this.pool = pool;
+        grow(64);
+    }
+
+    /**
+     * @param parent id, or {@link #NONE} for a root
+     * @return id of the node, its local transform is the identity
+     */
+    public int add(int parent) {
+        assert parent == NONE || isAlive(parent);
+
+        int id;
+        if (freeIdCount > 0) {
+            id = freeIds[--freeIdCount];
+        } else {
+            if (idCount == idPosition.length)
+                growIds(Math.max(64, idCount * 2));
+
+            id = idCount++;
+        }
+
+        // Appended out of order, the next update sorts it into its level
+        if (positionCount == capacity)
+            grow(capacity * 2);
+
+        int position = positionCount++;
+
+        idPosition[id] = position;
+        idParent[id] = parent;
+        positionId[position] = id;
+
+        setRows(local, position * ROW_FLOATS, IDENTITY);
+
+        nodes++;
+        structureChanged = true;
+        mark(id);
+
+        return id;
+    }
+
+    /**
+     * Removes the node and all of its descendants
+     */
+    public void remove(int id) {
+        assert isAlive(id);
+
+        // Found before freeing anything, freeing cuts the parent chains
+        int[] subtree = new int[16];
+        int count = 0;
+
+        for (int other = 0; other < idCount; other++) {
+            if (idPosition[other] != NONE && (other == id || isAncestor(id, other)))
+                subtree = append(subtree, count++, other);
+        }
+
+        for (int i = 0; i < count; i++)
+            free(subtree[i]);
+
+        structureChanged = true;
+    }
+
+    public void setParent(int id, int parent) {
+        assert isAlive(id) && (parent == NONE || isAlive(parent));
+
+        if (parent != NONE && (parent == id || isAncestor(id, parent)))
+            throw new IllegalArgumentException("node " + parent + " is in the subtree of " + id);
+
+        idParent[id] = parent;
+        structureChanged = true;
+        mark(id);
+    }
+
+    public void setLocal(int id, Matrix4fc transformation) {
+        int at = idPosition[id] * ROW_FLOATS;
+
+        local[at] = transformation.m00();
+        local[at + 1] = transformation.m10();
+        local[at + 2] = transformation.m20();
+        local[at + 3] = transformation.m30();
+        local[at + 4] = transformation.m01();
+        local[at + 5] = transformation.m11();
+        local[at + 6] = transformation.m21();
+        local[at + 7] = transformation.m31();
+        local[at + 8] = transformation.m02();
+        local[at + 9] = transformation.m12();
+        local[at + 10] = transformation.m22();
+        local[at + 11] = transformation.m32();
+
+        mark(id);
+    }
+
+    /**
+     * Same rows as {@link engine.ecs.Component#WORLD_MATRIX}, does nothing if the node already has this transform
+     */
+    public void setLocal(int id, float[] rows, int offset) {
+        int at = idPosition[id] * ROW_FLOATS;
+
+        if (Arrays.equals(local, at, at + ROW_FLOATS, rows, offset, offset + ROW_FLOATS))
+            return;
+
+        System.arraycopy(rows, offset, local, at, ROW_FLOATS);
+        mark(id);
+    }
+
+    public void setLocalTranslation(int id, float x, float y, float z) {
+        int at = idPosition[id] * ROW_FLOATS;
+
+        local[at + 3] = x;
+        local[at + 7] = y;
+        local[at + 11] = z;
+
+        mark(id);
+    }
+
+    /**
+     * As of the last {@link #update()}
+     */
+    public Matrix4f getWorld(int id, Matrix4f dest) {
+        long at = world + (long) idPosition[id] * Object_Transforms.SIZE;
+
+        return dest.set(
+                MemoryUtil.memGetFloat(at), MemoryUtil.memGetFloat(at + 16), MemoryUtil.memGetFloat(at + 32), 0.0f,
+                MemoryUtil.memGetFloat(at + 4), MemoryUtil.memGetFloat(at + 20), MemoryUtil.memGetFloat(at + 36), 0.0f,
+                MemoryUtil.memGetFloat(at + 8), MemoryUtil.memGetFloat(at + 24), MemoryUtil.memGetFloat(at + 40), 0.0f,
+                MemoryUtil.memGetFloat(at + 12), MemoryUtil.memGetFloat(at + 28), MemoryUtil.memGetFloat(at + 44), 1.0f);
+    }
+
+    /**
+     * Applies structure changes, then recomputes the world matrices of the marked nodes and their descendants
+     */
+    public void update() {
+        if (structureChanged)
+            sort();
+
+        updated = 0;
+        updatedFrom = Integer.MAX_VALUE;
+        updatedTo = 0;
+
+        if (markedCount == 0)
+            return;
+
+        // Marked nodes, bucketed by level through a counting pass
+        int[] levelMarked = new int[levels + 1];
+        for (int i = 0; i < markedCount; i++)
+            levelMarked[positionLevel[idPosition[marked[i]]] + 1]++;
+
+        for (int l = 0; l < levels; l++)
+            levelMarked[l + 1] += levelMarked[l];
+
+        int[] byLevel = new int[markedCount];
+        int[] cursor = Arrays.copyOf(levelMarked, levels);
+        for (int i = 0; i < markedCount; i++) {
+            int position = idPosition[marked[i]];
+            byLevel[cursor[positionLevel[position]]++] = position;
+        }
+
+        markedCount = 0;
+
+        int currentCount = 0;
+
+        for (int level = 0; level < levels; level++) {
+            // This level's marks, flagged already, joined by the children of last level's dirty nodes
+            for (int i = levelMarked[level]; i < levelMarked[level + 1]; i++)
+                current = append(current, currentCount++, byLevel[i]);
+
+            if (currentCount == 0)
+                continue;
+
+            computeLevel(currentCount);
+
+            updated += currentCount;
+
+            int nextCount = 0;
+
+            for (int i = 0; i < currentCount; i++) {
+                int position = current[i];
+
+                updatedPositions = append(updatedPositions, updated - currentCount + i, position);
+                updatedFrom = Math.min(updatedFrom, position);
+                updatedTo = Math.max(updatedTo, position + 1);
+                dirty[position] = 0;
+
+                for (int child = firstChild[position], end = child + childCount[position]; child < end; child++) {
+                    // Marked children are already in next level's marks
+                    if (dirty[child] == 0) {
+                        dirty[child] = 1;
+                        next = append(next, nextCount++, child);
+                    }
+                }
+            }
+
+            int[] swap = current;
+            current = next;
+            next = swap;
+            currentCount = nextCount;
+        }
+    }
+
+    public int position(int id) {
+        return idPosition[id];
+    }
+
+    public int id(int position) {
+        return positionId[position];
+    }
+
+    public int parent(int id) {
+        return idParent[id];
+    }
+
+    // Linear in the ids, for structure edits
+    public int[] children(int id) {
+        int[] children = new int[0];
+        int count = 0;
+
+        for (int other = 0; other < idCount; other++) {
+            if (idPosition[other] != NONE && idParent[other] == id)
+                children = append(children, count++, other);
+        }
+
+        return Arrays.copyOf(children, count);
+    }
+
+    public boolean isAlive(int id) {
+        return id >= 0 && id < idCount && idPosition[id] != NONE;
+    }
+
+    // World matrices, Object_Transforms.SIZE bytes per position, moves when an update applies structure changes
+    public long address() {
+        return world;
+    }
+
+    public int size() {
+        return nodes;
+    }
+
+    public int levels() {
+        return levels;
+    }
+
+    // Of the last update(): how many world matrices were recomputed, and the range of positions they're in
+    public int updated() {
+        return updated;
+    }
+
+    public int updatedFrom() {
+        return updated == 0 ? 0 : updatedFrom;
+    }
+
+    public int updatedTo() {
+        return updatedTo;
+    }
+
+    // Position of the index-th recomputed world matrix, index below updated()
+    public int updatedPosition(int index) {
+        return updatedPositions[index];
+    }
+
+    public void delete() {
+        if (world != NULL)
+            MemoryUtil.nmemFree(world);
+
+        world = NULL;
+    }
+
+    private void computeLevel(int count) {
+        if (count <= CHUNK_NODES || pool.getParallelism() == 1)
+            compute(current, 0, count);
+        else
+            pool.invoke(new Compute_Range(current, 0, count));
+    }
+
+    // world = parent world * local, 3x4 rows with an implied (0, 0, 0, 1) last row
+    private void compute(int[] positions, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int position = positions[i];
+            int l = position * ROW_FLOATS;
+            long out = world + (long) position * Object_Transforms.SIZE;
+
+            int parent = parentPosition[position];
+
+            if (parent == NONE) {
+                for (int k = 0; k < ROW_FLOATS; k++)
+                    MemoryUtil.memPutFloat(out + k * 4L, local[l + k]);
+
+                continue;
+            }
+
+            long p = world + (long) parent * Object_Transforms.SIZE;
+
+            for (int row = 0; row < 3; row++) {
+                long pr = p + row * 16L;
+                float p0 = MemoryUtil.memGetFloat(pr), p1 = MemoryUtil.memGetFloat(pr + 4);
+                float p2 = MemoryUtil.memGetFloat(pr + 8), p3 = MemoryUtil.memGetFloat(pr + 12);
+
+                long or = out + row * 16L;
+                MemoryUtil.memPutFloat(or, p0 * local[l] + p1 * local[l + 4] + p2 * local[l + 8]);
+                MemoryUtil.memPutFloat(or + 4, p0 * local[l + 1] + p1 * local[l + 5] + p2 * local[l + 9]);
+                MemoryUtil.memPutFloat(or + 8, p0 * local[l + 2] + p1 * local[l + 6] + p2 * local[l + 10]);
+                MemoryUtil.memPutFloat(or + 12, p0 * local[l + 3] + p1 * local[l + 7] + p2 * local[l + 11] + p3);
+            }
+        }
+    }
+
+    private void mark(int id) {
+        int position = idPosition[id];
+        if (dirty[position] != 0)
+            return;
+
+        dirty[position] = 1;
+        marked = append(marked, markedCount++, id);
+    }
+
+    /**
+     * Breadth first from the roots in id order, so every level is a range and every node's children one range
+     * within the next level. Moves the locals, world matrices and dirty flags along.
+     */
+    private void sort() {
+        // Children of each id as ranges of one array
+        int[] childStart = new int[idCount + 1];
+        for (int id = 0; id < idCount; id++) {
+            if (idPosition[id] != NONE && idParent[id] != NONE)
+                childStart[idParent[id] + 1]++;
+        }
+
+        for (int id = 0; id < idCount; id++)
+            childStart[id + 1] += childStart[id];
+
+        int[] children = new int[childStart[idCount]];
+        int[] fill = Arrays.copyOf(childStart, idCount);
+        for (int id = 0; id < idCount; id++) {
+            if (idPosition[id] != NONE && idParent[id] != NONE)
+                children[fill[idParent[id]]++] = id;
+        }
+
+        int[] order = new int[nodes];
+        int count = 0;
+
+        for (int id = 0; id < idCount; id++) {
+            if (idPosition[id] != NONE && idParent[id] == NONE)
+                order[count++] = id;
+        }
+
+        int[] starts = new int[16];
+        levels = 0;
+
+        // order doubles as the queue, levels are where one ends and the next starts
+        for (int levelBegin = 0; levelBegin < count; ) {
+            starts = append(starts, levels++, levelBegin);
+
+            int levelEnd = count;
+            for (int i = levelBegin; i < levelEnd; i++) {
+                int id = order[i];
+                for (int c = childStart[id]; c < childStart[id + 1]; c++)
+                    order[count++] = children[c];
+            }
+
+            levelBegin = levelEnd;
+        }
+
+        levelStart = append(starts, levels, count);
+
+        float[] sortedLocal = new float[capacity * ROW_FLOATS];
+        byte[] sortedDirty = new byte[capacity];
+        long sortedWorld = MemoryUtil.nmemAllocChecked((long) capacity * Object_Transforms.SIZE);
+
+        for (int position = 0; position < count; position++) {
+            int from = idPosition[order[position]];
+
+            System.arraycopy(local, from * ROW_FLOATS, sortedLocal, position * ROW_FLOATS, ROW_FLOATS);
+            sortedDirty[position] = dirty[from];
+            MemoryUtil.memCopy(
+                    world + (long) from * Object_Transforms.SIZE,
+                    sortedWorld + (long) position * Object_Transforms.SIZE,
+                    Object_Transforms.SIZE);
+        }
+
+        MemoryUtil.nmemFree(world);
+
+        local = sortedLocal;
+        dirty = sortedDirty;
+        world = sortedWorld;
+        positionCount = count;
+
+        for (int position = 0; position < count; position++) {
+            positionId[position] = order[position];
+            idPosition[order[position]] = position;
+        }
+
+        for (int level = 0; level < levels; level++)
+            Arrays.fill(positionLevel, levelStart[level], levelStart[level + 1], level);
+
+        for (int position = 0; position < count; position++) {
+            int id = order[position];
+
+            parentPosition[position] = idParent[id] == NONE ? NONE : idPosition[idParent[id]];
+            childCount[position] = childStart[id + 1] - childStart[id];
+            firstChild[position] = childCount[position] == 0 ? NONE : idPosition[children[childStart[id]]];
+        }
+
+        structureChanged = false;
+    }
+
+    private boolean isAncestor(int ancestor, int id) {
+        for (int parent = idParent[id]; parent != NONE; parent = idParent[parent]) {
+            if (parent == ancestor)
+                return true;
+        }
+
+        return false;
+    }
+
+    private void free(int id) {
+        int position = idPosition[id];
+
+        // A removed node's mark is dropped, it's skipped when sorting
+        if (dirty[position] != 0) {
+            dirty[position] = 0;
+
+            for (int i = 0; i < markedCount; i++) {
+                if (marked[i] == id) {
+                    marked[i] = marked[--markedCount];
+                    break;
+                }
+            }
+        }
+
+        positionId[position] = NONE;
+        idPosition[id] = NONE;
+        idParent[id] = NONE;
+
+        freeIds = append(freeIds, freeIdCount++, id);
+        nodes--;
+    }
+
+    private void grow(int newCapacity) {
+        positionId = Arrays.copyOf(positionId, newCapacity);
+        parentPosition = Arrays.copyOf(parentPosition, newCapacity);
+        firstChild = Arrays.copyOf(firstChild, newCapacity);
+        childCount = Arrays.copyOf(childCount, newCapacity);
+        positionLevel = Arrays.copyOf(positionLevel, newCapacity);
+        dirty = Arrays.copyOf(dirty, newCapacity);
+        local = Arrays.copyOf(local, newCapacity * ROW_FLOATS);
+
+        world = world == NULL
+                ? MemoryUtil.nmemAllocChecked((long) newCapacity * Object_Transforms.SIZE)
+                : MemoryUtil.nmemReallocChecked(world, (long) newCapacity * Object_Transforms.SIZE);
+
+        capacity = newCapacity;
+    }
+
+    private void growIds(int newLength) {
+        idPosition = Arrays.copyOf(idPosition, newLength);
+        idParent = Arrays.copyOf(idParent, newLength);
+    }
+
+    private static int[] append(int[] array, int at, int value) {
+        if (at == array.length)
+            array = Arrays.copyOf(array, Math.max(16, at * 2));
+
+        array[at] = value;
+        return array;
+    }
+
+    private static void setRows(float[] rows, int at, float[] values) {
+        System.arraycopy(values, 0, rows, at, ROW_FLOATS);
+    }
+
+    private static final float[] IDENTITY = {
+            1.0f, 0.0f, 0.0f, 0.0f,
+            0.0f, 1.0f, 0.0f, 0.0f,
+            0.0f, 0.0f, 1.0f, 0.0f
+    };
+
+    @SuppressWarnings("serial")
+    private final class Compute_Range extends RecursiveAction {
+        private final int[] positions;
+        private final int from;
+        private final int to;
+
+        Compute_Range(int[] positions, int from, int to) {
+            this.positions = positions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_NODES) {
+                Transform_Hierarchy.this.compute(positions, from, to);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new Compute_Range(positions, from, middle), new Compute_Range(positions, middle, to));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package engine.scene;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Tests {@code SPECIES.length()} spheres against a plane at once, the resulting mask bits become the visible
+ * indices. Needs {@code --add-modules jdk.incubator.vector} to compile and run, see {@link Frustum}
+ */
+class Vector_Sphere_Culler implements Sphere_Culler {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public int cull(Frustum frustum, float[] x, float[] y, float[] z, float[] radius, int count, int[] visible) {
+        float[] a = frustum.a, b = frustum.b, c = frustum.c, d = frustum.d;
+
+        int visibleCount = 0;
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(count); i < bound; i += SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, i);
+            FloatVector vz = FloatVector.fromArray(SPECIES, z, i);
+            FloatVector vr = FloatVector.fromArray(SPECIES, radius, i);
+
+            VectorMask<Float> inside = SPECIES.maskAll(true);
+
+            for (int p = 0; p < Frustum.PLANES && inside.anyTrue(); p++) {
+                FloatVector distance = vx.mul(a[p]).add(vy.mul(b[p])).add(vz.mul(c[p])).add(d[p]).add(vr);
+                inside = inside.and(distance.compare(VectorOperators.GE, 0.0f));
+            }
+
+            for (long bits = inside.toLong(); bits != 0; bits &= bits - 1)
+                visible[visibleCount++] = i + Long.numberOfTrailingZeros(bits);
+        }
+
+        return Scalar_Sphere_Culler.cull(frustum, x, y, z, radius, i, count, visible, visibleCount);
+    }
+}
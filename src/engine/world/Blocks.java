@@ -1,4 +1,13 @@
 package engine.world;
 
 public class Blocks {
+    public static final int AIR = 0;
+    public static final int STONE = 1;
+    public static final int DIRT = 2;
+    public static final int GRASS = 3;
+
+    // Hides the faces of blocks next to it
+    public static boolean isOpaque(int block) {
+        return block != AIR;
+    }
 }
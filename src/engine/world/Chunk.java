@@ -1,10 +1,162 @@
 package engine.world;
 
-import org.joml.Vector3f;
-
+/**
+ * <h1>
+ *     Chunk
+ * </h1>
+ * <h3>
+ *     A cube of {@link #WORLD_SIDE_SIZE} blocks per side, stored as vertical {@link Chunk_Section}s
+ * </h3>
+ * <p>
+ *     Block ids are ints, {@link Blocks#AIR} where there's nothing. Coordinates are local to the chunk, the chunk
+ *     itself is at {@code getX() * WORLD_SIDE_SIZE} and so on in blocks. Bulk reads, a layer or a whole section
+ *     into an int array, are what meshing should use, they decode without a call per block.
+ * </p>
+ */
 public class Chunk {
     public static final int WORLD_SIDE_SIZE = 64;
+    public static final int SECTION_HEIGHT = 16;
+    public static final int SECTION_COUNT = WORLD_SIDE_SIZE / SECTION_HEIGHT;
+    public static final int LAYER_SIZE = WORLD_SIDE_SIZE * WORLD_SIDE_SIZE;
+    public static final int VOLUME = LAYER_SIZE * WORLD_SIDE_SIZE;
+
+    private final Chunk_Section[] sections = new Chunk_Section[SECTION_COUNT];
+
+    // In chunks
+    private final int x;
+    private final int y;
+    private final int z;
+
+    public Chunk(int x, int y, int z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+
+        for (int i = 0; i < SECTION_COUNT; i++)
+            sections[i] = new Chunk_Section(Blocks.AIR);
+    }
+
+    public int get(int x, int y, int z) {
+        assert contains(x, y, z) : x + ", " + y + ", " + z + " is outside the chunk";
+        return sections[y / SECTION_HEIGHT].get(index(x, y % SECTION_HEIGHT, z));
+    }
+
+    public void set(int x, int y, int z, int block) {
+        assert contains(x, y, z) : x + ", " + y + ", " + z + " is outside the chunk";
+        sections[y / SECTION_HEIGHT].set(index(x, y % SECTION_HEIGHT, z), block);
+    }
+
+    public void fill(int block) {
+        for (Chunk_Section section : sections)
+            section.fill(block);
+    }
+
+    /**
+     * Sets the box [x0, x1) x [y0, y1) x [z0, z1)
+     */
+    public void fill(int x0, int y0, int z0, int x1, int y1, int z1, int block) {
+        assert contains(x0, y0, z0) && x1 <= WORLD_SIDE_SIZE && y1 <= WORLD_SIDE_SIZE && z1 <= WORLD_SIDE_SIZE;
+
+        boolean fullLayers = x0 == 0 && z0 == 0 && x1 == WORLD_SIDE_SIZE && z1 == WORLD_SIDE_SIZE;
+
+        for (int y = y0; y < y1; ) {
+            Chunk_Section section = sections[y / SECTION_HEIGHT];
+            int sectionY = y % SECTION_HEIGHT;
+            int end = Math.min(y1 - y + sectionY, SECTION_HEIGHT);
+
+            if (fullLayers) {
+                // Whole sections turn uniform here
+                section.fill(index(0, sectionY, 0), index(0, end, 0), block);
+            } else {
+                for (int layer = sectionY; layer < end; layer++) {
+                    for (int z = z0; z < z1; z++)
+                        section.fill(index(x0, layer, z), index(x1, layer, z), block);
+                }
+            }
+
+            y += end - sectionY;
+        }
+    }
+
+    /**
+     * Layer {@code y} to {@code dest}, block (x, z) at {@code z * WORLD_SIDE_SIZE + x}
+     */
+    public void getLayer(int y, int[] dest) {
+        int from = index(0, y % SECTION_HEIGHT, 0);
+        sections[y / SECTION_HEIGHT].get(from, from + LAYER_SIZE, dest, 0);
+    }
+
+    public void setLayer(int y, int[] source) {
+        int from = index(0, y % SECTION_HEIGHT, 0);
+        sections[y / SECTION_HEIGHT].set(from, from + LAYER_SIZE, source, 0);
+    }
+
+    /**
+     * Every block to {@code dest}, block (x, y, z) at {@code (y * WORLD_SIDE_SIZE + z) * WORLD_SIDE_SIZE + x}
+     */
+    public void getBlocks(int[] dest) {
+        for (int i = 0; i < SECTION_COUNT; i++)
+            sections[i].get(0, Chunk_Section.VOLUME, dest, i * Chunk_Section.VOLUME);
+    }
+
+    public void setBlocks(int[] source) {
+        for (int i = 0; i < SECTION_COUNT; i++)
+            sections[i].set(0, Chunk_Section.VOLUME, source, i * Chunk_Section.VOLUME);
+    }
+
+    public void copyFrom(Chunk source) {
+        for (int i = 0; i < SECTION_COUNT; i++)
+            sections[i].copyFrom(source.sections[i]);
+    }
+
+    /**
+     * Shrinks the palettes to the blocks in use, call after a batch of edits like generation
+     */
+    public void compact() {
+        for (Chunk_Section section : sections)
+            section.compact();
+    }
+
+    public boolean isEmpty() {
+        for (Chunk_Section section : sections) {
+            if (!section.isUniform() || section.uniformBlock() != Blocks.AIR)
+                return false;
+        }
+
+        return true;
+    }
+
+    // Layers [i * SECTION_HEIGHT, (i + 1) * SECTION_HEIGHT)
+    public Chunk_Section getSection(int i) {
+        return sections[i];
+    }
+
+    public long memoryBytes() {
+        long bytes = 32 + 16 + SECTION_COUNT * 4L;
+        for (Chunk_Section section : sections)
+            bytes += section.memoryBytes();
+
+        return bytes;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public static boolean contains(int x, int y, int z) {
+        return x >= 0 && y >= 0 && z >= 0 && x < WORLD_SIDE_SIZE && y < WORLD_SIDE_SIZE && z < WORLD_SIDE_SIZE;
+    }
 
-    private final int[] raw = new int[WORLD_SIDE_SIZE * WORLD_SIDE_SIZE];
-    private final Vector3f position = null; // FIXME:
+    // Within a section
+    private static int index(int x, int y, int z) {
+        return (y * WORLD_SIDE_SIZE + z) * WORLD_SIDE_SIZE + x;
+    }
 }
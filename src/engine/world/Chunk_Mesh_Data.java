@@ -0,0 +1,130 @@
+package engine.world;
+
+import engine.gfx.*;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <h3>
+ *     CPU side result of {@link Chunk_Mesher}: packed quad vertices and the triangle list indexing them
+ * </h3>
+ * <p>
+ *     A vertex is two ints, read as an {@code ivec2} in the shader:
+ * </p>
+ * <ul>
+ *     <li>x: position x | y &lt;&lt; 7 | z &lt;&lt; 14 in blocks, 0 to {@link Chunk#WORLD_SIDE_SIZE} each, and the face
+ *     ({@link Chunk_Mesher#POSITIVE_X} ...) &lt;&lt; 21</li>
+ *     <li>y: block id, for the texture</li>
+ * </ul>
+ * <p>
+ *     Merged quads cover several blocks, so texture coordinates are best derived from the position along the face.
+ * </p>
+ */
+public class Chunk_Mesh_Data {
+    public static final int VERTEX_INTS = 2;
+
+    public static final Chunk_Mesh_Data EMPTY = new Chunk_Mesh_Data(new int[0], new int[0]);
+
+    public final int[] vertices;
+    public final int[] indices;
+
+    public Chunk_Mesh_Data(int[] vertices, int[] indices) {
+        assert vertices.length % VERTEX_INTS == 0;
+
+        this.vertices = vertices;
+        this.indices = indices;
+    }
+
+    public static Triangle_Mesh_Layout layout() {
+        return Triangle_Mesh_Layout.interleaved(Vertex_Type.Int2);
+    }
+
+    public static int x(int packed) {
+        return packed & 0x7F;
+    }
+
+    public static int y(int packed) {
+        return packed >>> 7 & 0x7F;
+    }
+
+    public static int z(int packed) {
+        return packed >>> 14 & 0x7F;
+    }
+
+    public static int face(int packed) {
+        return packed >>> 21 & 0x7;
+    }
+
+    public int vertexCount() {
+        return vertices.length / VERTEX_INTS;
+    }
+
+    public int quadCount() {
+        return indices.length / 6;
+    }
+
+    public int triangleCount() {
+        return indices.length / 3;
+    }
+
+    public boolean isEmpty() {
+        return indices.length == 0;
+    }
+
+    // Chunk local, in blocks
+    public Bounds bounds() {
+        float[] positions = new float[vertexCount() * 3];
+
+        for (int v = 0; v < vertexCount(); v++) {
+            int packed = vertices[v * VERTEX_INTS];
+
+            positions[v * 3] = x(packed);
+            positions[v * 3 + 1] = y(packed);
+            positions[v * 3 + 2] = z(packed);
+        }
+
+        return Bounds.of(positions);
+    }
+
+    /**
+     * Vertices and indices are written once into a single off-heap block, indices narrowed to 16 bits on the way
+     * when they fit, and both buffers get immutable storage straight from it
+     */
+    public Triangle_Mesh upload() {
+        Index_Type indexType = Index_Type.forVertexCount(vertexCount());
+
+        int vertexBytes = vertices.length * Integer.BYTES;
+        int indexBytes = indices.length * indexType.size;
+
+        ByteBuffer memory = MemoryUtil.memAlloc(vertexBytes + indexBytes);
+
+        try {
+            ByteBuffer vertexData = memory.slice(0, vertexBytes).order(ByteOrder.nativeOrder());
+            ByteBuffer indexData = memory.slice(vertexBytes, indexBytes).order(ByteOrder.nativeOrder());
+
+            vertexData.asIntBuffer().put(vertices);
+
+            if (indexType == Index_Type.UInt16) {
+                for (int i = 0; i < indices.length; i++)
+                    indexData.putShort(i * Short.BYTES, (short) indices[i]);
+            } else {
+                indexData.asIntBuffer().put(indices);
+            }
+
+            Triangle_Mesh mesh = new Triangle_Mesh(
+                    new int[] { GPU_Buffer.alloc(vertexData, GPU_Buffer_Type.Vertex_Buffer, GPU_Buffer_Usage.Immutable) },
+                    GPU_Buffer.alloc(indexData, GPU_Buffer_Type.Index_Buffer, GPU_Buffer_Usage.Immutable),
+                    indices.length,
+                    indexType,
+                    layout()
+            );
+            mesh.setBounds(bounds());
+
+            return mesh;
+        } finally {
+            MemoryUtil.memFree(memory);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package engine.world;
+
+import engine.memory.Int_Array_List;
+
+import java.util.Arrays;
+
+/**
+ * <h1>
+ *     Chunk_Mesher
+ * </h1>
+ * <h3>
+ *     Greedy meshing of a chunk into {@link Chunk_Mesh_Data} quads
+ * </h3>
+ * <p>
+ *     A chunk row is {@link Chunk#WORLD_SIDE_SIZE} = 64 blocks, so which blocks of a row along x are opaque is one
+ *     long. Faces of the row hidden by the rows above, below, in front and behind are removed with one and-not
+ *     each, and along x by the row shifted by one, with the border bits of the 6 neighbouring chunks coming in
+ *     at the ends. Visible faces end up as bit rows per face direction and layer.
+ * </p>
+ * <p>
+ *     Each layer is then covered with the fewest rectangles of one block id: grown along the bits as far as the
+ *     run of the same block goes, then over the next rows as long as the whole run matches.
+ * </p>
+ * <p>
+ *     A mesher keeps about 1.3 MB of scratch arrays, use one per thread.
+ * </p>
+ */
+public class Chunk_Mesher {
+    // Faces, also the order of the neighbours
+    public static final int POSITIVE_X = 0;
+    public static final int NEGATIVE_X = 1;
+    public static final int POSITIVE_Y = 2;
+    public static final int NEGATIVE_Y = 3;
+    public static final int POSITIVE_Z = 4;
+    public static final int NEGATIVE_Z = 5;
+
+    private static final int SIDE = Chunk.WORLD_SIDE_SIZE;
+    private static final int PADDED = SIDE + 2;
+
+    static {
+        assert SIDE == Long.SIZE : "rows are longs";
+    }
+
+    // Block (x, y, z) at (y * SIDE + z) * SIDE + x
+    private final int[] blocks = new int[Chunk.VOLUME];
+    private final int[] layer = new int[Chunk.LAYER_SIZE];
+
+    // Opaque blocks of row (y, z) over x, at (y + 1) * PADDED + z + 1 so the neighbours' rows fit around
+    private final long[] rows = new long[PADDED * PADDED];
+    // Opacity of the blocks right past x = SIDE - 1 and x = 0, bit z of [y]
+    private final long[] positiveXBorder = new long[SIDE];
+    private final long[] negativeXBorder = new long[SIDE];
+
+    // Visible faces, [face][layer * SIDE + row], see meshFace for what layer, row and bit are
+    private final long[][] faces = new long[6][SIDE * SIDE];
+
+    private final Int_Array_List vertices = new Int_Array_List(1 << 14);
+    private final Int_Array_List indices = new Int_Array_List(1 << 14);
+
+    /**
+     * @param neighbours by face, the chunk on that side of {@code chunk}, null is air
+     */
+    public Chunk_Mesh_Data mesh(Chunk chunk, Chunk[] neighbours) {
+        if (chunk.isEmpty())
+            return Chunk_Mesh_Data.EMPTY;
+
+        chunk.getBlocks(blocks);
+        loadRows(neighbours);
+        findFaces();
+
+        vertices.clear();
+        indices.clear();
+
+        for (int face = 0; face < 6; face++)
+            meshFace(face);
+
+        return new Chunk_Mesh_Data(vertices.toArray(), indices.toArray());
+    }
+
+    private void loadRows(Chunk[] neighbours) {
+        Arrays.fill(rows, 0);
+
+        for (int y = 0; y < SIDE; y++) {
+            for (int z = 0; z < SIDE; z++)
+                rows[row(y, z)] = opaqueBits(blocks, (y * SIDE + z) * SIDE);
+        }
+
+        // Rows past the top and bottom, and past the front and back of every layer
+        loadLayerRows(neighbours[POSITIVE_Y], 0, SIDE);
+        loadLayerRows(neighbours[NEGATIVE_Y], SIDE - 1, -1);
+
+        Chunk positiveZ = neighbours[POSITIVE_Z];
+        Chunk negativeZ = neighbours[NEGATIVE_Z];
+        Chunk positiveX = neighbours[POSITIVE_X];
+        Chunk negativeX = neighbours[NEGATIVE_X];
+
+        for (int y = 0; y < SIDE; y++) {
+            long front = 0, back = 0, right = 0, left = 0;
+
+            for (int i = 0; i < SIDE; i++) {
+                if (positiveZ != null && Blocks.isOpaque(positiveZ.get(i, y, 0)))
+                    front |= 1L << i;
+
+                if (negativeZ != null && Blocks.isOpaque(negativeZ.get(i, y, SIDE - 1)))
+                    back |= 1L << i;
+
+                if (positiveX != null && Blocks.isOpaque(positiveX.get(0, y, i)))
+                    right |= 1L << i;
+
+                if (negativeX != null && Blocks.isOpaque(negativeX.get(SIDE - 1, y, i)))
+                    left |= 1L << i;
+            }
+
+            rows[row(y, SIDE)] = front;
+            rows[row(y, -1)] = back;
+            positiveXBorder[y] = right;
+            negativeXBorder[y] = left;
+        }
+    }
+
+    // Layer sourceY of the neighbour as the rows of padded layer y
+    private void loadLayerRows(Chunk neighbour, int sourceY, int y) {
+        if (neighbour == null)
+            return;
+
+        neighbour.getLayer(sourceY, layer);
+
+        for (int z = 0; z < SIDE; z++)
+            rows[row(y, z)] = opaqueBits(layer, z * SIDE);
+    }
+
+    /**
+     * Layer, row and bit of a face: x faces at [x][z] bit y, y faces at [y][z] bit x, z faces at [z][y] bit x
+     */
+    private void findFaces() {
+        for (long[] face : faces)
+            Arrays.fill(face, 0);
+
+        long[] positiveX = faces[POSITIVE_X];
+        long[] negativeX = faces[NEGATIVE_X];
+
+        for (int y = 0; y < SIDE; y++) {
+            for (int z = 0; z < SIDE; z++) {
+                int at = row(y, z);
+                long row = rows[at];
+
+                if (row == 0)
+                    continue;
+
+                faces[POSITIVE_Y][y * SIDE + z] = row & ~rows[at + PADDED];
+                faces[NEGATIVE_Y][y * SIDE + z] = row & ~rows[at - PADDED];
+                faces[POSITIVE_Z][z * SIDE + y] = row & ~rows[at + 1];
+                faces[NEGATIVE_Z][z * SIDE + y] = row & ~rows[at - 1];
+
+                // Along the row itself, a shift brings in the neighbour of every bit, the border fills the end
+                long right = row & ~(row >>> 1 | (positiveXBorder[y] >>> z & 1) << SIDE - 1);
+                long left = row & ~(row << 1 | negativeXBorder[y] >>> z & 1);
+
+                // Transposed, these are few: only the surface
+                for (; right != 0; right &= right - 1)
+                    positiveX[Long.numberOfTrailingZeros(right) * SIDE + z] |= 1L << y;
+
+                for (; left != 0; left &= left - 1)
+                    negativeX[Long.numberOfTrailingZeros(left) * SIDE + z] |= 1L << y;
+            }
+        }
+    }
+
+    private void meshFace(int face) {
+        long[] bits = faces[face];
+        int axis = face / 2;
+        boolean positive = face % 2 == 0;
+
+        for (int layer = 0; layer < SIDE; layer++) {
+            int layerStart = layer * SIDE;
+
+            for (int row = 0; row < SIDE; row++) {
+                while (bits[layerStart + row] != 0) {
+                    long current = bits[layerStart + row];
+                    int bit = Long.numberOfTrailingZeros(current);
+                    int block = blocks[blockIndex(axis, layer, row, bit)];
+
+                    int width = 1;
+                    while (bit + width < SIDE
+                            && (current >>> bit + width & 1) != 0
+                            && blocks[blockIndex(axis, layer, row, bit + width)] == block)
+                        width++;
+
+                    long run = (width == SIDE ? -1L : (1L << width) - 1) << bit;
+
+                    int height = 1;
+                    while (row + height < SIDE && sameRun(bits[layerStart + row + height], run, axis, layer, row + height, bit, width, block))
+                        height++;
+
+                    for (int r = row; r < row + height; r++)
+                        bits[layerStart + r] &= ~run;
+
+                    addQuad(axis, positive, positive ? layer + 1 : layer, row, bit, width, height, face, block);
+                }
+            }
+        }
+    }
+
+    private boolean sameRun(long bits, long run, int axis, int layer, int row, int bit, int width, int block) {
+        if ((bits & run) != run)
+            return false;
+
+        for (int i = bit; i < bit + width; i++) {
+            if (blocks[blockIndex(axis, layer, row, i)] != block)
+                return false;
+        }
+
+        return true;
+    }
+
+    private void addQuad(int axis, boolean positive, int plane, int row, int bit, int width, int height, int face, int block) {
+        int base = vertices.size() / Chunk_Mesh_Data.VERTEX_INTS;
+
+        addVertex(axis, plane, row, bit, face, block);
+        addVertex(axis, plane, row, bit + width, face, block);
+        addVertex(axis, plane, row + height, bit + width, face, block);
+        addVertex(axis, plane, row + height, bit, face, block);
+
+        // Bit x row is +x for x and z faces, -y for y faces: that order is counter clockwise from the positive side
+        if (positive != (axis == 1)) {
+            indices.add(base, base + 1, base + 2);
+            indices.add(base, base + 2, base + 3);
+        } else {
+            indices.add(base, base + 2, base + 1);
+            indices.add(base, base + 3, base + 2);
+        }
+    }
+
+    private void addVertex(int axis, int plane, int row, int bit, int face, int block) {
+        int x, y, z;
+
+        switch (axis) {
+            case 0 -> { x = plane; z = row; y = bit; }
+            case 1 -> { y = plane; z = row; x = bit; }
+            default -> { z = plane; y = row; x = bit; }
+        }
+
+        vertices.add(x | y << 7 | z << 14 | face << 21, block);
+    }
+
+    private static int blockIndex(int axis, int layer, int row, int bit) {
+        return switch (axis) {
+            case 0 -> (bit * SIDE + row) * SIDE + layer;
+            case 1 -> (layer * SIDE + row) * SIDE + bit;
+            default -> (row * SIDE + layer) * SIDE + bit;
+        };
+    }
+
+    private static long opaqueBits(int[] blocks, int from) {
+        long bits = 0;
+        for (int x = 0; x < SIDE; x++)
+            bits |= (Blocks.isOpaque(blocks[from + x]) ? 1L : 0L) << x;
+
+        return bits;
+    }
+
+    private static int row(int y, int z) {
+        return (y + 1) * PADDED + z + 1;
+    }
+}
@@ -0,0 +1,44 @@
+package engine.world;
+
+import engine.gfx.Triangle_Mesh;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * {@link Chunk_Upload_Sink} keeping one GL mesh per chunk, the previous one is deleted when it's replaced
+ */
+public class Chunk_Meshes implements Chunk_Upload_Sink {
+    public record Entry(int x, int y, int z, Triangle_Mesh mesh) {
+    }
+
+    private final HashMap<Long, Entry> entries = new HashMap<>();
+
+    @Override
+    public void upload(int x, int y, int z, Chunk_Mesh_Data mesh) {
+        remove(x, y, z);
+
+        if (!mesh.isEmpty())
+            entries.put(Chunk_Pipeline.key(x, y, z), new Entry(x, y, z, mesh.upload()));
+    }
+
+    @Override
+    public void remove(int x, int y, int z) {
+        Entry entry = entries.remove(Chunk_Pipeline.key(x, y, z));
+
+        if (entry != null)
+            entry.mesh().deleteWithBuffers();
+    }
+
+    public Collection<Entry> entries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public void delete() {
+        for (Entry entry : entries.values())
+            entry.mesh().deleteWithBuffers();
+
+        entries.clear();
+    }
+}
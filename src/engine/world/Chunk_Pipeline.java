@@ -0,0 +1,542 @@
+package engine.world;
+
+import org.joml.Vector3fc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <h1>
+ *     Chunk_Pipeline
+ * </h1>
+ * <h3>
+ *     Generates and meshes chunks on worker threads, uploads the meshes on the calling thread within a budget
+ * </h3>
+ * <p>
+ *     Everything but the jobs themselves runs in {@link #update}, on the GL thread. Waiting jobs are handed to the
+ *     workers nearest to the camera first, about a frame's worth at a time, so the order keeps up with the
+ *     camera. Workers post finished jobs to a lock free queue; update drains it and uploads meshes,
+ *     nearest first, until the frame's byte or time budget is spent. At least one mesh goes up every frame.
+ * </p>
+ * <p>
+ *     A chunk is meshed once it and every loaded neighbour are generated, and again when a neighbour arrives
+ *     later or the chunk is edited. Every new mesh job supersedes the chunk's previous one: waiting and running
+ *     jobs are flagged cancelled, workers skip them, and results of an older version or an unloaded chunk are
+ *     dropped when drained. Jobs keep references to the chunks they read, so edits copy a chunk first if a job
+ *     may still be reading it.
+ * </p>
+ */
+public class Chunk_Pipeline {
+    public static final long DEFAULT_UPLOAD_BYTES = 4 << 20;
+    public static final long DEFAULT_UPLOAD_NANOS = 2_000_000;
+
+    // Jobs handed out per worker and update, a job takes a few ms so that's about a frame's worth
+    public static final int JOBS_PER_WORKER = 8;
+
+    private static final int SIDE = Chunk.WORLD_SIDE_SIZE;
+
+    private static final int[][] NEIGHBOURS = {
+            { 1, 0, 0 }, { -1, 0, 0 },
+            { 0, 1, 0 }, { 0, -1, 0 },
+            { 0, 0, 1 }, { 0, 0, -1 }
+    };
+
+    private static final ThreadLocal<Chunk_Mesher> MESHERS = ThreadLocal.withInitial(Chunk_Mesher::new);
+
+    private final Generator generator;
+    private final Chunk_Upload_Sink sink;
+    private final Executor workers;
+    private final ExecutorService ownedWorkers;
+    private final int maxInFlight;
+
+    private final HashMap<Long, Slot> slots = new HashMap<>();
+    private final ArrayList<Slot> dirty = new ArrayList<>();
+
+    private final ArrayList<Job> waiting = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Job> finished = new ConcurrentLinkedQueue<>();
+    private final ArrayList<Job> ready = new ArrayList<>();
+    private int inFlight;
+
+    private long uploadBytes = DEFAULT_UPLOAD_BYTES;
+    private long uploadNanos = DEFAULT_UPLOAD_NANOS;
+
+    private float cameraX, cameraY, cameraZ;
+
+    // Of the last update
+    private int drained;
+    private int uploads;
+    private long uploadedBytes;
+    private long uploadTime;
+    private float averageLatencyMillis;
+    private float maxLatencyMillis;
+
+    // Since creation
+    private long cancelled;
+    private long discarded;
+    private long stalledFrames;
+
+    /**
+     * Workers are daemon threads, one less than there are cores
+     */
+    public Chunk_Pipeline(Generator generator, Chunk_Upload_Sink sink) {
+        this(generator, sink, createWorkers(), true, defaultWorkerCount());
+    }
+
+    /**
+     * @param workers run the jobs, any thread, even the caller's
+     * @param workerCount jobs handed to {@code workers} at a time are {@link #JOBS_PER_WORKER} times that
+     */
+    public Chunk_Pipeline(Generator generator, Chunk_Upload_Sink sink, Executor workers, int workerCount) {
+        this(generator, sink, workers, false, workerCount);
+    }
+
+    private Chunk_Pipeline(Generator generator, Chunk_Upload_Sink sink, Executor workers, boolean owned, int workerCount) {
+        this.generator = generator;
+        this.sink = sink;
+        this.workers = workers;
+        this.ownedWorkers = owned ? (ExecutorService) workers : null;
+        this.maxInFlight = Math.max(1, workerCount * JOBS_PER_WORKER);
+    }
+
+    public void load(int x, int y, int z) {
+        long key = key(x, y, z);
+        if (slots.containsKey(key))
+            return;
+
+        Slot slot = new Slot(x, y, z);
+        slots.put(key, slot);
+
+        schedule(slot, new Job(slot, Job.GENERATE, slot.version, null, null));
+    }
+
+    public void unload(int x, int y, int z) {
+        Slot slot = slots.remove(key(x, y, z));
+        if (slot == null)
+            return;
+
+        cancel(slot);
+        slot.unloaded = true;
+
+        if (slot.uploaded)
+            sink.remove(x, y, z);
+    }
+
+    public boolean isLoaded(int x, int y, int z) {
+        return slots.containsKey(key(x, y, z));
+    }
+
+    /**
+     * @return null until the chunk is generated, don't modify it, use {@link #setBlock}
+     */
+    public Chunk getChunk(int x, int y, int z) {
+        Slot slot = slots.get(key(x, y, z));
+        return slot == null ? null : slot.chunk;
+    }
+
+    /**
+     * In world blocks, ignored if the chunk isn't generated. The chunk, and the neighbour across a border the
+     * block is on, are meshed again on the next update.
+     */
+    public void setBlock(int worldX, int worldY, int worldZ, int block) {
+        int x = Math.floorDiv(worldX, SIDE), y = Math.floorDiv(worldY, SIDE), z = Math.floorDiv(worldZ, SIDE);
+        int localX = Math.floorMod(worldX, SIDE), localY = Math.floorMod(worldY, SIDE), localZ = Math.floorMod(worldZ, SIDE);
+
+        Slot slot = slots.get(key(x, y, z));
+        if (slot == null || slot.chunk == null || slot.chunk.get(localX, localY, localZ) == block)
+            return;
+
+        // Copy on write, jobs may still be reading the chunk they got
+        if (slot.shared) {
+            Chunk copy = new Chunk(x, y, z);
+            copy.copyFrom(slot.chunk);
+
+            slot.chunk = copy;
+            slot.shared = false;
+        }
+
+        slot.chunk.set(localX, localY, localZ, block);
+        markDirty(slot);
+
+        if (localX == 0) markDirty(x - 1, y, z);
+        if (localX == SIDE - 1) markDirty(x + 1, y, z);
+        if (localY == 0) markDirty(x, y - 1, z);
+        if (localY == SIDE - 1) markDirty(x, y + 1, z);
+        if (localZ == 0) markDirty(x, y, z - 1);
+        if (localZ == SIDE - 1) markDirty(x, y, z + 1);
+    }
+
+    /**
+     * Once per frame, on the GL thread
+     */
+    public void update(Vector3fc cameraPosition) {
+        cameraX = cameraPosition.x();
+        cameraY = cameraPosition.y();
+        cameraZ = cameraPosition.z();
+
+        drain();
+
+        for (Slot slot : dirty) {
+            slot.dirty = false;
+            requestMesh(slot);
+        }
+        dirty.clear();
+
+        submit();
+        upload();
+    }
+
+    /**
+     * Per {@link #update}, the nearest mesh goes up even if it's larger than that
+     */
+    public void setUploadBudget(long bytes, long nanos) {
+        uploadBytes = bytes;
+        uploadNanos = nanos;
+    }
+
+    public void delete() {
+        for (Slot slot : slots.values()) {
+            cancel(slot);
+
+            if (slot.uploaded)
+                sink.remove(slot.x, slot.y, slot.z);
+        }
+
+        slots.clear();
+
+        if (ownedWorkers != null)
+            ownedWorkers.shutdownNow();
+    }
+
+    public int loadedChunks() {
+        return slots.size();
+    }
+
+    // Jobs not handed to the workers yet
+    public int waitingJobs() {
+        return waiting.size();
+    }
+
+    // Handed to the workers and not drained yet
+    public int jobsInFlight() {
+        return inFlight;
+    }
+
+    // Meshes over the last update's budget
+    public int readyUploads() {
+        return ready.size();
+    }
+
+    // Finished jobs the last update took off the completion queue
+    public int drained() {
+        return drained;
+    }
+
+    public int uploads() {
+        return uploads;
+    }
+
+    public long uploadedBytes() {
+        return uploadedBytes;
+    }
+
+    public float uploadMillis() {
+        return uploadTime / 1e6f;
+    }
+
+    // Queued to finished, of the jobs drained by the last update
+    public float averageLatencyMillis() {
+        return averageLatencyMillis;
+    }
+
+    public float maxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    public long cancelled() {
+        return cancelled;
+    }
+
+    // Finished, but superseded or unloaded by then
+    public long discarded() {
+        return discarded;
+    }
+
+    // Updates that left meshes waiting because the budget ran out
+    public long stalledFrames() {
+        return stalledFrames;
+    }
+
+    public static long key(int x, int y, int z) {
+        return ((long) x & 0x1FFFFF) << 42 | ((long) y & 0x1FFFFF) << 21 | (long) z & 0x1FFFFF;
+    }
+
+    private void drain() {
+        drained = 0;
+
+        long now = System.nanoTime();
+        long latencySum = 0, latencyMax = 0;
+        int measured = 0;
+
+        for (Job job; (job = finished.poll()) != null; ) {
+            inFlight--;
+            drained++;
+
+            if (job.error != null)
+                throw new IllegalStateException("chunk job failed at " + job.slot.x + ", " + job.slot.y + ", " + job.slot.z, job.error);
+
+            if (!job.cancelled) {
+                long latency = job.finishedAt - job.queuedAt;
+                latencySum += latency;
+                latencyMax = Math.max(latencyMax, latency);
+                measured++;
+            }
+
+            Slot slot = job.slot;
+
+            if (job.cancelled || slot.unloaded || job.version != slot.version) {
+                discarded++;
+                continue;
+            }
+
+            if (job.kind == Job.GENERATE) {
+                slot.chunk = job.generated;
+                slot.job = null;
+
+                // This one, and neighbours that waited for it or were meshed without it
+                requestMesh(slot);
+                for (int[] offset : NEIGHBOURS) {
+                    Slot neighbour = slots.get(key(slot.x + offset[0], slot.y + offset[1], slot.z + offset[2]));
+
+                    if (neighbour != null && neighbour.chunk != null)
+                        requestMesh(neighbour);
+                }
+            } else {
+                ready.add(job);
+            }
+        }
+
+        averageLatencyMillis = measured == 0 ? 0.0f : latencySum / (measured * 1e6f);
+        maxLatencyMillis = latencyMax / 1e6f;
+    }
+
+    private void submit() {
+        waiting.removeIf(job -> job.cancelled);
+        if (waiting.isEmpty() || inFlight >= maxInFlight)
+            return;
+
+        for (Job job : waiting)
+            job.distance = distance(job.slot);
+
+        waiting.sort((a, b) -> Float.compare(a.distance, b.distance));
+
+        int count = Math.min(waiting.size(), maxInFlight - inFlight);
+        for (int i = 0; i < count; i++) {
+            Job job = waiting.get(i);
+
+            inFlight++;
+            job.queuedAt = System.nanoTime();
+            workers.execute(job);
+        }
+
+        waiting.subList(0, count).clear();
+    }
+
+    private void upload() {
+        uploads = 0;
+        uploadedBytes = 0;
+        uploadTime = 0;
+
+        ready.removeIf(job -> job.cancelled || job.slot.unloaded || job.version != job.slot.version);
+        if (ready.isEmpty())
+            return;
+
+        for (Job job : ready)
+            job.distance = distance(job.slot);
+
+        ready.sort((a, b) -> Float.compare(a.distance, b.distance));
+
+        long start = System.nanoTime();
+        int done = 0;
+
+        while (done < ready.size()) {
+            Job job = ready.get(done);
+            long bytes = (long) (job.mesh.vertices.length + job.mesh.indices.length) * Integer.BYTES;
+
+            if (done > 0 && (uploadedBytes + bytes > uploadBytes || System.nanoTime() - start > uploadNanos))
+                break;
+
+            Slot slot = job.slot;
+            sink.upload(slot.x, slot.y, slot.z, job.mesh);
+
+            slot.uploaded = true;
+            slot.job = null;
+
+            uploadedBytes += bytes;
+            uploads++;
+            done++;
+        }
+
+        uploadTime = System.nanoTime() - start;
+        ready.subList(0, done).clear();
+
+        if (!ready.isEmpty())
+            stalledFrames++;
+    }
+
+    private void requestMesh(Slot slot) {
+        if (slot.chunk == null)
+            return;
+
+        Chunk[] neighbours = new Chunk[6];
+
+        for (int face = 0; face < 6; face++) {
+            int[] offset = NEIGHBOURS[face];
+            Slot neighbour = slots.get(key(slot.x + offset[0], slot.y + offset[1], slot.z + offset[2]));
+
+            if (neighbour == null)
+                continue;
+
+            // Meshed again when it arrives
+            if (neighbour.chunk == null)
+                return;
+
+            neighbours[face] = neighbour.chunk;
+            neighbour.shared = true;
+        }
+
+        cancel(slot);
+
+        slot.version++;
+        slot.shared = true;
+
+        schedule(slot, new Job(slot, Job.MESH, slot.version, slot.chunk, neighbours));
+    }
+
+    private void schedule(Slot slot, Job job) {
+        slot.job = job;
+        waiting.add(job);
+    }
+
+    private void cancel(Slot slot) {
+        if (slot.job != null && !slot.job.cancelled) {
+            slot.job.cancelled = true;
+            cancelled++;
+        }
+
+        slot.job = null;
+    }
+
+    private void markDirty(int x, int y, int z) {
+        Slot slot = slots.get(key(x, y, z));
+        if (slot != null && slot.chunk != null)
+            markDirty(slot);
+    }
+
+    private void markDirty(Slot slot) {
+        if (!slot.dirty) {
+            slot.dirty = true;
+            dirty.add(slot);
+        }
+    }
+
+    private float distance(Slot slot) {
+        float dx = (slot.x + 0.5f) * SIDE - cameraX;
+        float dy = (slot.y + 0.5f) * SIDE - cameraY;
+        float dz = (slot.z + 0.5f) * SIDE - cameraZ;
+
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static int defaultWorkerCount() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    private static ExecutorService createWorkers() {
+        return Executors.newFixedThreadPool(defaultWorkerCount(), runnable -> {
+            Thread thread = new Thread(runnable, "chunk worker");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+
+            return thread;
+        });
+    }
+
+    // Only touched on the update thread
+    private static final class Slot {
+        final int x, y, z;
+
+        Chunk chunk;
+        // Of the newest mesh job, results of other versions are stale
+        int version;
+        Job job;
+
+        boolean dirty;
+        boolean shared;
+        boolean uploaded;
+        boolean unloaded;
+
+        Slot(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+
+    private final class Job implements Runnable {
+        static final int GENERATE = 0;
+        static final int MESH = 1;
+
+        final Slot slot;
+        final int kind;
+        final int version;
+        final Chunk chunk;
+        final Chunk[] neighbours;
+
+        volatile boolean cancelled;
+
+        float distance;
+        long queuedAt;
+        long finishedAt;
+
+        // Results, published through the queue
+        Chunk generated;
+        Chunk_Mesh_Data mesh;
+        Throwable error;
+
+        Job(Slot slot, int kind, int version, Chunk chunk, Chunk[] neighbours) {
+            this.slot = slot;
+            this.kind = kind;
+            this.version = version;
+            this.chunk = chunk;
+            this.neighbours = neighbours;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (cancelled)
+                    return;
+
+                if (kind == GENERATE) {
+                    Chunk generated = new Chunk(slot.x, slot.y, slot.z);
+                    generator.generate(generated);
+                    generated.compact();
+
+                    this.generated = generated;
+                } else {
+                    mesh = MESHERS.get().mesh(chunk, neighbours);
+                }
+            } catch (Throwable t) {
+                // Rethrown by the update draining it
+                error = t;
+            } finally {
+                finishedAt = System.nanoTime();
+                finished.add(this);
+            }
+        }
+    }
+}
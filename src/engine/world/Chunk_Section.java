@@ -0,0 +1,355 @@
+package engine.world;
+
+import engine.misc.Long_Int_Map;
+
+import java.util.Arrays;
+
+/**
+ * <h1>
+ *     Chunk_Section
+ * </h1>
+ * <h3>
+ *     {@link Chunk#SECTION_HEIGHT} layers of a chunk, block ids as bit packed indices into a local palette
+ * </h3>
+ * <p>
+ *     Indices are 1, 2, 4, 8 or 16 bits, the smallest that fits the palette, so an entry never straddles two
+ *     longs and get / set are a shift and a mask. A section of a single block, all air or all stone, has no
+ *     index array at all. The palette only grows on set, {@link #compact()} drops ids no block uses anymore.
+ * </p>
+ * <p>
+ *     Block i is at x {@code i % side}, z {@code i / side % side}, y {@code i / (side * side)}, so x rows and z x
+ *     layers are ranges.
+ * </p>
+ */
+public class Chunk_Section {
+    public static final int VOLUME = Chunk.LAYER_SIZE * Chunk.SECTION_HEIGHT;
+
+    private static final int MAX_BITS = 16;
+
+    // Every index of a uniform section is 0 here, so get doesn't branch on it
+    private static final long[] UNIFORM_DATA = new long[1];
+
+    // Only block when bits is 0
+    private int single;
+
+    private int bits;
+    // log2 of the entries per long, of the bits per entry
+    private int entryShift;
+    private int bitsShift;
+    private int valueMask;
+    private long[] data;
+
+    private int[] palette;
+    private int paletteSize;
+    // Block id -> palette index
+    private Long_Int_Map lookup;
+
+    public Chunk_Section(int block) {
+        fill(block);
+    }
+
+    public int get(int index) {
+        long word = data[index >>> entryShift];
+        int shift = (index & ((1 << entryShift) - 1)) << bitsShift;
+
+        return palette[(int) (word >>> shift) & valueMask];
+    }
+
+    public void set(int index, int block) {
+        if (bits == 0) {
+            if (block == single)
+                return;
+
+            toPalette();
+        }
+
+        write(index, paletteIndex(block));
+    }
+
+    /**
+     * Sets blocks [from, to)
+     */
+    public void fill(int from, int to, int block) {
+        if (from == 0 && to == VOLUME) {
+            fill(block);
+            return;
+        }
+
+        if (bits == 0) {
+            if (block == single)
+                return;
+
+            toPalette();
+        }
+
+        int value = paletteIndex(block);
+        for (int index = from; index < to; index++)
+            write(index, value);
+    }
+
+    public void fill(int block) {
+        single = block;
+        setBits(0);
+        data = UNIFORM_DATA;
+        palette = new int[] { block };
+        paletteSize = 0;
+        lookup = null;
+    }
+
+    /**
+     * Blocks [from, to) to {@code dest} from {@code offset}
+     */
+    public void get(int from, int to, int[] dest, int offset) {
+        if (bits == 0) {
+            Arrays.fill(dest, offset, offset + to - from, single);
+            return;
+        }
+
+        long[] data = this.data;
+        int[] palette = this.palette;
+        int entryShift = this.entryShift;
+        int bitsShift = this.bitsShift;
+        int entryMask = (1 << entryShift) - 1;
+        int valueMask = this.valueMask;
+
+        int index = from;
+
+        // Partial words at the ends entry by entry, whole words in between without recomputing the shift
+        for (; index < to && (index & entryMask) != 0; index++)
+            dest[offset++] = palette[(int) (data[index >>> entryShift] >>> ((index & entryMask) << bitsShift)) & valueMask];
+
+        int entries = 1 << entryShift;
+        int bits = this.bits;
+
+        for (; index + entries <= to; index += entries) {
+            long word = data[index >>> entryShift];
+
+            for (int i = 0; i < entries; i++, word >>>= bits)
+                dest[offset++] = palette[(int) word & valueMask];
+        }
+
+        for (; index < to; index++)
+            dest[offset++] = palette[(int) (data[index >>> entryShift] >>> ((index & entryMask) << bitsShift)) & valueMask];
+    }
+
+    /**
+     * Blocks [from, to) from {@code source} at {@code offset}
+     */
+    public void set(int from, int to, int[] source, int offset) {
+        int lastBlock = get(from);
+        int lastValue = bits == 0 ? 0 : paletteIndex(lastBlock);
+
+        for (int index = from; index < to; index++) {
+            int block = source[offset++];
+
+            if (bits == 0) {
+                if (block == single)
+                    continue;
+
+                toPalette();
+                lastValue = paletteIndex(lastBlock);
+            }
+
+            // Runs of one block are the common case, skip the lookup for them
+            if (block != lastBlock) {
+                lastBlock = block;
+                lastValue = paletteIndex(block);
+            }
+
+            write(index, lastValue);
+        }
+    }
+
+    public void copyFrom(Chunk_Section source) {
+        single = source.single;
+        bits = source.bits;
+        entryShift = source.entryShift;
+        bitsShift = source.bitsShift;
+        valueMask = source.valueMask;
+        data = source.data == UNIFORM_DATA ? UNIFORM_DATA : source.data.clone();
+        palette = source.palette.clone();
+        paletteSize = source.paletteSize;
+
+        if (source.lookup == null) {
+            lookup = null;
+        } else {
+            lookup = new Long_Int_Map(paletteSize);
+            for (int i = 0; i < paletteSize; i++)
+                lookup.getOrPut(palette[i], i);
+        }
+    }
+
+    /**
+     * Drops palette entries no block uses and narrows the indices, back to a single block if it's only one
+     */
+    public void compact() {
+        if (bits == 0)
+            return;
+
+        int[] counts = new int[paletteSize];
+        for (int index = 0; index < VOLUME; index++)
+            counts[readIndex(index)]++;
+
+        int used = 0;
+        int[] remap = new int[paletteSize];
+
+        for (int i = 0; i < paletteSize; i++) {
+            if (counts[i] > 0)
+                remap[i] = used++;
+        }
+
+        if (used == 1) {
+            for (int i = 0; i < paletteSize; i++) {
+                if (counts[i] > 0) {
+                    fill(palette[i]);
+                    return;
+                }
+            }
+        }
+
+        if (used == paletteSize && bitsFor(used) == bits)
+            return;
+
+        int[] newPalette = new int[Math.max(2, Integer.highestOneBit(used - 1) << 1)];
+        for (int i = 0; i < paletteSize; i++) {
+            if (counts[i] > 0)
+                newPalette[remap[i]] = palette[i];
+        }
+
+        repack(bitsFor(used), remap);
+
+        palette = newPalette;
+        paletteSize = used;
+        lookup = new Long_Int_Map(used);
+        for (int i = 0; i < used; i++)
+            lookup.getOrPut(palette[i], i);
+    }
+
+    public boolean isUniform() {
+        return bits == 0;
+    }
+
+    // The block of a uniform section
+    public int uniformBlock() {
+        assert bits == 0 : "section is not uniform";
+        return single;
+    }
+
+    public int bits() {
+        return bits;
+    }
+
+    public int paletteSize() {
+        return bits == 0 ? 1 : paletteSize;
+    }
+
+    /**
+     * Approximate heap bytes, arrays and object headers
+     */
+    public long memoryBytes() {
+        long bytes = 48 + 16 + palette.length * 4L;
+
+        if (data != UNIFORM_DATA)
+            bytes += 16 + data.length * 8L;
+
+        if (lookup != null)
+            bytes += 48 + lookup.capacity() * 12L;
+
+        return bytes;
+    }
+
+    private int paletteIndex(int block) {
+        int value = lookup.get(block, -1);
+        if (value >= 0)
+            return value;
+
+        // Full of ids overwritten since, indices change but the one returned is already the new one
+        if (paletteSize == 1 << MAX_BITS) {
+            compact();
+
+            if (bits == 0)
+                toPalette();
+            else if (paletteSize == 1 << MAX_BITS)
+                throw new IllegalStateException("every block of the section is different");
+        }
+
+        value = paletteSize;
+        lookup.getOrPut(block, value);
+
+        if (paletteSize == palette.length)
+            palette = Arrays.copyOf(palette, paletteSize * 2);
+
+        palette[paletteSize++] = block;
+
+        if (paletteSize > 1 << bits)
+            repack(bits * 2, null);
+
+        return value;
+    }
+
+    private void toPalette() {
+        palette = new int[2];
+        palette[0] = single;
+        paletteSize = 1;
+
+        lookup = new Long_Int_Map(2);
+        lookup.getOrPut(single, 0);
+
+        setBits(1);
+        data = new long[VOLUME >>> entryShift];
+    }
+
+    private int readIndex(int index) {
+        long word = data[index >>> entryShift];
+        return (int) (word >>> ((index & ((1 << entryShift) - 1)) << bitsShift)) & valueMask;
+    }
+
+    private void write(int index, int value) {
+        int word = index >>> entryShift;
+        int shift = (index & ((1 << entryShift) - 1)) << bitsShift;
+        long mask = ((1L << bits) - 1) << shift;
+
+        data[word] = data[word] & ~mask | (long) value << shift;
+    }
+
+    // Rewrites every index at newBits, through remap if there is one
+    private void repack(int newBits, int[] remap) {
+        assert newBits <= MAX_BITS;
+
+        long[] oldData = data;
+        int oldBits = bits;
+        int oldEntryShift = entryShift;
+        int oldBitsShift = bitsShift;
+
+        setBits(newBits);
+        data = new long[VOLUME >>> entryShift];
+
+        int oldEntryMask = (1 << oldEntryShift) - 1;
+        int oldValueMask = (1 << oldBits) - 1;
+
+        for (int index = 0; index < VOLUME; index++) {
+            long word = oldData[index >>> oldEntryShift];
+            int value = (int) (word >>> ((index & oldEntryMask) << oldBitsShift)) & oldValueMask;
+
+            if (remap != null)
+                value = remap[value];
+
+            if (value != 0)
+                write(index, value);
+        }
+    }
+
+    // 0 bits reads index 0 for every block, out of a single long
+    private void setBits(int bits) {
+        this.bits = bits;
+        bitsShift = bits == 0 ? 0 : Integer.numberOfTrailingZeros(bits);
+        entryShift = bits == 0 ? 31 : 6 - bitsShift;
+        valueMask = (1 << bits) - 1;
+    }
+
+    // 1, 2, 4, 8 or 16 bits for indices below count
+    private static int bitsFor(int count) {
+        int needed = Math.max(1, 32 - Integer.numberOfLeadingZeros(count - 1));
+        return needed == 1 ? 1 : Integer.highestOneBit(needed - 1) << 1;
+    }
+}
@@ -0,0 +1,11 @@
+package engine.world;
+
+/**
+ * Where {@link Chunk_Pipeline} hands finished meshes, always on the thread calling {@link Chunk_Pipeline#update}
+ */
+public interface Chunk_Upload_Sink {
+    // Replaces the chunk's previous mesh, if any. The mesh can be empty
+    void upload(int x, int y, int z, Chunk_Mesh_Data mesh);
+
+    void remove(int x, int y, int z);
+}
@@ -1,4 +1,9 @@
 package engine.world;
 
-public class Generator {
+/**
+ * Fills freshly created chunks, called from {@link Chunk_Pipeline} workers so it must be thread safe
+ */
+public interface Generator {
+    // The chunk is all air and knows its coordinates
+    void generate(Chunk chunk);
 }
@@ -1,4 +1,300 @@
 package engine.world;
 
+import java.util.Arrays;
+
+/**
+ * <h1>
+ *     Noise
+ * </h1>
+ * <h3>
+ *     Seeded 2D and 3D simplex noise, fractal sums of it and domain warping, per sample or a whole array at once
+ * </h3>
+ * <p>
+ *     Values are about [-1, 1] and only depend on the seed and the coordinates, so chunks generated on any thread,
+ *     in any order, line up. {@link Fractal} octaves use seed + octave so they don't correlate. Coordinates
+ *     should stay within +-2^22, past that the lattice snaps to whole floats and the noise degrades.
+ * </p>
+ * <p>
+ *     The batch methods, which take arrays of coordinates or fill a grid, evaluate {@code SPECIES.length()} points
+ *     at once with {@code jdk.incubator.vector} when the module is present ({@code --add-modules
+ *     jdk.incubator.vector}), otherwise with a scalar loop. Both give the same bits as the per sample methods,
+ *     save for which NaN a NaN coordinate gives.
+ * </p>
+ * <p>
+ *     Instances are immutable and thread safe, batch scratch arrays are per thread.
+ * </p>
+ */
 public class Noise {
+    private static final Noise_Kernel VECTORIZED = pickKernel();
+    private static final Noise_Kernel SCALAR = new Scalar_Noise_Kernel();
+
+    // Points per kernel call, fractal octaves are summed over one block at a time
+    private static final int BLOCK = 256;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    // Where warp samples the y and z offsets, away from the x one
+    private static final float WARP_Y_OFFSET = 113.5f;
+    private static final float WARP_Z_OFFSET = -71.25f;
+
+    public record Fractal(int octaves, float lacunarity, float gain) {
+        public static final Fractal SINGLE = new Fractal(1, 2.0f, 0.5f);
+
+        public Fractal {
+            if (octaves < 1)
+                throw new IllegalArgumentException("octaves must be at least 1, got " + octaves);
+        }
+
+        public static Fractal octaves(int octaves) {
+            return new Fractal(octaves, 2.0f, 0.5f);
+        }
+
+        // 1 / the sum of the octave amplitudes, keeps the fractal in about [-1, 1]
+        float normalization() {
+            float amplitude = 1.0f;
+            float sum = 0.0f;
+
+            for (int octave = 0; octave < octaves; octave++) {
+                sum += amplitude;
+                amplitude *= gain;
+            }
+
+            return 1.0f / sum;
+        }
+    }
+
+    private final int seed;
+    private final Noise_Kernel kernel;
+
+    public Noise(int seed) {
+        this(seed, VECTORIZED);
+    }
+
+    private Noise(int seed, Noise_Kernel kernel) {
+        this.seed = seed;
+        this.kernel = kernel;
+    }
+
+    // Same values, batches without the vector kernel
+    public static Noise scalar(int seed) {
+        return new Noise(seed, SCALAR);
+    }
+
+    public static boolean isVectorized() {
+        return !(VECTORIZED instanceof Scalar_Noise_Kernel);
+    }
+
+    public int getSeed() {
+        return seed;
+    }
+
+    public float sample(float x, float y) {
+        return Scalar_Noise_Kernel.simplex(seed, x, y);
+    }
+
+    public float sample(float x, float y, float z) {
+        return Scalar_Noise_Kernel.simplex(seed, x, y, z);
+    }
+
+    public float fbm(float x, float y, Fractal fractal) {
+        float frequency = 1.0f;
+        float amplitude = 1.0f;
+        float sum = 0.0f;
+
+        for (int octave = 0; octave < fractal.octaves(); octave++) {
+            sum += amplitude * Scalar_Noise_Kernel.simplex(seed + octave, x * frequency, y * frequency);
+            frequency *= fractal.lacunarity();
+            amplitude *= fractal.gain();
+        }
+
+        return sum * fractal.normalization();
+    }
+
+    public float fbm(float x, float y, float z, Fractal fractal) {
+        float frequency = 1.0f;
+        float amplitude = 1.0f;
+        float sum = 0.0f;
+
+        for (int octave = 0; octave < fractal.octaves(); octave++) {
+            sum += amplitude * Scalar_Noise_Kernel.simplex(seed + octave, x * frequency, y * frequency, z * frequency);
+            frequency *= fractal.lacunarity();
+            amplitude *= fractal.gain();
+        }
+
+        return sum * fractal.normalization();
+    }
+
+    public void sample(float[] x, float[] y, float[] dest, int count) {
+        kernel.simplex(seed, x, y, dest, 0, count);
+    }
+
+    public void sample(float[] x, float[] y, float[] z, float[] dest, int count) {
+        kernel.simplex(seed, x, y, z, dest, 0, count);
+    }
+
+    public void fbm(float[] x, float[] y, float[] dest, int count, Fractal fractal) {
+        fbmBlocks(x, y, null, dest, 0, count, fractal);
+    }
+
+    public void fbm(float[] x, float[] y, float[] z, float[] dest, int count, Fractal fractal) {
+        fbmBlocks(x, y, z, dest, 0, count, fractal);
+    }
+
+    /**
+     * Offsets the points by {@code amplitude} times fractal noise of the points, in place.
+     * Sampling noise at the warped points gives the folded, flowing shapes that plain fractal noise lacks
+     */
+    public void warp(float[] x, float[] y, int count, float amplitude, Fractal fractal) {
+        warpBlocks(x, y, null, count, amplitude, fractal);
+    }
+
+    public void warp(float[] x, float[] y, float[] z, int count, float amplitude, Fractal fractal) {
+        warpBlocks(x, y, z, count, amplitude, fractal);
+    }
+
+    /**
+     * Fractal noise of a {@code width} x {@code depth} grid of the xz plane, {@code step} apart from
+     * ({@code x}, {@code z}), into {@code dest[row * width + column]}. A heightmap of one chunk is 64 x 64 points
+     */
+    public void grid(float[] dest, float x, float z, float step, int width, int depth, Fractal fractal) {
+        assert dest.length >= width * depth;
+
+        float[] xs = new float[width];
+        float[] zs = new float[width];
+
+        for (int column = 0; column < width; column++)
+            xs[column] = x + (float) column * step;
+
+        for (int row = 0; row < depth; row++) {
+            Arrays.fill(zs, z + (float) row * step);
+            fbmBlocks(xs, zs, null, dest, row * width, width, fractal);
+        }
+    }
+
+    /**
+     * Fractal noise of a {@code width} x {@code height} x {@code depth} grid, {@code step} apart from
+     * ({@code x}, {@code y}, {@code z}), into {@code dest[(y * depth + z) * width + x]}, the order of
+     * {@link Chunk#getBlocks}
+     */
+    public void grid(float[] dest, float x, float y, float z, float step, int width, int height, int depth, Fractal fractal) {
+        assert dest.length >= width * height * depth;
+
+        float[] xs = new float[width];
+        float[] ys = new float[width];
+        float[] zs = new float[width];
+
+        for (int column = 0; column < width; column++)
+            xs[column] = x + (float) column * step;
+
+        for (int layer = 0; layer < height; layer++) {
+            Arrays.fill(ys, y + (float) layer * step);
+
+            for (int row = 0; row < depth; row++) {
+                Arrays.fill(zs, z + (float) row * step);
+                fbmBlocks(xs, ys, zs, dest, (layer * depth + row) * width, width, fractal);
+            }
+        }
+    }
+
+    // z null for 2D, points [0, count) into dest from destFrom
+    private void fbmBlocks(float[] x, float[] y, float[] z, float[] dest, int destFrom, int count, Fractal fractal) {
+        Scratch scratch = SCRATCH.get();
+
+        for (int from = 0; from < count; from += BLOCK)
+            fbmBlock(scratch, x, y, z, from, Math.min(count, from + BLOCK) - from, dest, destFrom + from, fractal);
+    }
+
+    // z null for 2D
+    private void warpBlocks(float[] x, float[] y, float[] z, int count, float amplitude, Fractal fractal) {
+        Scratch scratch = SCRATCH.get();
+        float[] shiftedX = scratch.shifted[0], shiftedY = scratch.shifted[1], shiftedZ = scratch.shifted[2];
+        float[] warpX = scratch.warp[0], warpY = scratch.warp[1], warpZ = scratch.warp[2];
+
+        for (int from = 0; from < count; from += BLOCK) {
+            int blockCount = Math.min(count, from + BLOCK) - from;
+
+            fbmBlock(scratch, x, y, z, from, blockCount, warpX, 0, fractal);
+
+            // The other axes sample the same noise somewhere else, so they don't move in lockstep with x
+            for (int i = 0; i < blockCount; i++) {
+                shiftedX[i] = x[from + i];
+                shiftedY[i] = y[from + i] + WARP_Y_OFFSET;
+                if (z != null)
+                    shiftedZ[i] = z[from + i];
+            }
+
+            fbmBlock(scratch, shiftedX, shiftedY, z == null ? null : shiftedZ, 0, blockCount, warpY, 0, fractal);
+
+            if (z != null) {
+                for (int i = 0; i < blockCount; i++) {
+                    shiftedY[i] = y[from + i];
+                    shiftedZ[i] = z[from + i] + WARP_Z_OFFSET;
+                }
+
+                fbmBlock(scratch, shiftedX, shiftedY, shiftedZ, 0, blockCount, warpZ, 0, fractal);
+            }
+
+            for (int i = 0; i < blockCount; i++) {
+                x[from + i] += amplitude * warpX[i];
+                y[from + i] += amplitude * warpY[i];
+                if (z != null)
+                    z[from + i] += amplitude * warpZ[i];
+            }
+        }
+    }
+
+    // Points [from, from + count) into dest from destFrom, at most one block, the operations of the per sample fbm
+    private void fbmBlock(Scratch scratch, float[] x, float[] y, float[] z, int from, int count, float[] dest, int destFrom, Fractal fractal) {
+        float[] scaledX = scratch.scaled[0], scaledY = scratch.scaled[1], scaledZ = scratch.scaled[2];
+        float frequency = 1.0f;
+        float amplitude = 1.0f;
+
+        Arrays.fill(dest, destFrom, destFrom + count, 0.0f);
+
+        for (int octave = 0; octave < fractal.octaves(); octave++) {
+            for (int i = 0; i < count; i++) {
+                scaledX[i] = x[from + i] * frequency;
+                scaledY[i] = y[from + i] * frequency;
+            }
+
+            // The kernel reads each point before writing it, the noise can replace scaledX
+            if (z == null) {
+                kernel.simplex(seed + octave, scaledX, scaledY, scaledX, 0, count);
+            } else {
+                for (int i = 0; i < count; i++)
+                    scaledZ[i] = z[from + i] * frequency;
+
+                kernel.simplex(seed + octave, scaledX, scaledY, scaledZ, scaledX, 0, count);
+            }
+
+            for (int i = 0; i < count; i++)
+                dest[destFrom + i] += amplitude * scaledX[i];
+
+            frequency *= fractal.lacunarity();
+            amplitude *= fractal.gain();
+        }
+
+        float normalization = fractal.normalization();
+        for (int i = 0; i < count; i++)
+            dest[destFrom + i] *= normalization;
+    }
+
+    // The vector kernel is only loaded by name, so nothing else needs the incubator module
+    private static Noise_Kernel pickKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (Noise_Kernel) Class.forName("engine.world.Vector_Noise_Kernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("vectorized noise unavailable: " + e);
+            }
+        }
+
+        return new Scalar_Noise_Kernel();
+    }
+
+    private static class Scratch {
+        final float[][] scaled = new float[3][BLOCK];
+        final float[][] shifted = new float[3][BLOCK];
+        final float[][] warp = new float[3][BLOCK];
+    }
 }
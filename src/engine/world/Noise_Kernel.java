@@ -0,0 +1,8 @@
+package engine.world;
+
+// Simplex noise of points [from, to), see Noise for the scale and what seed does
+interface Noise_Kernel {
+    void simplex(int seed, float[] x, float[] y, float[] dest, int from, int to);
+
+    void simplex(int seed, float[] x, float[] y, float[] z, float[] dest, int from, int to);
+}
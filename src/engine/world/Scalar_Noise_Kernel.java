@@ -0,0 +1,164 @@
+package engine.world;
+
+/**
+ * The reference simplex noise, {@link Vector_Noise_Kernel} does every float operation of it in the same order
+ * so both give the same bits. Lattice points are hashed from the seed and their coordinates, there's no
+ * permutation table.
+ */
+class Scalar_Noise_Kernel implements Noise_Kernel {
+    static final int PRIME_X = 501125321;
+    static final int PRIME_Y = 1136930381;
+    static final int PRIME_Z = 1720413743;
+    static final int HASH_MULTIPLIER = 0x27D4EB2D;
+
+    // Skew to the simplex lattice and back
+    static final float F2 = 0.36602540378f;
+    static final float G2 = 0.21132486540f;
+    static final float G2_LAST = 2.0f * G2 - 1.0f;
+    static final float F3 = 1.0f / 3.0f;
+    static final float G3 = 1.0f / 6.0f;
+    static final float G3_SECOND = 2.0f * G3;
+    static final float G3_LAST = 3.0f * G3 - 1.0f;
+
+    // Adding 1.5 * 2^23 rounds to an integer, which is then the low mantissa bits
+    static final float ROUND = 12582912.0f;
+    static final int ROUND_BITS = Float.floatToRawIntBits(ROUND);
+
+    // To about [-1, 1]
+    static final float SCALE2 = 45.0f;
+    static final float SCALE3 = 32.0f;
+
+    @Override
+    public void simplex(int seed, float[] x, float[] y, float[] dest, int from, int to) {
+        for (int i = from; i < to; i++)
+            dest[i] = simplex(seed, x[i], y[i]);
+    }
+
+    @Override
+    public void simplex(int seed, float[] x, float[] y, float[] z, float[] dest, int from, int to) {
+        for (int i = from; i < to; i++)
+            dest[i] = simplex(seed, x[i], y[i], z[i]);
+    }
+
+    static float simplex(int seed, float x, float y) {
+        float s = (x + y) * F2;
+        float i = floor(x + s);
+        float j = floor(y + s);
+
+        float t = (i + j) * G2;
+        float x0 = x - (i - t);
+        float y0 = y - (j - t);
+
+        // Lower or upper triangle of the cell
+        boolean lower = x0 > y0;
+        float x1 = (lower ? x0 - 1.0f : x0) + G2;
+        float y1 = (lower ? y0 : y0 - 1.0f) + G2;
+        float x2 = x0 + G2_LAST;
+        float y2 = y0 + G2_LAST;
+
+        int xPrimed = toInt(i) * PRIME_X;
+        int yPrimed = toInt(j) * PRIME_Y;
+
+        float n0 = corner(hash(seed, xPrimed, yPrimed), x0, y0);
+        float n1 = corner(hash(seed, lower ? xPrimed + PRIME_X : xPrimed, lower ? yPrimed : yPrimed + PRIME_Y), x1, y1);
+        float n2 = corner(hash(seed, xPrimed + PRIME_X, yPrimed + PRIME_Y), x2, y2);
+
+        return (n0 + n1 + n2) * SCALE2;
+    }
+
+    static float simplex(int seed, float x, float y, float z) {
+        float s = (x + y + z) * F3;
+        float i = floor(x + s);
+        float j = floor(y + s);
+        float k = floor(z + s);
+
+        float t = (i + j + k) * G3;
+        float x0 = x - (i - t);
+        float y0 = y - (j - t);
+        float z0 = z - (k - t);
+
+        // Which of the 6 tetrahedra of the cell, as the first and second corner after the origin
+        boolean i1 = x0 >= y0 && x0 >= z0;
+        boolean j1 = y0 > x0 && y0 >= z0;
+        boolean k1 = z0 > x0 && z0 > y0;
+        boolean i2 = x0 >= y0 || x0 >= z0;
+        boolean j2 = y0 > x0 || y0 >= z0;
+        boolean k2 = z0 > x0 || z0 > y0;
+
+        float x1 = (i1 ? x0 - 1.0f : x0) + G3;
+        float y1 = (j1 ? y0 - 1.0f : y0) + G3;
+        float z1 = (k1 ? z0 - 1.0f : z0) + G3;
+        float x2 = (i2 ? x0 - 1.0f : x0) + G3_SECOND;
+        float y2 = (j2 ? y0 - 1.0f : y0) + G3_SECOND;
+        float z2 = (k2 ? z0 - 1.0f : z0) + G3_SECOND;
+        float x3 = x0 + G3_LAST;
+        float y3 = y0 + G3_LAST;
+        float z3 = z0 + G3_LAST;
+
+        int xPrimed = toInt(i) * PRIME_X;
+        int yPrimed = toInt(j) * PRIME_Y;
+        int zPrimed = toInt(k) * PRIME_Z;
+
+        float n0 = corner(hash(seed, xPrimed, yPrimed, zPrimed), x0, y0, z0);
+        float n1 = corner(hash(seed,
+                i1 ? xPrimed + PRIME_X : xPrimed,
+                j1 ? yPrimed + PRIME_Y : yPrimed,
+                k1 ? zPrimed + PRIME_Z : zPrimed), x1, y1, z1);
+        float n2 = corner(hash(seed,
+                i2 ? xPrimed + PRIME_X : xPrimed,
+                j2 ? yPrimed + PRIME_Y : yPrimed,
+                k2 ? zPrimed + PRIME_Z : zPrimed), x2, y2, z2);
+        float n3 = corner(hash(seed, xPrimed + PRIME_X, yPrimed + PRIME_Y, zPrimed + PRIME_Z), x3, y3, z3);
+
+        return (n0 + n1 + n2 + n3) * SCALE3;
+    }
+
+    // Without float to int conversions, which the vector API doesn't compile to instructions on every CPU.
+    // Exact while |v| < 2^22, further out it's still the same in both kernels
+    static float floor(float v) {
+        float rounded = v + ROUND - ROUND;
+        return v < rounded ? rounded - 1.0f : rounded;
+    }
+
+    // Of an integer floor
+    static int toInt(float integer) {
+        return Float.floatToRawIntBits(integer + ROUND) - ROUND_BITS;
+    }
+
+    static int hash(int seed, int xPrimed, int yPrimed) {
+        return (seed ^ xPrimed ^ yPrimed) * HASH_MULTIPLIER;
+    }
+
+    static int hash(int seed, int xPrimed, int yPrimed, int zPrimed) {
+        return (seed ^ xPrimed ^ yPrimed ^ zPrimed) * HASH_MULTIPLIER;
+    }
+
+    // Falloff^4 times the gradient dot, gradients from the top (best mixed) bits of the hash
+    private static float corner(int hash, float x, float y) {
+        float t = 0.5f - x * x - y * y;
+        if (t < 0.0f)
+            return 0.0f;
+
+        int g = hash >>> 29;
+        float u = g < 4 ? x : y;
+        float v = 2.0f * (g < 4 ? y : x);
+        float gradient = ((g & 1) != 0 ? -u : u) + ((g & 2) != 0 ? -v : v);
+
+        float t2 = t * t;
+        return t2 * t2 * gradient;
+    }
+
+    private static float corner(int hash, float x, float y, float z) {
+        float t = 0.6f - x * x - y * y - z * z;
+        if (t < 0.0f)
+            return 0.0f;
+
+        int g = hash >>> 28;
+        float u = g < 8 ? x : y;
+        float v = g < 4 ? y : g == 12 || g == 14 ? x : z;
+        float gradient = ((g & 1) != 0 ? -u : u) + ((g & 2) != 0 ? -v : v);
+
+        float t2 = t * t;
+        return t2 * t2 * gradient;
+    }
+}
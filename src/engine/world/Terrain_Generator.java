@@ -0,0 +1,96 @@
+package engine.world;
+
+/**
+ * <h3>
+ *     Heightmap terrain: stone under a few blocks of dirt under grass
+ * </h3>
+ * <p>
+ *     The heights of all columns of a chunk are one batch of {@link Noise}: the column positions are domain warped,
+ *     then fractal noise of the warped positions is scaled to blocks.
+ * </p>
+ */
+public class Terrain_Generator implements Generator {
+    private static final int SIDE = Chunk.WORLD_SIDE_SIZE;
+    private static final int COLUMNS = Chunk.LAYER_SIZE;
+
+    // Noise units per block, and the warp offset in noise units
+    private static final float FREQUENCY = 1.0f / 512.0f;
+    private static final float WARP_AMPLITUDE = 0.35f;
+
+    private static final Noise.Fractal HEIGHT_FRACTAL = Noise.Fractal.octaves(6);
+    private static final Noise.Fractal WARP_FRACTAL = Noise.Fractal.octaves(3);
+
+    private static final int DIRT_DEPTH = 3;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final Noise noise;
+    private final float baseHeight;
+    private final float heightRange;
+
+    /**
+     * @param baseHeight world y of the average surface
+     * @param heightRange how far above and below it the surface goes, about
+     */
+    public Terrain_Generator(int seed, float baseHeight, float heightRange) {
+        this.noise = new Noise(seed);
+        this.baseHeight = baseHeight;
+        this.heightRange = heightRange;
+    }
+
+    @Override
+    public void generate(Chunk chunk) {
+        Scratch scratch = SCRATCH.get();
+        float[] x = scratch.x, z = scratch.z, noiseHeights = scratch.noiseHeights;
+        int[] heights = scratch.heights;
+
+        int worldX = chunk.getX() * SIDE;
+        int worldZ = chunk.getZ() * SIDE;
+
+        for (int column = 0; column < COLUMNS; column++) {
+            x[column] = (float) (worldX + column % SIDE) * FREQUENCY;
+            z[column] = (float) (worldZ + column / SIDE) * FREQUENCY;
+        }
+
+        noise.warp(x, z, COLUMNS, WARP_AMPLITUDE, WARP_FRACTAL);
+        noise.fbm(x, z, noiseHeights, COLUMNS, HEIGHT_FRACTAL);
+
+        int highest = Integer.MIN_VALUE;
+        for (int column = 0; column < COLUMNS; column++) {
+            heights[column] = (int) Math.floor(baseHeight + heightRange * noiseHeights[column]);
+            highest = Math.max(highest, heights[column]);
+        }
+
+        // Layers above every column stay air
+        int bottom = chunk.getY() * SIDE;
+        int[] layer = scratch.layer;
+
+        for (int y = 0; y < SIDE && bottom + y <= highest; y++) {
+            int worldY = bottom + y;
+
+            for (int column = 0; column < COLUMNS; column++) {
+                int height = heights[column];
+
+                if (worldY > height)
+                    layer[column] = Blocks.AIR;
+                else if (worldY == height)
+                    layer[column] = Blocks.GRASS;
+                else if (worldY >= height - DIRT_DEPTH)
+                    layer[column] = Blocks.DIRT;
+                else
+                    layer[column] = Blocks.STONE;
+            }
+
+            chunk.setLayer(y, layer);
+        }
+    }
+
+    // Column (x, z) at z * SIDE + x, the order of Chunk layers
+    private static class Scratch {
+        final float[] x = new float[COLUMNS];
+        final float[] z = new float[COLUMNS];
+        final float[] noiseHeights = new float[COLUMNS];
+        final int[] heights = new int[COLUMNS];
+        final int[] layer = new int[COLUMNS];
+    }
+}
@@ -0,0 +1,191 @@
+package engine.world;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static engine.world.Scalar_Noise_Kernel.*;
+
+/**
+ * {@link Scalar_Noise_Kernel} on {@code SPECIES.length()} points at once, the branches become masks and blends
+ * and every float operation is kept in the same order, without fused multiply adds, so the results are the same
+ * bits. Needs {@code --add-modules jdk.incubator.vector} to compile and run, see {@link Noise}
+ */
+class Vector_Noise_Kernel implements Noise_Kernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final FloatVector ZERO = FloatVector.zero(SPECIES);
+
+    // The whole noise is in the loops, a call to it would be too big to inline and box every vector
+    @Override
+    public void simplex(int seed, float[] xs, float[] ys, float[] dest, int from, int to) {
+        int index = from;
+
+        for (int bound = from + SPECIES.loopBound(to - from); index < bound; index += SPECIES.length()) {
+            FloatVector x = FloatVector.fromArray(SPECIES, xs, index);
+            FloatVector y = FloatVector.fromArray(SPECIES, ys, index);
+
+            FloatVector s = x.add(y).mul(F2);
+            FloatVector i = floor(x.add(s));
+            FloatVector j = floor(y.add(s));
+
+            FloatVector t = i.add(j).mul(G2);
+            FloatVector x0 = x.sub(i.sub(t));
+            FloatVector y0 = y.sub(j.sub(t));
+
+            VectorMask<Float> lower = x0.compare(VectorOperators.GT, y0);
+            VectorMask<Float> upper = lower.not();
+
+            FloatVector x1 = x0.sub(1.0f, lower).add(G2);
+            FloatVector y1 = y0.sub(1.0f, upper).add(G2);
+            FloatVector x2 = x0.add(G2_LAST);
+            FloatVector y2 = y0.add(G2_LAST);
+
+            IntVector xPrimed = toInt(i).mul(PRIME_X);
+            IntVector yPrimed = toInt(j).mul(PRIME_Y);
+
+            FloatVector n0 = corner(hash(seed, xPrimed, yPrimed), x0, y0);
+            FloatVector n1 = corner(hash(seed, xPrimed.add(prime(PRIME_X, lower)), yPrimed.add(prime(PRIME_Y, upper))), x1, y1);
+            FloatVector n2 = corner(hash(seed, xPrimed.add(PRIME_X), yPrimed.add(PRIME_Y)), x2, y2);
+
+            n0.add(n1).add(n2).mul(SCALE2).intoArray(dest, index);
+        }
+
+        for (; index < to; index++)
+            dest[index] = Scalar_Noise_Kernel.simplex(seed, xs[index], ys[index]);
+    }
+
+    @Override
+    public void simplex(int seed, float[] xs, float[] ys, float[] zs, float[] dest, int from, int to) {
+        int index = from;
+
+        for (int bound = from + SPECIES.loopBound(to - from); index < bound; index += SPECIES.length()) {
+            FloatVector x = FloatVector.fromArray(SPECIES, xs, index);
+            FloatVector y = FloatVector.fromArray(SPECIES, ys, index);
+            FloatVector z = FloatVector.fromArray(SPECIES, zs, index);
+
+            FloatVector s = x.add(y).add(z).mul(F3);
+            FloatVector i = floor(x.add(s));
+            FloatVector j = floor(y.add(s));
+            FloatVector k = floor(z.add(s));
+
+            FloatVector t = i.add(j).add(k).mul(G3);
+            FloatVector x0 = x.sub(i.sub(t));
+            FloatVector y0 = y.sub(j.sub(t));
+            FloatVector z0 = z.sub(k.sub(t));
+
+            VectorMask<Float> xy = x0.compare(VectorOperators.GE, y0);
+            VectorMask<Float> xz = x0.compare(VectorOperators.GE, z0);
+            VectorMask<Float> yx = y0.compare(VectorOperators.GT, x0);
+            VectorMask<Float> yz = y0.compare(VectorOperators.GE, z0);
+            VectorMask<Float> zx = z0.compare(VectorOperators.GT, x0);
+            VectorMask<Float> zy = z0.compare(VectorOperators.GT, y0);
+
+            VectorMask<Float> i1 = xy.and(xz);
+            VectorMask<Float> j1 = yx.and(yz);
+            VectorMask<Float> k1 = zx.and(zy);
+            VectorMask<Float> i2 = xy.or(xz);
+            VectorMask<Float> j2 = yx.or(yz);
+            VectorMask<Float> k2 = zx.or(zy);
+
+            FloatVector x1 = x0.sub(1.0f, i1).add(G3);
+            FloatVector y1 = y0.sub(1.0f, j1).add(G3);
+            FloatVector z1 = z0.sub(1.0f, k1).add(G3);
+            FloatVector x2 = x0.sub(1.0f, i2).add(G3_SECOND);
+            FloatVector y2 = y0.sub(1.0f, j2).add(G3_SECOND);
+            FloatVector z2 = z0.sub(1.0f, k2).add(G3_SECOND);
+            FloatVector x3 = x0.add(G3_LAST);
+            FloatVector y3 = y0.add(G3_LAST);
+            FloatVector z3 = z0.add(G3_LAST);
+
+            IntVector xPrimed = toInt(i).mul(PRIME_X);
+            IntVector yPrimed = toInt(j).mul(PRIME_Y);
+            IntVector zPrimed = toInt(k).mul(PRIME_Z);
+
+            FloatVector n0 = corner(hash(seed, xPrimed, yPrimed, zPrimed), x0, y0, z0);
+            FloatVector n1 = corner(hash(seed,
+                    xPrimed.add(prime(PRIME_X, i1)),
+                    yPrimed.add(prime(PRIME_Y, j1)),
+                    zPrimed.add(prime(PRIME_Z, k1))), x1, y1, z1);
+            FloatVector n2 = corner(hash(seed,
+                    xPrimed.add(prime(PRIME_X, i2)),
+                    yPrimed.add(prime(PRIME_Y, j2)),
+                    zPrimed.add(prime(PRIME_Z, k2))), x2, y2, z2);
+            FloatVector n3 = corner(hash(seed, xPrimed.add(PRIME_X), yPrimed.add(PRIME_Y), zPrimed.add(PRIME_Z)), x3, y3, z3);
+
+            n0.add(n1).add(n2).add(n3).mul(SCALE3).intoArray(dest, index);
+        }
+
+        for (; index < to; index++)
+            dest[index] = Scalar_Noise_Kernel.simplex(seed, xs[index], ys[index], zs[index]);
+    }
+
+    // F2I conversions and mask casts between the float and int species aren't instructions on every CPU, they
+    // box, so nothing here uses them: integers come from float bits and masks only select lanes of their own type
+    private static FloatVector floor(FloatVector v) {
+        FloatVector rounded = v.add(ROUND).sub(ROUND);
+        return rounded.sub(1.0f, v.compare(VectorOperators.LT, rounded));
+    }
+
+    private static IntVector toInt(FloatVector integer) {
+        return integer.add(ROUND).reinterpretAsInts().sub(ROUND_BITS);
+    }
+
+    // The prime in the set lanes, 0 elsewhere
+    private static IntVector prime(int prime, VectorMask<Float> mask) {
+        return ZERO.blend(Float.intBitsToFloat(prime), mask).reinterpretAsInts();
+    }
+
+    // Floats picked by an int mask, as their bits
+    private static FloatVector select(FloatVector unset, FloatVector set, VectorMask<Integer> mask) {
+        return unset.reinterpretAsInts().blend(set.reinterpretAsInts(), mask).reinterpretAsFloats();
+    }
+
+    private static IntVector hash(int seed, IntVector xPrimed, IntVector yPrimed) {
+        return xPrimed.lanewise(VectorOperators.XOR, seed).lanewise(VectorOperators.XOR, yPrimed).mul(HASH_MULTIPLIER);
+    }
+
+    private static IntVector hash(int seed, IntVector xPrimed, IntVector yPrimed, IntVector zPrimed) {
+        return xPrimed.lanewise(VectorOperators.XOR, seed)
+                .lanewise(VectorOperators.XOR, yPrimed)
+                .lanewise(VectorOperators.XOR, zPrimed)
+                .mul(HASH_MULTIPLIER);
+    }
+
+    private static FloatVector corner(IntVector hash, FloatVector x, FloatVector y) {
+        FloatVector t = FloatVector.broadcast(SPECIES, 0.5f).sub(x.mul(x)).sub(y.mul(y));
+
+        IntVector g = hash.lanewise(VectorOperators.LSHR, 29);
+        VectorMask<Integer> first = g.compare(VectorOperators.LT, 4);
+
+        FloatVector u = select(y, x, first);
+        FloatVector v = select(x, y, first).mul(2.0f);
+        FloatVector gradient = negate(u, g, 1).add(negate(v, g, 2));
+
+        FloatVector t2 = t.mul(t);
+        return t2.mul(t2).mul(gradient).blend(0.0f, t.compare(VectorOperators.LT, 0.0f));
+    }
+
+    private static FloatVector corner(IntVector hash, FloatVector x, FloatVector y, FloatVector z) {
+        FloatVector t = FloatVector.broadcast(SPECIES, 0.6f).sub(x.mul(x)).sub(y.mul(y)).sub(z.mul(z));
+
+        IntVector g = hash.lanewise(VectorOperators.LSHR, 28);
+        VectorMask<Integer> firstHalf = g.compare(VectorOperators.LT, 8);
+        VectorMask<Integer> firstQuarter = g.compare(VectorOperators.LT, 4);
+        VectorMask<Integer> xInstead = g.compare(VectorOperators.EQ, 12).or(g.compare(VectorOperators.EQ, 14));
+
+        FloatVector u = select(y, x, firstHalf);
+        FloatVector v = select(select(z, x, xInstead), y, firstQuarter);
+        FloatVector gradient = negate(u, g, 1).add(negate(v, g, 2));
+
+        FloatVector t2 = t.mul(t);
+        return t2.mul(t2).mul(gradient).blend(0.0f, t.compare(VectorOperators.LT, 0.0f));
+    }
+
+    // -v in the lanes where the bit of g is set, flipping the sign bit is exactly what negation does
+    private static FloatVector negate(FloatVector v, IntVector g, int bit) {
+        IntVector sign = g.and(bit).lanewise(VectorOperators.LSHL, 31 - Integer.numberOfTrailingZeros(bit));
+        return v.reinterpretAsInts().lanewise(VectorOperators.XOR, sign).reinterpretAsFloats();
+    }
+}
@@ -0,0 +1,185 @@
+package engine;
+
+import org.joml.Matrix4f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Flushes random submissions into a backend that records the calls and compares the draw order with a stable
+ * comparison sort by pass, program, texture, vertex array and depth. Depths are whole numbers below 2^14, so
+ * the 22 key bits keep them apart and equal keys must come out in submission order. Failures throw.
+ */
+public class Renderer_Test {
+    private record Submission(int index, Renderer.Pass pass, int program, int texture, int vertexArray, float depth) {}
+
+    private record Draw(int program, int texture, int vertexArray, int count, int indexType, long indexOffset, float[] transform) {}
+
+    // Key field ids come from the first submission that used the name, over every frame so far
+    private static final Map<Integer, Integer> PROGRAM_IDS = new HashMap<>();
+    private static final Map<Integer, Integer> TEXTURE_IDS = new HashMap<>();
+    private static final Map<Integer, Integer> VERTEX_ARRAY_IDS = new HashMap<>();
+
+    public static void main(String[] args) {
+        identicalKeysKeepSubmissionOrder();
+        bindsOnlyOnChange();
+
+        Renderer renderer = new Renderer(16);
+        Random random = new Random(3);
+
+        // Same renderer over frames, the GL name ids persist and the arrays grow past 16
+        for (int frame = 0; frame < 20; frame++)
+            randomFrame(renderer, random, frame);
+
+        System.out.println("Renderer_Test: ok");
+    }
+
+    private static void identicalKeysKeepSubmissionOrder() {
+        Renderer renderer = new Renderer();
+        Recording_Backend backend = new Recording_Backend();
+
+        renderer.beginFrame();
+        for (int i = 0; i < 100; i++)
+            renderer.submit(Renderer.Pass.Opaque, 1, 2, 3, i + 1, 0, 0, new Matrix4f(), 5.0f);
+
+        renderer.flush(backend);
+
+        check(backend.draws.size() == 100, "every submission drawn");
+        for (int i = 0; i < 100; i++)
+            check(backend.draws.get(i).count == i + 1, "draw " + i + " out of submission order");
+    }
+
+    private static void bindsOnlyOnChange() {
+        Renderer renderer = new Renderer();
+        Recording_Backend backend = new Recording_Backend();
+
+        renderer.beginFrame();
+
+        // Interleaved on submission, grouped after sorting, negative depths count as 0
+        for (int i = 0; i < 12; i++)
+            renderer.submit(Renderer.Pass.Opaque, 10 + i % 2, 20 + i % 3, 30, 3, 0, 0, new Matrix4f(), i % 4 == 0 ? -1.0f : i);
+
+        renderer.flush(backend);
+
+        Renderer.Stats stats = renderer.stats();
+        check(stats.draws == 12 && stats.submissions == 12, "12 draws");
+        check(stats.programBinds == 2, "program bound per program, got " + stats.programBinds);
+        check(stats.textureBinds == 6, "texture bound per program and texture, got " + stats.textureBinds);
+        check(stats.vertexArrayBinds == 1, "one vertex array, got " + stats.vertexArrayBinds);
+
+        check(backend.programBinds == stats.programBinds && backend.textureBinds == stats.textureBinds &&
+              backend.vertexArrayBinds == stats.vertexArrayBinds, "stats match the backend calls");
+    }
+
+    private static void randomFrame(Renderer renderer, Random random, int frame) {
+        Recording_Backend backend = new Recording_Backend();
+
+        // GL names aren't small or in order, the renderer maps them to key ids in the order they're first seen
+        int[] programs = { 7, 3, 40000 };
+        int[] textures = { 0, 12, 5, 99, 1 << 20 };
+        int[] vertexArrays = { 2, 8, 13, 1, 70 };
+
+        int count = 1 + random.nextInt(frame < 10 ? 200 : 5000);
+
+        Submission[] submissions = new Submission[count];
+        Matrix4f[] transforms = new Matrix4f[count];
+
+        renderer.beginFrame();
+
+        for (int i = 0; i < count; i++) {
+            Renderer.Pass pass = random.nextInt(4) == 0 ? Renderer.Pass.Transparent : Renderer.Pass.Opaque;
+            int program = programs[random.nextInt(programs.length)];
+            int texture = textures[random.nextInt(textures.length)];
+            int vertexArray = vertexArrays[random.nextInt(vertexArrays.length)];
+            float depth = random.nextInt(1 << 14);
+
+            submissions[i] = new Submission(i, pass, program, texture, vertexArray, depth);
+            transforms[i] = new Matrix4f().translation(i, frame, -i).scale(1 + i % 5);
+
+            renderer.submit(pass, program, texture, vertexArray, i, 0x1405, i * 4L, transforms[i], depth);
+        }
+
+        renderer.flush(backend);
+
+        Submission[] expected = submissions.clone();
+        Arrays.sort(expected, order(submissions));
+
+        check(backend.draws.size() == count, "frame " + frame + ": " + backend.draws.size() + " draws of " + count);
+
+        for (int k = 0; k < count; k++) {
+            Submission submission = expected[k];
+            Draw draw = backend.draws.get(k);
+
+            // The count is the submission index
+            if (draw.count != submission.index)
+                throw new AssertionError("frame " + frame + ": draw " + k + " is submission " + draw.count +
+                                         ", expected " + submission.index + " " + submission);
+
+            check(draw.program == submission.program && draw.texture == submission.texture &&
+                  draw.vertexArray == submission.vertexArray, "frame " + frame + ": draw " + k + " bound the wrong state");
+            check(draw.indexType == 0x1405 && draw.indexOffset == submission.index * 4L, "frame " + frame + ": draw arguments");
+            check(Arrays.equals(draw.transform, transforms[submission.index].get(new float[16])), "frame " + frame + ": transform");
+        }
+    }
+
+    private static Comparator<Submission> order(Submission[] submissions) {
+        // The renderer assigns the ids in submit order, so do the same before sorting
+        for (Submission submission : submissions) {
+            PROGRAM_IDS.putIfAbsent(submission.program, PROGRAM_IDS.size());
+            TEXTURE_IDS.putIfAbsent(submission.texture, TEXTURE_IDS.size());
+            VERTEX_ARRAY_IDS.putIfAbsent(submission.vertexArray, VERTEX_ARRAY_IDS.size());
+        }
+
+        // Front to back for opaque, back to front for transparent, Arrays.sort on objects is stable
+        return Comparator.<Submission>comparingInt(s -> s.pass.ordinal())
+                .thenComparingInt(s -> PROGRAM_IDS.get(s.program))
+                .thenComparingInt(s -> TEXTURE_IDS.get(s.texture))
+                .thenComparingInt(s -> VERTEX_ARRAY_IDS.get(s.vertexArray))
+                .thenComparingDouble(s -> s.pass == Renderer.Pass.Transparent ? -s.depth : s.depth);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    private static final class Recording_Backend implements Render_Backend {
+        final ArrayList<Draw> draws = new ArrayList<>();
+        int programBinds, textureBinds, vertexArrayBinds;
+
+        private int program, texture, vertexArray;
+        private float[] transform;
+
+        @Override
+        public void useProgram(int program) {
+            this.program = program;
+            programBinds++;
+        }
+
+        @Override
+        public void bindTexture(int unit, int texture) {
+            this.texture = texture;
+            textureBinds++;
+        }
+
+        @Override
+        public void bindVertexArray(int vertexArray) {
+            this.vertexArray = vertexArray;
+            vertexArrayBinds++;
+        }
+
+        @Override
+        public void setTransform(float[] transforms, int offset) {
+            transform = Arrays.copyOfRange(transforms, offset, offset + 16);
+        }
+
+        @Override
+        public void drawElements(int count, int indexType, long indexOffset) {
+            draws.add(new Draw(program, texture, vertexArray, count, indexType, indexOffset, transform));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package engine.gfx;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Checks commands come out in the DrawElementsIndirectCommand layout glMultiDrawElementsIndirect reads:
+ * five 4 byte fields per command, tightly packed, in native order. Failures throw.
+ */
+public class Draw_Command_Buffer_Test {
+    public static void main(String[] args) {
+        layout();
+        growsPastInitialCapacity();
+        writesAtOffsetInNativeOrder();
+
+        System.out.println("Draw_Command_Buffer_Test: ok");
+    }
+
+    private static void layout() {
+        check(Draw_Command_Buffer.COMMAND_SIZE == 20, "command is 20 bytes, the default stride");
+
+        Draw_Command_Buffer commands = new Draw_Command_Buffer();
+        commands.add(36, 4, 120, 900, 7);
+        commands.add(6, 1, 0, -3, 11);
+
+        check(commands.count() == 2 && commands.byteSize() == 40, "two commands, 40 bytes");
+
+        int[] expected = {
+                36, 4, 120, 900, 7,
+                6, 1, 0, -3, 11
+        };
+
+        int[] array = commands.array();
+        for (int i = 0; i < expected.length; i++)
+            check(array[i] == expected[i], "int " + i + " is " + array[i] + ", expected " + expected[i]);
+
+        commands.clear();
+        check(commands.count() == 0 && commands.byteSize() == 0, "cleared");
+
+        commands.add(3, 1, 2, 1, 0);
+        check(commands.array()[0] == 3 && commands.array()[2] == 2, "refilled from the start");
+    }
+
+    private static void growsPastInitialCapacity() {
+        Draw_Command_Buffer commands = new Draw_Command_Buffer(1);
+
+        for (int i = 0; i < 100; i++)
+            commands.add(i, i + 1, i + 2, -i, i + 4);
+
+        check(commands.count() == 100, "100 commands, got " + commands.count());
+
+        int[] array = commands.array();
+        for (int i = 0; i < 100; i++) {
+            int at = i * Draw_Command_Buffer.COMMAND_INTS;
+
+            check(array[at] == i && array[at + 1] == i + 1 && array[at + 2] == i + 2 &&
+                  array[at + 3] == -i && array[at + 4] == i + 4, "command " + i + " kept when growing");
+        }
+    }
+
+    private static void writesAtOffsetInNativeOrder() {
+        Draw_Command_Buffer commands = new Draw_Command_Buffer();
+        commands.add(0x01020304, 2, 3, -4, 5);
+        commands.add(6, 7, 8, 9, 10);
+
+        ByteOrder other = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+
+        // The target's own order must not matter, and its position must not move
+        ByteBuffer target = ByteBuffer.allocate(8 + commands.byteSize() + 4).order(other);
+        target.position(3);
+
+        commands.writeTo(target, 8);
+
+        check(target.position() == 3 && target.order() == other, "target state left alone");
+        check(target.getLong(0) == 0 && target.getInt(8 + commands.byteSize()) == 0, "nothing written outside");
+
+        ByteBuffer read = target.duplicate().order(ByteOrder.nativeOrder());
+        for (int i = 0; i < 2 * Draw_Command_Buffer.COMMAND_INTS; i++) {
+            int value = read.getInt(8 + i * Integer.BYTES);
+
+            check(value == commands.array()[i], "int " + i + " written as " + value + ", expected " + commands.array()[i]);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
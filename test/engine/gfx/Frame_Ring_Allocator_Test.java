@@ -0,0 +1,178 @@
+package engine.gfx;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link Frame_Ring_Allocator} against a fake GPU that finishes a frame's commands a fixed number of frames after
+ * they were issued. Checks when it stalls, the offsets and alignment of allocations, full regions and that every
+ * fence is deleted exactly once. Failures throw.
+ */
+public class Frame_Ring_Allocator_Test {
+    public static void main(String[] args) {
+        // The GPU catching up within the ring never stalls, a slower one stalls every reuse
+        for (int regions = 1; regions <= 4; regions++) {
+            for (int latency = 0; latency <= 6; latency++)
+                stalls(regions, latency, 100);
+        }
+
+        offsetsAndAlignment();
+        fullRegion();
+        drain();
+
+        System.out.println("Frame_Ring_Allocator_Test: ok");
+    }
+
+    private static void stalls(int regions, int latency, int frames) {
+        Fake_Gpu gpu = new Fake_Gpu(latency);
+        Frame_Ring_Allocator ring = new Frame_Ring_Allocator(gpu, regions, 1024);
+
+        for (int frame = 0; frame < frames; frame++) {
+            gpu.frame = frame;
+            ring.beginFrame();
+
+            check(ring.allocate(100, 4) == (long) (frame % regions) * 1024, "allocation in the frame's own region");
+            ring.endFrame();
+        }
+
+        // A region is reused regions frames later, its fence is done by then if latency <= regions
+        long expected = latency <= regions ? 0 : frames - regions;
+        check(ring.stalls() == expected, regions + " regions, latency " + latency + ": " + ring.stalls() +
+                " stalls, expected " + expected);
+        check(gpu.waits == ring.stalls(), "waited exactly on the stalls");
+
+        ring.drain();
+        check(gpu.live.isEmpty(), "every fence deleted, " + gpu.live.size() + " left");
+        check(gpu.deleted == frames, "one fence per frame, deleted " + gpu.deleted);
+    }
+
+    private static void offsetsAndAlignment() {
+        Fake_Gpu gpu = new Fake_Gpu(1);
+        Frame_Ring_Allocator ring = new Frame_Ring_Allocator(gpu, 3, 256);
+
+        for (int frame = 0; frame < 6; frame++) {
+            gpu.frame = frame;
+            ring.beginFrame();
+
+            long start = (long) (frame % 3) * 256;
+            check(ring.regionStart() == start, "region start " + ring.regionStart() + ", expected " + start);
+
+            check(ring.allocate(3, 1) == start, "first allocation at the region start");
+            check(ring.allocate(8, 16) == start + 16, "aligned up to 16");
+            check(ring.allocate(1, 1) == start + 24, "packed right after");
+            check(ring.allocate(4, 64) == start + 64, "aligned up to 64");
+            check(ring.bytesThisFrame() == 68, "68 bytes used, got " + ring.bytesThisFrame());
+
+            ring.endFrame();
+            check(ring.bytesLastFrame() == 68 && ring.frame() == frame, "frame totals");
+        }
+
+        check(ring.peakFrameBytes() == 68 && ring.failedAllocations() == 0, "no failures");
+        ring.drain();
+    }
+
+    private static void fullRegion() {
+        Fake_Gpu gpu = new Fake_Gpu(1);
+        Frame_Ring_Allocator ring = new Frame_Ring_Allocator(gpu, 2, 100);
+
+        ring.beginFrame();
+        check(ring.allocate(90, 1) == 0, "fits");
+        check(ring.allocate(11, 1) == -1, "past the region end");
+        check(ring.allocate(8, 16) == -1, "fits unaligned, not aligned");
+        check(ring.allocate(10, 1) == 90, "exactly to the end still fits");
+        check(ring.failedAllocations() == 2, "two failures, got " + ring.failedAllocations());
+        ring.endFrame();
+
+        // The next frame's region is empty again, and never bigger than one region
+        gpu.frame = 1;
+        ring.beginFrame();
+        check(ring.allocate(100, 1) == 100, "whole second region");
+        check(ring.allocate(101, 1) == -1, "larger than a region");
+        ring.endFrame();
+
+        check(ring.peakFrameBytes() == 100 && ring.failedAllocations() == 3, "peak and failures");
+        ring.drain();
+    }
+
+    private static void drain() {
+        Fake_Gpu gpu = new Fake_Gpu(1000);
+        Frame_Ring_Allocator ring = new Frame_Ring_Allocator(gpu, 3, 64);
+
+        for (int frame = 0; frame < 2; frame++) {
+            gpu.frame = frame;
+            ring.beginFrame();
+            ring.endFrame();
+        }
+
+        ring.drain();
+        check(gpu.waits == 2 && gpu.live.isEmpty(), "drain waits on and deletes the two fences");
+
+        // Nothing left to wait for, even though the GPU would still be busy
+        for (int frame = 2; frame < 5; frame++) {
+            gpu.frame = frame;
+            ring.beginFrame();
+            ring.endFrame();
+        }
+
+        check(ring.stalls() == 0, "regions free after a drain, got " + ring.stalls() + " stalls");
+
+        ring.drain();
+        ring.drain();
+        check(gpu.live.isEmpty() && gpu.deleted == 5, "second drain does nothing");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    // Commands of frame f are done once the CPU is at frame f + latency, or when waited on
+    private static final class Fake_Gpu implements Fence_Backend {
+        final int latency;
+        int frame;
+
+        // Fence -> frame it's done at
+        final Map<Long, Integer> live = new HashMap<>();
+        private long nextFence = 1;
+
+        int waits;
+        int deleted;
+
+        Fake_Gpu(int latency) {
+            this.latency = latency;
+        }
+
+        @Override
+        public long insert() {
+            long fence = nextFence++;
+            live.put(fence, frame + latency);
+            return fence;
+        }
+
+        @Override
+        public boolean isSignaled(long fence) {
+            return frame >= live(fence);
+        }
+
+        @Override
+        public void waitFor(long fence) {
+            live(fence);
+            waits++;
+        }
+
+        @Override
+        public void delete(long fence) {
+            live(fence);
+            live.remove(fence);
+            deleted++;
+        }
+
+        private int live(long fence) {
+            Integer done = live.get(fence);
+            if (done == null)
+                throw new AssertionError("fence " + fence + " used after delete or never inserted");
+
+            return done;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package engine.gfx;
+
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * std140 offsets of {@link Std140_Writer}, measured and written into a real buffer, including the block
+ * {@link Frame_Uniforms} writes. Failures throw.
+ */
+public class Std140_Writer_Test {
+    // Bytes not written keep this
+    private static final byte FILL = 0x5A;
+
+    public static void main(String[] args) {
+        frameBlock();
+        scalarsAfterVectors();
+        mat3ColumnPadding();
+
+        System.out.println("Std140_Writer_Test: ok");
+    }
+
+    // The same puts as Frame_Uniforms, checked against the offsets GLSL gives the block
+    private static void frameBlock() {
+        Matrix4f view = new Matrix4f().lookAt(1, 2, 3, 0, 0, 0, 0, 1, 0);
+        Matrix4f projection = new Matrix4f().perspective(1.2f, 1.5f, 0.1f, 100.0f);
+        Matrix4f viewProjection = projection.mul(view, new Matrix4f());
+        Vector3f camera = new Vector3f(1, 2, 3);
+
+        Std140_Writer writer = new Std140_Writer();
+
+        // Measuring only, then writing at a base offset like a ring buffer region
+        for (ByteBuffer target : new ByteBuffer[] { null, filled(64 + 224) }) {
+            int base = target == null ? 0 : 64;
+            writer.reset(target, base);
+
+            check(writer.putMat4(view) == 0, "view at 0");
+            check(writer.putMat4(projection) == 64, "projection at 64");
+            check(writer.putMat4(viewProjection) == 128, "view_projection at 128");
+            check(writer.putVec3(camera) == 192, "camera_position at 192");
+            check(writer.putFloat(0.5f) == 204, "time at 204, in the vec3's last 4 bytes");
+            check(writer.putFloat(0.016f) == 208, "delta_time at 208");
+            check(writer.size() == 224, "block size 224, got " + writer.size());
+
+            if (target == null)
+                continue;
+
+            checkMat4(target, base, view, "view");
+            checkMat4(target, base + 64, projection, "projection");
+            checkMat4(target, base + 128, viewProjection, "view_projection");
+
+            check(target.getFloat(base + 192) == 1 && target.getFloat(base + 196) == 2 && target.getFloat(base + 200) == 3, "camera_position");
+            check(target.getFloat(base + 204) == 0.5f && target.getFloat(base + 208) == 0.016f, "time and delta_time");
+
+            // The base is respected, nothing before it is touched
+            for (int i = 0; i < base; i++)
+                check(target.get(i) == FILL, "byte " + i + " before the base written");
+        }
+    }
+
+    private static void scalarsAfterVectors() {
+        Std140_Writer writer = new Std140_Writer();
+
+        writer.reset(null, 0);
+        writer.putVec3(1, 2, 3);
+        check(writer.putInt(4) == 12, "int after a vec3 fills its last 4 bytes");
+        check(writer.putFloat(5) == 16, "next scalar starts a new vec4");
+        check(writer.size() == 32, "size rounded up to 16");
+
+        writer.reset(null, 0);
+        writer.putVec3(1, 2, 3);
+        check(writer.putVec2(4, 5) == 16, "vec2 after a vec3 aligns to 8, past the 12 bytes");
+
+        writer.reset(null, 0);
+        writer.putVec3(1, 2, 3);
+        check(writer.putVec3(4, 5, 6) == 16, "vec3 after a vec3 aligns to 16");
+
+        writer.reset(null, 0);
+        writer.putFloat(1);
+        check(writer.putVec2(2, 3) == 8, "vec2 after a float aligns to 8");
+        check(writer.putVec4(4, 5, 6, 7) == 16, "vec4 aligns to 16");
+        check(writer.putMat4(new Matrix4f()) == 32 && writer.size() == 96, "mat4 after it");
+
+        writer.reset(null, 0);
+        writer.putFloat(1);
+        check(writer.size() == 16, "a single float is a 16 byte block");
+
+        ByteBuffer target = filled(32);
+        writer.reset(target, 0);
+        writer.putVec3(1, 2, 3);
+        writer.putInt(-7);
+        writer.putVec2(8, 9);
+
+        check(target.getFloat(0) == 1 && target.getFloat(4) == 2 && target.getFloat(8) == 3, "vec3 written");
+        check(target.getInt(12) == -7, "int written into the vec3's padding");
+        check(target.getFloat(16) == 8 && target.getFloat(20) == 9, "vec2 written");
+        check(target.get(24) == FILL, "nothing written past the vec2");
+    }
+
+    private static void mat3ColumnPadding() {
+        Matrix3f m = new Matrix3f(
+                1, 2, 3,
+                4, 5, 6,
+                7, 8, 9);
+
+        Std140_Writer writer = new Std140_Writer();
+        ByteBuffer target = filled(16 + 48 + 16);
+        writer.reset(target, 0);
+
+        writer.putFloat(-1);
+        check(writer.putMat3(m) == 16, "mat3 aligns to 16");
+        check(writer.putFloat(10) == 64, "mat3 takes 3 padded columns, 48 bytes");
+
+        for (int column = 0; column < 3; column++) {
+            int at = 16 + column * 16;
+
+            for (int row = 0; row < 3; row++)
+                check(target.getFloat(at + row * 4) == m.get(column, row), "mat3 column " + column + " row " + row);
+
+            check(target.getFloat(at + 12) == 0.0f, "column " + column + " padding zeroed");
+        }
+
+        // Bytes between the float and the mat3 are skipped, not written
+        for (int i = 4; i < 16; i++)
+            check(target.get(i) == FILL, "alignment gap byte " + i + " written");
+    }
+
+    // Mapped buffers are direct and in native order
+    private static ByteBuffer filled(int size) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < size; i++)
+            buffer.put(i, FILL);
+
+        return buffer;
+    }
+
+    private static void checkMat4(ByteBuffer target, int at, Matrix4f expected, String what) {
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                float value = target.getFloat(at + (column * 4 + row) * 4);
+                check(value == expected.get(column, row), what + " column " + column + " row " + row);
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
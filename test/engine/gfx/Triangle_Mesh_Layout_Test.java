@@ -0,0 +1,93 @@
+package engine.gfx;
+
+/**
+ * Offsets, strides and alignment of the {@link Triangle_Mesh_Layout} factories, no GL context involved.
+ * Failures throw.
+ */
+public class Triangle_Mesh_Layout_Test {
+    public static void main(String[] args) {
+        separate();
+        interleaved();
+        positionSplit();
+        strideTooSmall();
+
+        System.out.println("Triangle_Mesh_Layout_Test: ok");
+    }
+
+    private static void separate() {
+        Triangle_Mesh_Layout layout = Triangle_Mesh_Layout.separate(Vertex_Type.Float3, Vertex_Type.Float2, Vertex_Type.Float3);
+
+        checkLayout(layout, new int[] { 0, 1, 2 }, new int[] { 0, 0, 0 }, new int[] { 12, 8, 12 }, "separate floats");
+        check(layout.vertexSize() == 32, "vertex size 32, got " + layout.vertexSize());
+
+        // A lone attribute is tightly packed, even when it's smaller than the alignment
+        layout = Triangle_Mesh_Layout.separate(Vertex_Type.Short4_Norm, Vertex_Type.Byte2_Norm);
+        checkLayout(layout, new int[] { 0, 1 }, new int[] { 0, 0 }, new int[] { 8, 2 }, "separate packed");
+        check(layout.vertexSize() == 10, "vertex size 10, got " + layout.vertexSize());
+    }
+
+    private static void interleaved() {
+        Triangle_Mesh_Layout layout = Triangle_Mesh_Layout.interleaved(Vertex_Type.Float3, Vertex_Type.Float2, Vertex_Type.Float3);
+        checkLayout(layout, new int[] { 0, 0, 0 }, new int[] { 0, 12, 20 }, new int[] { 32 }, "interleaved floats");
+
+        // Byte2_Norm ends at 10, the next attribute starts at the 4 byte boundary after it
+        layout = Triangle_Mesh_Layout.interleaved(Vertex_Type.Short4_Norm, Vertex_Type.Byte2_Norm, Vertex_Type.Int_2_10_10_10_Rev);
+        checkLayout(layout, new int[] { 0, 0, 0 }, new int[] { 0, 8, 12 }, new int[] { 16 }, "interleaved packed");
+
+        // The stride of an interleaved buffer is rounded up too, so the next vertex stays aligned
+        layout = Triangle_Mesh_Layout.interleaved(Vertex_Type.Byte2_Norm, Vertex_Type.Byte2_Norm);
+        checkLayout(layout, new int[] { 0, 0 }, new int[] { 0, 4 }, new int[] { 8 }, "interleaved bytes");
+
+        layout = Triangle_Mesh_Layout.interleaved(Vertex_Type.Int2);
+        checkLayout(layout, new int[] { 0 }, new int[] { 0 }, new int[] { 8 }, "chunk vertices");
+    }
+
+    private static void positionSplit() {
+        Triangle_Mesh_Layout layout = Triangle_Mesh_Layout.positionSplit(Vertex_Type.Short4_Norm, Vertex_Type.Byte2_Norm, Vertex_Type.Half2);
+        checkLayout(layout, new int[] { 0, 1, 1 }, new int[] { 0, 0, 4 }, new int[] { 8, 8 }, "split packed");
+
+        layout = Triangle_Mesh_Layout.positionSplit(Vertex_Type.Float3, Vertex_Type.Float2, Vertex_Type.Float3);
+        checkLayout(layout, new int[] { 0, 1, 1 }, new int[] { 0, 0, 8 }, new int[] { 12, 20 }, "split floats");
+
+        // The rest is a single attribute, tightly packed like a separate buffer
+        layout = Triangle_Mesh_Layout.positionSplit(Vertex_Type.Float3, Vertex_Type.Byte2_Norm);
+        checkLayout(layout, new int[] { 0, 1 }, new int[] { 0, 0 }, new int[] { 12, 2 }, "split single");
+    }
+
+    private static void strideTooSmall() {
+        Attribute_Layout[] attrs = {
+                new Attribute_Layout(0, Vertex_Type.Byte2_Norm),
+                new Attribute_Layout(0, Vertex_Type.Float)
+        };
+
+        // 2 + 4 would fit in 6, the alignment before the float doesn't
+        try {
+            new Triangle_Mesh_Layout(new Buffer_Layout[] { new Buffer_Layout(6) }, attrs);
+            throw new AssertionError("stride 6 accepted for attributes ending at 8 after alignment");
+        } catch (IllegalArgumentException expected) {
+            // Reported with the stride the attributes need
+        }
+
+        Triangle_Mesh_Layout layout = new Triangle_Mesh_Layout(new Buffer_Layout[] { new Buffer_Layout(24) }, attrs);
+        check(layout.offsets[1] == 4 && layout.buffers[0].stride() == 24, "a larger stride is kept");
+    }
+
+    private static void checkLayout(Triangle_Mesh_Layout layout, int[] bufferIndices, int[] offsets, int[] strides, String what) {
+        check(layout.attrs.length == bufferIndices.length, what + ": attribute count");
+        check(layout.buffers.length == strides.length, what + ": " + layout.buffers.length + " buffers, expected " + strides.length);
+
+        for (int i = 0; i < bufferIndices.length; i++) {
+            check(layout.attrs[i].bufferIndex() == bufferIndices[i], what + ": attribute " + i + " in buffer " + layout.attrs[i].bufferIndex());
+            check(layout.offsets[i] == offsets[i], what + ": attribute " + i + " at " + layout.offsets[i] + ", expected " + offsets[i]);
+            check(layout.offsets[i] % Triangle_Mesh_Layout.ATTRIBUTE_ALIGNMENT == 0, what + ": attribute " + i + " unaligned");
+        }
+
+        for (int b = 0; b < strides.length; b++)
+            check(layout.buffers[b].stride() == strides[b], what + ": buffer " + b + " stride " + layout.buffers[b].stride() + ", expected " + strides[b]);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
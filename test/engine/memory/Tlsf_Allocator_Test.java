@@ -0,0 +1,175 @@
+package engine.memory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Random allocate/free/grow/defragment sequences against a plain map of the live allocations. After every step
+ * the live ranges must be inside the capacity and not overlap, and the counters must add up. Failures throw.
+ */
+public class Tlsf_Allocator_Test {
+    public static void main(String[] args) {
+        reusesWholeRangeAfterFreeingEverything();
+        defragmentPacksInOffsetOrder();
+        growKeepsAllocations();
+
+        for (long seed = 1; seed <= 20; seed++)
+            randomSequence(seed);
+
+        System.out.println("Tlsf_Allocator_Test: ok");
+    }
+
+    private static void reusesWholeRangeAfterFreeingEverything() {
+        Tlsf_Allocator allocator = new Tlsf_Allocator(1000);
+
+        int[] handles = new int[10];
+        for (int i = 0; i < handles.length; i++)
+            handles[i] = allocator.allocate(100);
+
+        check(allocator.available() == 0 && allocator.allocate(1) == -1, "range full");
+
+        // Freed out of order, every neighbour has to merge
+        for (int i : new int[] { 3, 7, 0, 9, 5, 1, 8, 2, 6, 4 })
+            allocator.free(handles[i]);
+
+        check(allocator.allocations() == 0 && allocator.used() == 0, "all freed");
+        check(allocator.largestFreeBlock() == 1000 && allocator.fragmentation() == 0.0f, "merged into one block");
+
+        int whole = allocator.allocate(1000);
+        check(whole != -1 && allocator.offset(whole) == 0, "whole range allocatable again");
+    }
+
+    private static void defragmentPacksInOffsetOrder() {
+        Tlsf_Allocator allocator = new Tlsf_Allocator(100);
+
+        int a = allocator.allocate(10);
+        int b = allocator.allocate(20);
+        int c = allocator.allocate(30);
+        int d = allocator.allocate(15);
+
+        allocator.free(a);
+        allocator.free(c);
+
+        check(allocator.largestFreeBlock() == 30, "holes of 10, 30 and 25, got " + allocator.largestFreeBlock());
+        check(allocator.allocate(40) == -1, "no hole of 40 before defragmenting");
+
+        ArrayList<long[]> moves = new ArrayList<>();
+        allocator.defragment((handle, from, to, size) -> moves.add(new long[] { handle, from, to, size }));
+
+        check(moves.size() == 2, "one move per allocation, got " + moves.size());
+        checkMove(moves.get(0), b, 10, 0, 20);
+        checkMove(moves.get(1), d, 60, 20, 15);
+
+        check(allocator.offset(b) == 0 && allocator.offset(d) == 20, "handles point at the new offsets");
+        check(allocator.largestFreeBlock() == 65 && allocator.fragmentation() == 0.0f, "one free block at the end");
+        check(allocator.allocate(65) != -1, "the free block is usable");
+    }
+
+    private static void growKeepsAllocations() {
+        Tlsf_Allocator allocator = new Tlsf_Allocator(64);
+
+        int a = allocator.allocate(64);
+        allocator.grow(200);
+
+        check(allocator.offset(a) == 0 && allocator.size(a) == 64, "allocation kept");
+        check(allocator.largestFreeBlock() == 136, "new space free, got " + allocator.largestFreeBlock());
+
+        int b = allocator.allocate(100);
+        check(allocator.offset(b) == 64, "allocated in the new space");
+
+        // A free last block is extended instead of adding another one
+        allocator.grow(300);
+        check(allocator.largestFreeBlock() == 136, "merged with the free tail, got " + allocator.largestFreeBlock());
+    }
+
+    private static void randomSequence(long seed) {
+        Random random = new Random(seed);
+        Tlsf_Allocator allocator = new Tlsf_Allocator(1 + random.nextInt(4096));
+
+        Map<Integer, long[]> live = new HashMap<>();
+        ArrayList<Integer> handles = new ArrayList<>();
+
+        for (int step = 0; step < 5000; step++) {
+            int action = random.nextInt(100);
+
+            if (action < 55) {
+                // Mostly small, some large enough to fail
+                long size = random.nextInt(8) == 0 ? 1 + random.nextInt(2048) : 1 + random.nextInt(64);
+                long largest = allocator.largestFreeBlock();
+                int handle = allocator.allocate(size);
+
+                check((handle != -1) == (size <= largest),
+                        "seed " + seed + ": allocate(" + size + ") with largest free block " + largest + " gave " + handle);
+
+                if (handle != -1) {
+                    check(!live.containsKey(handle), "seed " + seed + ": handle " + handle + " handed out twice");
+                    check(allocator.size(handle) == size, "seed " + seed + ": allocation not split to its size");
+
+                    live.put(handle, new long[] { allocator.offset(handle), size });
+                    handles.add(handle);
+                }
+            } else if (action < 95) {
+                if (handles.isEmpty())
+                    continue;
+
+                int handle = handles.remove(random.nextInt(handles.size()));
+                allocator.free(handle);
+                live.remove(handle);
+            } else if (action < 98) {
+                long[] last = { -1 };
+
+                allocator.defragment((handle, from, to, size) -> {
+                    long[] expected = live.get(handle);
+
+                    check(expected != null && expected[0] == from && expected[1] == size,
+                            "seed " + seed + ": moved " + handle + " from a place it wasn't");
+                    check(to <= from && to > last[0], "seed " + seed + ": moves go down in increasing order");
+
+                    expected[0] = to;
+                    last[0] = to;
+                });
+
+                check(allocator.fragmentation() == 0.0f, "seed " + seed + ": free space in one block after defragmenting");
+            } else {
+                allocator.grow(allocator.capacity() + random.nextInt(1024));
+            }
+
+            checkState(allocator, live, seed);
+        }
+    }
+
+    private static void checkState(Tlsf_Allocator allocator, Map<Integer, long[]> live, long seed) {
+        long used = 0;
+        ArrayList<long[]> ranges = new ArrayList<>();
+
+        for (Map.Entry<Integer, long[]> entry : live.entrySet()) {
+            long offset = allocator.offset(entry.getKey());
+
+            check(offset == entry.getValue()[0], "seed " + seed + ": allocation moved outside of defragment");
+            check(offset >= 0 && offset + entry.getValue()[1] <= allocator.capacity(), "seed " + seed + ": out of range");
+
+            used += entry.getValue()[1];
+            ranges.add(entry.getValue());
+        }
+
+        ranges.sort((x, y) -> Long.compare(x[0], y[0]));
+        for (int i = 1; i < ranges.size(); i++)
+            check(ranges.get(i - 1)[0] + ranges.get(i - 1)[1] <= ranges.get(i)[0], "seed " + seed + ": allocations overlap");
+
+        check(allocator.used() == used && allocator.allocations() == live.size(), "seed " + seed + ": counters off");
+        check(allocator.largestFreeBlock() <= allocator.available(), "seed " + seed + ": largest free block too large");
+    }
+
+    private static void checkMove(long[] move, int handle, long from, long to, long size) {
+        check(move[0] == handle && move[1] == from && move[2] == to && move[3] == size,
+                "expected move " + handle + " " + from + " -> " + to + " (" + size + "), got " +
+                move[0] + " " + move[1] + " -> " + move[2] + " (" + move[3] + ")");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
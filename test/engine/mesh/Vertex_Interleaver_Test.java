@@ -0,0 +1,123 @@
+package engine.mesh;
+
+import engine.gfx.Triangle_Mesh_Layout;
+import engine.gfx.Vertex_Type;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * {@link Vertex_Interleaver#relayout} between separate, interleaved and position split layouts: every attribute
+ * lands at its offset, padding is zero and going back gives the original bytes. Failures throw.
+ */
+public class Vertex_Interleaver_Test {
+    // 2, 4 and 8 byte attributes, so both the int and the short copies run
+    private static final Vertex_Type[] TYPES = {
+            Vertex_Type.Short4_Norm,
+            Vertex_Type.Byte2_Norm,
+            Vertex_Type.Half2,
+            Vertex_Type.Int_2_10_10_10_Rev
+    };
+
+    public static void main(String[] args) {
+        Random random = new Random(11);
+
+        for (int vertexCount : new int[] { 1, 3, 100 })
+            roundTrips(random, vertexCount);
+
+        rejectsDifferentAttributes();
+
+        System.out.println("Vertex_Interleaver_Test: ok");
+    }
+
+    private static void roundTrips(Random random, int vertexCount) {
+        Triangle_Mesh_Layout separate = Triangle_Mesh_Layout.separate(TYPES);
+        Triangle_Mesh_Layout interleaved = Triangle_Mesh_Layout.interleaved(TYPES);
+        Triangle_Mesh_Layout split = Triangle_Mesh_Layout.positionSplit(TYPES);
+
+        ByteBuffer[] original = new ByteBuffer[TYPES.length];
+        for (int i = 0; i < TYPES.length; i++) {
+            byte[] bytes = new byte[TYPES[i].size * vertexCount];
+            random.nextBytes(bytes);
+
+            // Streams are read from their position, the first one starts past some header bytes
+            int skip = i == 0 ? 6 : 0;
+            ByteBuffer stream = ByteBuffer.allocateDirect(skip + bytes.length).order(ByteOrder.nativeOrder());
+            stream.position(skip);
+            stream.put(bytes).position(skip);
+
+            original[i] = stream;
+        }
+
+        ByteBuffer[] packed = Vertex_Interleaver.relayout(original, separate, interleaved, vertexCount);
+
+        check(packed.length == 1 && packed[0].remaining() == 20 * vertexCount, "one interleaved buffer of 20 byte vertices");
+        checkPlacement(original, packed, interleaved, vertexCount, "interleaved");
+
+        ByteBuffer[] back = Vertex_Interleaver.relayout(packed, interleaved, separate, vertexCount);
+        checkSameStreams(back, original, "separate -> interleaved -> separate");
+
+        ByteBuffer[] splitStreams = Vertex_Interleaver.relayout(packed, interleaved, split, vertexCount);
+        check(splitStreams.length == 2, "position and the rest");
+        checkPlacement(original, splitStreams, split, vertexCount, "position split");
+
+        back = Vertex_Interleaver.relayout(splitStreams, split, separate, vertexCount);
+        checkSameStreams(back, original, "interleaved -> split -> separate");
+    }
+
+    // Every attribute at its offset in every vertex, every other byte zero
+    private static void checkPlacement(ByteBuffer[] original, ByteBuffer[] streams, Triangle_Mesh_Layout layout, int vertexCount, String what) {
+        boolean[][] written = new boolean[streams.length][];
+        for (int b = 0; b < streams.length; b++) {
+            check(streams[b].order() == ByteOrder.nativeOrder() && streams[b].isDirect(), what + ": direct native buffers");
+            written[b] = new boolean[streams[b].remaining()];
+        }
+
+        for (int i = 0; i < TYPES.length; i++) {
+            int buffer = layout.attrs[i].bufferIndex();
+            int stride = layout.buffers[buffer].stride();
+
+            for (int v = 0; v < vertexCount; v++) {
+                for (int k = 0; k < TYPES[i].size; k++) {
+                    int at = v * stride + layout.offsets[i] + k;
+                    byte expected = original[i].get(original[i].position() + v * TYPES[i].size + k);
+
+                    check(streams[buffer].get(at) == expected, what + ": attribute " + i + " of vertex " + v + " byte " + k);
+                    written[buffer][at] = true;
+                }
+            }
+        }
+
+        for (int b = 0; b < streams.length; b++) {
+            for (int at = 0; at < written[b].length; at++)
+                check(written[b][at] || streams[b].get(at) == 0, what + ": padding byte " + at + " of buffer " + b + " not zero");
+        }
+    }
+
+    private static void checkSameStreams(ByteBuffer[] actual, ByteBuffer[] expected, String what) {
+        check(actual.length == expected.length, what + ": stream count");
+
+        for (int i = 0; i < expected.length; i++)
+            check(actual[i].equals(expected[i]), what + ": stream " + i + " differs");
+    }
+
+    private static void rejectsDifferentAttributes() {
+        Triangle_Mesh_Layout source = Triangle_Mesh_Layout.separate(Vertex_Type.Float3, Vertex_Type.Float2);
+        Triangle_Mesh_Layout target = Triangle_Mesh_Layout.interleaved(Vertex_Type.Float3, Vertex_Type.Half2);
+
+        ByteBuffer[] streams = { ByteBuffer.allocateDirect(12), ByteBuffer.allocateDirect(8) };
+
+        try {
+            Vertex_Interleaver.relayout(streams, source, target, 1);
+            throw new AssertionError("Float2 relayouted as Half2");
+        } catch (IllegalArgumentException expected) {
+            // Relayout moves bytes, it doesn't convert
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
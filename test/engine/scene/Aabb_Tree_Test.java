@@ -0,0 +1,328 @@
+package engine.scene;
+
+import org.joml.Matrix4f;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Box, sphere, frustum and ray queries of an {@link Aabb_Tree} against a brute force loop over the same fat boxes,
+ * through random inserts, moves and removals. Every query has to visit exactly the items the loop finds, each one
+ * once. Failures throw.
+ */
+public class Aabb_Tree_Test {
+    private static final float MARGIN = 0.25f;
+    private static final float WORLD = 100.0f;
+
+    private final Random random;
+    private final Aabb_Tree tree = new Aabb_Tree(MARGIN);
+
+    // The fat boxes the tree should hold, by item
+    private final Map<Long, float[]> fatBoxes = new HashMap<>();
+    private final Map<Long, Integer> proxies = new HashMap<>();
+    private final List<Long> live = new ArrayList<>();
+
+    private Aabb_Tree_Test(long seed) {
+        random = new Random(seed);
+    }
+
+    public static void main(String[] args) {
+        for (long seed = 1; seed <= 8; seed++)
+            new Aabb_Tree_Test(seed).run();
+
+        emptyTree();
+        stops();
+
+        System.out.println("Aabb_Tree_Test: ok");
+    }
+
+    private void run() {
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 100; i++)
+                insert();
+
+            for (int i = 0; i < 150; i++)
+                move();
+
+            for (int i = 0; i < 40 && !live.isEmpty(); i++)
+                remove();
+
+            check(tree.size() == live.size(), "size " + tree.size() + ", expected " + live.size());
+
+            // A balanced tree over n leaves, with some slack for the incremental rotations
+            int limit = 2 * (32 - Integer.numberOfLeadingZeros(Math.max(live.size(), 1))) + 2;
+            check(tree.height() <= limit, "height " + tree.height() + " for " + live.size() + " leaves");
+
+            for (int q = 0; q < 10; q++) {
+                queryAabb();
+                querySphere();
+                queryFrustum();
+                raycast();
+            }
+        }
+    }
+
+    private void insert() {
+        long item = random.nextLong();
+        float[] box = randomBox();
+
+        int proxy = tree.insert(item, box[0], box[1], box[2], box[3], box[4], box[5]);
+
+        check(tree.item(proxy) == item, "proxy keeps its item");
+        fatBoxes.put(item, fat(box));
+        proxies.put(item, proxy);
+        live.add(item);
+    }
+
+    private void move() {
+        long item = live.get(random.nextInt(live.size()));
+        float[] fatBox = fatBoxes.get(item);
+
+        // Mostly nudges that stay in the fat box, sometimes jumps across the world
+        float[] box;
+        if (random.nextInt(4) == 0) {
+            box = randomBox();
+        } else {
+            float step = MARGIN * 1.5f;
+            float dx = (random.nextFloat() - 0.5f) * step, dy = (random.nextFloat() - 0.5f) * step, dz = (random.nextFloat() - 0.5f) * step;
+
+            box = new float[] {
+                    fatBox[0] + MARGIN + dx, fatBox[1] + MARGIN + dy, fatBox[2] + MARGIN + dz,
+                    fatBox[3] - MARGIN + dx, fatBox[4] - MARGIN + dy, fatBox[5] - MARGIN + dz
+            };
+        }
+
+        boolean contained = fatBox[0] <= box[0] && fatBox[1] <= box[1] && fatBox[2] <= box[2]
+                && fatBox[3] >= box[3] && fatBox[4] >= box[4] && fatBox[5] >= box[5];
+
+        boolean reinserted = tree.move(proxies.get(item), box[0], box[1], box[2], box[3], box[4], box[5]);
+        check(reinserted == !contained, "reinserted exactly when the box left its fat box");
+
+        if (reinserted)
+            fatBoxes.put(item, fat(box));
+    }
+
+    private void remove() {
+        long item = live.remove(random.nextInt(live.size()));
+
+        tree.remove(proxies.remove(item));
+        fatBoxes.remove(item);
+    }
+
+    private void queryAabb() {
+        float[] q = randomBox(WORLD * 0.3f);
+        Map<Long, Integer> visits = new HashMap<>();
+
+        tree.queryAabb(q[0], q[1], q[2], q[3], q[4], q[5], counting(visits));
+
+        Map<Long, Integer> expected = new HashMap<>();
+        for (Map.Entry<Long, float[]> entry : fatBoxes.entrySet()) {
+            float[] f = entry.getValue();
+
+            if (f[0] <= q[3] && f[1] <= q[4] && f[2] <= q[5] && f[3] >= q[0] && f[4] >= q[1] && f[5] >= q[2])
+                expected.put(entry.getKey(), 1);
+        }
+
+        checkVisits(visits, expected, "box");
+    }
+
+    private void querySphere() {
+        float x = coordinate(), y = coordinate(), z = coordinate();
+        float radius = random.nextFloat() * WORLD * 0.2f;
+        float radiusSquared = radius * radius;
+
+        Map<Long, Integer> visits = new HashMap<>();
+        tree.querySphere(x, y, z, radius, counting(visits));
+
+        Map<Long, Integer> expected = new HashMap<>();
+        for (Map.Entry<Long, float[]> entry : fatBoxes.entrySet()) {
+            float[] f = entry.getValue();
+
+            float dx = Math.max(Math.max(f[0] - x, x - f[3]), 0.0f);
+            float dy = Math.max(Math.max(f[1] - y, y - f[4]), 0.0f);
+            float dz = Math.max(Math.max(f[2] - z, z - f[5]), 0.0f);
+
+            if (dx * dx + dy * dy + dz * dz <= radiusSquared)
+                expected.put(entry.getKey(), 1);
+        }
+
+        checkVisits(visits, expected, "sphere");
+    }
+
+    private void queryFrustum() {
+        // From somewhere in the world towards somewhere else, with a far plane inside it
+        Matrix4f viewProjection = new Matrix4f()
+                .perspective(0.5f + random.nextFloat(), 0.5f + random.nextFloat() * 1.5f, 0.1f, 10.0f + random.nextFloat() * WORLD)
+                .lookAt(coordinate(), coordinate(), coordinate(), coordinate(), coordinate(), coordinate(), 0, 1, 0);
+
+        Frustum frustum = new Frustum().set(viewProjection);
+
+        Map<Long, Integer> visits = new HashMap<>();
+        tree.queryFrustum(frustum, counting(visits));
+
+        Map<Long, Integer> expected = new HashMap<>();
+        for (Map.Entry<Long, float[]> entry : fatBoxes.entrySet()) {
+            float[] f = entry.getValue();
+
+            if (frustum.testAabb(f[0], f[1], f[2], f[3], f[4], f[5]))
+                expected.put(entry.getKey(), 1);
+        }
+
+        checkVisits(visits, expected, "frustum");
+    }
+
+    private void raycast() {
+        float ox = coordinate(), oy = coordinate(), oz = coordinate();
+        float dx = random.nextFloat() - 0.5f, dy = random.nextFloat() - 0.5f, dz = random.nextFloat() - 0.5f;
+
+        // Axis parallel rays, infinite inverses on the other two axes
+        if (random.nextInt(4) == 0) {
+            dx = 1.0f;
+            dy = 0.0f;
+            dz = 0.0f;
+        }
+
+        float maxDistance = random.nextFloat() * WORLD * 4.0f;
+
+        Map<Long, Float> entries = new HashMap<>();
+        for (Map.Entry<Long, float[]> entry : fatBoxes.entrySet()) {
+            float t = entry(entry.getValue(), ox, oy, oz, dx, dy, dz, maxDistance);
+
+            if (!Float.isNaN(t))
+                entries.put(entry.getKey(), t);
+        }
+
+        // Every hit within the unchanged range
+        Map<Long, Integer> visits = new HashMap<>();
+        tree.raycast(ox, oy, oz, dx, dy, dz, maxDistance, (item, distance) -> {
+            check(distance == maxDistance, "range unchanged");
+            visits.merge(item, 1, Integer::sum);
+            return distance;
+        });
+
+        Map<Long, Integer> expected = new HashMap<>();
+        for (Long item : entries.keySet())
+            expected.put(item, 1);
+
+        checkVisits(visits, expected, "ray");
+
+        // Clipping the range to every hit finds the closest one
+        float closest = maxDistance;
+        for (float t : entries.values())
+            closest = Math.min(closest, Math.max(t, 0.0f));
+
+        float[] found = { maxDistance };
+        tree.raycast(ox, oy, oz, dx, dy, dz, maxDistance, (item, distance) -> {
+            float t = Math.max(entries.get(item), 0.0f);
+            check(t <= distance, "hit past the clipped range visited");
+
+            // Hits at the origin stop the query, 0 is the stop value
+            found[0] = Math.min(found[0], t);
+            return found[0];
+        });
+
+        check(entries.isEmpty() || found[0] == closest, "closest hit " + found[0] + ", expected " + closest);
+    }
+
+    // Same slab test as the tree, NaN if the ray misses the box within maxDistance
+    private static float entry(float[] f, float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+        float inverseX = 1.0f / dx, inverseY = 1.0f / dy, inverseZ = 1.0f / dz;
+
+        float t0 = (f[0] - ox) * inverseX, t1 = (f[3] - ox) * inverseX;
+        float near = Math.min(t0, t1), far = Math.max(t0, t1);
+
+        t0 = (f[1] - oy) * inverseY;
+        t1 = (f[4] - oy) * inverseY;
+        near = Math.max(near, Math.min(t0, t1));
+        far = Math.min(far, Math.max(t0, t1));
+
+        t0 = (f[2] - oz) * inverseZ;
+        t1 = (f[5] - oz) * inverseZ;
+        near = Math.max(near, Math.min(t0, t1));
+        far = Math.min(far, Math.max(t0, t1));
+
+        return near > far || far < 0.0f || near > maxDistance ? Float.NaN : near;
+    }
+
+    private static void emptyTree() {
+        Aabb_Tree tree = new Aabb_Tree(MARGIN);
+        Aabb_Tree.Visitor none = item -> { throw new AssertionError("visited an empty tree"); };
+
+        tree.queryAabb(-1, -1, -1, 1, 1, 1, none);
+        tree.querySphere(0, 0, 0, 10, none);
+        tree.raycast(0, 0, 0, 1, 1, 1, 100, (item, distance) -> { throw new AssertionError("hit in an empty tree"); });
+
+        int proxy = tree.insert(7, 0, 0, 0, 1, 1, 1);
+        tree.remove(proxy);
+        tree.queryAabb(-1, -1, -1, 2, 2, 2, none);
+
+        check(tree.size() == 0 && tree.height() == 0, "empty again");
+    }
+
+    private static void stops() {
+        Aabb_Tree tree = new Aabb_Tree(MARGIN);
+        for (int i = 0; i < 50; i++)
+            tree.insert(i, i, 0, 0, i + 0.5f, 0.5f, 0.5f);
+
+        int[] visits = { 0 };
+        tree.queryAabb(-1, -1, -1, 100, 1, 1, item -> ++visits[0] < 3);
+        check(visits[0] == 3, "box query stops when the visitor says so, " + visits[0] + " visits");
+
+        visits[0] = 0;
+        tree.querySphere(25, 0, 0, 100, item -> ++visits[0] < 3);
+        check(visits[0] == 3, "sphere query stops, " + visits[0] + " visits");
+
+        visits[0] = 0;
+        tree.raycast(-10, 0.25f, 0.25f, 1, 0, 0, 1000, (item, distance) -> ++visits[0] < 3 ? distance : 0.0f);
+        check(visits[0] == 3, "ray stops at 0, " + visits[0] + " visits");
+    }
+
+    private static Aabb_Tree.Visitor counting(Map<Long, Integer> visits) {
+        return item -> {
+            visits.merge(item, 1, Integer::sum);
+            return true;
+        };
+    }
+
+    private static void checkVisits(Map<Long, Integer> visits, Map<Long, Integer> expected, String query) {
+        for (Map.Entry<Long, Integer> visit : visits.entrySet())
+            check(visit.getValue() == 1, query + " query visited item " + visit.getKey() + " " + visit.getValue() + " times");
+
+        for (Long item : expected.keySet())
+            check(visits.containsKey(item), query + " query missed item " + item);
+
+        check(visits.size() == expected.size(), query + " query visited " + visits.size() + " items, expected " + expected.size());
+    }
+
+    private float[] randomBox() {
+        return randomBox(WORLD * 0.05f);
+    }
+
+    private float[] randomBox(float maxSize) {
+        float x = coordinate(), y = coordinate(), z = coordinate();
+        return new float[] {
+                x, y, z,
+                x + random.nextFloat() * maxSize, y + random.nextFloat() * maxSize, z + random.nextFloat() * maxSize
+        };
+    }
+
+    // The tree's own arithmetic, so the brute force compares against the exact same floats
+    private static float[] fat(float[] box) {
+        return new float[] {
+                box[0] - MARGIN, box[1] - MARGIN, box[2] - MARGIN,
+                box[3] + MARGIN, box[4] + MARGIN, box[5] + MARGIN
+        };
+    }
+
+    private float coordinate() {
+        return random.nextFloat() * WORLD;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
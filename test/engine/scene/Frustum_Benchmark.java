@@ -0,0 +1,105 @@
+package engine.scene;
+
+import org.joml.Matrix4f;
+
+import java.util.Random;
+
+/**
+ * Culls 1M random bounding spheres with the scalar and the vector culler and prints ns per sphere for both, after
+ * checking they find the same visible set. The vector one needs {@code --add-modules jdk.incubator.vector}, without
+ * it only the scalar numbers are printed. Arguments: sphere count, warmup rounds, measured rounds
+ * (1000000 30 50 by default).
+ */
+public class Frustum_Benchmark {
+    private static final int REPEATS = 3;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        float[] x = new float[count], y = new float[count], z = new float[count], radius = new float[count];
+
+        // Spread over a 200 block cube around the camera, about a tenth ends up visible
+        Random random = new Random(1);
+        for (int i = 0; i < count; i++) {
+            x[i] = random.nextFloat() * 200 - 100;
+            y[i] = random.nextFloat() * 200 - 100;
+            z[i] = random.nextFloat() * 200 - 100;
+            radius[i] = random.nextFloat() * 2;
+        }
+
+        Matrix4f viewProjection = new Matrix4f()
+                .perspective((float) Math.toRadians(70), 16.0f / 9.0f, 0.01f, 100.0f)
+                .lookAt(0, 0, 0, 1, 0.2f, 0.5f, 0, 1, 0);
+        Frustum frustum = new Frustum().set(viewProjection);
+
+        Sphere_Culler scalar = new Scalar_Sphere_Culler();
+        Sphere_Culler vector = vectorCuller();
+
+        int[] scalarVisible = new int[count];
+        int[] vectorVisible = new int[count];
+
+        int visible = 0;
+        for (int w = 0; w < warmup; w++) {
+            visible = scalar.cull(frustum, x, y, z, radius, count, scalarVisible);
+
+            if (vector != null && vector.cull(frustum, x, y, z, radius, count, vectorVisible) != visible)
+                throw new AssertionError("scalar and vector cullers disagree on the visible count");
+        }
+
+        if (vector != null) {
+            for (int i = 0; i < visible; i++) {
+                if (scalarVisible[i] != vectorVisible[i])
+                    throw new AssertionError("sphere " + i + " of the visible set differs between the cullers");
+            }
+        }
+
+        System.out.printf("%d spheres, %d visible (%.1f%%), vector culler: %s%n",
+                count, visible, visible * 100.0 / count, vector == null ? "unavailable" : "yes");
+
+        for (int repeat = 0; repeat < REPEATS; repeat++) {
+            double scalarNanos = nanosPerSphere(scalar, frustum, x, y, z, radius, count, scalarVisible, rounds);
+
+            if (vector == null) {
+                System.out.printf("scalar %.2f ns/sphere%n", scalarNanos);
+            } else {
+                double vectorNanos = nanosPerSphere(vector, frustum, x, y, z, radius, count, vectorVisible, rounds);
+                System.out.printf("scalar %.2f ns/sphere, vector %.2f ns/sphere (%.1fx)%n",
+                        scalarNanos, vectorNanos, scalarNanos / vectorNanos);
+            }
+        }
+    }
+
+    private static double nanosPerSphere(
+            Sphere_Culler culler, Frustum frustum,
+            float[] x, float[] y, float[] z, float[] radius, int count,
+            int[] visible, int rounds) {
+        // Summed so the loop can't be dropped
+        long sink = 0;
+        long start = System.nanoTime();
+
+        for (int r = 0; r < rounds; r++)
+            sink += culler.cull(frustum, x, y, z, radius, count, visible);
+
+        long elapsed = System.nanoTime() - start;
+
+        if (sink < 0)
+            System.out.println(sink);
+
+        return (double) elapsed / rounds / count;
+    }
+
+    // By name, the same way Frustum picks it, so this also runs without the incubator module
+    private static Sphere_Culler vectorCuller() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+            return null;
+
+        try {
+            return (Sphere_Culler) Class.forName("engine.scene.Vector_Sphere_Culler").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.err.println("vector culler unavailable: " + e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package engine.scene;
+
+import org.joml.Matrix4f;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * World matrices of a {@link Transform_Hierarchy} against parent world * local products done with JOML, through
+ * random edits, reparenting and removals, on the calling thread and split over a pool. Also checks an update
+ * only recomputes the dirty subtrees. Failures throw.
+ */
+public class Transform_Hierarchy_Test {
+    private static final float EPSILON = 1e-4f;
+
+    public static void main(String[] args) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ForkJoinPool serial = new ForkJoinPool(1);
+
+        try {
+            onlyDirtySubtreesUpdate();
+            rejectsCycles();
+
+            for (long seed = 1; seed <= 10; seed++)
+                randomEdits(seed, seed % 2 == 0 ? pool : serial);
+
+            wideLevelOnThePool(pool);
+        } finally {
+            pool.shutdown();
+            serial.shutdown();
+        }
+
+        System.out.println("Transform_Hierarchy_Test: ok");
+    }
+
+    private static void onlyDirtySubtreesUpdate() {
+        Transform_Hierarchy hierarchy = new Transform_Hierarchy();
+
+        try {
+            // root -> a -> (b, c), root -> d
+            int root = hierarchy.add(Transform_Hierarchy.NONE);
+            int a = hierarchy.add(root);
+            int b = hierarchy.add(a);
+            int c = hierarchy.add(a);
+            int d = hierarchy.add(root);
+
+            hierarchy.update();
+            check(hierarchy.updated() == 5 && hierarchy.levels() == 3, "first update computes everything");
+
+            hierarchy.update();
+            check(hierarchy.updated() == 0, "nothing marked, nothing computed");
+
+            hierarchy.setLocalTranslation(a, 1, 2, 3);
+            hierarchy.update();
+            check(hierarchy.updated() == 3, "a and its children, got " + hierarchy.updated());
+
+            // A mark on a child of a marked node is not computed twice
+            hierarchy.setLocalTranslation(root, 5, 0, 0);
+            hierarchy.setLocalTranslation(c, 0, 1, 0);
+            hierarchy.update();
+            check(hierarchy.updated() == 5, "whole tree once, got " + hierarchy.updated());
+
+            // Same rows again isn't a change
+            float[] rows = { 1, 0, 0, 0, 0, 1, 0, 1, 0, 0, 1, 0 };
+            hierarchy.setLocal(c, rows, 0);
+            hierarchy.update();
+            check(hierarchy.updated() == 0, "unchanged local skipped, got " + hierarchy.updated());
+
+            hierarchy.setLocalTranslation(d, 0, 0, 7);
+            hierarchy.update();
+            check(hierarchy.updated() == 1, "leaf alone, got " + hierarchy.updated());
+
+            Matrix4f world = hierarchy.getWorld(c, new Matrix4f());
+            checkClose(world, new Matrix4f().translation(6, 3, 3), "c after moving root, a and c");
+
+            // Parents come before their children in the packed order
+            for (int id : new int[] { a, b, c, d })
+                check(hierarchy.position(hierarchy.parent(id)) < hierarchy.position(id), "parent first");
+        } finally {
+            hierarchy.delete();
+        }
+    }
+
+    private static void rejectsCycles() {
+        Transform_Hierarchy hierarchy = new Transform_Hierarchy();
+
+        try {
+            int root = hierarchy.add(Transform_Hierarchy.NONE);
+            int child = hierarchy.add(root);
+            int grandchild = hierarchy.add(child);
+
+            for (int[] edge : new int[][] { { root, grandchild }, { child, child } }) {
+                try {
+                    hierarchy.setParent(edge[0], edge[1]);
+                    throw new AssertionError("parenting " + edge[0] + " to " + edge[1] + " makes a cycle");
+                } catch (IllegalArgumentException expected) {
+                    // The hierarchy is left as it was
+                }
+            }
+
+            hierarchy.update();
+            check(hierarchy.parent(root) == Transform_Hierarchy.NONE && hierarchy.levels() == 3, "unchanged");
+        } finally {
+            hierarchy.delete();
+        }
+    }
+
+    private static void randomEdits(long seed, ForkJoinPool pool) {
+        Random random = new Random(seed);
+        Transform_Hierarchy hierarchy = new Transform_Hierarchy(pool);
+
+        Map<Integer, Matrix4f> locals = new HashMap<>();
+        ArrayList<Integer> alive = new ArrayList<>();
+
+        try {
+            for (int step = 0; step < 400; step++) {
+                int action = random.nextInt(10);
+
+                if (action < 4 || alive.isEmpty()) {
+                    int parent = alive.isEmpty() || random.nextInt(8) == 0 ? Transform_Hierarchy.NONE : pick(random, alive);
+                    int id = hierarchy.add(parent);
+
+                    check(!alive.contains(id), "seed " + seed + ": id " + id + " handed out twice");
+
+                    locals.put(id, new Matrix4f());
+                    alive.add(id);
+                } else if (action < 7) {
+                    int id = pick(random, alive);
+                    Matrix4f local = randomTransform(random);
+
+                    hierarchy.setLocal(id, local);
+                    locals.put(id, local);
+                } else if (action < 9) {
+                    int id = pick(random, alive);
+                    int parent = random.nextInt(4) == 0 ? Transform_Hierarchy.NONE : pick(random, alive);
+
+                    if (parent != Transform_Hierarchy.NONE && (parent == id || isAncestor(hierarchy, id, parent)))
+                        continue;
+
+                    hierarchy.setParent(id, parent);
+                } else {
+                    int id = pick(random, alive);
+
+                    ArrayList<Integer> subtree = new ArrayList<>();
+                    for (int other : alive) {
+                        if (other == id || isAncestor(hierarchy, id, other))
+                            subtree.add(other);
+                    }
+
+                    hierarchy.remove(id);
+                    alive.removeAll(subtree);
+
+                    for (int removed : subtree)
+                        check(!hierarchy.isAlive(removed), "seed " + seed + ": " + removed + " still alive after removing " + id);
+                }
+
+                // Some edits pile up before an update
+                if (random.nextInt(3) == 0) {
+                    hierarchy.update();
+                    checkWorlds(hierarchy, locals, alive, "seed " + seed + ", step " + step);
+                }
+            }
+
+            hierarchy.update();
+            checkWorlds(hierarchy, locals, alive, "seed " + seed + ", end");
+        } finally {
+            hierarchy.delete();
+        }
+    }
+
+    // One level with more dirty nodes than CHUNK_NODES, so it's split into tasks
+    private static void wideLevelOnThePool(ForkJoinPool pool) {
+        Random random = new Random(99);
+        Transform_Hierarchy hierarchy = new Transform_Hierarchy(pool);
+
+        Map<Integer, Matrix4f> locals = new HashMap<>();
+        ArrayList<Integer> alive = new ArrayList<>();
+
+        try {
+            int root = hierarchy.add(Transform_Hierarchy.NONE);
+            Matrix4f rootLocal = randomTransform(random);
+            hierarchy.setLocal(root, rootLocal);
+            locals.put(root, rootLocal);
+            alive.add(root);
+
+            int count = Transform_Hierarchy.CHUNK_NODES * 3 + 17;
+            for (int i = 0; i < count; i++) {
+                int parent = i < 64 ? root : alive.get(1 + random.nextInt(64));
+                int id = hierarchy.add(parent);
+                Matrix4f local = randomTransform(random);
+
+                hierarchy.setLocal(id, local);
+                locals.put(id, local);
+                alive.add(id);
+            }
+
+            hierarchy.update();
+            check(hierarchy.updated() == count + 1, "everything computed");
+            checkWorlds(hierarchy, locals, alive, "wide level");
+
+            // Moving the root alone dirties every node through the levels
+            rootLocal = randomTransform(random);
+            hierarchy.setLocal(root, rootLocal);
+            locals.put(root, rootLocal);
+
+            hierarchy.update();
+            check(hierarchy.updated() == count + 1, "root change reaches everything");
+            checkWorlds(hierarchy, locals, alive, "wide level, root moved");
+        } finally {
+            hierarchy.delete();
+        }
+    }
+
+    private static void checkWorlds(Transform_Hierarchy hierarchy, Map<Integer, Matrix4f> locals, ArrayList<Integer> alive, String what) {
+        check(hierarchy.size() == alive.size(), what + ": " + hierarchy.size() + " nodes, expected " + alive.size());
+
+        Matrix4f actual = new Matrix4f();
+
+        for (int id : alive) {
+            hierarchy.getWorld(id, actual);
+            checkClose(actual, expectedWorld(hierarchy, locals, id), what + ", node " + id);
+
+            int parent = hierarchy.parent(id);
+            if (parent != Transform_Hierarchy.NONE)
+                check(hierarchy.position(parent) < hierarchy.position(id), what + ": parent after child");
+        }
+    }
+
+    private static Matrix4f expectedWorld(Transform_Hierarchy hierarchy, Map<Integer, Matrix4f> locals, int id) {
+        int parent = hierarchy.parent(id);
+
+        if (parent == Transform_Hierarchy.NONE)
+            return new Matrix4f(locals.get(id));
+
+        return expectedWorld(hierarchy, locals, parent).mul(locals.get(id));
+    }
+
+    private static boolean isAncestor(Transform_Hierarchy hierarchy, int ancestor, int id) {
+        for (int parent = hierarchy.parent(id); parent != Transform_Hierarchy.NONE; parent = hierarchy.parent(parent)) {
+            if (parent == ancestor)
+                return true;
+        }
+
+        return false;
+    }
+
+    // Affine, like every entity transform, scaled near 1 so deep chains stay in range
+    private static Matrix4f randomTransform(Random random) {
+        return new Matrix4f()
+                .translation(random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2)
+                .rotateXYZ(random.nextFloat() * 6.28f, random.nextFloat() * 6.28f, random.nextFloat() * 6.28f)
+                .scale(0.8f + random.nextFloat() * 0.4f, 0.8f + random.nextFloat() * 0.4f, 0.8f + random.nextFloat() * 0.4f);
+    }
+
+    private static int pick(Random random, ArrayList<Integer> ids) {
+        return ids.get(random.nextInt(ids.size()));
+    }
+
+    private static void checkClose(Matrix4f actual, Matrix4f expected, String what) {
+        float[] a = actual.get(new float[16]);
+        float[] e = expected.get(new float[16]);
+
+        for (int i = 0; i < 16; i++) {
+            if (Math.abs(a[i] - e[i]) > EPSILON * Math.max(1.0f, Math.abs(e[i])))
+                throw new AssertionError(what + ": world matrix\n" + actual + "expected\n" + expected);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
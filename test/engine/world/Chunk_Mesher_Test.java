@@ -0,0 +1,235 @@
+package engine.world;
+
+import java.util.Random;
+
+/**
+ * Vertex, triangle and quad counts of {@link Chunk_Mesher} on shapes where the greedy result is known, and on
+ * random chunks a brute force check that the quads cover every visible block face exactly once, with the block's
+ * id and counter clockwise from outside. Failures throw.
+ */
+public class Chunk_Mesher_Test {
+    private static final int SIDE = Chunk.WORLD_SIDE_SIZE;
+
+    // By face, same order as Chunk_Mesher.POSITIVE_X ...
+    private static final int[][] DIRECTIONS = {
+            { 1, 0, 0 }, { -1, 0, 0 },
+            { 0, 1, 0 }, { 0, -1, 0 },
+            { 0, 0, 1 }, { 0, 0, -1 }
+    };
+
+    public static void main(String[] args) {
+        Chunk_Mesher mesher = new Chunk_Mesher();
+
+        knownCounts(mesher);
+
+        for (long seed = 1; seed <= 8; seed++)
+            randomCoverage(mesher, seed);
+
+        System.out.println("Chunk_Mesher_Test: ok");
+    }
+
+    private static void knownCounts(Chunk_Mesher mesher) {
+        Chunk[] air = new Chunk[6];
+
+        Chunk chunk = new Chunk(0, 0, 0);
+        check(mesher.mesh(chunk, air) == Chunk_Mesh_Data.EMPTY, "empty chunk");
+
+        chunk.set(5, 6, 7, Blocks.STONE);
+        checkCounts(mesher.mesh(chunk, air), 6, "single block");
+
+        // Same block next to each other merges into one quad per side
+        chunk.set(6, 6, 7, Blocks.STONE);
+        checkCounts(mesher.mesh(chunk, air), 6, "two stone blocks");
+
+        // Different ids don't merge, the shared face is hidden either way
+        chunk.set(6, 6, 7, Blocks.DIRT);
+        checkCounts(mesher.mesh(chunk, air), 10, "stone and dirt");
+
+        // Apart nothing is hidden
+        chunk.set(6, 6, 7, Blocks.AIR);
+        chunk.set(9, 6, 7, Blocks.STONE);
+        checkCounts(mesher.mesh(chunk, air), 12, "two blocks apart");
+
+        chunk.fill(Blocks.STONE);
+        checkCounts(mesher.mesh(chunk, air), 6, "full chunk");
+
+        chunk.fill(0, 0, 0, SIDE / 2, SIDE, SIDE, Blocks.DIRT);
+        checkCounts(mesher.mesh(chunk, air), 10, "half dirt, half stone");
+
+        // Opaque neighbours on every side hide all of it
+        Chunk full = new Chunk(0, 0, 0);
+        full.fill(Blocks.STONE);
+
+        Chunk[] surrounded = { full, full, full, full, full, full };
+        checkCounts(mesher.mesh(chunk, surrounded), 0, "surrounded chunk");
+
+        // A floor: only the top, and the sides past the missing neighbours
+        Chunk floor = new Chunk(0, 0, 0);
+        floor.fill(0, 0, 0, SIDE, 1, SIDE, Blocks.GRASS);
+
+        Chunk[] sides = { full, full, null, full, full, full };
+        checkCounts(mesher.mesh(floor, sides), 1, "floor between neighbours");
+        checkCounts(mesher.mesh(floor, air), 6, "floor on its own");
+    }
+
+    private static void checkCounts(Chunk_Mesh_Data mesh, int quads, String what) {
+        check(mesh.quadCount() == quads, what + ": " + mesh.quadCount() + " quads, expected " + quads);
+        check(mesh.vertexCount() == quads * 4, what + ": " + mesh.vertexCount() + " vertices, expected " + quads * 4);
+        check(mesh.triangleCount() == quads * 2, what + ": " + mesh.triangleCount() + " triangles, expected " + quads * 2);
+        check(mesh.isEmpty() == (quads == 0), what + ": isEmpty");
+    }
+
+    private static void randomCoverage(Chunk_Mesher mesher, long seed) {
+        Random random = new Random(seed);
+
+        Chunk chunk = randomChunk(random, 0.2f + random.nextFloat() * 0.6f);
+        Chunk[] neighbours = new Chunk[6];
+
+        for (int face = 0; face < 6; face++) {
+            if (random.nextBoolean())
+                neighbours[face] = randomChunk(random, random.nextFloat());
+        }
+
+        Chunk_Mesh_Data mesh = mesher.mesh(chunk, neighbours);
+        check(mesh.vertexCount() == mesh.quadCount() * 4, "seed " + seed + ": 4 vertices per quad");
+
+        // Block id + 1 that covers each face of each block, 0 for none
+        int[][] covered = new int[6][Chunk.VOLUME];
+
+        for (int quad = 0; quad < mesh.quadCount(); quad++)
+            cover(mesh, quad, covered, seed);
+
+        int visible = 0;
+
+        for (int y = 0; y < SIDE; y++) {
+            for (int z = 0; z < SIDE; z++) {
+                for (int x = 0; x < SIDE; x++) {
+                    int block = chunk.get(x, y, z);
+
+                    for (int face = 0; face < 6; face++) {
+                        int[] d = DIRECTIONS[face];
+                        boolean shown = Blocks.isOpaque(block) && !Blocks.isOpaque(blockAt(chunk, neighbours, x + d[0], y + d[1], z + d[2]));
+                        int expected = shown ? block + 1 : 0;
+                        int actual = covered[face][(y * SIDE + z) * SIDE + x];
+
+                        if (actual != expected)
+                            throw new AssertionError("seed " + seed + ": face " + face + " of " + x + ", " + y + ", " + z +
+                                                     " covered by " + (actual - 1) + ", expected " + (expected - 1));
+
+                        if (shown)
+                            visible++;
+                    }
+                }
+            }
+        }
+
+        // Greedy meshing has to do better than a quad per face on anything this dense
+        check(mesh.quadCount() < visible, "seed " + seed + ": " + mesh.quadCount() + " quads for " + visible + " faces");
+    }
+
+    private static void cover(Chunk_Mesh_Data mesh, int quad, int[][] covered, long seed) {
+        int[] indices = mesh.indices;
+        int first = indices[quad * 6];
+
+        int[] min = { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE };
+        int[] max = { Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+
+        int face = Chunk_Mesh_Data.face(mesh.vertices[first * Chunk_Mesh_Data.VERTEX_INTS]);
+        int block = mesh.vertices[first * Chunk_Mesh_Data.VERTEX_INTS + 1];
+
+        for (int i = quad * 6; i < quad * 6 + 6; i++) {
+            check(indices[i] >= 0 && indices[i] < mesh.vertexCount(), "seed " + seed + ": index out of range");
+
+            int packed = mesh.vertices[indices[i] * Chunk_Mesh_Data.VERTEX_INTS];
+            check(Chunk_Mesh_Data.face(packed) == face && mesh.vertices[indices[i] * Chunk_Mesh_Data.VERTEX_INTS + 1] == block,
+                    "seed " + seed + ": quad " + quad + " mixes faces or blocks");
+
+            int[] position = { Chunk_Mesh_Data.x(packed), Chunk_Mesh_Data.y(packed), Chunk_Mesh_Data.z(packed) };
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = Math.min(min[axis], position[axis]);
+                max[axis] = Math.max(max[axis], position[axis]);
+            }
+        }
+
+        for (int triangle = quad * 2; triangle < quad * 2 + 2; triangle++)
+            check(facesOut(mesh, triangle, DIRECTIONS[face]), "seed " + seed + ": triangle " + triangle + " wound inwards");
+
+        int axis = face / 2;
+        check(min[axis] == max[axis], "seed " + seed + ": quad " + quad + " not flat along its face");
+
+        // The plane is on the far side of the block for positive faces
+        int layer = face % 2 == 0 ? min[axis] - 1 : min[axis];
+        min[axis] = layer;
+        max[axis] = layer + 1;
+
+        for (int y = min[1]; y < max[1]; y++) {
+            for (int z = min[2]; z < max[2]; z++) {
+                for (int x = min[0]; x < max[0]; x++) {
+                    int at = (y * SIDE + z) * SIDE + x;
+
+                    check(covered[face][at] == 0, "seed " + seed + ": face " + face + " of " + x + ", " + y + ", " + z + " covered twice");
+                    covered[face][at] = block + 1;
+                }
+            }
+        }
+    }
+
+    private static boolean facesOut(Chunk_Mesh_Data mesh, int triangle, int[] direction) {
+        int[][] corners = new int[3][];
+
+        for (int i = 0; i < 3; i++) {
+            int packed = mesh.vertices[mesh.indices[triangle * 3 + i] * Chunk_Mesh_Data.VERTEX_INTS];
+            corners[i] = new int[] { Chunk_Mesh_Data.x(packed), Chunk_Mesh_Data.y(packed), Chunk_Mesh_Data.z(packed) };
+        }
+
+        int[] a = new int[3], b = new int[3];
+        for (int i = 0; i < 3; i++) {
+            a[i] = corners[1][i] - corners[0][i];
+            b[i] = corners[2][i] - corners[0][i];
+        }
+
+        long nx = (long) a[1] * b[2] - (long) a[2] * b[1];
+        long ny = (long) a[2] * b[0] - (long) a[0] * b[2];
+        long nz = (long) a[0] * b[1] - (long) a[1] * b[0];
+
+        return nx * direction[0] + ny * direction[1] + nz * direction[2] > 0;
+    }
+
+    private static int blockAt(Chunk chunk, Chunk[] neighbours, int x, int y, int z) {
+        if (Chunk.contains(x, y, z))
+            return chunk.get(x, y, z);
+
+        for (int face = 0; face < 6; face++) {
+            int[] d = DIRECTIONS[face];
+            int nx = x - d[0] * SIDE, ny = y - d[1] * SIDE, nz = z - d[2] * SIDE;
+
+            if (Chunk.contains(nx, ny, nz))
+                return neighbours[face] == null ? Blocks.AIR : neighbours[face].get(nx, ny, nz);
+        }
+
+        throw new AssertionError("not next to the chunk: " + x + ", " + y + ", " + z);
+    }
+
+    // Clumped, so there's something to merge
+    private static Chunk randomChunk(Random random, float density) {
+        Chunk chunk = new Chunk(0, 0, 0);
+
+        for (int box = 0; box < 60; box++) {
+            int x = random.nextInt(SIDE), y = random.nextInt(SIDE), z = random.nextInt(SIDE);
+            int size = 1 + random.nextInt(16);
+
+            int block = random.nextFloat() < density ? Blocks.STONE + random.nextInt(3) : Blocks.AIR;
+            chunk.fill(x, y, z, Math.min(x + size, SIDE), Math.min(y + size, SIDE), Math.min(z + size, SIDE), block);
+        }
+
+        for (int single = 0; single < 300; single++)
+            chunk.set(random.nextInt(SIDE), random.nextInt(SIDE), random.nextInt(SIDE), random.nextInt(4));
+
+        return chunk;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
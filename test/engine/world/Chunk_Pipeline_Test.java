@@ -0,0 +1,212 @@
+package engine.world;
+
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Drives a {@link Chunk_Pipeline} with an executor that only runs jobs when told to and a sink that records
+ * what it gets, so every step is deterministic. Failures throw.
+ */
+public class Chunk_Pipeline_Test {
+    private static final Vector3f ORIGIN = new Vector3f();
+
+    public static void main(String[] args) {
+        uploadsOnceGeneratedAndMeshed();
+        editSupersedesWaitingMesh();
+        editDropsFinishedStaleMesh();
+        unloadCancelsJobs();
+        budgetUploadsNearestFirst();
+
+        System.out.println("Chunk_Pipeline_Test: ok");
+    }
+
+    private static void uploadsOnceGeneratedAndMeshed() {
+        Manual_Executor workers = new Manual_Executor();
+        Recording_Sink sink = new Recording_Sink();
+        Chunk_Pipeline pipeline = new Chunk_Pipeline(Chunk_Pipeline_Test::flat, sink, workers, 1);
+
+        pipeline.load(0, 0, 0);
+        pipeline.update(ORIGIN);
+        check(workers.queued() == 1, "generate job handed out");
+
+        workers.runAll();
+        pipeline.update(ORIGIN);
+        check(pipeline.getChunk(0, 0, 0) != null, "chunk generated");
+        check(sink.uploads.isEmpty(), "nothing uploaded before meshing");
+
+        workers.runAll();
+        pipeline.update(ORIGIN);
+        check(sink.uploads.size() == 1, "one upload, got " + sink.uploads.size());
+        checkMesh(sink.uploads.get(0), expected(-1, -1, -1));
+    }
+
+    // The mesh job is still waiting on the workers when the chunk is edited
+    private static void editSupersedesWaitingMesh() {
+        Manual_Executor workers = new Manual_Executor();
+        Recording_Sink sink = new Recording_Sink();
+        Chunk_Pipeline pipeline = generated(workers, sink);
+
+        pipeline.setBlock(10, 40, 10, Blocks.STONE);
+        pipeline.update(ORIGIN);
+        check(pipeline.cancelled() == 1, "old mesh job cancelled");
+
+        workers.runAll();
+        pipeline.update(ORIGIN);
+
+        check(sink.uploads.size() == 1, "only the new version uploaded, got " + sink.uploads.size());
+        check(pipeline.discarded() == 1, "cancelled result discarded, got " + pipeline.discarded());
+        checkMesh(sink.uploads.get(0), expected(10, 40, 10));
+    }
+
+    // The old mesh already finished, it's drained in the same update the edit supersedes it
+    private static void editDropsFinishedStaleMesh() {
+        Manual_Executor workers = new Manual_Executor();
+        Recording_Sink sink = new Recording_Sink();
+        Chunk_Pipeline pipeline = generated(workers, sink);
+
+        workers.runAll();
+        pipeline.setBlock(10, 40, 10, Blocks.STONE);
+        pipeline.update(ORIGIN);
+        check(sink.uploads.isEmpty(), "stale mesh not uploaded");
+
+        workers.runAll();
+        pipeline.update(ORIGIN);
+
+        check(sink.uploads.size() == 1, "one upload, got " + sink.uploads.size());
+        checkMesh(sink.uploads.get(0), expected(10, 40, 10));
+    }
+
+    private static void unloadCancelsJobs() {
+        Manual_Executor workers = new Manual_Executor();
+        Recording_Sink sink = new Recording_Sink();
+        Chunk_Pipeline pipeline = new Chunk_Pipeline(Chunk_Pipeline_Test::flat, sink, workers, 1);
+
+        pipeline.load(0, 0, 0);
+        pipeline.update(ORIGIN);
+        pipeline.unload(0, 0, 0);
+
+        workers.runAll();
+        pipeline.update(ORIGIN);
+
+        check(pipeline.cancelled() == 1 && pipeline.discarded() == 1, "generate job cancelled and discarded");
+        check(pipeline.jobsInFlight() == 0, "cancelled job still drained");
+        check(sink.uploads.isEmpty() && sink.removes == 0, "never uploaded, nothing to remove");
+
+        // Uploaded chunks are removed from the sink
+        pipeline = generated(workers, sink);
+        workers.runAll();
+        pipeline.update(ORIGIN);
+        pipeline.unload(0, 0, 0);
+        check(sink.removes == 1, "uploaded chunk removed");
+    }
+
+    private static void budgetUploadsNearestFirst() {
+        Manual_Executor workers = new Manual_Executor();
+        Recording_Sink sink = new Recording_Sink();
+        Chunk_Pipeline pipeline = new Chunk_Pipeline(Chunk_Pipeline_Test::flat, sink, workers, 4);
+
+        // Apart, so no chunk waits for or is meshed again because of another
+        for (int x = 6; x >= 0; x -= 2)
+            pipeline.load(x, 0, 0);
+
+        pipeline.update(ORIGIN);
+        workers.runAll();
+        pipeline.update(ORIGIN);
+        workers.runAll();
+
+        // Less than any mesh, still one per update
+        pipeline.setUploadBudget(1, Long.MAX_VALUE);
+
+        for (int frame = 0; frame < 4; frame++) {
+            pipeline.update(ORIGIN);
+
+            check(pipeline.uploads() == 1, "one upload per update, got " + pipeline.uploads());
+            check(pipeline.readyUploads() == 3 - frame, "left for later: " + pipeline.readyUploads());
+            check(sink.uploads.get(frame).x == frame * 2, "nearest first, got x " + sink.uploads.get(frame).x);
+        }
+
+        check(pipeline.stalledFrames() == 3, "stalled frames: " + pipeline.stalledFrames());
+
+        pipeline.update(ORIGIN);
+        check(pipeline.uploads() == 0 && pipeline.stalledFrames() == 3, "nothing left");
+    }
+
+    // Loaded at (0, 0, 0), generated, with its mesh job handed to the workers but not run
+    private static Chunk_Pipeline generated(Manual_Executor workers, Recording_Sink sink) {
+        Chunk_Pipeline pipeline = new Chunk_Pipeline(Chunk_Pipeline_Test::flat, sink, workers, 1);
+
+        pipeline.load(0, 0, 0);
+        pipeline.update(ORIGIN);
+        workers.runAll();
+        pipeline.update(ORIGIN);
+
+        check(workers.queued() == 1, "mesh job handed out");
+        return pipeline;
+    }
+
+    private static void flat(Chunk chunk) {
+        chunk.fill(0, 0, 0, Chunk.WORLD_SIDE_SIZE, 32, Chunk.WORLD_SIDE_SIZE, Blocks.STONE);
+    }
+
+    // Flat chunk plus one stone block, x < 0 for none
+    private static Chunk_Mesh_Data expected(int x, int y, int z) {
+        Chunk chunk = new Chunk(0, 0, 0);
+        flat(chunk);
+
+        if (x >= 0)
+            chunk.set(x, y, z, Blocks.STONE);
+
+        return new Chunk_Mesher().mesh(chunk, new Chunk[6]);
+    }
+
+    private static void checkMesh(Upload upload, Chunk_Mesh_Data expected) {
+        check(Arrays.equals(upload.mesh.vertices, expected.vertices) && Arrays.equals(upload.mesh.indices, expected.indices),
+                "uploaded mesh differs from meshing the chunk directly");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    private record Upload(int x, int y, int z, Chunk_Mesh_Data mesh) {}
+
+    private static final class Recording_Sink implements Chunk_Upload_Sink {
+        final ArrayList<Upload> uploads = new ArrayList<>();
+        int removes;
+
+        @Override
+        public void upload(int x, int y, int z, Chunk_Mesh_Data mesh) {
+            uploads.add(new Upload(x, y, z, mesh));
+        }
+
+        @Override
+        public void remove(int x, int y, int z) {
+            removes++;
+        }
+    }
+
+    private static final class Manual_Executor implements Executor {
+        private final ArrayList<Runnable> jobs = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable job) {
+            jobs.add(job);
+        }
+
+        int queued() {
+            return jobs.size();
+        }
+
+        void runAll() {
+            ArrayList<Runnable> running = new ArrayList<>(jobs);
+            jobs.clear();
+
+            for (Runnable job : running)
+                job.run();
+        }
+    }
+}
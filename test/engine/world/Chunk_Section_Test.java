@@ -0,0 +1,258 @@
+package engine.world;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Round-trips blocks through {@link Chunk_Section} against a plain int[] of the same blocks: every write, bulk
+ * or single, must read back the same way at every index width, and compact must not change a single block.
+ * Failures throw.
+ */
+public class Chunk_Section_Test {
+    private static final int VOLUME = Chunk_Section.VOLUME;
+
+    public static void main(String[] args) {
+        widensWithThePalette();
+        compactNarrowsBackToUniform();
+        unalignedBulkRanges();
+
+        for (long seed = 1; seed <= 10; seed++)
+            randomEdits(seed);
+
+        chunkLayers();
+
+        System.out.println("Chunk_Section_Test: ok");
+    }
+
+    private static void widensWithThePalette() {
+        Chunk_Section section = new Chunk_Section(Blocks.AIR);
+        int[] expected = new int[VOLUME];
+
+        check(section.isUniform() && section.bits() == 0 && section.uniformBlock() == Blocks.AIR, "starts uniform");
+
+        // Writing the block it already is keeps it uniform
+        section.set(5, Blocks.AIR);
+        check(section.isUniform(), "still uniform");
+
+        // 2, 3, 5, 17 and 257 distinct blocks need 1, 2, 4, 8 and 16 bits
+        int[] distinct = { 2, 3, 5, 17, 257 };
+        int[] bits = { 1, 2, 4, 8, 16 };
+
+        int next = 1;
+        for (int step = 0; step < distinct.length; step++) {
+            for (; next < distinct[step]; next++) {
+                // Spread out, so earlier entries have to survive the repack
+                int index = next * 61 % VOLUME;
+
+                section.set(index, 1000 + next);
+                expected[index] = 1000 + next;
+            }
+
+            check(section.bits() == bits[step], distinct[step] + " blocks in " + section.bits() + " bits");
+            check(section.paletteSize() == distinct[step], "palette of " + section.paletteSize());
+            checkSame(section, expected, distinct[step] + " blocks");
+        }
+    }
+
+    private static void compactNarrowsBackToUniform() {
+        Chunk_Section section = new Chunk_Section(Blocks.STONE);
+        int[] expected = new int[VOLUME];
+        Arrays.fill(expected, Blocks.STONE);
+
+        for (int i = 0; i < 40; i++) {
+            section.set(i * 100, 50 + i);
+            expected[i * 100] = 50 + i;
+        }
+
+        check(section.bits() == 8, "41 blocks in 8 bits");
+
+        // Put back all but 3, the palette keeps the unused ids until compacted
+        for (int i = 3; i < 40; i++) {
+            section.set(i * 100, Blocks.STONE);
+            expected[i * 100] = Blocks.STONE;
+        }
+
+        check(section.paletteSize() == 41, "unused ids kept");
+
+        long before = section.memoryBytes();
+        section.compact();
+
+        check(section.paletteSize() == 4 && section.bits() == 2, "compacted to 4 blocks in 2 bits, got " +
+                section.paletteSize() + " in " + section.bits());
+        check(section.memoryBytes() < before, "compacting saves memory");
+        checkSame(section, expected, "compacted");
+
+        // Compacting twice changes nothing
+        section.compact();
+        check(section.bits() == 2, "compact is idempotent");
+        checkSame(section, expected, "compacted twice");
+
+        // Still writable after compacting, and new ids widen it again
+        section.set(7, 999);
+        section.set(8, 998);
+        expected[7] = 999;
+        expected[8] = 998;
+        check(section.bits() == 4, "widened again, got " + section.bits());
+        checkSame(section, expected, "written after compacting");
+
+        section.fill(0, VOLUME / 2, Blocks.DIRT);
+        section.fill(VOLUME / 2, VOLUME, Blocks.DIRT);
+        section.compact();
+
+        check(section.isUniform() && section.uniformBlock() == Blocks.DIRT, "back to a single block");
+    }
+
+    private static void unalignedBulkRanges() {
+        Random random = new Random(42);
+
+        for (int bits : new int[] { 1, 2, 4, 8, 16 }) {
+            Chunk_Section section = new Chunk_Section(Blocks.AIR);
+            int[] expected = new int[VOLUME];
+
+            // Enough distinct blocks for this width
+            int blocks = bits == 16 ? 300 : 1 << bits;
+            for (int index = 0; index < VOLUME; index++) {
+                int block = random.nextInt(blocks);
+
+                section.set(index, block);
+                expected[index] = block;
+            }
+
+            check(section.bits() == bits, "filled to " + section.bits() + " bits, expected " + bits);
+
+            for (int range = 0; range < 200; range++) {
+                int from = random.nextInt(VOLUME);
+                int to = from + random.nextInt(VOLUME - from + 1);
+
+                int[] dest = new int[to - from + 3];
+                section.get(from, to, dest, 3);
+
+                for (int i = from; i < to; i++)
+                    check(dest[3 + i - from] == expected[i], bits + " bits: bulk get [" + from + ", " + to + ") at " + i);
+            }
+        }
+    }
+
+    private static void randomEdits(long seed) {
+        Random random = new Random(seed);
+
+        Chunk_Section section = new Chunk_Section(Blocks.AIR);
+        int[] expected = new int[VOLUME];
+
+        // Few distinct blocks most of the time, so the palette goes both up and down
+        int blocks = 2 + random.nextInt(seed % 3 == 0 ? 400 : 12);
+
+        for (int step = 0; step < 300; step++) {
+            int from = random.nextInt(VOLUME);
+            int to = from + random.nextInt(Math.min(VOLUME - from, 5000) + 1);
+            int block = random.nextInt(blocks);
+
+            switch (random.nextInt(6)) {
+                case 0 -> {
+                    section.set(from, block);
+                    expected[from] = block;
+                }
+                case 1 -> {
+                    section.fill(from, to, block);
+                    Arrays.fill(expected, from, to, block);
+                }
+                case 2 -> {
+                    // Runs with a change now and then, like terrain columns
+                    int[] source = new int[to - from + 1];
+                    for (int i = 1; i < source.length; i++)
+                        source[i] = random.nextInt(8) == 0 ? random.nextInt(blocks) : source[i - 1];
+
+                    section.set(from, to, source, 1);
+                    System.arraycopy(source, 1, expected, from, to - from);
+                }
+                case 3 -> section.compact();
+                case 4 -> {
+                    Chunk_Section copy = new Chunk_Section(Blocks.GRASS);
+                    copy.copyFrom(section);
+
+                    // The copy is independent of the original
+                    copy.set(from, block + 1);
+                    check(section.get(from) == expected[from], "seed " + seed + ": copy shares storage");
+
+                    copy.set(from, expected[from]);
+                    section = copy;
+                }
+                default -> {
+                    if (random.nextInt(20) == 0) {
+                        section.fill(block);
+                        Arrays.fill(expected, block);
+                    }
+                }
+            }
+
+            checkSame(section, expected, "seed " + seed + ", step " + step);
+        }
+
+        section.compact();
+        checkSame(section, expected, "seed " + seed + ", compacted");
+
+        long distinct = Arrays.stream(expected).distinct().count();
+        check(section.paletteSize() == distinct, "seed " + seed + ": compacted palette of " + section.paletteSize() +
+                " for " + distinct + " blocks");
+    }
+
+    private static void chunkLayers() {
+        Chunk chunk = new Chunk(0, 0, 0);
+        int side = Chunk.WORLD_SIDE_SIZE;
+
+        chunk.fill(3, 5, 7, 40, 48, 60, Blocks.DIRT);
+        chunk.set(0, 63, 0, Blocks.GRASS);
+
+        int[] blocks = new int[Chunk.VOLUME];
+        chunk.getBlocks(blocks);
+
+        for (int y = 0; y < side; y++) {
+            for (int z = 0; z < side; z++) {
+                for (int x = 0; x < side; x++) {
+                    int block = x >= 3 && x < 40 && y >= 5 && y < 48 && z >= 7 && z < 60 ? Blocks.DIRT : Blocks.AIR;
+                    if (x == 0 && y == 63 && z == 0)
+                        block = Blocks.GRASS;
+
+                    check(chunk.get(x, y, z) == block, "chunk get at " + x + ", " + y + ", " + z);
+                    check(blocks[(y * side + z) * side + x] == block, "chunk getBlocks at " + x + ", " + y + ", " + z);
+                }
+            }
+        }
+
+        Chunk copy = new Chunk(1, 0, 0);
+        copy.setBlocks(blocks);
+        copy.compact();
+
+        int[] layer = new int[Chunk.LAYER_SIZE];
+        int[] copyLayer = new int[Chunk.LAYER_SIZE];
+        for (int y = 0; y < side; y++) {
+            chunk.getLayer(y, layer);
+            copy.getLayer(y, copyLayer);
+
+            check(Arrays.equals(layer, copyLayer), "layer " + y + " differs after setBlocks and compact");
+        }
+
+        // Only the grass block is above the box
+        check(!copy.getSection(0).isUniform() && !copy.getSection(3).isUniform(), "mixed sections");
+        copy.set(0, 63, 0, Blocks.AIR);
+        copy.compact();
+        check(copy.getSection(3).isUniform() && copy.getSection(3).uniformBlock() == Blocks.AIR, "top section all air");
+    }
+
+    private static void checkSame(Chunk_Section section, int[] expected, String what) {
+        for (int index = 0; index < VOLUME; index++) {
+            if (section.get(index) != expected[index])
+                throw new AssertionError(what + ": block " + index + " is " + section.get(index) + ", expected " + expected[index]);
+        }
+
+        int[] bulk = new int[VOLUME];
+        section.get(0, VOLUME, bulk, 0);
+
+        check(Arrays.equals(bulk, expected), what + ": bulk get differs");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
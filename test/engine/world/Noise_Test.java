@@ -0,0 +1,191 @@
+package engine.world;
+
+import java.util.Random;
+
+/**
+ * The vector kernel, the scalar kernel and the per sample methods of {@link Noise} must give the same bits for the
+ * same points, including at the lattice edges, for negative coordinates and for counts that leave a partial
+ * vector at the end. Run with {@code --add-modules jdk.incubator.vector}, otherwise only the scalar paths are
+ * compared. Failures throw.
+ */
+public class Noise_Test {
+    private static final Noise.Fractal[] FRACTALS = {
+            Noise.Fractal.SINGLE,
+            Noise.Fractal.octaves(5),
+            new Noise.Fractal(3, 1.9f, 0.6f)
+    };
+
+    public static void main(String[] args) {
+        if (!Noise.isVectorized())
+            System.out.println("Noise_Test: jdk.incubator.vector missing, the vector kernel is not checked");
+
+        Random random = new Random(7);
+
+        for (int seed : new int[] { 0, 1, -1, 1337, Integer.MIN_VALUE, Integer.MAX_VALUE }) {
+            for (int count : new int[] { 0, 1, 3, 7, 8, 15, 16, 17, 33, 255, 256, 257, 1000 }) {
+                float[][] points = points(random, count);
+
+                kernels(seed, points);
+                batches(seed, points);
+            }
+        }
+
+        grids(1337);
+
+        System.out.println("Noise_Test: ok");
+    }
+
+    private static void kernels(int seed, float[][] points) {
+        int count = points[0].length;
+        float[] x = points[0], y = points[1], z = points[2];
+
+        Noise_Kernel vector = Noise.isVectorized() ? new Vector_Noise_Kernel() : new Scalar_Noise_Kernel();
+        Noise_Kernel scalar = new Scalar_Noise_Kernel();
+
+        // Also starting past 0, so the vector loop begins unaligned
+        for (int from : new int[] { 0, Math.min(count, 3) }) {
+            float[] vectorDest = new float[count];
+            float[] scalarDest = new float[count];
+
+            vector.simplex(seed, x, y, vectorDest, from, count);
+            scalar.simplex(seed, x, y, scalarDest, from, count);
+
+            for (int i = from; i < count; i++) {
+                float expected = Scalar_Noise_Kernel.simplex(seed, x[i], y[i]);
+
+                checkSame(vectorDest[i], expected, "2D vector kernel", seed, x[i], y[i], Float.NaN);
+                checkSame(scalarDest[i], expected, "2D scalar kernel", seed, x[i], y[i], Float.NaN);
+            }
+
+            vector.simplex(seed, x, y, z, vectorDest, from, count);
+            scalar.simplex(seed, x, y, z, scalarDest, from, count);
+
+            for (int i = from; i < count; i++) {
+                float expected = Scalar_Noise_Kernel.simplex(seed, x[i], y[i], z[i]);
+
+                checkSame(vectorDest[i], expected, "3D vector kernel", seed, x[i], y[i], z[i]);
+                checkSame(scalarDest[i], expected, "3D scalar kernel", seed, x[i], y[i], z[i]);
+            }
+        }
+    }
+
+    private static void batches(int seed, float[][] points) {
+        int count = points[0].length;
+        float[] x = points[0], y = points[1], z = points[2];
+
+        Noise noise = new Noise(seed);
+        Noise scalar = Noise.scalar(seed);
+
+        float[] dest = new float[count];
+        float[] scalarDest = new float[count];
+
+        noise.sample(x, y, dest, count);
+        for (int i = 0; i < count; i++)
+            checkSame(dest[i], noise.sample(x[i], y[i]), "2D sample", seed, x[i], y[i], Float.NaN);
+
+        noise.sample(x, y, z, dest, count);
+        for (int i = 0; i < count; i++)
+            checkSame(dest[i], noise.sample(x[i], y[i], z[i]), "3D sample", seed, x[i], y[i], z[i]);
+
+        for (Noise.Fractal fractal : FRACTALS) {
+            noise.fbm(x, y, dest, count, fractal);
+            scalar.fbm(x, y, scalarDest, count, fractal);
+
+            for (int i = 0; i < count; i++) {
+                float expected = noise.fbm(x[i], y[i], fractal);
+
+                checkSame(dest[i], expected, "2D fbm " + fractal, seed, x[i], y[i], Float.NaN);
+                checkSame(scalarDest[i], expected, "2D scalar fbm " + fractal, seed, x[i], y[i], Float.NaN);
+            }
+
+            noise.fbm(x, y, z, dest, count, fractal);
+            scalar.fbm(x, y, z, scalarDest, count, fractal);
+
+            for (int i = 0; i < count; i++) {
+                float expected = noise.fbm(x[i], y[i], z[i], fractal);
+
+                checkSame(dest[i], expected, "3D fbm " + fractal, seed, x[i], y[i], z[i]);
+                checkSame(scalarDest[i], expected, "3D scalar fbm " + fractal, seed, x[i], y[i], z[i]);
+            }
+
+            // Warp has no per sample method, the two kernels have to agree
+            float[][] warped = { x.clone(), y.clone(), z.clone() };
+            float[][] scalarWarped = { x.clone(), y.clone(), z.clone() };
+
+            noise.warp(warped[0], warped[1], count, 4.0f, fractal);
+            scalar.warp(scalarWarped[0], scalarWarped[1], count, 4.0f, fractal);
+
+            for (int i = 0; i < count; i++) {
+                checkSame(warped[0][i], scalarWarped[0][i], "2D warp x " + fractal, seed, x[i], y[i], Float.NaN);
+                checkSame(warped[1][i], scalarWarped[1][i], "2D warp y " + fractal, seed, x[i], y[i], Float.NaN);
+            }
+
+            warped = new float[][] { x.clone(), y.clone(), z.clone() };
+            scalarWarped = new float[][] { x.clone(), y.clone(), z.clone() };
+
+            noise.warp(warped[0], warped[1], warped[2], count, 4.0f, fractal);
+            scalar.warp(scalarWarped[0], scalarWarped[1], scalarWarped[2], count, 4.0f, fractal);
+
+            for (int i = 0; i < count; i++) {
+                for (int axis = 0; axis < 3; axis++)
+                    checkSame(warped[axis][i], scalarWarped[axis][i], "3D warp axis " + axis + " " + fractal, seed, x[i], y[i], z[i]);
+            }
+        }
+    }
+
+    private static void grids(int seed) {
+        Noise noise = new Noise(seed);
+        Noise.Fractal fractal = Noise.Fractal.octaves(4);
+
+        int width = 67, depth = 13, height = 5;
+        float x = -20.25f, y = 3.0f, z = 1000.5f, step = 0.37f;
+
+        float[] dest = new float[width * depth];
+        noise.grid(dest, x, z, step, width, depth, fractal);
+
+        for (int row = 0; row < depth; row++) {
+            for (int column = 0; column < width; column++) {
+                float px = x + (float) column * step, pz = z + (float) row * step;
+                checkSame(dest[row * width + column], noise.fbm(px, pz, fractal), "2D grid", seed, px, pz, Float.NaN);
+            }
+        }
+
+        dest = new float[width * height * depth];
+        noise.grid(dest, x, y, z, step, width, height, depth, fractal);
+
+        for (int layer = 0; layer < height; layer++) {
+            for (int row = 0; row < depth; row++) {
+                for (int column = 0; column < width; column++) {
+                    float px = x + (float) column * step, py = y + (float) layer * step, pz = z + (float) row * step;
+                    checkSame(dest[(layer * depth + row) * width + column], noise.fbm(px, py, pz, fractal), "3D grid", seed, px, py, pz);
+                }
+            }
+        }
+    }
+
+    // A mix of ordinary points, whole and half lattice coordinates, values near 0 and near the usable range
+    private static float[][] points(Random random, int count) {
+        float[][] points = new float[3][count];
+
+        for (int i = 0; i < count; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                points[axis][i] = switch (random.nextInt(6)) {
+                    case 0 -> (random.nextFloat() - 0.5f) * 200.0f;
+                    case 1 -> random.nextInt(200) - 100;
+                    case 2 -> (random.nextInt(400) - 200) * 0.5f;
+                    case 3 -> (random.nextFloat() - 0.5f) * 1e-6f;
+                    case 4 -> (random.nextFloat() - 0.5f) * 8e6f;
+                    default -> Math.nextUp((float) (random.nextInt(64) - 32));
+                };
+            }
+        }
+
+        return points;
+    }
+
+    private static void checkSame(float actual, float expected, String what, int seed, float x, float y, float z) {
+        if (Float.floatToRawIntBits(actual) != Float.floatToRawIntBits(expected))
+            throw new AssertionError(what + ", seed " + seed + " at " + x + ", " + y + (Float.isNaN(z) ? "" : ", " + z) +
+                                     ": " + actual + ", expected " + expected);
+    }
+}